@@ -20,23 +20,29 @@ package controllers.privately;
 
 import java.util.ArrayList;
 import java.util.List;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.inject.Inject;
 
+import executors.DatabaseExecutionContext;
+import indexes.IngredientAutocomplete;
+import indexes.IngredientNameIndex;
 import models.Ingredient;
 import models.IngredientName;
 import models.Language;
 import play.Logger;
 import play.data.DynamicForm;
 import play.data.FormFactory;
+import play.libs.Json;
 import play.mvc.Controller;
 import play.mvc.Result;
 import scrapers.IngredientScraper;
 import scrapers.data.ScrapedIngredient;
-import scrapers.dbload.DbLoader;
-import scrapers.visitors.AprosefVisitor;
-import scrapers.visitors.ListBasedVisitor;
-import scrapers.visitors.MindmegetteVisitor;
-import scrapers.visitors.NosaltyVisitor;
+import scrapers.dbload.IngredientResolutionCache;
+import scrapers.dbload.StageMetrics;
+import scrapers.jobs.ScrapeJob;
+import scrapers.jobs.ScrapeJobManager;
 import views.html.privateviews.*;
 
 /**
@@ -62,6 +68,10 @@ public class Home extends Controller
     /* -- PROTECTED ATTRIBUTES --------------------------------------------- */
     
     @Inject FormFactory formFactory;
+    
+    @Inject DatabaseExecutionContext databaseExecutionContext;
+    
+    @Inject ScrapeJobManager scrapeJobManager;
 
 
 
@@ -159,6 +169,11 @@ public class Home extends Controller
            scrapedNumber++;
        }
        
+       /* New names must be found by the autocomplete. */
+       IngredientNameIndex.invalidate();
+       IngredientAutocomplete.requestRebuild();
+       IngredientResolutionCache.invalidate();
+       
        flash("success", "saved " + scrapedNumber + " ingredient(s)");
        
        result = ok
@@ -199,33 +214,35 @@ public class Home extends Controller
            "    startpage = " + startPage
        );
        
-       /* Determine which visitors to use. */
-       List<ListBasedVisitor> visitors = new ArrayList<ListBasedVisitor>();
+       /* Submit a background job for each site; they run in parallel. */
+       List<Long> jobIds       = new ArrayList<Long>();
+       List<String> busySites  = new ArrayList<String>();
        
        for(String site: sourceSites)
        {
-           if(site.equalsIgnoreCase("nosalty"))
-           {
-               visitors.add(new NosaltyVisitor());
-           }
-           
-           if(site.equalsIgnoreCase("aprosef"))
-           {
-               visitors.add(new AprosefVisitor());
-           }
-           
-           if(site.equalsIgnoreCase("mindmegette"))
+           if(ScrapeJobManager.isKnownSite(site))
            {
-               visitors.add(new MindmegetteVisitor());
+               ScrapeJob job = scrapeJobManager.submit(site, 1L); /* lang is hard coded for Hungarian for now */
+               
+               if(job != null)
+               {
+                   jobIds.add(job.getId());
+               }
+               else
+               {
+                   busySites.add(site);
+               }
            }
        }
        
-       /* Start parsing. */
-       for(ListBasedVisitor visitor: visitors)
+       if(!jobIds.isEmpty())
        {
-           DbLoader loader = new DbLoader(visitor, 1L); /* lang is hard coded for Hungarian for now */
-           
-           loader.load();
+           flash("success", "started job(s) " + jobIds);
+       }
+       
+       if(!busySites.isEmpty())
+       {
+           flash("error", "already scraping " + busySites);
        }
        
        result = ok
@@ -235,6 +252,96 @@ public class Home extends Controller
        
        return result;
     }
+    
+    /**
+     * Gets the progress of every known scrape job as json.
+     * 
+     * @return The jobs.
+     */
+    public Result scrapeJobs()
+    {
+       ArrayNode jobs = Json.newArray();
+       
+       for(ScrapeJob job: scrapeJobManager.getJobs())
+       {
+           jobs.add(jobToJson(job));
+       }
+       
+       return ok(jobs);
+    }
+    
+    /**
+     * Gets the progress of a scrape job as json.
+     * 
+     * @param id    The id of the job.
+     * 
+     * @return The job, or not found.
+     */
+    public Result scrapeJob(Long id)
+    {
+       Result result = null;
+       
+       ScrapeJob job = scrapeJobManager.getJob(id);
+       
+       if(job != null)
+       {
+           result = ok(jobToJson(job));
+       }
+       else
+       {
+           result = notFound("No such job: " + id);
+       }
+       
+       return result;
+    }
+    
+    /**
+     * Cancels a scrape job. The job stops after the recipe it's working on.
+     * 
+     * @param id    The id of the job.
+     * 
+     * @return The job, or not found.
+     */
+    public Result cancelScrapeJob(Long id)
+    {
+       Result result = null;
+       
+       ScrapeJob job = scrapeJobManager.getJob(id);
+       
+       if(job != null)
+       {
+           scrapeJobManager.cancel(id);
+           
+           result = ok(jobToJson(job));
+       }
+       else
+       {
+           result = notFound("No such job: " + id);
+       }
+       
+       return result;
+    }
+    
+    /**
+     * Gets the metrics of the database executor as json: queue depth, active
+     * and started tasks, rejections, and the time tasks waited in the queue.
+     * 
+     * @return The metrics.
+     */
+    public Result databaseMetrics()
+    {
+       ObjectNode metrics = Json.newObject();
+       
+       metrics.put("poolSize",        databaseExecutionContext.getPoolSize());
+       metrics.put("queueDepth",      databaseExecutionContext.getQueueDepth());
+       metrics.put("activeCount",     databaseExecutionContext.getActiveCount());
+       metrics.put("startedCount",    databaseExecutionContext.getStartedCount());
+       metrics.put("rejectedCount",   databaseExecutionContext.getRejectedCount());
+       metrics.put("averageWaitMs",   databaseExecutionContext.getAverageWaitMillis());
+       metrics.put("maxWaitMs",       databaseExecutionContext.getMaxWaitMillis());
+       
+       return ok(metrics);
+    }
 
 
 
@@ -243,6 +350,45 @@ public class Home extends Controller
 
 
     /* -- PRIVATE METHODS -------------------------------------------------- */
+    
+    /**
+     * Creates the json form of a scrape job's progress.
+     * 
+     * @param job    The job.
+     * 
+     * @return The json.
+     */
+    private ObjectNode jobToJson(ScrapeJob job)
+    {
+       ObjectNode result = Json.newObject();
+       
+       result.put("id",                 job.getId());
+       result.put("site",               job.getSite());
+       result.put("state",              job.getState().name());
+       result.put("scrapedCount",       job.getScrapedCount());
+       result.put("pagesDone",          job.getPagesDone());
+       result.put("errorCount",         job.getErrorCount());
+       result.put("elapsedMs",          job.getElapsedMillis());
+       result.put("recipesPerSecond",   job.getRecipesPerSecond());
+       result.put("resolutionHitRate",  job.getResolutionHitRate());
+       
+       ArrayNode stages = result.putArray("stages");
+       
+       for(StageMetrics metrics : job.getStageMetrics())
+       {
+           ObjectNode stage = stages.addObject();
+           
+           stage.put("name",            metrics.getName());
+           stage.put("threads",         metrics.getThreads());
+           stage.put("processed",       metrics.getProcessedCount());
+           stage.put("perSecond",       metrics.getItemsPerSecond());
+           stage.put("averageMs",       metrics.getAverageMillis());
+           stage.put("queueDepth",      metrics.getQueueDepth());
+           stage.put("queueCapacity",   metrics.getQueueCapacity());
+       }
+       
+       return result;
+    }
 
 
 
@@ -0,0 +1,286 @@
+/*
+ *  Copyright 2016 Oliver Dozsa
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package controllers.publicly;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import play.Logger;
+
+/**
+ * Position of a result page for seek based pagination. It holds the sort key
+ * and id of the recipe at the page boundary, so the next (or previous) page
+ * can be queried from there instead of skipping rows. The total number of
+ * found recipes is carried along, so it isn't counted again for every page.
+ *
+ * @author Oliver Dozsa
+ */
+public class PageCursor
+{
+    /* --------------------------------------------------------------------- */
+    /* ATTRIBUTES                                                            */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC ATTRIBUTES ------------------------------------------------ */
+
+
+
+    /* -- PROTECTED ATTRIBUTES --------------------------------------------- */
+
+
+
+    /* -- PRIVATE ATTRIBUTES ----------------------------------------------- */
+
+    /**
+     * Prefix of cursor parameters, so they can't be mistaken for page indexes.
+     */
+    private static final String PARAM_PREFIX = "c";
+
+    /**
+     * Separator of the cursor fields.
+     */
+    private static final String SEPARATOR = "|";
+
+    /**
+     * The index of the page the cursor leads to.
+     */
+    private int pageIndex;
+
+    /**
+     * The number of recipes in the whole result.
+     */
+    private int totalRowCount;
+
+    /**
+     * True, if the page is after the boundary recipe, false if it's before.
+     */
+    private boolean isForward;
+
+    /**
+     * The sort by property the cursor was created for. Empty, if the result is
+     * ordered by id only.
+     */
+    private String sortBy;
+
+    /**
+     * The sort order the cursor was created for.
+     */
+    private String sortOrder;
+
+    /**
+     * The id of the boundary recipe.
+     */
+    private long id;
+
+    /**
+     * The sort key of the boundary recipe. Empty, if the result is ordered by
+     * id only.
+     */
+    private String sortKey;
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* METHODS                                                               */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC METHODS --------------------------------------------------- */
+
+    /**
+     * Initializes the cursor.
+     *
+     * @param pageIndex        The index of the page the cursor leads to.
+     * @param totalRowCount    The number of recipes in the whole result.
+     * @param isForward        True, if the page is after the boundary recipe.
+     * @param sortBy           The sort by property. Empty for id order.
+     * @param sortOrder        The sort order.
+     * @param id               The id of the boundary recipe.
+     * @param sortKey          The sort key of the boundary recipe. Empty for id order.
+     */
+    public PageCursor
+    (
+        int pageIndex,
+        int totalRowCount,
+        boolean isForward,
+        String sortBy,
+        String sortOrder,
+        long id,
+        String sortKey
+    )
+    {
+        this.pageIndex     = pageIndex;
+        this.totalRowCount = totalRowCount;
+        this.isForward     = isForward;
+        this.sortBy        = sortBy;
+        this.sortOrder     = sortOrder;
+        this.id            = id;
+        this.sortKey       = sortKey;
+    }
+
+    /**
+     * Parses a cursor from the "pag" request parameter.
+     *
+     * @param param    The parameter.
+     *
+     * @return The cursor, or null, if the parameter is not a cursor (e.g. it's
+     *         a plain page index).
+     */
+    public static PageCursor parse(String param)
+    {
+        PageCursor result = null;
+
+        if(param != null && param.startsWith(PARAM_PREFIX))
+        {
+            try
+            {
+                String decoded = new String
+                (
+                    Base64.getUrlDecoder().decode(param.substring(PARAM_PREFIX.length())),
+                    StandardCharsets.UTF_8
+                );
+
+                /* The sort key is the last field, so it may contain the separator. */
+                String[] fields = decoded.split("\\" + SEPARATOR, 7);
+
+                if(fields.length == 7)
+                {
+                    result = new PageCursor
+                    (
+                        Integer.parseInt(fields[0]),
+                        Integer.parseInt(fields[1]),
+                        fields[2].equals("f"),
+                        fields[3],
+                        fields[4],
+                        Long.parseLong(fields[5]),
+                        fields[6]
+                    );
+                }
+            }
+            catch(IllegalArgumentException e)
+            {
+                Logger.warn(PageCursor.class.getName() + ".parse(): Invalid cursor!\n" +
+                    "    param = " + param
+                );
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Creates the "pag" request parameter of the cursor.
+     *
+     * @return The parameter.
+     */
+    public String toParam()
+    {
+        String fields =
+            pageIndex + SEPARATOR +
+            totalRowCount + SEPARATOR +
+            (isForward ? "f" : "b") + SEPARATOR +
+            sortBy + SEPARATOR +
+            sortOrder + SEPARATOR +
+            id + SEPARATOR +
+            sortKey;
+
+        return PARAM_PREFIX + Base64.getUrlEncoder().encodeToString(fields.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Checks whether the cursor can be used for a result ordered the given way.
+     *
+     * @param sortBy       The sort by property. Empty for id order.
+     * @param sortOrder    The sort order.
+     *
+     * @return True, if the cursor was created for the same ordering.
+     */
+    public boolean isFor(String sortBy, String sortOrder)
+    {
+        return this.sortBy.equals(sortBy) && this.sortOrder.equalsIgnoreCase(sortOrder);
+    }
+
+    /**
+     *
+     * @return The index of the page the cursor leads to.
+     */
+    public int getPageIndex()
+    {
+        return pageIndex;
+    }
+
+    /**
+     *
+     * @return The number of recipes in the whole result.
+     */
+    public int getTotalRowCount()
+    {
+        return totalRowCount;
+    }
+
+    /**
+     *
+     * @return True, if the page is after the boundary recipe, false if it's before.
+     */
+    public boolean isForward()
+    {
+        return isForward;
+    }
+
+    /**
+     *
+     * @return The id of the boundary recipe.
+     */
+    public long getId()
+    {
+        return id;
+    }
+
+    /**
+     *
+     * @return The sort key of the boundary recipe.
+     */
+    public String getSortKey()
+    {
+        return sortKey;
+    }
+
+
+
+    /* -- PROTECTED METHODS ------------------------------------------------ */
+
+
+
+    /* -- PRIVATE METHODS -------------------------------------------------- */
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* OTHERS                                                                */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC OTHERS ---------------------------------------------------- */
+
+
+
+    /* -- PROTECTED OTHERS ------------------------------------------------- */
+
+
+
+    /* -- PRIVATE OTHERS --------------------------------------------------- */
+}
@@ -20,9 +20,15 @@ package controllers.publicly;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
 
 import com.avaje.ebean.Query;
 import com.fasterxml.jackson.databind.node.ArrayNode;
@@ -31,15 +37,20 @@ import com.google.inject.Inject;
 
 import controllers.publicly.query.RecipesByIngredients;
 import controllers.publicly.query.RecipesByRecipeProperties;
+import controllers.publicly.query.SearchResultCache;
+import executors.DatabaseExecutionContext;
+import indexes.IngredientAutocomplete;
 import models.Ingredient;
 import models.IngredientName;
 import models.IngredientTag;
 import models.Recipe;
 import models.RecipeTag;
 import play.Logger;
+import play.Play;
 import play.data.DynamicForm;
 import play.data.FormFactory;
 import play.libs.Json;
+import play.libs.concurrent.HttpExecution;
 import play.mvc.Controller;
 import play.mvc.Result;
 
@@ -63,11 +74,23 @@ public class RecipeBrowser extends Controller
      * */
     public static final int RESULT_PAGE_SIZE = 20;
 
+    /**
+     * Configuration key of the maximum number of ingredients suggested by the autocomplete.
+     * */
+    public static final String INGREDIENTS_LIMIT_CONFIG_KEY = "openrecipes.search.ingredients.autocompleteLimit";
+
+    /**
+     * Default maximum number of ingredients suggested by the autocomplete.
+     * */
+    public static final int DEFAULT_INGREDIENTS_LIMIT = 15;
+
 
 
     /* -- PROTECTED ATTRIBUTES --------------------------------------------- */
     
     @Inject FormFactory formFactory;
+    
+    @Inject DatabaseExecutionContext databaseExecutionContext;
 
 
 
@@ -102,60 +125,102 @@ public class RecipeBrowser extends Controller
      *
      * @return The result page (found recipes).
      * */
-    public Result exec_searchByIngredients()
+    public CompletionStage<Result> exec_searchByIngredients()
     {
-        Logger.debug(RecipeBrowser.class.getName() + ".exec_searchByIngredients():\n");
+        return runOnDatabase(new Supplier<Result>()
+        {
+            @Override
+            public Result get()
+            {
+                    Logger.debug(RecipeBrowser.class.getName() + ".exec_searchByIngredients():\n");
 
-        Result result = null;
+                    Result result = null;
+
+                    DynamicForm dynamicForm = formFactory.form().bindFromRequest();
+
+                    String sortBy                        = dynamicForm.get("srb");
+                    String sortOrder                     = dynamicForm.get("sro");
+                    Integer page                         = parseInteger(dynamicForm.get("pag"));
+
+                    Map<Long, List<Long>> includedIngs   = parseIncludedIds(dynamicForm.get("ini"));
+                    List<Long> excludedIngs              = parseExcludedIds(dynamicForm.get("exi"));
+                    SearchMode searchMode                = SearchMode.fromInt(parseInteger(dynamicForm.get("srm")));
+
+                    Logger.debug(RecipeBrowser.class.getName() + ".exec_searchByIngredients():\n" +
+                        "    sortBy          = " + sortBy + "\n" +
+                        "    sortOrder       = " + sortOrder + "\n" +
+                        "    page            = " + page + "\n" +
+                        "    includedIngs    = " + includedIngs + "\n" +
+                        "    excludedIngs    = " + excludedIngs + "\n" +
+                        "    searchMode      = " + searchMode.name()
+                    );
+
+                    /* Paging through the same search is served from the cached result. */
+                    SearchResultCache cache = SearchResultCache.getInstance();
+                    String cacheKey         = SearchResultCache.createKey(includedIngs, excludedIngs, searchMode, sortBy, sortOrder);
+                    long[] recipeIds        = cache.get(cacheKey);
+
+                    if(recipeIds == null)
+                    {
+                        long generation = cache.getGeneration();
+
+                        /* The ids found in the resident index are ordered without loading the recipes. */
+                        List<Long> indexedIds = RecipesByIngredients.findIdsByIngredients
+                        (
+                            includedIngs,
+                            excludedIngs,
+                            searchMode
+                        );
+
+                        if(indexedIds != null)
+                        {
+                            recipeIds = RecipeViewer.orderIds(indexedIds, sortOrder, sortBy);
+                        }
+                        else
+                        {
+                            Query<Recipe> searchResult = RecipesByIngredients.searchByIngredients
+                            (
+                                includedIngs,
+                                excludedIngs,
+                                searchMode
+                            );
+
+                            recipeIds = RecipeViewer.findOrderedIds(searchResult, sortOrder, sortBy);
+                        }
 
-        DynamicForm dynamicForm = formFactory.form().bindFromRequest();
-
-        String sortBy                        = dynamicForm.get("srb");
-        String sortOrder                     = dynamicForm.get("sro");
-        Integer page                         = parseInteger(dynamicForm.get("pag"));
-
-        Map<Long, List<Long>> includedIngs   = parseIncludedIds(dynamicForm.get("ini"));
-        List<Long> excludedIngs              = parseExcludedIds(dynamicForm.get("exi"));
-        SearchMode searchMode                = SearchMode.fromInt(parseInteger(dynamicForm.get("srm")));
-
-        Logger.debug(RecipeBrowser.class.getName() + ".exec_searchByIngredients():\n" +
-            "    sortBy          = " + sortBy + "\n" +
-            "    sortOrder       = " + sortOrder + "\n" +
-            "    page            = " + page + "\n" +
-            "    includedIngs    = " + includedIngs + "\n" +
-            "    excludedIngs    = " + excludedIngs + "\n" +
-            "    searchMode      = " + searchMode.name()
-        );
-
-        Query<Recipe> searchResult = RecipesByIngredients.searchByIngredients
-        (
-            includedIngs,
-            excludedIngs,
-            searchMode
-        );
-
-        /*
-         * Remove sort order, sort by, recipe tags language, and page from form data. They're not
-         * part of the search specific data, and in the scala template, they're
-         * added by hand, so they would be duplicated.
-         */
-        dynamicForm.data().remove("srb");
-        dynamicForm.data().remove("sro");
-        dynamicForm.data().remove("pag");
-        dynamicForm.data().remove("stl");
+                        cache.put(cacheKey, recipeIds, generation);
+                    }
+
+                    Logger.debug(RecipeBrowser.class.getName() + ".exec_searchByIngredients(): Result cache.\n" +
+                        "    cacheKey = " + cacheKey + "\n" +
+                        "    hits     = " + cache.getHitCount() + "\n" +
+                        "    misses   = " + cache.getMissCount()
+                    );
+
+                    /*
+                     * Remove sort order, sort by, recipe tags language, and page from form data. They're not
+                     * part of the search specific data, and in the scala template, they're
+                     * added by hand, so they would be duplicated.
+                     */
+                    dynamicForm.data().remove("srb");
+                    dynamicForm.data().remove("sro");
+                    dynamicForm.data().remove("pag");
+                    dynamicForm.data().remove("stl");
         
-        result = RecipeViewer.searchResults
-        (
-            searchResult,
-            page,
-            sortOrder,
-            sortBy,
-            RESULT_PAGE_SIZE,
-            SearchType.BY_INGREDIENTS,
-            dynamicForm.data()
-        );
+                    result = RecipeViewer.searchResults
+                    (
+                        recipeIds,
+                        page,
+                        sortOrder,
+                        sortBy,
+                        RESULT_PAGE_SIZE,
+                        SearchType.BY_INGREDIENTS,
+                        dynamicForm.data()
+                    );
 
-        return result;
+                    return result;
+            }
+        });
     }
     
     /**
@@ -179,69 +244,173 @@ public class RecipeBrowser extends Controller
      *
      * @return The result page (found recipes).
      * */
-    public Result exec_searchByRecipeProperties()
+    public CompletionStage<Result> exec_searchByRecipeProperties()
     {
-        Logger.debug(RecipeBrowser.class.getName() + ".exec_searchByRecipeProperties()");
-
-        /* Retrieving data from form. */
-        DynamicForm dynamicForm = formFactory.form().bindFromRequest();
-
-        String name                              = dynamicForm.get("nam");
-        String sortBy                            = dynamicForm.get("srb");
-        String sortOrder                         = dynamicForm.get("sro");
-        Integer page                             = parseInteger(dynamicForm.get("pag"));
-
-        Map<Long, List<Long>> includedRecipeTags = parseIncludedIds(dynamicForm.get("inr"));
-        List<Long> excludedRecipeTags            = parseExcludedIds(dynamicForm.get("exr"));
-        SearchMode includedRecipeTagsSearchMode  = SearchMode.fromInt(parseInteger(dynamicForm.get("irm")));
-
-        Map<Long, List<Long>> includedIngTags    = parseIncludedIds(dynamicForm.get("ini"));
-        List<Long> excludedIngTags               = parseExcludedIds(dynamicForm.get("exi"));
-        SearchMode excludedIngTagsSearchMode     = SearchMode.fromInt(parseInteger(dynamicForm.get("iim")));
-
-        Logger.debug(RecipeBrowser.class.getName() + ".exec_searchByRecipeProperties():\n" +
-            "    sortBy                       = " + sortBy + "\n" +
-            "    sortOrder                    = " + sortOrder + "\n" +
-            "    page                         = " + page + "\n" +
-            "    includedRecipeTags           = " + includedRecipeTags + "\n" +
-            "    excludedRecipeTags           = " + excludedRecipeTags + "\n" +
-            "    includedRecipeTagsSearchMode = " + includedRecipeTagsSearchMode.name() + "\n" +
-            "    includedIngTags              = " + includedIngTags + "\n" +
-            "    excludedIngTags              = " + excludedIngTags + "\n" +
-            "    excludedIngTagsSearchMode    = " + excludedIngTagsSearchMode.name() + "\n"
-        );
-
-        Query<Recipe> searchResult = RecipesByRecipeProperties.searchByRecipeProperties
-        (
-            name,
-            includedRecipeTags,
-            excludedRecipeTags,
-            includedIngTags,
-            excludedIngTags,
-            includedRecipeTagsSearchMode,
-            excludedIngTagsSearchMode
-        );
-
-        /*
-         * Remove sort order, sort by, tag language, and page from form data. They're not
-         * part of the search specific data, and in the scala template, they're
-         * added by hand, so they would be duplicated.
-         */
-        dynamicForm.data().remove("srb");
-        dynamicForm.data().remove("sro");
-        dynamicForm.data().remove("pag");
-        dynamicForm.data().remove("stl");
-
-        return RecipeViewer.searchResults
-        (
-            searchResult,
-            page,
-            sortOrder,
-            sortBy,
-            RESULT_PAGE_SIZE,
-            SearchType.BY_RECIPE_PROPERTIES,
-            dynamicForm.data()
-        );
+        return runOnDatabase(new Supplier<Result>()
+        {
+            @Override
+            public Result get()
+            {
+                    Logger.debug(RecipeBrowser.class.getName() + ".exec_searchByRecipeProperties()");
+
+                    Result result = null;
+
+                    /* Retrieving data from form. */
+                    DynamicForm dynamicForm = formFactory.form().bindFromRequest();
+
+                    String name                              = dynamicForm.get("nam");
+                    String sortBy                            = dynamicForm.get("srb");
+                    String sortOrder                         = dynamicForm.get("sro");
+                    PageCursor cursor                        = PageCursor.parse(dynamicForm.get("pag"));
+                    Integer page                             = (cursor != null) ? cursor.getPageIndex() : parseInteger(dynamicForm.get("pag"));
+
+                    Map<Long, List<Long>> includedRecipeTags = parseIncludedIds(dynamicForm.get("inr"));
+                    List<Long> excludedRecipeTags            = parseExcludedIds(dynamicForm.get("exr"));
+                    SearchMode includedRecipeTagsSearchMode  = SearchMode.fromInt(parseInteger(dynamicForm.get("irm")));
+
+                    Map<Long, List<Long>> includedIngTags    = parseIncludedIds(dynamicForm.get("ini"));
+                    List<Long> excludedIngTags               = parseExcludedIds(dynamicForm.get("exi"));
+                    SearchMode excludedIngTagsSearchMode     = SearchMode.fromInt(parseInteger(dynamicForm.get("iim")));
+
+                    Logger.debug(RecipeBrowser.class.getName() + ".exec_searchByRecipeProperties():\n" +
+                        "    sortBy                       = " + sortBy + "\n" +
+                        "    sortOrder                    = " + sortOrder + "\n" +
+                        "    page                         = " + page + "\n" +
+                        "    includedRecipeTags           = " + includedRecipeTags + "\n" +
+                        "    excludedRecipeTags           = " + excludedRecipeTags + "\n" +
+                        "    includedRecipeTagsSearchMode = " + includedRecipeTagsSearchMode.name() + "\n" +
+                        "    includedIngTags              = " + includedIngTags + "\n" +
+                        "    excludedIngTags              = " + excludedIngTags + "\n" +
+                        "    excludedIngTagsSearchMode    = " + excludedIngTagsSearchMode.name() + "\n"
+                    );
+
+                    /*
+                     * Without a sort order, the best matching names come first. Paging through the same
+                     * search is served from the cached result.
+                     */
+                    long[] rankedIds = null;
+
+                    if((sortBy == null || sortBy.isEmpty()) && RecipesByRecipeProperties.isRankedByName(name))
+                    {
+                        SearchResultCache cache = SearchResultCache.getInstance();
+                        String cacheKey         = SearchResultCache.createKey
+                        (
+                            name,
+                            includedRecipeTags,
+                            excludedRecipeTags,
+                            includedRecipeTagsSearchMode,
+                            includedIngTags,
+                            excludedIngTags,
+                            excludedIngTagsSearchMode
+                        );
+
+                        rankedIds = cache.get(cacheKey);
+
+                        if(rankedIds == null)
+                        {
+                            long generation = cache.getGeneration();
+
+                            rankedIds = RecipesByRecipeProperties.searchRankedByName
+                            (
+                                name,
+                                includedRecipeTags,
+                                excludedRecipeTags,
+                                includedIngTags,
+                                excludedIngTags,
+                                includedRecipeTagsSearchMode,
+                                excludedIngTagsSearchMode
+                            );
+
+                            cache.put(cacheKey, rankedIds, generation);
+                        }
+
+                        Logger.debug(RecipeBrowser.class.getName() + ".exec_searchByRecipeProperties(): Result cache.\n" +
+                            "    cacheKey = " + cacheKey + "\n" +
+                            "    hits     = " + cache.getHitCount() + "\n" +
+                            "    misses   = " + cache.getMissCount()
+                        );
+                    }
+
+                    /*
+                     * Remove sort order, sort by, tag language, and page from form data. They're not
+                     * part of the search specific data, and in the scala template, they're
+                     * added by hand, so they would be duplicated.
+                     */
+                    dynamicForm.data().remove("srb");
+                    dynamicForm.data().remove("sro");
+                    dynamicForm.data().remove("pag");
+                    dynamicForm.data().remove("stl");
+
+                    if(rankedIds != null)
+                    {
+                        result = RecipeViewer.searchResults
+                        (
+                            rankedIds,
+                            page,
+                            sortOrder,
+                            sortBy,
+                            RESULT_PAGE_SIZE,
+                            SearchType.BY_RECIPE_PROPERTIES,
+                            dynamicForm.data()
+                        );
+                    }
+                    else
+                    {
+                        /* Searches not running as one SQL query are paged by the ids of the found recipes. */
+                        List<Long> foundIds = RecipesByRecipeProperties.findIdsByRecipeProperties
+                        (
+                            name,
+                            includedRecipeTags,
+                            excludedRecipeTags,
+                            includedIngTags,
+                            excludedIngTags,
+                            includedRecipeTagsSearchMode,
+                            excludedIngTagsSearchMode
+                        );
+
+                        if(foundIds != null)
+                        {
+                            result = RecipeViewer.searchResults
+                            (
+                                RecipeViewer.orderIds(foundIds, sortOrder, sortBy),
+                                page,
+                                sortOrder,
+                                sortBy,
+                                RESULT_PAGE_SIZE,
+                                SearchType.BY_RECIPE_PROPERTIES,
+                                dynamicForm.data()
+                            );
+                        }
+                        else
+                        {
+                            Query<Recipe> searchResult = RecipesByRecipeProperties.searchByRecipeProperties
+                            (
+                                name,
+                                includedRecipeTags,
+                                excludedRecipeTags,
+                                includedIngTags,
+                                excludedIngTags,
+                                includedRecipeTagsSearchMode,
+                                excludedIngTagsSearchMode
+                            );
+
+                            result = RecipeViewer.searchResults
+                            (
+                                searchResult,
+                                page,
+                                cursor,
+                                sortOrder,
+                                sortBy,
+                                RESULT_PAGE_SIZE,
+                                SearchType.BY_RECIPE_PROPERTIES,
+                                dynamicForm.data()
+                            );
+                        }
+                    }
+
+                    return result;
+            }
+        });
     }
     
     /**
@@ -252,58 +421,86 @@ public class RecipeBrowser extends Controller
      * 
      * @return The available ingredient names as a json object, according to typeahead format.
      * */
-    public Result ingredients(String query, Long languageID)
+    public CompletionStage<Result> ingredients(final String query, final Long languageID)
     {
-        Logger.debug(RecipeBrowser.class.getName() + ".ingredients():\n" +
-            "    query      = " + query + "\n" +
-            "    languageID = " + languageID
-        );
-
-        Result result = null;
-
-        ArrayNode jsonResults = Json.newObject().arrayNode();
-
-        if(query != null && languageID != null)
+        return runOnDatabase(new Supplier<Result>()
         {
-            if(query.length() > 0)
+            @Override
+            public Result get()
             {
-                List<Ingredient> ingredients = Ingredient.getIngredientsLikeByLanguage(query, languageID);
+                    Logger.debug(RecipeBrowser.class.getName() + ".ingredients():\n" +
+                        "    query      = " + query + "\n" +
+                        "    languageID = " + languageID
+                    );
 
-                for(Ingredient ingredient: ingredients)
-                {
-                    IngredientName ingName = ingredient.getNameByLanguage(languageID);
+                    Result result = null;
+
+                    ArrayNode jsonResults = Json.newObject().arrayNode();
 
-                    if(ingName != null && ingName.name != null)
+                    if(query != null && languageID != null)
                     {
-                        ObjectNode queryJsonResult = Json.newObject();
+                        if(query.length() > 0)
+                        {
+                            int limit = Math.min
+                            (
+                                Play.application().configuration().getInt(INGREDIENTS_LIMIT_CONFIG_KEY, DEFAULT_INGREDIENTS_LIMIT),
+                                IngredientAutocomplete.MAX_SUGGESTIONS
+                            );
 
-                        queryJsonResult.put("value", ingName.name);
-                        queryJsonResult.put("id", ingredient.id);
+                            /* Words starting with the query come first, most used ingredients first. */
+                            Set<Long> suggestedIds = new HashSet<Long>();
 
-                        ArrayNode tokens = queryJsonResult.putArray("tokens");
-                        tokens.add(ingName.name);
+                            for(IngredientAutocomplete.Suggestion suggestion: IngredientAutocomplete.getInstance().complete(query, languageID, limit))
+                            {
+                                addIngredientJson(jsonResults, suggestion.name, suggestion.ingredientId);
 
-                        jsonResults.add(queryJsonResult);
-                    }
-                    else
-                    {
-                        if(ingName == null)
-                        {
-                            Logger.warn(RecipeBrowser.class.getName() + ".ingredients(): ingName is null!");
-                        }
-                        else
-                        {
-                            Logger.error(RecipeBrowser.class.getName() + ".ingredients(): ingName's name is null!\n" +
-                                "    ingName.id = " + ingName.id);
+                                suggestedIds.add(suggestion.ingredientId);
+                            }
+
+                            /* Fill up with names containing the query. */
+                            List<Ingredient> ingredients = new ArrayList<Ingredient>();
+
+                            if(suggestedIds.size() < limit)
+                            {
+                                ingredients = Ingredient.getIngredientsLikeByLanguage(query, languageID, limit);
+                            }
+
+                            Map<Long, IngredientName> ingNames = Ingredient.getNamesByLanguage(ingredients, languageID);
+
+                            for(Ingredient ingredient: ingredients)
+                            {
+                                if(jsonResults.size() < limit && !suggestedIds.contains(ingredient.id))
+                                {
+                                    IngredientName ingName = ingNames.get(ingredient.id);
+
+                                    if(ingName != null && ingName.name != null)
+                                    {
+                                        addIngredientJson(jsonResults, ingName.name, ingredient.id);
+
+                                        suggestedIds.add(ingredient.id);
+                                    }
+                                    else
+                                    {
+                                        if(ingName == null)
+                                        {
+                                            Logger.warn(RecipeBrowser.class.getName() + ".ingredients(): ingName is null!");
+                                        }
+                                        else
+                                        {
+                                            Logger.error(RecipeBrowser.class.getName() + ".ingredients(): ingName's name is null!\n" +
+                                                "    ingName.id = " + ingName.id);
+                                        }
+                                    }
+                                }
+                            }
                         }
                     }
-                }
-            }
-        }
 
-        result = ok(jsonResults);
+                    result = ok(jsonResults);
         
-        return result;
+                    return result;
+            }
+        });
     }
     
     /**
@@ -313,45 +510,52 @@ public class RecipeBrowser extends Controller
      * 
      * @return The available ingredient tags as a json object, according to typeahead format.
      * */
-    public Result ingredientTags(String query)
+    public CompletionStage<Result> ingredientTags(final String query)
     {
-        Logger.debug(RecipeBrowser.class.getName() + ".ingredientTags():\n" +
-            "    query = " + query
-        );
+        return runOnDatabase(new Supplier<Result>()
+        {
+            @Override
+            public Result get()
+            {
+                    Logger.debug(RecipeBrowser.class.getName() + ".ingredientTags():\n" +
+                        "    query = " + query
+                    );
 
-        Result result = null;
+                    Result result = null;
         
-        ArrayNode jsonResults = Json.newObject().arrayNode();
+                    ArrayNode jsonResults = Json.newObject().arrayNode();
 
-        if(query != null)
-        {
-            if(query.length() > 0)
-            {
-                List<IngredientTag> tags = IngredientTag.getTagsByNameLike(query);
+                    if(query != null)
+                    {
+                        if(query.length() > 0)
+                        {
+                            List<IngredientTag> tags = IngredientTag.getTagsByNameLike(query);
 
-                for(IngredientTag tag: tags)
-                {
-                    ObjectNode queryJsonResult = Json.newObject();
+                            for(IngredientTag tag: tags)
+                            {
+                                ObjectNode queryJsonResult = Json.newObject();
 
-                    /* We assume that name cannot be null (db restriction). */
-                    queryJsonResult.put("value", tag.name);
-                    queryJsonResult.put("id", tag.id);
+                                /* We assume that name cannot be null (db restriction). */
+                                queryJsonResult.put("value", tag.name);
+                                queryJsonResult.put("id", tag.id);
 
-                    ArrayNode tokens = queryJsonResult.putArray("tokens");
-                    tokens.add(tag.name);
+                                ArrayNode tokens = queryJsonResult.putArray("tokens");
+                                tokens.add(tag.name);
 
-                    jsonResults.add(queryJsonResult);
-                }
-            }
-        }
-        else
-        {
-            Logger.warn(RecipeBrowser.class.getName() + ".ingredientTags(): query is null!");
-        }
+                                jsonResults.add(queryJsonResult);
+                            }
+                        }
+                    }
+                    else
+                    {
+                        Logger.warn(RecipeBrowser.class.getName() + ".ingredientTags(): query is null!");
+                    }
         
-        result = ok(jsonResults);
+                    result = ok(jsonResults);
         
-        return result;
+                    return result;
+            }
+        });
     }
     
     /**
@@ -363,92 +567,98 @@ public class RecipeBrowser extends Controller
      *
      * @return The result ingredients as json.
      * */
-    public Result ingredientsWithTags
+    public CompletionStage<Result> ingredientsWithTags
     (
-        String tagIDs,
-        boolean isAND,
-        Long languageID
+        final String tagIDs,
+        final boolean isAND,
+        final Long languageID
     )
     {
-        Logger.debug(RecipeBrowser.class.getName() + ".ingredientsWithTags():\n" +
-            "    tagIDs     = " + tagIDs     + "\n" +
-            "    isAND      = " + isAND      + "\n" +
-            "    languageID = " + languageID
-        );
+        return runOnDatabase(new Supplier<Result>()
+        {
+            @Override
+            public Result get()
+            {
+                    Logger.debug(RecipeBrowser.class.getName() + ".ingredientsWithTags():\n" +
+                        "    tagIDs     = " + tagIDs     + "\n" +
+                        "    isAND      = " + isAND      + "\n" +
+                        "    languageID = " + languageID
+                    );
 
-        Result result = null;
+                    Result result = null;
         
-        ArrayNode jsonResults = Json.newObject().arrayNode();
+                    ArrayNode jsonResults = Json.newObject().arrayNode();
 
-        boolean isParamsValid = true;
+                    boolean isParamsValid = true;
 
-        /* Check for parameters validity. */
-        if(tagIDs     == null || languageID == null)
-        {
-            isParamsValid = false;
-        }
-        else
-        {
-            Logger.warn(RecipeBrowser.class.getName() + ".ingredientsWithTags(): params are not valid!");
-        }
+                    /* Check for parameters validity. */
+                    if(tagIDs     == null || languageID == null)
+                    {
+                        isParamsValid = false;
+                    }
+                    else
+                    {
+                        Logger.warn(RecipeBrowser.class.getName() + ".ingredientsWithTags(): params are not valid!");
+                    }
 
-        if(isParamsValid)
-        {
-            String[] tagsIDsArray = tagIDs.split(",");
+                    if(isParamsValid)
+                    {
+                        String[] tagsIDsArray = tagIDs.split(",");
 
-            List<IngredientTag> tags = new ArrayList<IngredientTag>();
+                        List<Long> tagIDList = new ArrayList<Long>();
 
-            for(String tagIDStr: tagsIDsArray)
-            {
-                Long tagID        = Long.parseLong(tagIDStr);
-                IngredientTag tag = IngredientTag.find.byId(tagID);
+                        for(String tagIDStr: tagsIDsArray)
+                        {
+                            tagIDList.add(Long.parseLong(tagIDStr));
+                        }
 
-                if(tag != null)
-                {
-                    tags.add(tag);
-                }
-            }
+                        /* Load the tags with a single query. */
+                        List<IngredientTag> tags = IngredientTag.find.where().idIn(tagIDList).findList();
 
-            List<Ingredient> ingredients;
+                        List<Ingredient> ingredients;
 
-            ingredients = Ingredient.getIngredientsWithTags
-            (
-                tags,
-                isAND
-            );
+                        ingredients = Ingredient.getIngredientsWithTags
+                        (
+                            tags,
+                            isAND
+                        );
 
-            for(Ingredient ingredient: ingredients)
-            {
-                IngredientName ingName = ingredient.getNameByLanguage(languageID);
+                        Map<Long, IngredientName> ingNames = Ingredient.getNamesByLanguage(ingredients, languageID);
 
-                if(ingName != null && ingName.name != null)
-                {
-                    ObjectNode jsonResult = Json.newObject();
+                        for(Ingredient ingredient: ingredients)
+                        {
+                            IngredientName ingName = ingNames.get(ingredient.id);
 
-                    jsonResult.put("id", ingredient.id);
-                    jsonResult.put("name", ingName.name);
+                            if(ingName != null && ingName.name != null)
+                            {
+                                ObjectNode jsonResult = Json.newObject();
 
-                    jsonResults.add(jsonResult);
-                }
-                else
-                {
-                    if(ingName == null)
-                    {
-                        Logger.warn(RecipeBrowser.class.getName() + ".ingredientsWithTags(): ingName is null!");
-                    }
-                    else
-                    {
-                        Logger.error(RecipeBrowser.class.getName() + ".ingredientsWithTags(): ingName's name is null!\n" +
-                            "    ingName.id = " + ingName.id
-                        );
+                                jsonResult.put("id", ingredient.id);
+                                jsonResult.put("name", ingName.name);
+
+                                jsonResults.add(jsonResult);
+                            }
+                            else
+                            {
+                                if(ingName == null)
+                                {
+                                    Logger.warn(RecipeBrowser.class.getName() + ".ingredientsWithTags(): ingName is null!");
+                                }
+                                else
+                                {
+                                    Logger.error(RecipeBrowser.class.getName() + ".ingredientsWithTags(): ingName's name is null!\n" +
+                                        "    ingName.id = " + ingName.id
+                                    );
+                                }
+                            }
+                        }
                     }
-                }
-            }
-        }
         
-        result = ok(jsonResults);
+                    result = ok(jsonResults);
         
-        return result;
+                    return result;
+            }
+        });
     }
     
     /**
@@ -458,38 +668,45 @@ public class RecipeBrowser extends Controller
      * 
      * @return The available recipe tags as a json object, according to typeahead format.
      * */
-    public Result recipeTags(String query)
+    public CompletionStage<Result> recipeTags(final String query)
     {
-        Logger.debug(RecipeBrowser.class.getName() + ".recipeTags():\n" +
-            "    query = " + query
-        );
+        return runOnDatabase(new Supplier<Result>()
+        {
+            @Override
+            public Result get()
+            {
+                    Logger.debug(RecipeBrowser.class.getName() + ".recipeTags():\n" +
+                        "    query = " + query
+                    );
 
-        Result result = null;
+                    Result result = null;
         
-        ArrayNode jsonResults = Json.newObject().arrayNode();
+                    ArrayNode jsonResults = Json.newObject().arrayNode();
         
-        if(query.length() > 0)
-        {
-            List<RecipeTag> tags = RecipeTag.getTagsByNameLike(query);
+                    if(query.length() > 0)
+                    {
+                        List<RecipeTag> tags = RecipeTag.getTagsByNameLike(query);
             
-            for(RecipeTag tag: tags)
-            {
-                ObjectNode queryJsonResult = Json.newObject();
+                        for(RecipeTag tag: tags)
+                        {
+                            ObjectNode queryJsonResult = Json.newObject();
 
-                /* We assume, that name is not null (db restriction) */
-                queryJsonResult.put("value", tag.name);
-                queryJsonResult.put("id", tag.id);
+                            /* We assume, that name is not null (db restriction) */
+                            queryJsonResult.put("value", tag.name);
+                            queryJsonResult.put("id", tag.id);
                 
-                ArrayNode tokens = queryJsonResult.putArray("tokens");
-                tokens.add(tag.name);
+                            ArrayNode tokens = queryJsonResult.putArray("tokens");
+                            tokens.add(tag.name);
                 
-                jsonResults.add(queryJsonResult);
-            }
-        }
+                            jsonResults.add(queryJsonResult);
+                        }
+                    }
         
-        result = ok(jsonResults);
+                    result = ok(jsonResults);
         
-        return result;
+                    return result;
+            }
+        });
     }
 
 
@@ -500,6 +717,52 @@ public class RecipeBrowser extends Controller
 
     /* -- PRIVATE METHODS -------------------------------------------------- */
     
+    /**
+     * Runs database work on the database executor, so request threads are not
+     * blocked by it. The HTTP context is carried over to the executor.
+     * 
+     * @param work    The work, producing the result.
+     * 
+     * @return The result. If the executor's queue is full, it's a service unavailable result.
+     * */
+    private CompletionStage<Result> runOnDatabase(Supplier<Result> work)
+    {
+        CompletionStage<Result> result = null;
+
+        try
+        {
+            result = CompletableFuture.supplyAsync(work, HttpExecution.fromThread(databaseExecutionContext));
+        }
+        catch(RejectedExecutionException e)
+        {
+            Logger.warn(RecipeBrowser.class.getName() + ".runOnDatabase(): Database executor is full!");
+
+            result = CompletableFuture.completedFuture(status(SERVICE_UNAVAILABLE, "The server is busy, please try again later!"));
+        }
+
+        return result;
+    }
+    
+    /**
+     * Adds an ingredient to the json results, according to typeahead format.
+     * 
+     * @param jsonResults     The json results.
+     * @param name            The name of the ingredient.
+     * @param ingredientID    The id of the ingredient.
+     * */
+    private static void addIngredientJson(ArrayNode jsonResults, String name, Long ingredientID)
+    {
+        ObjectNode queryJsonResult = Json.newObject();
+
+        queryJsonResult.put("value", name);
+        queryJsonResult.put("id", ingredientID);
+
+        ArrayNode tokens = queryJsonResult.putArray("tokens");
+        tokens.add(name);
+
+        jsonResults.add(queryJsonResult);
+    }
+    
     /**
      * Parses the included ingredient ids from its string representation.
      * The string representation format is:
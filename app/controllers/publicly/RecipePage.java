@@ -0,0 +1,275 @@
+/*
+ *  Copyright 2016 Oliver Dozsa
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package controllers.publicly;
+
+import java.util.List;
+
+import models.Recipe;
+
+/**
+ * One page of a recipe search result, as shown by the recipe viewer.
+ *
+ * @author Oliver Dozsa
+ */
+public class RecipePage
+{
+    /* --------------------------------------------------------------------- */
+    /* ATTRIBUTES                                                            */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC ATTRIBUTES ------------------------------------------------ */
+
+
+
+    /* -- PROTECTED ATTRIBUTES --------------------------------------------- */
+
+
+
+    /* -- PRIVATE ATTRIBUTES ----------------------------------------------- */
+
+    /**
+     * The recipes of the page.
+     */
+    private List<Recipe> list;
+
+    /**
+     * The index of the page.
+     */
+    private int pageIndex;
+
+    /**
+     * The page size.
+     */
+    private int pageSize;
+
+    /**
+     * The number of recipes in the whole result.
+     */
+    private int totalRowCount;
+
+    /**
+     * The "pag" parameter leading to the next page. Null, if the next page is
+     * addressed by its index.
+     */
+    private String nextPageParam;
+
+    /**
+     * The "pag" parameter leading to the previous page. Null, if the previous
+     * page is addressed by its index.
+     */
+    private String prevPageParam;
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* METHODS                                                               */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC METHODS --------------------------------------------------- */
+
+    /**
+     * Initializes the page.
+     *
+     * @param list             The recipes of the page.
+     * @param pageIndex        The index of the page.
+     * @param pageSize         The page size.
+     * @param totalRowCount    The number of recipes in the whole result.
+     */
+    public RecipePage(List<Recipe> list, int pageIndex, int pageSize, int totalRowCount)
+    {
+        this.list          = list;
+        this.pageIndex     = pageIndex;
+        this.pageSize      = pageSize;
+        this.totalRowCount = totalRowCount;
+    }
+
+    /**
+     * Initializes the page, with cursors leading to the neighbouring pages.
+     *
+     * @param list             The recipes of the page.
+     * @param pageIndex        The index of the page.
+     * @param pageSize         The page size.
+     * @param totalRowCount    The number of recipes in the whole result.
+     * @param nextPageParam    The "pag" parameter of the next page. May be null.
+     * @param prevPageParam    The "pag" parameter of the previous page. May be null.
+     */
+    public RecipePage
+    (
+        List<Recipe> list,
+        int pageIndex,
+        int pageSize,
+        int totalRowCount,
+        String nextPageParam,
+        String prevPageParam
+    )
+    {
+        this(list, pageIndex, pageSize, totalRowCount);
+
+        this.nextPageParam = nextPageParam;
+        this.prevPageParam = prevPageParam;
+    }
+
+    /**
+     *
+     * @return The recipes of the page.
+     */
+    public List<Recipe> getList()
+    {
+        return list;
+    }
+
+    /**
+     *
+     * @return The index of the page.
+     */
+    public int getPageIndex()
+    {
+        return pageIndex;
+    }
+
+    /**
+     *
+     * @return The page size.
+     */
+    public int getPageSize()
+    {
+        return pageSize;
+    }
+
+    /**
+     *
+     * @return The number of recipes in the whole result.
+     */
+    public int getTotalRowCount()
+    {
+        return totalRowCount;
+    }
+
+    /**
+     *
+     * @return The number of pages in the whole result.
+     */
+    public int getTotalPageCount()
+    {
+        int result = 0;
+
+        if(pageSize > 0)
+        {
+            result = (totalRowCount + pageSize - 1) / pageSize;
+        }
+
+        return result;
+    }
+
+    /**
+     *
+     * @return True, if there's a next page.
+     */
+    public boolean hasNext()
+    {
+        return (pageIndex + 1) * pageSize < totalRowCount;
+    }
+
+    /**
+     *
+     * @return True, if there's a previous page.
+     */
+    public boolean hasPrev()
+    {
+        return pageIndex > 0;
+    }
+
+    /**
+     *
+     * @return The "pag" parameter leading to the next page.
+     */
+    public String getNextPageParam()
+    {
+        String result = nextPageParam;
+
+        if(result == null)
+        {
+            result = Integer.toString(pageIndex + 1);
+        }
+
+        return result;
+    }
+
+    /**
+     *
+     * @return The "pag" parameter leading to the previous page.
+     */
+    public String getPrevPageParam()
+    {
+        String result = prevPageParam;
+
+        if(result == null)
+        {
+            result = Integer.toString(pageIndex - 1);
+        }
+
+        return result;
+    }
+
+    /**
+     * Gets the "X to Y of Z" text of the page.
+     *
+     * @param to    The "to" text.
+     * @param of    The "of" text.
+     *
+     * @return The text.
+     */
+    public String getDisplayXtoYofZ(String to, String of)
+    {
+        int first = pageIndex * pageSize + 1;
+        int last  = first + list.size() - 1;
+
+        if(list.isEmpty())
+        {
+            first = 0;
+            last  = 0;
+        }
+
+        return first + to + last + of + totalRowCount;
+    }
+
+
+
+    /* -- PROTECTED METHODS ------------------------------------------------ */
+
+
+
+    /* -- PRIVATE METHODS -------------------------------------------------- */
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* OTHERS                                                                */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC OTHERS ---------------------------------------------------- */
+
+
+
+    /* -- PROTECTED OTHERS ------------------------------------------------- */
+
+
+
+    /* -- PRIVATE OTHERS --------------------------------------------------- */
+}
@@ -18,6 +18,8 @@
 
 package controllers.publicly;
 
+import com.avaje.ebean.Expr;
+import com.avaje.ebean.Expression;
 import com.avaje.ebean.PagedList;
 import com.avaje.ebean.Query;
 import models.Recipe;
@@ -27,7 +29,12 @@ import play.mvc.Controller;
 
 import views.html.publicviews.recipeview.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -51,6 +58,17 @@ public class RecipeViewer extends Controller
 
     /* -- PRIVATE ATTRIBUTES ----------------------------------------------- */
 
+    /**
+     * The properties recipes can be ordered by. Other sort by values are not
+     * used, as they would end up in the SQL.
+     */
+    private static final List<String> SORTABLE_PROPERTIES = Arrays.asList("name");
+
+    /**
+     * Maximum number of recipes read by one query, when ordering ids.
+     */
+    private static final int ORDER_CHUNK_SIZE = 1000;
+
 
 
     /* --------------------------------------------------------------------- */
@@ -62,8 +80,13 @@ public class RecipeViewer extends Controller
     /**
      * Based on recipe query, it renders the compact view of recipes.
      *
+     * Pages are looked up by seeking from the cursor, if it's present and the
+     * result is ordered by a seekable property (name, or nothing). Otherwise,
+     * the page is looked up by its index.
+     *
      * @param query              The query to use.
      * @param page               The page index.
+     * @param cursor             The cursor leading to the page. May be null.
      * @param sortOrder          The sort order (ASC, or DESC).
      * @param sortBy             The sort by property (e.g. recipe name).
      * @param pageSize           The page size.
@@ -76,6 +99,7 @@ public class RecipeViewer extends Controller
     (
         Query<Recipe> query,
         Integer page,
+        PageCursor cursor,
         String sortOrder,
         String sortBy,
         Integer pageSize,
@@ -85,6 +109,7 @@ public class RecipeViewer extends Controller
     {
         Logger.debug(RecipeViewer.class.getName() + ".searchResults()\n" +
             "    page            = " + page + "\n" +
+            "    cursor          = " + (cursor != null ? cursor.toParam() : null) + "\n" +
             "    sortOrder       = " + sortOrder + "\n" +
             "    sortBy          = " + sortBy + "\n" +
             "    pageSize        = " + pageSize + "\n" +
@@ -108,60 +133,140 @@ public class RecipeViewer extends Controller
 
         if(!isError)
         {
-            Map<Long, String> recipesNames           = new HashMap<Long, String>();
-            String usedSortOrder                     = "asc";
+            RecipePage recipePage = null;
+            String usedSortBy     = (sortBy != null) ? sortBy : "";
 
-            /* Check sort order. In case it's not valid, we'll use the default "asc" */
-            if(sortOrder != null)
+            if(isSeekable(usedSortBy))
             {
-                if(sortOrder.equalsIgnoreCase("asc") || sortOrder.equalsIgnoreCase("desc"))
-                {
-                    usedSortOrder = sortOrder;
-                }
+                recipePage = findPage_SEEK(query, page, cursor, getUsedSortOrder(sortOrder), usedSortBy, pageSize);
             }
+            else
+            {
+                applyOrder(query, sortOrder, sortBy);
+
+                /* Get the result. */
+                PagedList<Recipe> pagedList = query
+                    .findPagedList(page, pageSize);
+
+                recipePage = new RecipePage(pagedList.getList(), pagedList.getPageIndex(), pageSize, pagedList.getTotalRowCount());
+            }
+
+            result = renderPage
+            (
+                recipePage,
+                page,
+                sortOrder,
+                sortBy,
+                searchType,
+                searchParamKeys
+            );
+        }
+        else
+        {
+            Logger.error(RecipeViewer.class.getName() + ".searchResults(): Parameters are not ok!");
+
+            // TODO: error code?
+            result = badRequest("Error while searching for recipes!");
+        }
+
+        return result;
+    }
+
+
+
+    /**
+     * Renders the compact view of recipes from an already ordered list of
+     * recipe ids. Only the recipes of the requested page are loaded.
+     *
+     * @param recipeIds          The ordered ids of the found recipes.
+     * @param page               The page index.
+     * @param sortOrder          The sort order (ASC, or DESC).
+     * @param sortBy             The sort by property (e.g. recipe name).
+     * @param pageSize           The page size.
+     * @param searchType         The type of the search.
+     * @param searchParamKeys    The search parameters.
+     *
+     * @return Compact view of recipes.
+     * */
+    public static Result searchResults
+    (
+        long[] recipeIds,
+        Integer page,
+        String sortOrder,
+        String sortBy,
+        Integer pageSize,
+        RecipeBrowser.SearchType searchType,
+        Map<String, String> searchParamKeys
+    )
+    {
+        Logger.debug(RecipeViewer.class.getName() + ".searchResults()\n" +
+            "    recipeIds.length = " + (recipeIds != null ? recipeIds.length : null) + "\n" +
+            "    page             = " + page + "\n" +
+            "    sortOrder        = " + sortOrder + "\n" +
+            "    sortBy           = " + sortBy + "\n" +
+            "    pageSize         = " + pageSize + "\n" +
+            "    searchType       = " + searchType + "\n" +
+            "    searchParamKeys  = " + searchParamKeys
+        );
+
+        Result result = null;
 
-            if(sortBy != null)
+        /* Check for errors. */
+        boolean isError = recipeIds == null || checkParams_searchResults
+        (
+            null,
+            page,
+            sortOrder,
+            sortBy,
+            pageSize,
+            searchType,
+            searchParamKeys
+        );
+
+        if(!isError)
+        {
+            int from = (int)Math.min((long)Math.max(page, 0) * pageSize, recipeIds.length);
+            int to   = (int)Math.min((long)from + pageSize, recipeIds.length);
+
+            List<Long> pageIds = new ArrayList<Long>();
+
+            for(int i = from; i < to; ++i)
             {
-                if(!sortBy.equalsIgnoreCase(""))
-                {
-                    /* We assume, that sortBy points to a valid column, if present. If not, an error page is returned. */
-                    query.orderBy(sortBy + " " + usedSortOrder);
-                }
+                pageIds.add(recipeIds[i]);
             }
 
-            /* Get the result. */
-            PagedList<Recipe> recipePage = query
-                .findPagedList(page, pageSize);
-            
-            Logger.info(RecipeViewer.class.getName() + " recipePage.getTotalRowCount(): " + recipePage.getTotalRowCount());
-            
-            Logger.info(RecipeViewer.class.getName() + " recipePage.getList().size(): " + recipePage.getList().size());
+            /* Load the recipes of the page, and restore the cached order. */
+            List<Recipe> recipes = new ArrayList<Recipe>();
 
-            if(recipePage.getTotalRowCount() > 0)
+            if(!pageIds.isEmpty())
             {
-                for(Recipe recipe: recipePage.getList())
+                Map<Long, Recipe> recipesById = new HashMap<Long, Recipe>();
+
+                for(Recipe recipe : Recipe.find.where().idIn(pageIds).findList())
                 {
-                    recipesNames.put(recipe.id, recipe.name);
+                    recipesById.put(recipe.id, recipe);
                 }
 
-                result = ok
-                (
-                    compact.render
-                    (
-                        recipePage,
-                        recipesNames,
-                        page,
-                        sortBy,
-                        sortOrder,
-                        searchType,
-                        searchParamKeys
-                    )
-                );
-            }
-            else
-            {
-                result = badRequest("No results to show!");
+                for(Long id : pageIds)
+                {
+                    Recipe recipe = recipesById.get(id);
+
+                    if(recipe != null)
+                    {
+                        recipes.add(recipe);
+                    }
+                }
             }
+
+            result = renderPage
+            (
+                new RecipePage(recipes, page, pageSize, recipeIds.length),
+                page,
+                sortOrder,
+                sortBy,
+                searchType,
+                searchParamKeys
+            );
         }
         else
         {
@@ -174,6 +279,77 @@ public class RecipeViewer extends Controller
         return result;
     }
 
+    /**
+     * Orders the query the same way as searchResults() does, and gets the ids
+     * of the found recipes in that order. The query should select the id
+     * only, as the SQL based searches do.
+     *
+     * @param query        The query to use.
+     * @param sortOrder    The sort order (ASC, or DESC).
+     * @param sortBy       The sort by property (e.g. recipe name).
+     *
+     * @return The ordered ids of the found recipes.
+     * */
+    public static long[] findOrderedIds(Query<Recipe> query, String sortOrder, String sortBy)
+    {
+        applyOrder(query, sortOrder, sortBy);
+
+        return toIdArray(query.findList());
+    }
+
+    /**
+     * Orders the ids of found recipes the same way as searchResults() does.
+     * Without a sortable property, the ids are kept in their order, without
+     * querying the database; otherwise only the id, and the sort by property
+     * of the recipes are read, in chunks, and the recipes are ordered by
+     * (sort key, id).
+     *
+     * @param recipeIds    The ids of the found recipes.
+     * @param sortOrder    The sort order (ASC, or DESC).
+     * @param sortBy       The sort by property (e.g. recipe name).
+     *
+     * @return The ordered ids.
+     * */
+    public static long[] orderIds(List<Long> recipeIds, String sortOrder, String sortBy)
+    {
+        long[] result = null;
+
+        if(!isSortable(sortBy) || recipeIds.isEmpty())
+        {
+            result = new long[recipeIds.size()];
+
+            for(int i = 0; i < result.length; ++i)
+            {
+                result[i] = recipeIds.get(i);
+            }
+        }
+        else
+        {
+            List<Recipe> recipes = new ArrayList<Recipe>();
+
+            /* No query gets more ids than a chunk. */
+            for(int from = 0; from < recipeIds.size(); from += ORDER_CHUNK_SIZE)
+            {
+                List<Long> chunkIds = recipeIds.subList(from, Math.min(from + ORDER_CHUNK_SIZE, recipeIds.size()));
+
+                recipes.addAll
+                (
+                    Recipe.find
+                        .select("id, " + sortBy)
+                        .where()
+                            .idIn(chunkIds)
+                        .findList()
+                );
+            }
+
+            Collections.sort(recipes, new SortKeyComparator(sortBy, getUsedSortOrder(sortOrder).equals("desc")));
+
+            result = toIdArray(recipes);
+        }
+
+        return result;
+    }
+
 
 
     /* -- PROTECTED METHODS ------------------------------------------------ */
@@ -182,6 +358,294 @@ public class RecipeViewer extends Controller
 
     /* -- PRIVATE METHODS -------------------------------------------------- */
 
+    /**
+     * Gets the ids of recipes.
+     *
+     * @param recipes    The recipes.
+     *
+     * @return The ids, in the order of the recipes.
+     * */
+    private static long[] toIdArray(List<Recipe> recipes)
+    {
+        long[] result = new long[recipes.size()];
+
+        for(int i = 0; i < result.length; ++i)
+        {
+            result[i] = recipes.get(i).id;
+        }
+
+        return result;
+    }
+
+    /**
+     * Applies the sort order to the query. In case the sort order is not
+     * valid, "asc" is used. If sort by is missing, or it's not a sortable
+     * property, the query is not ordered.
+     *
+     * @param query        The query to order.
+     * @param sortOrder    The sort order (ASC, or DESC).
+     * @param sortBy       The sort by property (e.g. recipe name).
+     * */
+    private static void applyOrder(Query<Recipe> query, String sortOrder, String sortBy)
+    {
+        String usedSortOrder = getUsedSortOrder(sortOrder);
+
+        if(isSortable(sortBy))
+        {
+            query.orderBy(sortBy + " " + usedSortOrder);
+        }
+        else if(sortBy != null && !sortBy.equalsIgnoreCase(""))
+        {
+            Logger.warn(RecipeViewer.class.getName() + ".applyOrder(): Not a sortable property, results are not ordered!\n" +
+                "    sortBy = " + sortBy
+            );
+        }
+    }
+
+    /**
+     * Checks whether recipes can be ordered by the given property.
+     *
+     * @param sortBy    The sort by property. May be null.
+     *
+     * @return True, if the property is sortable.
+     * */
+    private static boolean isSortable(String sortBy)
+    {
+        return sortBy != null && SORTABLE_PROPERTIES.contains(sortBy);
+    }
+
+    /**
+     * Gets the sort order to use. In case it's not valid, "asc" is used.
+     *
+     * @param sortOrder    The requested sort order (ASC, or DESC).
+     *
+     * @return The sort order to use, in lower case.
+     * */
+    private static String getUsedSortOrder(String sortOrder)
+    {
+        String result = "asc";
+
+        /* Check sort order. In case it's not valid, we'll use the default "asc" */
+        if(sortOrder != null)
+        {
+            if(sortOrder.equalsIgnoreCase("asc") || sortOrder.equalsIgnoreCase("desc"))
+            {
+                result = sortOrder.toLowerCase();
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Checks whether pages of a result ordered by the given property can be
+     * looked up by seeking.
+     *
+     * @param sortBy    The sort by property. Empty, if there's no ordering.
+     *
+     * @return True, if seeking can be used.
+     * */
+    private static boolean isSeekable(String sortBy)
+    {
+        return sortBy.equals("") || sortBy.equals("name");
+    }
+
+    /**
+     * Gets the sort key of a recipe.
+     *
+     * @param recipe    The recipe.
+     * @param sortBy    The sort by property. Must be seekable.
+     *
+     * @return The sort key, or null, if the recipe has no sort key.
+     * */
+    private static String getSortKey(Recipe recipe, String sortBy)
+    {
+        String result = "";
+
+        if(sortBy.equals("name"))
+        {
+            result = recipe.name;
+        }
+
+        return result;
+    }
+
+    /**
+     * Looks up a page by seeking from the cursor: the page is queried as the
+     * recipes after (or before) the boundary recipe of the cursor in the
+     * (sort key, id) order, so no rows are skipped. The total number of
+     * recipes is taken from the cursor, and it's only counted when there's no
+     * cursor. Without a cursor, the page is looked up by its index.
+     *
+     * @param query        The query to use.
+     * @param page         The page index.
+     * @param cursor       The cursor leading to the page. May be null.
+     * @param sortOrder    The sort order ("asc", or "desc").
+     * @param sortBy       The sort by property. Must be seekable.
+     * @param pageSize     The page size.
+     *
+     * @return The page.
+     * */
+    private static RecipePage findPage_SEEK
+    (
+        Query<Recipe> query,
+        Integer page,
+        PageCursor cursor,
+        String sortOrder,
+        String sortBy,
+        Integer pageSize
+    )
+    {
+        int totalRowCount   = 0;
+        boolean isForward   = true;
+        boolean isAscending = sortOrder.equals("asc");
+
+        if(cursor != null && cursor.isFor(sortBy, sortOrder))
+        {
+            totalRowCount = cursor.getTotalRowCount();
+            isForward     = cursor.isForward();
+
+            /* Recipes after the boundary in ascending order, or before it in descending order, are greater. */
+            boolean isGreater = (isAscending == isForward);
+
+            Expression idExpr = isGreater ? Expr.gt("id", cursor.getId()) : Expr.lt("id", cursor.getId());
+
+            if(sortBy.equals(""))
+            {
+                query.where().add(idExpr);
+            }
+            else
+            {
+                String sortKey = cursor.getSortKey();
+
+                query.where().add
+                (
+                    Expr.or
+                    (
+                        isGreater ? Expr.gt(sortBy, sortKey) : Expr.lt(sortBy, sortKey),
+                        Expr.and(Expr.eq(sortBy, sortKey), idExpr)
+                    )
+                );
+            }
+        }
+        else
+        {
+            totalRowCount = query.findRowCount();
+
+            if(page > 0)
+            {
+                query.setFirstRow(page * pageSize);
+            }
+        }
+
+        /* Pages before the boundary are scanned in reverse order. */
+        String scanOrder = sortOrder;
+
+        if(!isForward)
+        {
+            scanOrder = isAscending ? "desc" : "asc";
+        }
+
+        if(sortBy.equals(""))
+        {
+            query.orderBy("id " + scanOrder);
+        }
+        else
+        {
+            query.orderBy(sortBy + " " + scanOrder + ", id " + scanOrder);
+        }
+
+        List<Recipe> recipes = new ArrayList<Recipe>(query.setMaxRows(pageSize).findList());
+
+        if(!isForward)
+        {
+            Collections.reverse(recipes);
+        }
+
+        /* Create the cursors of the neighbouring pages. */
+        String nextPageParam = null;
+        String prevPageParam = null;
+
+        if(!recipes.isEmpty())
+        {
+            Recipe first = recipes.get(0);
+            Recipe last  = recipes.get(recipes.size() - 1);
+
+            String firstKey = getSortKey(first, sortBy);
+            String lastKey  = getSortKey(last, sortBy);
+
+            if(lastKey != null)
+            {
+                nextPageParam = new PageCursor(page + 1, totalRowCount, true, sortBy, sortOrder, last.id, lastKey).toParam();
+            }
+
+            if(firstKey != null)
+            {
+                prevPageParam = new PageCursor(page - 1, totalRowCount, false, sortBy, sortOrder, first.id, firstKey).toParam();
+            }
+        }
+
+        return new RecipePage(recipes, page, pageSize, totalRowCount, nextPageParam, prevPageParam);
+    }
+
+    /**
+     * Renders a page of found recipes.
+     *
+     * @param recipePage         The page to render.
+     * @param page               The page index.
+     * @param sortOrder          The sort order (ASC, or DESC).
+     * @param sortBy             The sort by property (e.g. recipe name).
+     * @param searchType         The type of the search.
+     * @param searchParamKeys    The search parameters.
+     *
+     * @return Compact view of recipes, or bad request if there are no results.
+     * */
+    private static Result renderPage
+    (
+        RecipePage recipePage,
+        Integer page,
+        String sortOrder,
+        String sortBy,
+        RecipeBrowser.SearchType searchType,
+        Map<String, String> searchParamKeys
+    )
+    {
+        Result result = null;
+
+        Map<Long, String> recipesNames = new HashMap<Long, String>();
+
+        Logger.info(RecipeViewer.class.getName() + " recipePage.getTotalRowCount(): " + recipePage.getTotalRowCount());
+
+        Logger.info(RecipeViewer.class.getName() + " recipePage.getList().size(): " + recipePage.getList().size());
+
+        if(recipePage.getTotalRowCount() > 0)
+        {
+            for(Recipe recipe: recipePage.getList())
+            {
+                recipesNames.put(recipe.id, recipe.name);
+            }
+
+            result = ok
+            (
+                compact.render
+                (
+                    recipePage,
+                    recipesNames,
+                    page,
+                    sortBy,
+                    sortOrder,
+                    searchType,
+                    searchParamKeys
+                )
+            );
+        }
+        else
+        {
+            result = badRequest("No results to show!");
+        }
+
+        return result;
+    }
     
     /**
      * Checks the parameters of the searchResults() method.
@@ -323,4 +787,57 @@ public class RecipeViewer extends Controller
 
 
     /* -- PRIVATE OTHERS --------------------------------------------------- */
+
+    /**
+     * Orders recipes by (sort key, id), the way the database does: recipes
+     * without sort key come first in ascending order.
+     */
+    private static class SortKeyComparator implements Comparator<Recipe>
+    {
+        /**
+         * The sort by property. Must be seekable.
+         */
+        private String sortBy;
+
+        /**
+         * Whether the order is descending.
+         */
+        private boolean isDescending;
+
+        /**
+         * Creates the comparator.
+         *
+         * @param sortBy          The sort by property. Must be seekable.
+         * @param isDescending    Whether the order is descending.
+         */
+        public SortKeyComparator(String sortBy, boolean isDescending)
+        {
+            this.sortBy       = sortBy;
+            this.isDescending = isDescending;
+        }
+
+        @Override
+        public int compare(Recipe first, Recipe second)
+        {
+            String firstKey  = getSortKey(first, sortBy);
+            String secondKey = getSortKey(second, sortBy);
+            int result       = 0;
+
+            if(firstKey == null || secondKey == null)
+            {
+                result = (firstKey == null ? 0 : 1) - (secondKey == null ? 0 : 1);
+            }
+            else
+            {
+                result = firstKey.compareTo(secondKey);
+            }
+
+            if(result == 0)
+            {
+                result = first.id.compareTo(second.id);
+            }
+
+            return isDescending ? -result : result;
+        }
+    }
 }
@@ -20,11 +20,16 @@ package controllers.publicly.query;
 
 import com.avaje.ebean.*;
 import controllers.publicly.RecipeBrowser;
+import indexes.RecipeIngredientIndex;
 import models.Recipe;
 import play.Logger;
+import play.Play;
 
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Used for storing the queries for recipes by ingredients.
@@ -41,6 +46,11 @@ public class RecipesByIngredients
 
     /* -- PUBLIC ATTRIBUTES ------------------------------------------------ */
 
+    /**
+     * Configuration key of the search engine used. See SearchEngine for the possible values.
+     */
+    public static final String SEARCH_ENGINE_CONFIG_KEY = "openrecipes.search.ingredients.engine";
+
 
 
     /* -- PROTECTED ATTRIBUTES --------------------------------------------- */
@@ -80,7 +90,9 @@ public class RecipesByIngredients
      *                                            should be present.
      *
      * @return The list of found ingredients query based on the criteria, or an empty list,
-     *         if nothing is found.
+     *         if nothing is found. The query is always SQL based; the resident bitmap index
+     *         is used by findIdsByIngredients(), so its results can be paged by id, instead of
+     *         querying them by one IN list of all the found ids.
      * */
     public static Query<Recipe> searchByIngredients
     (
@@ -97,27 +109,7 @@ public class RecipesByIngredients
 
         Query<Recipe> result = null;
 
-        /* Check whether included, and excluded list are mutually exclusive. */
-        boolean isMutuallyExclusive = true;
-
-        for(Long excluded: excludedIngredientIds)
-        {
-            for(List<Long> includedList: includedIngredientIds.values())
-            {
-                if(includedList.contains(excluded))
-                {
-                    /* Included list contains an excluded ingredient. */
-                    isMutuallyExclusive = false;
-
-                    break;
-                }
-            }
-
-            if(!isMutuallyExclusive)
-            {
-                break;
-            }
-        }
+        boolean isMutuallyExclusive = isMutuallyExclusive(includedIngredientIds, excludedIngredientIds);
 
         if(isMutuallyExclusive)
         {
@@ -200,12 +192,169 @@ public class RecipesByIngredients
 
 
 
+    /**
+     * Gets the ids of the recipes based on the given ingredient constraints from the resident
+     * recipe - ingredient bitmap index, without querying the database. See searchByIngredients()
+     * for the parameters.
+     *
+     * @param includedIngredientIds    The included ingredient ids. The key is the group id.
+     * @param excludedIngredientIds    The excluded ingredient ids.
+     * @param searchMode               The search mode.
+     *
+     * @return The ids of the found recipes in ascending order, or null, if the index is not used;
+     *         searchByIngredients() is to be used then.
+     * */
+    public static List<Long> findIdsByIngredients
+    (
+        Map<Long, List<Long>> includedIngredientIds,
+        List<Long> excludedIngredientIds,
+        RecipeBrowser.SearchMode searchMode
+    )
+    {
+        List<Long> result = null;
+
+        if(isMutuallyExclusive(includedIngredientIds, excludedIngredientIds) && isBitmapUsed())
+        {
+            result = findIds_BITMAP(includedIngredientIds, excludedIngredientIds, searchMode);
+        }
+
+        return result;
+    }
+
+
+
     /* -- PROTECTED METHODS ------------------------------------------------ */
 
 
 
     /* -- PRIVATE METHODS -------------------------------------------------- */
 
+    /**
+     * Checks whether included, and excluded list are mutually exclusive.
+     *
+     * @param includedIngredientIds    The included ingredient ids. The key is the group id.
+     * @param excludedIngredientIds    The excluded ingredient ids.
+     *
+     * @return True, if no excluded ingredient is included.
+     * */
+    private static boolean isMutuallyExclusive(Map<Long, List<Long>> includedIngredientIds, List<Long> excludedIngredientIds)
+    {
+        boolean result = true;
+
+        for(Long excluded: excludedIngredientIds)
+        {
+            for(List<Long> includedList: includedIngredientIds.values())
+            {
+                if(includedList.contains(excluded))
+                {
+                    /* Included list contains an excluded ingredient. */
+                    result = false;
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Checks whether the resident recipe - ingredient bitmap index is used.
+     *
+     * @return True, if the bitmap engine is configured, and the index is usable.
+     * */
+    private static boolean isBitmapUsed()
+    {
+        return getSearchEngine() == SearchEngine.BITMAP && RecipeIngredientIndex.getInstance().isUsable();
+    }
+
+    /**
+     * Gets the configured search engine.
+     *
+     * @return The search engine. SearchEngine.SQL is returned if the configuration is missing, or invalid.
+     * */
+    private static SearchEngine getSearchEngine()
+    {
+        SearchEngine result = SearchEngine.SQL;
+
+        String engineStr = Play.application().configuration().getString(SEARCH_ENGINE_CONFIG_KEY, "sql");
+
+        if(engineStr.equalsIgnoreCase("bitmap"))
+        {
+            result = SearchEngine.BITMAP;
+        }
+        else if(!engineStr.equalsIgnoreCase("sql"))
+        {
+            Logger.warn(RecipesByIngredients.class.getName() + ".getSearchEngine(): unknown engine, using sql!\n" +
+                "    engineStr = " + engineStr
+            );
+        }
+
+        return result;
+    }
+
+    /**
+     * Gets the ids of the found recipes from the resident recipe - ingredient bitmap index.
+     *
+     * @param includedIngredientIds    The included ingredient ids. The key is the group id, the values are
+     *                                 the ingredient ids in for the group.
+     * @param excludedIngredientIds    The excluded ingredient ids.
+     * @param searchMode               The search mode.
+     *
+     * @return The ids in ascending order, or null, if the search mode is unknown.
+     * */
+    private static List<Long> findIds_BITMAP
+    (
+        Map<Long, List<Long>> includedIngredientIds,
+        List<Long> excludedIngredientIds,
+        RecipeBrowser.SearchMode searchMode
+    )
+    {
+        RecipeIngredientIndex index = RecipeIngredientIndex.getInstance();
+
+        List<Long> result = null;
+
+        switch(searchMode)
+        {
+            case EXACT:
+            {
+                /* In exact search, excluded ingredient has no meaning. */
+                result = index.searchExact(includedIngredientIds.get(Recipe.GROUP_ID_A));
+
+                break;
+            }
+
+            case AT_LEAST:
+            {
+                result = index.searchAtLeast(includedIngredientIds.get(Recipe.GROUP_ID_A), excludedIngredientIds);
+
+                break;
+            }
+
+            case ANY_OF:
+            {
+                result = index.searchAnyOf(includedIngredientIds.get(Recipe.GROUP_ID_A), excludedIngredientIds);
+
+                break;
+            }
+
+            case GROUP:
+            {
+                result = index.searchGroup(includedIngredientIds, excludedIngredientIds);
+
+                break;
+            }
+
+            case UNKNOWN:
+            default:
+            {
+                Logger.warn(RecipesByIngredients.class.getName() + ".findIds_BITMAP(): searchMode is unknown!");
+
+                break;
+            }
+        }
+
+        return result;
+    }
+
     /**
      * Executes the EXACT search.
      *
@@ -223,11 +372,17 @@ public class RecipesByIngredients
 
         Query<Recipe> result = null;
 
+        int numOfIngredients = includedIngredientIds.get(Recipe.GROUP_ID_A).size();
+
+        /*
+         * Only recipes with the same number of ingredients can match (indexed lookup), from those
+         * the ones containing all the given ingredients are selected.
+         */
         String rawSqlStr =
             "SELECT recipe.id FROM recipe " +
             "JOIN recipe_ingredient ON recipe.id = recipe_ingredient.recipe_id " +
             "GROUP BY recipe.id " +
-            "HAVING COUNT(recipe_ingredient.ingredient_id) = " + includedIngredientIds.get(Recipe.GROUP_ID_A).size();
+            "HAVING COUNT(recipe_ingredient.ingredient_id) = " + numOfIngredients;
 
         RawSql rawSql = RawSqlBuilder.parse(rawSqlStr)
             .columnMapping("recipe.id", "id")
@@ -236,8 +391,8 @@ public class RecipesByIngredients
         result = Recipe.find.setRawSql(rawSql)
             .where()
                 .conjunction()
+                    .add(Expr.eq("recipe.ingredient_count", numOfIngredients))
                     .add(Expr.in("recipe_ingredient.ingredient_id", includedIngredientIds.get(Recipe.GROUP_ID_A)))
-                    .add(Expr.in("recipe.id", Recipe.find.setRawSql(rawSql)))
             .query();
 
         return result;
@@ -325,12 +480,14 @@ public class RecipesByIngredients
     }
 
     /**
-     * Executes the search GROUP mode.
+     * Executes the search GROUP mode. The recipe_ingredient rows of the included ingredients
+     * are scanned once; every row counts for the groups containing its ingredient, and a
+     * recipe is found if any group's count equals the group's size. The excluded recipes
+     * are selected once, not per group.
      *
      * @param includedIngredientIds    Included ingredient ids. The key is the group id, the values are
      *                                 the ingredient ids for the group.
      * @param excludedIngredientIds    Excluded ingredient ids.
-     * @param usedLanguage             The used language for resulting recipes' names.
      *
      * @return The query.
      * */
@@ -344,56 +501,100 @@ public class RecipesByIngredients
 
         Query<Recipe> result = null;
 
-        Logger.debug("searchByIngredients_GROUP()");
+        /* The ingredients of all the groups, and the groups without duplicated ingredients. */
+        Set<Long> allIngredientIds = new LinkedHashSet<Long>();
+        List<Set<Long>> groups     = new ArrayList<Set<Long>>();
 
-        String rawSqlStr =
-            "SELECT recipe.id FROM recipe " +
-            "GROUP BY recipe.id ";
-
-        RawSql rawSql = RawSqlBuilder.parse(rawSqlStr)
-            .columnMapping("recipe.id", "id")
-            .create();
+        for(List<Long> groupIngs: includedIngredientIds.values())
+        {
+            if(groupIngs != null && groupIngs.size() > 0)
+            {
+                Set<Long> group = new LinkedHashSet<Long>(groupIngs);
 
-        ExpressionList<Recipe> disjunction = Recipe.find
-            .setRawSql(rawSql)
-            .where()
-                .disjunction();
+                groups.add(group);
+                allIngredientIds.addAll(group);
+            }
+        }
 
-        for(Long groupId: includedIngredientIds.keySet())
+        if(groups.size() > 0)
         {
-            List<Long> groupIngs = includedIngredientIds.get(groupId);
-
-            /* Subquery for getting recipes which ingredients are in the current group (AT LEAST) */
-            String rawSubSqlStr =
+            String rawSqlStr =
                 "SELECT recipe.id FROM recipe " +
+                "JOIN recipe_ingredient ON recipe.id = recipe_ingredient.recipe_id " +
                 "GROUP BY recipe.id " +
-                "HAVING COUNT(recipe_ingredient.ingredient_id) = " + groupIngs.size();
+                "HAVING " + createGroupCoverage(groups);
 
-            RawSql rawSubSql = RawSqlBuilder.parse(rawSubSqlStr)
+            RawSql rawSql = RawSqlBuilder.parse(rawSqlStr)
                 .columnMapping("recipe.id", "id")
                 .create();
 
-            Query<Recipe> exclSubQuery = Recipe.find.select("id").where().in("ingredients.ingredient.id", excludedIngredientIds).query();
-
-            Query<Recipe> queryIncluded = Recipe.find
-                .setRawSql(rawSubSql)
+            ExpressionList<Recipe> conjunction = Recipe.find
+                .setRawSql(rawSql)
                 .where()
-                    .and
-                    (
-                        Expr.in("recipe_ingredient.ingredient_id", groupIngs),
-                        Expr.not(Expr.in("recipe.id", exclSubQuery))
-                    )
-                .query();
+                    .conjunction()
+                        .add(Expr.in("recipe_ingredient.ingredient_id", new ArrayList<Long>(allIngredientIds)));
+
+            if(excludedIngredientIds.size() > 0)
+            {
+                Query<Recipe> exclSubQuery = Recipe.find.select("id").where().in("ingredients.ingredient.id", excludedIngredientIds).query();
+
+                conjunction.add(Expr.not(Expr.in("recipe.id", exclSubQuery)));
+            }
 
-            /* Get recipes in main query, that have ingredients in the current group. */
-            disjunction.add(Expr.in("recipe.id", queryIncluded));
+            result = conjunction.query();
         }
+        else
+        {
+            Logger.debug(RecipesByIngredients.class.getName() + ".searchByIngredients_GROUP(): no groups present.");
 
-        result = disjunction.query();
+            /* Create empty list to fulfill return criteria. */
+            result = Recipe.find
+                .where()
+                    .eq("id", "-1")
+                .query();
+        }
 
         return result;
     }
 
+    /**
+     * Creates the HAVING condition of the GROUP search: a recipe's rows are counted per group,
+     * and any group with all of its ingredients present is enough. The ids are numbers, so they
+     * can be written to the SQL.
+     *
+     * @param groups    The groups' ingredient ids, without duplicates.
+     *
+     * @return The condition.
+     * */
+    private static String createGroupCoverage(List<Set<Long>> groups)
+    {
+        StringBuilder result = new StringBuilder();
+
+        for(Set<Long> group: groups)
+        {
+            if(result.length() > 0)
+            {
+                result.append(" OR ");
+            }
+
+            StringBuilder ids = new StringBuilder();
+
+            for(Long id: group)
+            {
+                if(ids.length() > 0)
+                {
+                    ids.append(", ");
+                }
+
+                ids.append(id.longValue());
+            }
+
+            result.append("SUM(CASE WHEN recipe_ingredient.ingredient_id IN (").append(ids).append(") THEN 1 ELSE 0 END) = ").append(group.size());
+        }
+
+        return result.toString();
+    }
+
 
 
     /* --------------------------------------------------------------------- */
@@ -409,4 +610,20 @@ public class RecipesByIngredients
 
 
     /* -- PRIVATE OTHERS --------------------------------------------------- */
+
+    /**
+     * The engines which can execute the searches.
+     * */
+    private static enum SearchEngine
+    {
+        /**
+         * Aggregating queries over the recipe_ingredient table.
+         * */
+        SQL,
+
+        /**
+         * The resident recipe - ingredient bitmap index (RecipeIngredientIndex).
+         * */
+        BITMAP;
+    }
 }
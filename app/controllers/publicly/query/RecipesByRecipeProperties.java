@@ -20,11 +20,19 @@ package controllers.publicly.query;
 
 import com.avaje.ebean.*;
 import controllers.publicly.RecipeBrowser;
+import indexes.RecipeIngredientTagIndex;
+import indexes.RecipeNameIndex;
+import indexes.TagStatistics;
 import models.Recipe;
 import play.Logger;
+import play.Play;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Used for storing the queries for recipes by ingredients.
@@ -39,6 +47,26 @@ public class RecipesByRecipeProperties
 
     /* -- PUBLIC ATTRIBUTES ------------------------------------------------ */
 
+    /**
+     * Configuration key of the time (in milliseconds), above which a search is logged with its plan.
+     */
+    public static final String SLOW_SEARCH_CONFIG_KEY = "openrecipes.search.planner.slowMillis";
+
+    /**
+     * Configuration key of the engine filtering by ingredient tags: "sql", or "bitmap".
+     */
+    public static final String INGREDIENT_TAGS_ENGINE_CONFIG_KEY = "openrecipes.search.ingredientTags.engine";
+
+    /**
+     * Configuration key of the engine filtering by name fragment: "sql", or "index".
+     */
+    public static final String NAMES_ENGINE_CONFIG_KEY = "openrecipes.search.names.engine";
+
+    /**
+     * Configuration key of the most recipes found handed to the next filter of a search.
+     */
+    public static final String MAX_INPUT_IDS_CONFIG_KEY = "openrecipes.search.planner.maxInputIds";
+
 
 
     /* -- PROTECTED ATTRIBUTES --------------------------------------------- */
@@ -47,6 +75,20 @@ public class RecipesByRecipeProperties
 
     /* -- PRIVATE ATTRIBUTES ----------------------------------------------- */
 
+    /**
+     * Default time above which a search is logged with its plan.
+     */
+    private static final long DEFAULT_SLOW_SEARCH = 500;
+
+    /**
+     * Default of the most recipes found handed to the next filter of a search.
+     */
+    private static final int DEFAULT_MAX_INPUT_IDS = 1000;
+
+    /**
+     * Estimated share of the recipes matching a name fragment. There are no statistics of the names.
+     */
+    private static final double NAME_SELECTIVITY = 0.1;
 
 
     /* --------------------------------------------------------------------- */
@@ -66,7 +108,9 @@ public class RecipesByRecipeProperties
      * @param includedRecipeTagsSearchMode        Search mode for included recipe tags.
      * @param includedIngredientTagsSearchMode    Search mode for included ingredient tags.
      *
-     * @return The search result page. An empty page is returned in case of an error.
+     * @return The search result page. An empty page is returned in case of an error. The filters
+     *         always run in SQL, also the ones otherwise looked up in a resident index; the
+     *         indexes, and the planned order of the filters are used by findIdsByRecipeProperties().
      * */
     public static Query<Recipe> searchByRecipeProperties
     (
@@ -89,6 +133,21 @@ public class RecipesByRecipeProperties
             "    includedIngredientTagsSearchMode = " + includedIngredientTagsSearchMode.name()
         );
 
+        Query<Recipe> result = null;
+
+        SearchPlan plan = createPlan
+        (
+            name,
+            includedRecipeTags,
+            excludedRecipeTags,
+            includedIngredientTags,
+            excludedIngredientTags,
+            includedRecipeTagsSearchMode,
+            includedIngredientTagsSearchMode
+        );
+
+        List<SearchPlan.Predicate> predicates = plan.getPredicates();
+
         String rawSqlStr =
             "SELECT recipe.id FROM recipe ";
 
@@ -96,30 +155,43 @@ public class RecipesByRecipeProperties
             .columnMapping("recipe.id", "id")
             .create();
 
-        /* Prepare the query. */
-        ExpressionList<Recipe> query = Recipe.find
-            .setRawSql(rawSql)
-            .where()
-                .add(Expr.ilike("name", "%" + name + "%"));
+        if(predicates.isEmpty())
+        {
+            /* No filters, every recipe is found. */
+            result = Recipe.find.setRawSql(rawSql);
+        }
+        else if(predicates.size() == 1)
+        {
+            result = ((QueryPredicate)predicates.get(0)).getSqlQuery();
+        }
+        else
+        {
+            /* Each filter is a subquery; no ids are read here. */
+            ExpressionList<Recipe> conjunction = Recipe.find
+                .setRawSql(rawSql)
+                .where();
 
-        Query<Recipe> inclRecTagsQuery = getRecipes_RECIPE_TAGS
-        (
-            includedRecipeTagsSearchMode,
-            includedRecipeTags,
-            excludedRecipeTags
-        );
+            boolean isSupported = true;
 
-        Query<Recipe> inclIngTagsQuery = getRecipes_INGREDIENT_TAGS
-        (
-            includedIngredientTagsSearchMode,
-            includedIngredientTags,
-            excludedIngredientTags
-        );
+            for(SearchPlan.Predicate predicate: predicates)
+            {
+                Query<Recipe> subQuery = ((QueryPredicate)predicate).getSqlQuery();
+
+                if(subQuery != null)
+                {
+                    conjunction.add(Expr.in("recipe.id", subQuery));
+                }
+                else
+                {
+                    isSupported = false;
+                }
+            }
 
-        Query<Recipe> result = query
-                .add(Expr.in("recipe.id", inclRecTagsQuery))
-                .add(Expr.in("recipe.id", inclIngTagsQuery))
-            .query();
+            if(isSupported)
+            {
+                result = conjunction.query();
+            }
+        }
 
         if(result == null)
         {
@@ -137,6 +209,135 @@ public class RecipesByRecipeProperties
 
 
 
+    /**
+     * Gets the ids of the recipes found by recipe properties, if the search doesn't run as one
+     * SQL query: it has more filters, or its filter is looked up in a resident index. The filters
+     * are executed in the planned order, and the results can be paged by id, instead of querying
+     * them by one IN list of all the found ids. See searchByRecipeProperties() for the parameters.
+     *
+     * @param name                                The name fragment.
+     * @param includedRecipeTags                  The included recipe tags. The key is the group id.
+     * @param excludedRecipeTags                  The excluded recipe tags.
+     * @param includedIngredientTags              The included ingredient tags. The key is the group id.
+     * @param excludedIngredientTags              The excluded ingredient tags.
+     * @param includedRecipeTagsSearchMode        Search mode for included recipe tags.
+     * @param includedIngredientTagsSearchMode    Search mode for included ingredient tags.
+     *
+     * @return The ids of the found recipes in ascending order, or null, if the search runs as one
+     *         SQL query; searchByRecipeProperties() is to be used then.
+     * */
+    public static List<Long> findIdsByRecipeProperties
+    (
+        String name,
+        Map<Long, List<Long>> includedRecipeTags,
+        List<Long> excludedRecipeTags,
+        Map<Long, List<Long>> includedIngredientTags,
+        List<Long> excludedIngredientTags,
+        RecipeBrowser.SearchMode includedRecipeTagsSearchMode,
+        RecipeBrowser.SearchMode includedIngredientTagsSearchMode
+    )
+    {
+        List<Long> result = null;
+
+        SearchPlan plan = createPlan
+        (
+            name,
+            includedRecipeTags,
+            excludedRecipeTags,
+            includedIngredientTags,
+            excludedIngredientTags,
+            includedRecipeTagsSearchMode,
+            includedIngredientTagsSearchMode
+        );
+
+        if(!plan.getPredicates().isEmpty() && getSingleQuery(plan) == null)
+        {
+            result = new ArrayList<Long>(executePlan(plan, name));
+
+            Collections.sort(result);
+        }
+
+        return result;
+    }
+
+
+
+    /**
+     * Search by recipe properties, the best matching names first: whole words first, then word
+     * starts, then word insides, then shorter names. Only for name fragments looked up in the
+     * resident recipe name index.
+     *
+     * @param name                                The name fragment.
+     * @param includedRecipeTags                  The included recipe tags. The key is the group id.
+     * @param excludedRecipeTags                  The excluded recipe tags.
+     * @param includedIngredientTags              The included ingredient tags. The key is the group id.
+     * @param excludedIngredientTags              The excluded ingredient tags.
+     * @param includedRecipeTagsSearchMode        Search mode for included recipe tags.
+     * @param includedIngredientTagsSearchMode    Search mode for included ingredient tags.
+     *
+     * @return The ids of the found recipes, best matches first.
+     * */
+    public static long[] searchRankedByName
+    (
+        String name,
+        Map<Long, List<Long>> includedRecipeTags,
+        List<Long> excludedRecipeTags,
+        Map<Long, List<Long>> includedIngredientTags,
+        List<Long> excludedIngredientTags,
+        RecipeBrowser.SearchMode includedRecipeTagsSearchMode,
+        RecipeBrowser.SearchMode includedIngredientTagsSearchMode
+    )
+    {
+        Logger.debug(RecipesByRecipeProperties.class.getName() + ".searchRankedByName(): \n" +
+            "    name = " + name
+        );
+
+        SearchPlan plan = createPlan
+        (
+            name,
+            includedRecipeTags,
+            excludedRecipeTags,
+            includedIngredientTags,
+            excludedIngredientTags,
+            includedRecipeTagsSearchMode,
+            includedIngredientTagsSearchMode
+        );
+
+        List<Long> ranked = new ArrayList<Long>();
+
+        for(SearchPlan.Predicate predicate: plan.getPredicates())
+        {
+            if(predicate instanceof NamePredicate && ((NamePredicate)predicate).indexedIds != null)
+            {
+                /* The found recipes in the order of the name index. */
+                ranked = retainIds(((NamePredicate)predicate).indexedIds, executePlan(plan, name));
+            }
+        }
+
+        long[] result = new long[ranked.size()];
+
+        for(int i = 0; i < result.length; ++i)
+        {
+            result[i] = ranked.get(i);
+        }
+
+        return result;
+    }
+
+    /**
+     * Checks whether the results of a search by recipe properties can be ranked by name.
+     *
+     * @param name    The name fragment.
+     *
+     * @return True, if the name fragment is looked up in the resident recipe name index.
+     * */
+    public static boolean isRankedByName(String name)
+    {
+        return name != null && isNameIndexUsed(name);
+    }
+
+
+
     /* -- PROTECTED METHODS ------------------------------------------------ */
 
 
@@ -279,7 +480,7 @@ public class RecipesByRecipeProperties
         String rawSqlStr =
                 "SELECT recipe.id FROM recipe ";
 
-        if(included.get(Recipe.GROUP_ID_A).size() >= 0)
+        if(included.get(Recipe.GROUP_ID_A).size() > 0)
         {
             rawSqlStr +=
                 "JOIN recipe_tag_recipe ON recipe.id = recipe_tag_recipe.recipe_id " +
@@ -300,7 +501,7 @@ public class RecipesByRecipeProperties
 
         result = Recipe.find.setRawSql(rawSql);
 
-        if(included.get(Recipe.GROUP_ID_A).size() >= 0)
+        if(included.get(Recipe.GROUP_ID_A).size() > 0)
         {
             result = result
                 .where()
@@ -347,7 +548,6 @@ public class RecipesByRecipeProperties
         if(!isNoTagsGiven)
         {
             rawSqlStr +=
-                "SELECT recipe.id FROM recipe " +
                 "GROUP BY recipe.id ";
         }
         else
@@ -475,7 +675,10 @@ public class RecipesByRecipeProperties
     }
 
     /**
-     * Gets the recipes with included ingredient tags' query (search mode = AT_LEAST).
+     * Gets the recipes with included ingredient tags' query (search mode = AT_LEAST). A recipe
+     * matches, if each included tag is on one of its ingredients. The distinct tags are counted,
+     * as more ingredients may have the same tag; counting the rows would let two ingredients
+     * sharing a tag stand in for a missing one.
      *
      * @return The query.
      * */
@@ -494,7 +697,7 @@ public class RecipesByRecipeProperties
                 "JOIN recipe_ingredient ON recipe.id = recipe_ingredient.recipe_id " +
                 "JOIN ingredient_tag_ingredient ON recipe_ingredient.ingredient_id = ingredient_tag_ingredient.ingredient_id " +
                 "GROUP BY recipe.id " +
-                "HAVING COUNT(ingredient_tag_ingredient.ingredient_tag_id) = " + included.get(Recipe.GROUP_ID_A).size();
+                "HAVING COUNT(DISTINCT ingredient_tag_ingredient.ingredient_tag_id) = " + new HashSet<Long>(included.get(Recipe.GROUP_ID_A)).size();
         }
         else
         {
@@ -590,7 +793,8 @@ public class RecipesByRecipeProperties
     }
 
     /**
-     * Gets the recipes with included ingredient tags' query (search mode = GROUP).
+     * Gets the recipes with included ingredient tags' query (search mode = GROUP). Each group is
+     * matched as in AT_LEAST mode.
      *
      * @return The query.
      * */
@@ -653,7 +857,7 @@ public class RecipesByRecipeProperties
                         "JOIN recipe_ingredient ON recipe.id = recipe_ingredient.recipe_id " +
                         "JOIN ingredient_tag_ingredient ON recipe_ingredient.ingredient_id = ingredient_tag_ingredient.ingredient_id " +
                         "GROUP BY recipe.id " +
-                        "HAVING COUNT(ingredient_tag_ingredient.ingredient_tag_id) = " + groupTags.size();
+                        "HAVING COUNT(DISTINCT ingredient_tag_ingredient.ingredient_tag_id) = " + new HashSet<Long>(groupTags).size();
 
                 RawSql rawSubSql = RawSqlBuilder.parse(rawSubSqlStr)
                     .columnMapping("recipe.id", "id")
@@ -684,6 +888,301 @@ public class RecipesByRecipeProperties
 
 
 
+    /**
+     * Gets the recipes by ingredient tags from the resident ingredient tag index. In AT_LEAST, and
+     * GROUP mode a recipe matches, if each included tag is on one of its ingredients: the tags'
+     * recipe bitmaps are intersected, so two ingredients sharing a tag can't stand in for a
+     * missing tag. The SQL based queries used to count the joined tag rows, and found such
+     * recipes, while missing the ones with a tag on more ingredients; they count the distinct
+     * tags now, so the results of the engines are the same.
+     *
+     * @param searchMode    The search mode.
+     * @param included      The included tags. The key is the group id.
+     * @param excluded      The excluded tags.
+     *
+     * @return The ids of the found recipes in ascending order. Empty for an unsupported search mode.
+     * */
+    private static List<Long> getRecipes_INGREDIENT_TAGS_BITMAP
+    (
+        RecipeBrowser.SearchMode searchMode,
+        Map<Long, List<Long>> included,
+        List<Long> excluded
+    )
+    {
+        Logger.debug(RecipesByRecipeProperties.class.getName() + ".getRecipes_INGREDIENT_TAGS_BITMAP()");
+
+        List<Long> result = new ArrayList<Long>();
+
+        RecipeIngredientTagIndex index = RecipeIngredientTagIndex.getInstance();
+
+        List<Long> groupA = included.get(Recipe.GROUP_ID_A);
+
+        if(groupA == null)
+        {
+            groupA = new ArrayList<Long>();
+        }
+
+        switch(searchMode)
+        {
+            case AT_LEAST:
+            {
+                result = index.searchAtLeast(groupA, excluded);
+
+                break;
+            }
+
+            case ANY_OF:
+            {
+                result = index.searchAnyOf(groupA, excluded);
+
+                break;
+            }
+
+            case GROUP:
+            {
+                result = index.searchGroup(included, excluded);
+
+                break;
+            }
+
+            default:
+            {
+                Logger.warn(RecipesByRecipeProperties.class.getName() + ".getRecipes_INGREDIENT_TAGS_BITMAP(): Not supported search mode!");
+
+                break;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Creates the plan of a search by recipe properties. Filters matching every recipe are left
+     * out.
+     *
+     * @return The plan.
+     * */
+    private static SearchPlan createPlan
+    (
+        String name,
+        Map<Long, List<Long>> includedRecipeTags,
+        List<Long> excludedRecipeTags,
+        Map<Long, List<Long>> includedIngredientTags,
+        List<Long> excludedIngredientTags,
+        RecipeBrowser.SearchMode includedRecipeTagsSearchMode,
+        RecipeBrowser.SearchMode includedIngredientTagsSearchMode
+    )
+    {
+        TagStatistics statistics = TagStatistics.getInstance();
+        SearchPlan result        = new SearchPlan(statistics.getRecipeCount());
+
+        result.setMaxInputIds(getMaxInputIds());
+
+        if(name != null && !name.isEmpty())
+        {
+            result.add(new NamePredicate(name, statistics.getRecipeCount()));
+        }
+        else
+        {
+            result.drop("name");
+        }
+
+        if(isFilterGiven(includedRecipeTags, excludedRecipeTags))
+        {
+            result.add(new TagsPredicate(false, includedRecipeTagsSearchMode, includedRecipeTags, excludedRecipeTags, statistics));
+        }
+        else
+        {
+            result.drop("recipe tags");
+        }
+
+        if(isFilterGiven(includedIngredientTags, excludedIngredientTags))
+        {
+            result.add(new TagsPredicate(true, includedIngredientTagsSearchMode, includedIngredientTags, excludedIngredientTags, statistics));
+        }
+        else
+        {
+            result.drop("ingredient tags");
+        }
+
+        return result;
+    }
+
+    /**
+     * Executes a plan, and logs it; slow searches are logged as warnings.
+     *
+     * @param plan    The plan.
+     * @param name    The name fragment, for the log.
+     *
+     * @return The ids of the found recipes, or null, if every recipe is found.
+     * */
+    private static List<Long> executePlan(SearchPlan plan, String name)
+    {
+        List<Long> result = plan.execute();
+
+        Logger.debug(RecipesByRecipeProperties.class.getName() + ".executePlan(): " + plan.explain());
+
+        if(plan.getElapsedMillis() >= Play.application().configuration().getLong(SLOW_SEARCH_CONFIG_KEY, DEFAULT_SLOW_SEARCH))
+        {
+            Logger.warn(RecipesByRecipeProperties.class.getName() + ".executePlan(): Slow search!\n" +
+                "    name = " + name + "\n" +
+                "    " + plan.explain()
+            );
+        }
+
+        return result;
+    }
+
+    /**
+     * Gets the query of the only filter of a plan, if it runs in SQL.
+     *
+     * @param plan    The plan.
+     *
+     * @return The query; null, if the plan has more filters, or none, or its filter doesn't run in SQL.
+     * */
+    private static Query<Recipe> getSingleQuery(SearchPlan plan)
+    {
+        Query<Recipe> result = null;
+
+        List<SearchPlan.Predicate> predicates = plan.getPredicates();
+
+        if(predicates.size() == 1)
+        {
+            result = ((QueryPredicate)predicates.get(0)).getQuery();
+        }
+
+        return result;
+    }
+
+    /**
+     * Gets the maximum number of ids handed over from a filter to the next one.
+     *
+     * @return The maximum number of ids.
+     * */
+    private static int getMaxInputIds()
+    {
+        return Play.application().configuration().getInt(MAX_INPUT_IDS_CONFIG_KEY, DEFAULT_MAX_INPUT_IDS);
+    }
+
+    /**
+     * Checks whether the ingredient tag filters use the resident ingredient tag index.
+     *
+     * @return True, if the "bitmap" engine is configured, and the index is usable.
+     * */
+    private static boolean isIngredientTagIndexUsed()
+    {
+        String engineStr = Play.application().configuration().getString(INGREDIENT_TAGS_ENGINE_CONFIG_KEY, "sql");
+
+        return engineStr.equalsIgnoreCase("bitmap") && RecipeIngredientTagIndex.getInstance().isUsable();
+    }
+
+    /**
+     * Checks whether the name fragment is looked up in the resident recipe name index.
+     *
+     * @param name    The name fragment.
+     *
+     * @return True, if the "index" engine is configured, the index is usable, and the fragment has words.
+     * */
+    private static boolean isNameIndexUsed(String name)
+    {
+        String engineStr = Play.application().configuration().getString(NAMES_ENGINE_CONFIG_KEY, "sql");
+
+        return engineStr.equalsIgnoreCase("index") && !RecipeNameIndex.tokenize(name).isEmpty() &&
+               RecipeNameIndex.getInstance().isUsable();
+    }
+
+    /**
+     * Keeps the ids also present in the input.
+     *
+     * @param ids         The ids.
+     * @param inputIds    The input ids, or null, if every id is kept.
+     *
+     * @return The kept ids, in the order of ids.
+     * */
+    private static List<Long> retainIds(List<Long> ids, List<Long> inputIds)
+    {
+        List<Long> result = ids;
+
+        if(inputIds != null)
+        {
+            Set<Long> input = new HashSet<Long>(inputIds);
+
+            result = new ArrayList<Long>();
+
+            for(Long id: ids)
+            {
+                if(input.contains(id))
+                {
+                    result.add(id);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Checks whether a tag filter is given. A filter without included, and excluded tags matches every recipe.
+     *
+     * @param included    The included tags. The key is the group id.
+     * @param excluded    The excluded tags.
+     *
+     * @return True, if there are included, or excluded tags.
+     * */
+    private static boolean isFilterGiven(Map<Long, List<Long>> included, List<Long> excluded)
+    {
+        boolean result = excluded.size() > 0;
+
+        for(List<Long> groupTags: included.values())
+        {
+            if(groupTags != null && groupTags.size() > 0)
+            {
+                result = true;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Gets the ids of the recipes found by a query. The input ids are only passed to the database
+     * up to the configured maximum; more of them are kept after running the query over every
+     * recipe.
+     *
+     * @param query       The query, or null, if the filter is not supported.
+     * @param inputIds    The ids of the recipes to check, or null, if every recipe is to be checked.
+     *
+     * @return The ids. Empty, if the query is null.
+     * */
+    private static List<Long> findIds(Query<Recipe> query, List<Long> inputIds)
+    {
+        List<Long> result = new ArrayList<Long>();
+
+        if(query != null)
+        {
+            boolean isInputPassed = inputIds != null && inputIds.size() <= getMaxInputIds();
+
+            if(isInputPassed)
+            {
+                query.where().add(Expr.in("id", inputIds));
+            }
+
+            for(Recipe recipe: query.findList())
+            {
+                result.add(recipe.id);
+            }
+
+            if(!isInputPassed)
+            {
+                result = retainIds(result, inputIds);
+            }
+        }
+
+        return result;
+    }
+
+
+
     /* --------------------------------------------------------------------- */
     /* OTHERS                                                                */
     /* --------------------------------------------------------------------- */
@@ -697,4 +1196,416 @@ public class RecipesByRecipeProperties
 
 
     /* -- PRIVATE OTHERS --------------------------------------------------- */
+
+    /**
+     * A filter, that may run as an SQL query.
+     * */
+    private static interface QueryPredicate extends SearchPlan.Predicate
+    {
+        /**
+         * Creates the query of the filter, over all the recipes.
+         *
+         * @return The query, or null, if the filter runs in a resident index.
+         */
+        public Query<Recipe> getQuery();
+
+        /**
+         * Creates the SQL query of the filter, over all the recipes, also if the filter runs in a
+         * resident index.
+         *
+         * @return The query, or null, if the filter is not supported.
+         */
+        public Query<Recipe> getSqlQuery();
+    }
+
+    /**
+     * Filter by a fragment of the name. With the resident recipe name index, the words of the
+     * fragment are looked up while planning, so the selectivity is exact, and evaluation costs
+     * nothing. Otherwise the fragment can be anywhere in the name, so every name checked is read.
+     * */
+    private static class NamePredicate implements QueryPredicate
+    {
+        /**
+         * The name fragment.
+         */
+        private String name;
+
+        /**
+         * The recipes found in the name index, or null, if the index is not used.
+         */
+        private List<Long> indexedIds;
+
+        /**
+         * The number of recipes.
+         */
+        private int recipeCount;
+
+        /**
+         * Creates the filter.
+         *
+         * @param name           The name fragment.
+         * @param recipeCount    The number of recipes.
+         */
+        private NamePredicate(String name, int recipeCount)
+        {
+            this.name        = name;
+            this.recipeCount = recipeCount;
+
+            if(isNameIndexUsed(name))
+            {
+                indexedIds = RecipeNameIndex.getInstance().search(name);
+            }
+        }
+
+        @Override
+        public String getDescription()
+        {
+            String result = "name ilike '%" + name + "%'";
+
+            if(indexedIds != null)
+            {
+                result = "name words " + RecipeNameIndex.tokenize(name) + " (index)";
+            }
+
+            return result;
+        }
+
+        @Override
+        public double getSelectivity()
+        {
+            double result = NAME_SELECTIVITY;
+
+            if(indexedIds != null)
+            {
+                result = (recipeCount > 0) ? Math.min(1.0, (double)indexedIds.size() / recipeCount) : 0.0;
+            }
+
+            return result;
+        }
+
+        @Override
+        public double getCost(double inputRows)
+        {
+            return (indexedIds != null) ? 0 : inputRows;
+        }
+
+        @Override
+        public List<Long> evaluate(List<Long> inputIds)
+        {
+            List<Long> result = null;
+
+            if(indexedIds != null)
+            {
+                result = retainIds(indexedIds, inputIds);
+            }
+            else
+            {
+                result = findIds(getQuery(), inputIds);
+            }
+
+            return result;
+        }
+
+        @Override
+        public Query<Recipe> getQuery()
+        {
+            Query<Recipe> result = null;
+
+            if(indexedIds == null)
+            {
+                result = getSqlQuery();
+            }
+
+            return result;
+        }
+
+        @Override
+        public Query<Recipe> getSqlQuery()
+        {
+            return Recipe.find
+                .select("id")
+                .where()
+                    .ilike("name", "%" + name + "%")
+                .query();
+        }
+    }
+
+    /**
+     * Filter by recipe tags, or ingredient tags. The estimates are based on the number of recipes
+     * per tag. Ingredient tags are looked up in the resident ingredient tag index, if it's used.
+     * */
+    private static class TagsPredicate implements QueryPredicate
+    {
+        /**
+         * True for ingredient tags, false for recipe tags.
+         */
+        private boolean isIngredientTags;
+
+        /**
+         * True, if the resident ingredient tag index is used.
+         */
+        private boolean isIndexed;
+
+        /**
+         * The search mode of the included tags.
+         */
+        private RecipeBrowser.SearchMode searchMode;
+
+        /**
+         * The included tags. The key is the group id.
+         */
+        private Map<Long, List<Long>> included;
+
+        /**
+         * The excluded tags.
+         */
+        private List<Long> excluded;
+
+        /**
+         * The estimated share of the recipes matching.
+         */
+        private double selectivity;
+
+        /**
+         * The estimated number of tag rows read.
+         */
+        private double tagRows;
+
+        /**
+         * Creates the filter, and its estimates.
+         *
+         * @param isIngredientTags    True for ingredient tags, false for recipe tags.
+         * @param searchMode          The search mode of the included tags.
+         * @param included            The included tags. The key is the group id.
+         * @param excluded            The excluded tags.
+         * @param statistics          The tag statistics.
+         */
+        private TagsPredicate
+        (
+            boolean isIngredientTags,
+            RecipeBrowser.SearchMode searchMode,
+            Map<Long, List<Long>> included,
+            List<Long> excluded,
+            TagStatistics statistics
+        )
+        {
+            this.isIngredientTags = isIngredientTags;
+            this.searchMode       = searchMode;
+            this.included         = included;
+            this.excluded         = excluded;
+            this.isIndexed        = isIngredientTags && isIngredientTagIndexUsed();
+
+            estimate(statistics);
+        }
+
+        @Override
+        public String getDescription()
+        {
+            return (isIngredientTags ? "ingredient tags " : "recipe tags ") + searchMode.name() + " " + included + ", excluded " + excluded +
+                (isIndexed ? " (bitmap)" : "");
+        }
+
+        @Override
+        public double getSelectivity()
+        {
+            return selectivity;
+        }
+
+        @Override
+        public double getCost(double inputRows)
+        {
+            double result = tagRows;
+
+            if(isIndexed)
+            {
+                /* One bitmap per tag, nothing is read. */
+                result = 0;
+            }
+            else if(!isFilterGiven(included, new ArrayList<Long>()))
+            {
+                /* Only excluded tags: every recipe checked is read. */
+                result += inputRows;
+            }
+
+            return result;
+        }
+
+        @Override
+        public List<Long> evaluate(List<Long> inputIds)
+        {
+            List<Long> result = null;
+
+            if(isIndexed)
+            {
+                result = retainIds(getRecipes_INGREDIENT_TAGS_BITMAP(searchMode, included, excluded), inputIds);
+            }
+            else
+            {
+                result = findIds(getQuery(), inputIds);
+            }
+
+            return result;
+        }
+
+        @Override
+        public Query<Recipe> getQuery()
+        {
+            Query<Recipe> result = null;
+
+            if(!isIndexed)
+            {
+                result = getSqlQuery();
+            }
+
+            return result;
+        }
+
+        @Override
+        public Query<Recipe> getSqlQuery()
+        {
+            Query<Recipe> result = null;
+
+            if(isIngredientTags)
+            {
+                result = getRecipes_INGREDIENT_TAGS(searchMode, included, excluded);
+            }
+            else
+            {
+                result = getRecipes_RECIPE_TAGS(searchMode, included, excluded);
+            }
+
+            return result;
+        }
+
+        /**
+         * Estimates the share of the recipes matching, and the number of tag rows read.
+         *
+         * @param statistics    The tag statistics.
+         */
+        private void estimate(TagStatistics statistics)
+        {
+            double recipeCount = Math.max(1, statistics.getRecipeCount());
+            double matching    = recipeCount;
+
+            List<Long> groupA = included.get(Recipe.GROUP_ID_A);
+
+            switch(searchMode)
+            {
+                case AT_LEAST:
+                {
+                    /* At most as many, as the recipes with the rarest tag. */
+                    if(groupA != null && groupA.size() > 0)
+                    {
+                        matching = getMinCount(groupA, statistics);
+                    }
+
+                    break;
+                }
+
+                case ANY_OF:
+                {
+                    if(groupA != null && groupA.size() > 0)
+                    {
+                        matching = Math.min(recipeCount, getSumCount(groupA, statistics));
+                    }
+
+                    break;
+                }
+
+                case GROUP:
+                {
+                    double groupsMatching = 0;
+
+                    for(List<Long> groupTags: included.values())
+                    {
+                        if(groupTags != null && groupTags.size() > 0)
+                        {
+                            groupsMatching += getMinCount(groupTags, statistics);
+                        }
+                    }
+
+                    if(isFilterGiven(included, new ArrayList<Long>()))
+                    {
+                        matching = Math.min(recipeCount, groupsMatching);
+                    }
+
+                    break;
+                }
+
+                default:
+                {
+                    /* Not supported, nothing is found. */
+                    matching = 0;
+
+                    break;
+                }
+            }
+
+            double excludedCount = getSumCount(excluded, statistics);
+
+            selectivity = (matching / recipeCount) * Math.max(0.0, 1.0 - excludedCount / recipeCount);
+            tagRows     = excludedCount;
+
+            for(List<Long> groupTags: included.values())
+            {
+                if(groupTags != null)
+                {
+                    tagRows += getSumCount(groupTags, statistics);
+                }
+            }
+        }
+
+        /**
+         * Gets the number of recipes with a tag.
+         *
+         * @param tagId         The tag id.
+         * @param statistics    The tag statistics.
+         *
+         * @return The number of recipes.
+         */
+        private int getCount(Long tagId, TagStatistics statistics)
+        {
+            return isIngredientTags ? statistics.getIngredientTagCount(tagId) : statistics.getRecipeTagCount(tagId);
+        }
+
+        /**
+         * Gets the smallest number of recipes with one of the tags.
+         *
+         * @param tagIds        The tag ids, not empty.
+         * @param statistics    The tag statistics.
+         *
+         * @return The number of recipes.
+         */
+        private double getMinCount(List<Long> tagIds, TagStatistics statistics)
+        {
+            double result = Double.MAX_VALUE;
+
+            for(Long tagId: tagIds)
+            {
+                result = Math.min(result, getCount(tagId, statistics));
+            }
+
+            return result;
+        }
+
+        /**
+         * Gets the sum of the numbers of recipes with the tags.
+         *
+         * @param tagIds        The tag ids.
+         * @param statistics    The tag statistics.
+         *
+         * @return The sum.
+         */
+        private double getSumCount(List<Long> tagIds, TagStatistics statistics)
+        {
+            double result = 0;
+
+            for(Long tagId: tagIds)
+            {
+                result += getCount(tagId, statistics);
+            }
+
+            return result;
+        }
+    }
 }
@@ -0,0 +1,431 @@
+/*
+ *  Copyright 2016 Oliver Dozsa
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package controllers.publicly.query;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Execution plan of a search made of predicates over the recipes. The
+ * predicates are ordered by their estimated cost: the cheapest one runs
+ * first, over all the recipes, and every further one runs only over the
+ * recipes found by the ones before, if they are few; otherwise over all the
+ * recipes, and its result is intersected with the ones before. The found
+ * recipes keep the order of the first predicate. The estimates are given by
+ * the predicates; the plan assumes the predicates are independent.
+ *
+ * @author Oliver Dozsa
+ */
+public class SearchPlan
+{
+    /* --------------------------------------------------------------------- */
+    /* ATTRIBUTES                                                            */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC ATTRIBUTES ------------------------------------------------ */
+
+
+
+    /* -- PROTECTED ATTRIBUTES --------------------------------------------- */
+
+
+
+    /* -- PRIVATE ATTRIBUTES ----------------------------------------------- */
+
+    /**
+     * The number of recipes.
+     */
+    private int recipeCount;
+
+    /**
+     * The most recipes found handed to the next predicate. With more, the
+     * next predicate runs over all the recipes.
+     */
+    private int maxInputIds = Integer.MAX_VALUE;
+
+    /**
+     * The steps, in execution order after planning.
+     */
+    private List<Step> steps = new ArrayList<Step>();
+
+    /**
+     * Descriptions of the predicates dropped, as they match every recipe.
+     */
+    private List<String> dropped = new ArrayList<String>();
+
+    /**
+     * True, if the steps are ordered.
+     */
+    private boolean isPlanned;
+
+    /**
+     * Time of the execution, in nanoseconds.
+     */
+    private long elapsedNanos;
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* METHODS                                                               */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC METHODS --------------------------------------------------- */
+
+    /**
+     * Creates an empty plan.
+     *
+     * @param recipeCount    The (estimated) number of recipes.
+     */
+    public SearchPlan(int recipeCount)
+    {
+        this.recipeCount = recipeCount;
+    }
+
+    /**
+     * Sets the most recipes found handed to the next predicate. With more, the
+     * next predicate runs over all the recipes, rather than checking a long
+     * id list.
+     *
+     * @param maxInputIds    The number of recipes.
+     */
+    public void setMaxInputIds(int maxInputIds)
+    {
+        this.maxInputIds = maxInputIds;
+    }
+
+    /**
+     * Adds a predicate.
+     *
+     * @param predicate    The predicate.
+     */
+    public void add(Predicate predicate)
+    {
+        steps.add(new Step(predicate));
+
+        isPlanned = false;
+    }
+
+    /**
+     * Records a predicate left out, as it matches every recipe.
+     *
+     * @param description    The description of the predicate.
+     */
+    public void drop(String description)
+    {
+        dropped.add(description);
+    }
+
+    /**
+     * Orders the steps. The step with the lowest cost over the recipes found
+     * so far comes next; on equal costs the more selective one.
+     */
+    public void plan()
+    {
+        List<Step> remaining = new ArrayList<Step>(steps);
+        List<Step> ordered   = new ArrayList<Step>();
+
+        double inputRows = recipeCount;
+
+        while(!remaining.isEmpty())
+        {
+            Step best = null;
+
+            /* Too many recipes found are not handed over, the next predicate runs over all of them. */
+            double checkedRows = (inputRows <= maxInputIds) ? inputRows : recipeCount;
+
+            for(Step step : remaining)
+            {
+                step.estimatedCost = step.predicate.getCost(checkedRows);
+
+                if(best == null || step.estimatedCost < best.estimatedCost ||
+                   (step.estimatedCost == best.estimatedCost && step.predicate.getSelectivity() < best.predicate.getSelectivity()))
+                {
+                    best = step;
+                }
+            }
+
+            /* The costs of the others change with the input. */
+            best.estimatedCost = best.predicate.getCost(checkedRows);
+            inputRows          = inputRows * best.predicate.getSelectivity();
+            best.estimatedRows = inputRows;
+
+            remaining.remove(best);
+            ordered.add(best);
+        }
+
+        steps     = ordered;
+        isPlanned = true;
+    }
+
+    /**
+     * Executes the plan. Steps after a step finding nothing are skipped.
+     *
+     * @return The ids of the found recipes, in the order of the first step;
+     *         or null, if there are no predicates, so every recipe is found.
+     */
+    public List<Long> execute()
+    {
+        if(!isPlanned)
+        {
+            plan();
+        }
+
+        long start        = System.nanoTime();
+        List<Long> result = null;
+
+        for(Step step : steps)
+        {
+            if(result == null || !result.isEmpty())
+            {
+                long stepStart = System.nanoTime();
+
+                step.isInputGiven = result != null && result.size() <= maxInputIds;
+
+                List<Long> found = step.predicate.evaluate(step.isInputGiven ? result : null);
+
+                result = (result == null) ? found : retainIds(result, found);
+
+                step.actualRows   = result.size();
+                step.elapsedNanos = System.nanoTime() - stepStart;
+                step.isExecuted   = true;
+            }
+        }
+
+        elapsedNanos = System.nanoTime() - start;
+
+        return result;
+    }
+
+    /**
+     *
+     * @return The time of the execution, in milliseconds.
+     */
+    public long getElapsedMillis()
+    {
+        return elapsedNanos / 1000000;
+    }
+
+    /**
+     *
+     * @return The predicates, in execution order after planning.
+     */
+    public List<Predicate> getPredicates()
+    {
+        List<Predicate> result = new ArrayList<Predicate>();
+
+        for(Step step : steps)
+        {
+            result.add(step.predicate);
+        }
+
+        return result;
+    }
+
+    /**
+     * Describes the plan: the steps in execution order with their estimates,
+     * and, after execution, the found rows and times.
+     *
+     * @return The description, one line per step.
+     */
+    public String explain()
+    {
+        StringBuilder result = new StringBuilder();
+
+        result.append("SearchPlan: recipes = ").append(recipeCount);
+
+        if(elapsedNanos > 0)
+        {
+            result.append(", time (ms) = ").append(getElapsedMillis());
+        }
+
+        int index = 1;
+
+        for(Step step : steps)
+        {
+            result.append("\n    ").append(index).append(". ").append(step.predicate.getDescription());
+            result.append("\n         selectivity = ").append(String.format("%.4f", step.predicate.getSelectivity()));
+            result.append(", cost = ").append(Math.round(step.estimatedCost));
+            result.append(", est. rows = ").append(Math.round(step.estimatedRows));
+
+            if(step.isExecuted)
+            {
+                result.append(", rows = ").append(step.actualRows);
+                result.append(", time (ms) = ").append(step.elapsedNanos / 1000000);
+
+                if(index > 1 && !step.isInputGiven)
+                {
+                    result.append(", over all recipes");
+                }
+            }
+            else if(elapsedNanos > 0)
+            {
+                result.append(", skipped");
+            }
+
+            index++;
+        }
+
+        for(String description : dropped)
+        {
+            result.append("\n    dropped: ").append(description).append(" (matches every recipe)");
+        }
+
+        return result.toString();
+    }
+
+
+
+    /* -- PROTECTED METHODS ------------------------------------------------ */
+
+
+
+    /* -- PRIVATE METHODS -------------------------------------------------- */
+
+    /**
+     * Keeps the ids also found by a step.
+     *
+     * @param ids      The ids.
+     * @param found    The ids found by the step.
+     *
+     * @return The kept ids, in the order of ids.
+     */
+    private static List<Long> retainIds(List<Long> ids, List<Long> found)
+    {
+        List<Long> result = new ArrayList<Long>();
+        Set<Long> foundSet = new HashSet<Long>(found);
+
+        for(Long id : ids)
+        {
+            if(foundSet.contains(id))
+            {
+                result.add(id);
+            }
+        }
+
+        return result;
+    }
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* OTHERS                                                                */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC OTHERS ---------------------------------------------------- */
+
+    /**
+     * A filter of the recipes, with its estimates.
+     */
+    public static interface Predicate
+    {
+        /**
+         *
+         * @return The description of the predicate, for the plan.
+         */
+        public String getDescription();
+
+        /**
+         *
+         * @return The estimated share of the recipes matching the predicate.
+         */
+        public double getSelectivity();
+
+        /**
+         * Estimates the cost of the evaluation, in rows read.
+         *
+         * @param inputRows    The estimated number of recipes the predicate
+         *                     is evaluated over.
+         *
+         * @return The cost.
+         */
+        public double getCost(double inputRows);
+
+        /**
+         * Finds the recipes matching the predicate.
+         *
+         * @param inputIds    The ids of the recipes to check, or null, if
+         *                    every recipe is to be checked.
+         *
+         * @return The ids of the matching recipes.
+         */
+        public List<Long> evaluate(List<Long> inputIds);
+    }
+
+
+
+    /* -- PROTECTED OTHERS ------------------------------------------------- */
+
+
+
+    /* -- PRIVATE OTHERS --------------------------------------------------- */
+
+    /**
+     * A predicate in the plan, with its estimates and execution data.
+     */
+    private static class Step
+    {
+        /**
+         * The predicate.
+         */
+        private Predicate predicate;
+
+        /**
+         * The estimated cost, given the steps before.
+         */
+        private double estimatedCost;
+
+        /**
+         * The estimated number of recipes found, with the steps before.
+         */
+        private double estimatedRows;
+
+        /**
+         * The number of recipes found.
+         */
+        private int actualRows;
+
+        /**
+         * The time of the evaluation, in nanoseconds.
+         */
+        private long elapsedNanos;
+
+        /**
+         * True, if the step was executed.
+         */
+        private boolean isExecuted;
+
+        /**
+         * True, if the step got the recipes found before; false, if it ran
+         * over all the recipes.
+         */
+        private boolean isInputGiven;
+
+        /**
+         * Creates a step.
+         *
+         * @param predicate    The predicate.
+         */
+        private Step(Predicate predicate)
+        {
+            this.predicate = predicate;
+        }
+    }
+}
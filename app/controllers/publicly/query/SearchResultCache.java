@@ -0,0 +1,502 @@
+/*
+ *  Copyright 2016 Oliver Dozsa
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package controllers.publicly.query;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import controllers.publicly.RecipeBrowser.SearchMode;
+import indexes.RecipeNameIndex;
+import models.Recipe;
+import play.Logger;
+import play.Play;
+
+/**
+ * Bounded cache of ingredient search results, and of recipe property searches
+ * ranked by name. An entry maps the canonical form of a search to the ordered
+ * ids of the found recipes, so paging through the result doesn't re-run the
+ * search. Entries are evicted in least recently used
+ * order when the cache is full, and after a configured time to live.
+ *
+ * @author Oliver Dozsa
+ */
+public class SearchResultCache
+{
+    /* --------------------------------------------------------------------- */
+    /* ATTRIBUTES                                                            */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC ATTRIBUTES ------------------------------------------------ */
+
+    /**
+     * Configuration key of the maximum number of cached searches.
+     */
+    public static final String MAX_ENTRIES_CONFIG_KEY = "openrecipes.search.ingredients.cache.maxEntries";
+
+    /**
+     * Configuration key of the time to live of cached searches.
+     */
+    public static final String TTL_CONFIG_KEY = "openrecipes.search.ingredients.cache.ttl";
+
+
+
+    /* -- PROTECTED ATTRIBUTES --------------------------------------------- */
+
+
+
+    /* -- PRIVATE ATTRIBUTES ----------------------------------------------- */
+
+    /**
+     * Default maximum number of cached searches.
+     */
+    private static final int DEFAULT_MAX_ENTRIES = 500;
+
+    /**
+     * Default time to live of cached searches, in milliseconds.
+     */
+    private static final long DEFAULT_TTL = 10 * 60 * 1000L;
+
+    /**
+     * The cache instance used by the application.
+     */
+    private static volatile SearchResultCache instance;
+
+    /**
+     * The cached results, in access order.
+     */
+    private LinkedHashMap<String, Entry> entries;
+
+    /**
+     * Maximum number of cached searches. 0 disables the cache.
+     */
+    private int maxEntries;
+
+    /**
+     * Time to live of a cached search, in milliseconds.
+     */
+    private long ttl;
+
+    /**
+     * Generation of the cached results, bumped each time they're dropped.
+     * Guarded by the entries.
+     */
+    private long generation;
+
+    /**
+     * Number of lookups that were served from the cache.
+     */
+    private AtomicLong hitCount = new AtomicLong();
+
+    /**
+     * Number of lookups that were not found in the cache.
+     */
+    private AtomicLong missCount = new AtomicLong();
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* METHODS                                                               */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC METHODS --------------------------------------------------- */
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param maxEntries    Maximum number of cached searches. 0 disables the cache.
+     * @param ttl           Time to live of a cached search, in milliseconds.
+     */
+    public SearchResultCache(final int maxEntries, long ttl)
+    {
+        this.maxEntries = maxEntries;
+        this.ttl        = ttl;
+
+        entries = new LinkedHashMap<String, Entry>(16, 0.75f, true)
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest)
+            {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Gets the cache used by the application. It is configured on first use.
+     *
+     * @return The cache.
+     */
+    public static SearchResultCache getInstance()
+    {
+        SearchResultCache result = instance;
+
+        if(result == null)
+        {
+            synchronized(SearchResultCache.class)
+            {
+                if(instance == null)
+                {
+                    int maxEntries = Play.application().configuration().getInt(MAX_ENTRIES_CONFIG_KEY, DEFAULT_MAX_ENTRIES);
+                    long ttl       = Play.application().configuration().getMilliseconds(TTL_CONFIG_KEY, DEFAULT_TTL);
+
+                    Logger.info(SearchResultCache.class.getName() + ".getInstance(): Creating cache.\n" +
+                        "    maxEntries = " + maxEntries + "\n" +
+                        "    ttl        = " + ttl
+                    );
+
+                    instance = new SearchResultCache(maxEntries, ttl);
+                }
+
+                result = instance;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Drops every cached search of the application's cache. Must be called
+     * when recipes are added to the database.
+     */
+    public static void invalidate()
+    {
+        SearchResultCache cache = instance;
+
+        if(cache != null)
+        {
+            cache.clear();
+        }
+    }
+
+    /**
+     * Creates the canonical key of an ingredient search. Ingredient ids are
+     * sorted, and duplicates are dropped. Groups are only part of the key
+     * in GROUP mode, as other modes use group A only; excluded ingredients are
+     * not part of the key in EXACT mode, as they're not used there.
+     *
+     * @param included      The included ingredients, by group.
+     * @param excluded      The excluded ingredients.
+     * @param searchMode    The search mode.
+     * @param sortBy        The sort by property.
+     * @param sortOrder     The sort order.
+     *
+     * @return The key.
+     */
+    public static String createKey
+    (
+        Map<Long, List<Long>> included,
+        List<Long> excluded,
+        SearchMode searchMode,
+        String sortBy,
+        String sortOrder
+    )
+    {
+        StringBuilder result = new StringBuilder();
+
+        result.append(searchMode.name()).append('|');
+
+        appendIncluded(result, included, searchMode);
+
+        result.append('|');
+
+        if(searchMode != SearchMode.EXACT)
+        {
+            result.append(canonicalIds(excluded));
+        }
+
+        result.append('|').append(sortBy).append('|');
+
+        if(sortOrder != null)
+        {
+            result.append(sortOrder.toLowerCase());
+        }
+
+        return result.toString();
+    }
+
+    /**
+     * Creates the canonical key of a recipe property search ranked by name.
+     * The name is reduced to its searched words; tag ids are canonical as in
+     * ingredient searches.
+     *
+     * @param name                      The name fragment.
+     * @param includedRecipeTags        The included recipe tags, by group.
+     * @param excludedRecipeTags        The excluded recipe tags.
+     * @param recipeTagsMode            The search mode of the recipe tags.
+     * @param includedIngredientTags    The included ingredient tags, by group.
+     * @param excludedIngredientTags    The excluded ingredient tags.
+     * @param ingredientTagsMode        The search mode of the ingredient tags.
+     *
+     * @return The key.
+     */
+    public static String createKey
+    (
+        String name,
+        Map<Long, List<Long>> includedRecipeTags,
+        List<Long> excludedRecipeTags,
+        SearchMode recipeTagsMode,
+        Map<Long, List<Long>> includedIngredientTags,
+        List<Long> excludedIngredientTags,
+        SearchMode ingredientTagsMode
+    )
+    {
+        StringBuilder result = new StringBuilder();
+
+        result.append("name:").append(String.join(" ", RecipeNameIndex.tokenize(name)));
+
+        result.append("|recipe tags:").append(recipeTagsMode.name()).append('|');
+        appendIncluded(result, includedRecipeTags, recipeTagsMode);
+        result.append('|').append(canonicalIds(excludedRecipeTags));
+
+        result.append("|ingredient tags:").append(ingredientTagsMode.name()).append('|');
+        appendIncluded(result, includedIngredientTags, ingredientTagsMode);
+        result.append('|').append(canonicalIds(excludedIngredientTags));
+
+        return result.toString();
+    }
+
+    /**
+     * Gets a cached search result.
+     *
+     * @param key    The canonical key of the search.
+     *
+     * @return The ordered ids of the found recipes, or null, if the search is
+     *         not cached.
+     */
+    public long[] get(String key)
+    {
+        long[] result = null;
+
+        synchronized(entries)
+        {
+            Entry entry = entries.get(key);
+
+            if(entry != null)
+            {
+                if(System.currentTimeMillis() - entry.created > ttl)
+                {
+                    entries.remove(key);
+                }
+                else
+                {
+                    result = entry.recipeIds;
+                }
+            }
+        }
+
+        if(result != null)
+        {
+            hitCount.incrementAndGet();
+        }
+        else
+        {
+            missCount.incrementAndGet();
+        }
+
+        return result;
+    }
+
+    /**
+     * Gets the generation of the cached results. It must be read before
+     * running a search, and passed to put() with the result.
+     *
+     * @return The generation.
+     */
+    public long getGeneration()
+    {
+        synchronized(entries)
+        {
+            return generation;
+        }
+    }
+
+    /**
+     * Caches a search result. The result is dropped, if the cache was cleared
+     * since the search started, as it may miss recipes added meanwhile.
+     *
+     * @param key           The canonical key of the search.
+     * @param recipeIds     The ordered ids of the found recipes.
+     * @param generation    The generation read before running the search.
+     */
+    public void put(String key, long[] recipeIds, long generation)
+    {
+        if(maxEntries > 0)
+        {
+            synchronized(entries)
+            {
+                if(this.generation == generation)
+                {
+                    entries.put(key, new Entry(recipeIds, System.currentTimeMillis()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops every cached search, and the results of searches still running.
+     */
+    public void clear()
+    {
+        synchronized(entries)
+        {
+            generation++;
+
+            entries.clear();
+        }
+    }
+
+    /**
+     *
+     * @return The number of cached searches.
+     */
+    public int size()
+    {
+        synchronized(entries)
+        {
+            return entries.size();
+        }
+    }
+
+    /**
+     *
+     * @return The number of lookups that were served from the cache.
+     */
+    public long getHitCount()
+    {
+        return hitCount.get();
+    }
+
+    /**
+     *
+     * @return The number of lookups that were not found in the cache.
+     */
+    public long getMissCount()
+    {
+        return missCount.get();
+    }
+
+
+
+    /* -- PROTECTED METHODS ------------------------------------------------ */
+
+
+
+    /* -- PRIVATE METHODS -------------------------------------------------- */
+
+    /**
+     * Appends the canonical form of included ids. Groups are only part of it
+     * in GROUP mode, as other modes use group A only.
+     *
+     * @param key           The key being built.
+     * @param included      The included ids, by group. May be null.
+     * @param searchMode    The search mode.
+     */
+    private static void appendIncluded(StringBuilder key, Map<Long, List<Long>> included, SearchMode searchMode)
+    {
+        if(included != null)
+        {
+            if(searchMode == SearchMode.GROUP)
+            {
+                /* Groups are OR'ed, so their order and labels don't matter. */
+                TreeSet<String> groups = new TreeSet<String>();
+
+                for(List<Long> group : included.values())
+                {
+                    groups.add(canonicalIds(group));
+                }
+
+                key.append(String.join("/", groups));
+            }
+            else
+            {
+                key.append(canonicalIds(included.get(Recipe.GROUP_ID_A)));
+            }
+        }
+    }
+
+    /**
+     * Creates the canonical form of an id list: sorted, without duplicates.
+     *
+     * @param ids    The ids. May be null.
+     *
+     * @return The canonical form.
+     */
+    private static String canonicalIds(List<Long> ids)
+    {
+        String result = "";
+
+        if(ids != null)
+        {
+            List<String> parts = new ArrayList<String>();
+
+            for(Long id : new TreeSet<Long>(ids))
+            {
+                parts.add(id.toString());
+            }
+
+            result = String.join(",", parts);
+        }
+
+        return result;
+    }
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* OTHERS                                                                */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC OTHERS ---------------------------------------------------- */
+
+
+
+    /* -- PROTECTED OTHERS ------------------------------------------------- */
+
+
+
+    /* -- PRIVATE OTHERS --------------------------------------------------- */
+
+    /**
+     * A cached search result.
+     */
+    private static class Entry
+    {
+        /**
+         * The ordered ids of the found recipes.
+         */
+        long[] recipeIds;
+
+        /**
+         * Time of caching, in milliseconds.
+         */
+        long created;
+
+        Entry(long[] recipeIds, long created)
+        {
+            this.recipeIds = recipeIds;
+            this.created   = created;
+        }
+    }
+}
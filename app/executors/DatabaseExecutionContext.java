@@ -0,0 +1,322 @@
+/*
+ *  Copyright 2016 Oliver Dozsa
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package executors;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import play.Configuration;
+import play.Logger;
+import play.inject.ApplicationLifecycle;
+
+/**
+ * Bounded executor for blocking database work. It has as many threads as the
+ * database connection pool has connections, so request threads are not
+ * blocked by queries, and queries don't wait for connections. When the queue
+ * is full, new tasks are rejected.
+ *
+ * The queue depth and the time tasks wait in the queue are collected as
+ * metrics.
+ *
+ * @author Oliver Dozsa
+ */
+@Singleton
+public class DatabaseExecutionContext implements Executor
+{
+    /* --------------------------------------------------------------------- */
+    /* ATTRIBUTES                                                            */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC ATTRIBUTES ------------------------------------------------ */
+
+    /**
+     * Configuration key of the number of threads. Defaults to the size of the
+     * default database connection pool.
+     */
+    public static final String THREADS_CONFIG_KEY = "openrecipes.database.executor.threads";
+
+    /**
+     * Configuration key of the maximum number of waiting tasks.
+     */
+    public static final String QUEUE_SIZE_CONFIG_KEY = "openrecipes.database.executor.queueSize";
+
+
+
+    /* -- PROTECTED ATTRIBUTES --------------------------------------------- */
+
+
+
+    /* -- PRIVATE ATTRIBUTES ----------------------------------------------- */
+
+    /**
+     * Default size of the connection pool (HikariCP's default).
+     */
+    private static final int DEFAULT_POOL_SIZE = 10;
+
+    /**
+     * Default maximum number of waiting tasks.
+     */
+    private static final int DEFAULT_QUEUE_SIZE = 256;
+
+    /**
+     * The executor.
+     */
+    private ThreadPoolExecutor executor;
+
+    /**
+     * Number of tasks started.
+     */
+    private AtomicLong startedCount = new AtomicLong();
+
+    /**
+     * Number of tasks rejected due to full queue.
+     */
+    private AtomicLong rejectedCount = new AtomicLong();
+
+    /**
+     * Sum of the time tasks waited in the queue, in nanoseconds.
+     */
+    private AtomicLong totalWaitNanos = new AtomicLong();
+
+    /**
+     * Longest time a task waited in the queue, in nanoseconds.
+     */
+    private AtomicLong maxWaitNanos = new AtomicLong();
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* METHODS                                                               */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC METHODS --------------------------------------------------- */
+
+    /**
+     * Creates the executor.
+     *
+     * @param configuration    The application configuration.
+     * @param lifecycle        The application lifecycle. The executor is shut down on stop.
+     */
+    @Inject
+    public DatabaseExecutionContext(Configuration configuration, ApplicationLifecycle lifecycle)
+    {
+        int poolSize = configuration.getInt
+        (
+            "db.default.hikaricp.maximumPoolSize",
+            configuration.getInt("play.db.prototype.hikaricp.maximumPoolSize", DEFAULT_POOL_SIZE)
+        );
+
+        int threads   = configuration.getInt(THREADS_CONFIG_KEY, poolSize);
+        int queueSize = configuration.getInt(QUEUE_SIZE_CONFIG_KEY, DEFAULT_QUEUE_SIZE);
+
+        Logger.info(DatabaseExecutionContext.class.getName() + "(): Creating executor.\n" +
+            "    threads   = " + threads + "\n" +
+            "    queueSize = " + queueSize
+        );
+
+        final AtomicInteger threadCounter = new AtomicInteger();
+
+        executor = new ThreadPoolExecutor
+        (
+            threads,
+            threads,
+            0L,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<Runnable>(queueSize),
+            new ThreadFactory()
+            {
+                @Override
+                public Thread newThread(Runnable runnable)
+                {
+                    Thread result = new Thread(runnable, "database-" + threadCounter.incrementAndGet());
+
+                    result.setDaemon(true);
+
+                    return result;
+                }
+            }
+        );
+
+        lifecycle.addStopHook(new Callable<CompletionStage<?>>()
+        {
+            @Override
+            public CompletionStage<?> call()
+            {
+                executor.shutdown();
+
+                return CompletableFuture.completedFuture(null);
+            }
+        });
+    }
+
+    /**
+     * Executes a task. The time it waits in the queue is measured.
+     *
+     * @param task    The task.
+     *
+     * @throws RejectedExecutionException If the queue is full.
+     */
+    @Override
+    public void execute(final Runnable task)
+    {
+        final long queuedAt = System.nanoTime();
+
+        try
+        {
+            executor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    long wait = System.nanoTime() - queuedAt;
+
+                    startedCount.incrementAndGet();
+                    totalWaitNanos.addAndGet(wait);
+
+                    long max = maxWaitNanos.get();
+
+                    while(wait > max && !maxWaitNanos.compareAndSet(max, wait))
+                    {
+                        max = maxWaitNanos.get();
+                    }
+
+                    task.run();
+                }
+            });
+        }
+        catch(RejectedExecutionException e)
+        {
+            rejectedCount.incrementAndGet();
+
+            Logger.warn(DatabaseExecutionContext.class.getName() + ".execute(): Queue is full, task rejected!\n" +
+                "    queueDepth = " + getQueueDepth()
+            );
+
+            throw e;
+        }
+    }
+
+    /**
+     *
+     * @return The number of tasks waiting in the queue.
+     */
+    public int getQueueDepth()
+    {
+        return executor.getQueue().size();
+    }
+
+    /**
+     *
+     * @return The number of tasks being executed.
+     */
+    public int getActiveCount()
+    {
+        return executor.getActiveCount();
+    }
+
+    /**
+     *
+     * @return The number of threads.
+     */
+    public int getPoolSize()
+    {
+        return executor.getMaximumPoolSize();
+    }
+
+    /**
+     *
+     * @return The number of tasks started.
+     */
+    public long getStartedCount()
+    {
+        return startedCount.get();
+    }
+
+    /**
+     *
+     * @return The number of tasks rejected due to full queue.
+     */
+    public long getRejectedCount()
+    {
+        return rejectedCount.get();
+    }
+
+    /**
+     *
+     * @return The average time tasks waited in the queue, in milliseconds.
+     */
+    public double getAverageWaitMillis()
+    {
+        long started = startedCount.get();
+
+        double result = 0.0;
+
+        if(started > 0)
+        {
+            result = totalWaitNanos.get() / (double)started / 1000000.0;
+        }
+
+        return result;
+    }
+
+    /**
+     *
+     * @return The longest time a task waited in the queue, in milliseconds.
+     */
+    public double getMaxWaitMillis()
+    {
+        return maxWaitNanos.get() / 1000000.0;
+    }
+
+
+
+    /* -- PROTECTED METHODS ------------------------------------------------ */
+
+
+
+    /* -- PRIVATE METHODS -------------------------------------------------- */
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* OTHERS                                                                */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC OTHERS ---------------------------------------------------- */
+
+
+
+    /* -- PROTECTED OTHERS ------------------------------------------------- */
+
+
+
+    /* -- PRIVATE OTHERS --------------------------------------------------- */
+}
@@ -0,0 +1,182 @@
+/*
+ *  Copyright 2016 Oliver Dozsa
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package indexes;
+
+import java.util.BitSet;
+
+/**
+ * Bloom filter of 64 bit hashes. Tells for sure that a hash was not added,
+ * but may answer yes for a hash that was not added either. The bit positions
+ * of a hash are derived from its two halves (double hashing), so the hashes
+ * must be well mixed.
+ *
+ * @author Oliver Dozsa
+ */
+public class BloomFilter
+{
+    /* --------------------------------------------------------------------- */
+    /* ATTRIBUTES                                                            */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC ATTRIBUTES ------------------------------------------------ */
+
+
+
+    /* -- PROTECTED ATTRIBUTES --------------------------------------------- */
+
+
+
+    /* -- PRIVATE ATTRIBUTES ----------------------------------------------- */
+
+    /**
+     * The bits.
+     */
+    private BitSet bits;
+
+    /**
+     * The number of bits.
+     */
+    private int size;
+
+    /**
+     * The number of bits set per hash.
+     */
+    private int hashCount;
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* METHODS                                                               */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC METHODS --------------------------------------------------- */
+
+    /**
+     * Creates an empty filter, sized for the expected number of hashes.
+     *
+     * @param expectedCount        The expected number of hashes.
+     * @param falsePositiveRate    The wanted rate of false answers, with the
+     *                             expected number of hashes added.
+     */
+    public BloomFilter(int expectedCount, double falsePositiveRate)
+    {
+        int count = Math.max(1, expectedCount);
+
+        size      = (int)Math.min(Integer.MAX_VALUE, Math.ceil(-count * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2))));
+        size      = Math.max(64, size);
+        hashCount = Math.max(1, (int)Math.round((double)size / count * Math.log(2)));
+        bits      = new BitSet(size);
+    }
+
+    /**
+     * Adds a hash.
+     *
+     * @param hash    The hash.
+     */
+    public void put(long hash)
+    {
+        int h1 = (int)hash;
+        int h2 = (int)(hash >>> 32);
+
+        for(int i = 0; i < hashCount; i++)
+        {
+            bits.set(getPosition(h1, h2, i));
+        }
+    }
+
+    /**
+     * Checks whether a hash may have been added.
+     *
+     * @param hash    The hash.
+     *
+     * @return False, if the hash was surely not added.
+     */
+    public boolean mightContain(long hash)
+    {
+        boolean result = true;
+
+        int h1 = (int)hash;
+        int h2 = (int)(hash >>> 32);
+
+        for(int i = 0; i < hashCount && result; i++)
+        {
+            result = bits.get(getPosition(h1, h2, i));
+        }
+
+        return result;
+    }
+
+    /**
+     *
+     * @return The number of bits.
+     */
+    public int getSize()
+    {
+        return size;
+    }
+
+    /**
+     *
+     * @return The number of bits set per hash.
+     */
+    public int getHashCount()
+    {
+        return hashCount;
+    }
+
+
+
+    /* -- PROTECTED METHODS ------------------------------------------------ */
+
+
+
+    /* -- PRIVATE METHODS -------------------------------------------------- */
+
+    /**
+     * Gets the i-th bit position of a hash.
+     *
+     * @param h1    The lower half of the hash.
+     * @param h2    The upper half of the hash.
+     * @param i     The index of the position.
+     *
+     * @return The position.
+     */
+    private int getPosition(int h1, int h2, int i)
+    {
+        int combined = h1 + i * h2;
+
+        return (combined & Integer.MAX_VALUE) % size;
+    }
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* OTHERS                                                                */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC OTHERS ---------------------------------------------------- */
+
+
+
+    /* -- PROTECTED OTHERS ------------------------------------------------- */
+
+
+
+    /* -- PRIVATE OTHERS --------------------------------------------------- */
+}
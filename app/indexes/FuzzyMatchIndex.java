@@ -0,0 +1,316 @@
+/*
+ *  Copyright 2016 Oliver Dozsa
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package indexes;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Resident index for finding the most similar text by Jaro-Winkler distance.
+ * Texts are indexed by their lower cased letter pairs, padded with a space on
+ * both ends, so the first letter forms a pair too. A lookup only scores the
+ * texts sharing a pair with the query, and skips those whose length alone
+ * keeps them below the wanted score.
+ *
+ * A text sharing no letter pair with the query, not even the first letter,
+ * gets no prefix bonus, and would need most of its letters matched out of
+ * order; such texts don't reach matching scores in practice.
+ *
+ * @param <T> The type of the values attached to the texts.
+ *
+ * @author Oliver Dozsa
+ */
+public class FuzzyMatchIndex<T>
+{
+    /* --------------------------------------------------------------------- */
+    /* ATTRIBUTES                                                            */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC ATTRIBUTES ------------------------------------------------ */
+
+
+
+    /* -- PROTECTED ATTRIBUTES --------------------------------------------- */
+
+
+
+    /* -- PRIVATE ATTRIBUTES ----------------------------------------------- */
+
+    /**
+     * The longest common prefix Jaro-Winkler gives bonus for.
+     */
+    private static final int MAX_PREFIX = 4;
+
+    /**
+     * Jaro-Winkler prefix scaling factor.
+     */
+    private static final double PREFIX_SCALE = 0.1;
+
+    /**
+     * Scores are rounded to two decimals, so a text may reach the wanted
+     * score from this much below it.
+     */
+    private static final double ROUNDING = 0.005;
+
+    /**
+     * The indexed texts, in insertion order.
+     */
+    private List<String> texts = new ArrayList<String>();
+
+    /**
+     * The values of the texts.
+     */
+    private List<T> values = new ArrayList<T>();
+
+    /**
+     * Letter pair -> positions of the texts containing it.
+     */
+    private Map<String, BitSet> postings = new HashMap<String, BitSet>();
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* METHODS                                                               */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC METHODS --------------------------------------------------- */
+
+    /**
+     * Adds a text.
+     *
+     * @param text     The text.
+     * @param value    The value attached to the text.
+     */
+    public void add(String text, T value)
+    {
+        int position = texts.size();
+
+        texts.add(text);
+        values.add(value);
+
+        for(String pair : getPairs(text))
+        {
+            BitSet positions = postings.get(pair);
+
+            if(positions == null)
+            {
+                positions = new BitSet();
+
+                postings.put(pair, positions);
+            }
+
+            positions.set(position);
+        }
+    }
+
+    /**
+     * Finds the text most similar to the query. Of texts with equal scores,
+     * the first added wins.
+     *
+     * @param query       The query.
+     * @param minScore    Texts which surely score below this are not scored.
+     *
+     * @return The best match, or null, if no text was scored. The best match
+     *         may score below minScore.
+     */
+    public Match<T> findBestMatch(String query, double minScore)
+    {
+        Match<T> result = null;
+
+        BitSet candidates = new BitSet();
+
+        for(String pair : getPairs(query))
+        {
+            BitSet positions = postings.get(pair);
+
+            if(positions != null)
+            {
+                candidates.or(positions);
+            }
+        }
+
+        for(int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1))
+        {
+            String text = texts.get(i);
+
+            if(getUpperBound(query.length(), text.length()) >= minScore - ROUNDING)
+            {
+                double score = StringUtils.getJaroWinklerDistance(query, text);
+
+                if(result == null || score > result.getScore())
+                {
+                    result = new Match<T>(text, values.get(i), score);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     *
+     * @return The number of indexed texts.
+     */
+    public int size()
+    {
+        return texts.size();
+    }
+
+
+
+    /* -- PROTECTED METHODS ------------------------------------------------ */
+
+
+
+    /* -- PRIVATE METHODS -------------------------------------------------- */
+
+    /**
+     * Gets the padded, lower cased letter pairs of a text.
+     *
+     * @param text    The text.
+     *
+     * @return The pairs.
+     */
+    private static List<String> getPairs(String text)
+    {
+        List<String> result = new ArrayList<String>();
+
+        String padded = " " + text.toLowerCase(Locale.ROOT) + " ";
+
+        for(int i = 0; i + 2 <= padded.length(); i++)
+        {
+            result.add(padded.substring(i, i + 2));
+        }
+
+        return result;
+    }
+
+    /**
+     * Gets the highest Jaro-Winkler score two texts of the given lengths can
+     * have: every letter of the shorter one matches, and they have the
+     * longest rewarded common prefix.
+     *
+     * @param length1    Length of the first text.
+     * @param length2    Length of the second text.
+     *
+     * @return The upper bound.
+     */
+    private static double getUpperBound(int length1, int length2)
+    {
+        double result = 0.0;
+
+        int shorter = Math.min(length1, length2);
+        int longer  = Math.max(length1, length2);
+
+        if(shorter > 0)
+        {
+            double jaro = (2.0 + (double)shorter / longer) / 3.0;
+
+            result = jaro + Math.min(MAX_PREFIX, shorter) * PREFIX_SCALE * (1.0 - jaro);
+        }
+
+        return result;
+    }
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* OTHERS                                                                */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC OTHERS ---------------------------------------------------- */
+
+    /**
+     * A scored text.
+     *
+     * @param <T> The type of the value attached to the text.
+     */
+    public static class Match<T>
+    {
+        /**
+         * The text.
+         */
+        private String text;
+
+        /**
+         * The value attached to the text.
+         */
+        private T value;
+
+        /**
+         * The Jaro-Winkler score.
+         */
+        private double score;
+
+        /**
+         * Initializes the match.
+         *
+         * @param text     The text.
+         * @param value    The value attached to the text.
+         * @param score    The Jaro-Winkler score.
+         */
+        public Match(String text, T value, double score)
+        {
+            this.text  = text;
+            this.value = value;
+            this.score = score;
+        }
+
+        /**
+         *
+         * @return The text.
+         */
+        public String getText()
+        {
+            return text;
+        }
+
+        /**
+         *
+         * @return The value attached to the text.
+         */
+        public T getValue()
+        {
+            return value;
+        }
+
+        /**
+         *
+         * @return The Jaro-Winkler score.
+         */
+        public double getScore()
+        {
+            return score;
+        }
+    }
+
+
+
+    /* -- PROTECTED OTHERS ------------------------------------------------- */
+
+
+
+    /* -- PRIVATE OTHERS --------------------------------------------------- */
+}
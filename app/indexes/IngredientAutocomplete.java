@@ -0,0 +1,667 @@
+/*
+ *  Copyright 2016 Oliver Dozsa
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package indexes;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.avaje.ebean.Ebean;
+import com.avaje.ebean.SqlRow;
+
+import play.Logger;
+
+/**
+ * Immutable prefix trie of ingredient names and aliases, per language, for
+ * autocompletion. Every word of a name or alias is a key, so "liszt" completes
+ * "kukorica liszt" too. Each node holds the best ingredients below it, ranked
+ * by the number of recipes using them, so a completion is a walk down the
+ * prefix and a copy of the precomputed list.
+ *
+ * The shared instance is replaced as a whole: when ingredients change, a new
+ * trie is built in the background, and the old one serves lookups until then.
+ *
+ * @author Oliver Dozsa
+ */
+public class IngredientAutocomplete
+{
+    /* --------------------------------------------------------------------- */
+    /* ATTRIBUTES                                                            */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC ATTRIBUTES ------------------------------------------------ */
+
+    /**
+     * The maximum number of suggestions a completion can return.
+     */
+    public static final int MAX_SUGGESTIONS = 20;
+
+
+
+    /* -- PROTECTED ATTRIBUTES --------------------------------------------- */
+
+
+
+    /* -- PRIVATE ATTRIBUTES ----------------------------------------------- */
+
+    /**
+     * The shared instance.
+     */
+    private static volatile IngredientAutocomplete instance;
+
+    /**
+     * True, if a background rebuild is requested, but not yet started.
+     */
+    private static final AtomicBoolean isRebuildPending = new AtomicBoolean(false);
+
+    /**
+     * Runs the background rebuilds, one at a time.
+     */
+    private static final ExecutorService rebuildExecutor = Executors.newSingleThreadExecutor(new ThreadFactory()
+    {
+        @Override
+        public Thread newThread(Runnable runnable)
+        {
+            Thread result = new Thread(runnable, "ingredient-autocomplete-rebuild");
+
+            result.setDaemon(true);
+
+            return result;
+        }
+    });
+
+    /**
+     * Language id -> root of the trie.
+     */
+    private Map<Long, Node> roots;
+
+    /**
+     * The suggestions, by entry.
+     */
+    private Suggestion[] suggestions;
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* METHODS                                                               */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC METHODS --------------------------------------------------- */
+
+    /**
+     * Gets the shared instance. It is built from the database on first access.
+     *
+     * @return The shared instance.
+     */
+    public static IngredientAutocomplete getInstance()
+    {
+        IngredientAutocomplete result = instance;
+
+        if(result == null)
+        {
+            synchronized(IngredientAutocomplete.class)
+            {
+                result = instance;
+
+                if(result == null)
+                {
+                    result = load();
+
+                    instance = result;
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Drops the shared instance. It will be rebuilt on next access.
+     */
+    public static void invalidate()
+    {
+        Logger.debug(IngredientAutocomplete.class.getName() + ".invalidate()");
+
+        synchronized(IngredientAutocomplete.class)
+        {
+            instance = null;
+        }
+    }
+
+    /**
+     * Requests rebuilding the shared instance in the background. Must be called
+     * when ingredient names, aliases, or recipes change. Requests arriving
+     * before the rebuild starts are served by the same rebuild.
+     */
+    public static void requestRebuild()
+    {
+        if(instance != null && isRebuildPending.compareAndSet(false, true))
+        {
+            Logger.debug(IngredientAutocomplete.class.getName() + ".requestRebuild(): Rebuild scheduled.");
+
+            rebuildExecutor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    isRebuildPending.set(false);
+
+                    try
+                    {
+                        IngredientAutocomplete rebuilt = load();
+
+                        synchronized(IngredientAutocomplete.class)
+                        {
+                            instance = rebuilt;
+                        }
+                    }
+                    catch(Exception e)
+                    {
+                        Logger.error(IngredientAutocomplete.class.getName() + ".requestRebuild(): Rebuild failed!", e);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Gets the ingredients having a name or alias word starting with the prefix,
+     * case insensitively.
+     *
+     * @param prefix        The prefix.
+     * @param languageId    The id of the language.
+     * @param limit         The maximum number of suggestions. At most MAX_SUGGESTIONS.
+     *
+     * @return The suggestions, most used ingredients first.
+     */
+    public List<Suggestion> complete(String prefix, Long languageId, int limit)
+    {
+        List<Suggestion> result = new ArrayList<Suggestion>();
+
+        Node node = roots.get(languageId);
+
+        if(prefix != null)
+        {
+            String normalized = normalize(prefix);
+
+            for(int i = 0; i < normalized.length() && node != null; ++i)
+            {
+                node = node.getChild(normalized.charAt(i));
+            }
+        }
+        else
+        {
+            node = null;
+        }
+
+        if(node != null)
+        {
+            for(int i = 0; i < node.top.length && i < limit; ++i)
+            {
+                result.add(suggestions[node.top[i]]);
+            }
+        }
+
+        return result;
+    }
+
+
+
+    /* -- PROTECTED METHODS ------------------------------------------------ */
+
+
+
+    /* -- PRIVATE METHODS -------------------------------------------------- */
+
+    /**
+     * Creates the trie. Use Builder.
+     *
+     * @param roots          Language id -> root of the trie.
+     * @param suggestions    The suggestions, by entry.
+     */
+    private IngredientAutocomplete(Map<Long, Node> roots, Suggestion[] suggestions)
+    {
+        this.roots       = roots;
+        this.suggestions = suggestions;
+    }
+
+    /**
+     * Builds a trie from the database.
+     *
+     * @return The trie.
+     */
+    private static IngredientAutocomplete load()
+    {
+        Logger.info(IngredientAutocomplete.class.getName() + ".load(): building trie.");
+
+        long start = System.currentTimeMillis();
+
+        Map<Long, Integer> recipeCounts = new HashMap<Long, Integer>();
+
+        List<SqlRow> countRows = Ebean
+            .createSqlQuery("SELECT ingredient_id, COUNT(*) AS recipe_count FROM recipe_ingredient GROUP BY ingredient_id")
+            .findList();
+
+        for(SqlRow row: countRows)
+        {
+            recipeCounts.put(row.getLong("ingredient_id"), row.getInteger("recipe_count"));
+        }
+
+        Builder builder = new Builder();
+
+        List<SqlRow> nameRows = Ebean
+            .createSqlQuery("SELECT name, language_id, ingredient_id FROM ingredient_name")
+            .findList();
+
+        for(SqlRow row: nameRows)
+        {
+            Long ingredientId = row.getLong("ingredient_id");
+
+            builder.add(row.getLong("language_id"), row.getString("name"), ingredientId, row.getString("name"), getCount(recipeCounts, ingredientId));
+        }
+
+        List<SqlRow> aliasRows = Ebean
+            .createSqlQuery
+            (
+                "SELECT ingredient_alias.name AS alias, ingredient_name.name, ingredient_name.language_id, ingredient_name.ingredient_id " +
+                "FROM ingredient_alias " +
+                "JOIN ingredient_name ON " +
+                    "ingredient_name.ingredient_id = ingredient_alias.ingredient_id AND " +
+                    "ingredient_name.language_id = ingredient_alias.language_id"
+            )
+            .findList();
+
+        for(SqlRow row: aliasRows)
+        {
+            Long ingredientId = row.getLong("ingredient_id");
+
+            builder.add(row.getLong("language_id"), row.getString("alias"), ingredientId, row.getString("name"), getCount(recipeCounts, ingredientId));
+        }
+
+        IngredientAutocomplete result = builder.build();
+
+        Logger.info(IngredientAutocomplete.class.getName() + ".load(): trie built.\n" +
+            "    names     = " + nameRows.size() + "\n" +
+            "    aliases   = " + aliasRows.size() + "\n" +
+            "    time (ms) = " + (System.currentTimeMillis() - start)
+        );
+
+        return result;
+    }
+
+    /**
+     * Gets the recipe count of an ingredient.
+     *
+     * @param recipeCounts    Ingredient id -> recipe count.
+     * @param ingredientId    The id of the ingredient.
+     *
+     * @return The recipe count, 0 if the ingredient is not used.
+     */
+    private static int getCount(Map<Long, Integer> recipeCounts, Long ingredientId)
+    {
+        Integer result = recipeCounts.get(ingredientId);
+
+        return (result != null) ? result : 0;
+    }
+
+    /**
+     * Normalizes a text for indexing and completion.
+     *
+     * @param text    The text.
+     *
+     * @return The normalized text.
+     */
+    private static String normalize(String text)
+    {
+        return text.toLowerCase(Locale.ROOT);
+    }
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* OTHERS                                                                */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC OTHERS ---------------------------------------------------- */
+
+    /**
+     * A completion suggestion.
+     */
+    public static class Suggestion
+    {
+        /**
+         * The id of the ingredient.
+         */
+        public final Long ingredientId;
+
+        /**
+         * The name of the ingredient in the language of the completion.
+         */
+        public final String name;
+
+        /**
+         * The number of recipes using the ingredient.
+         */
+        public final int recipeCount;
+
+        /**
+         * Initializes the suggestion.
+         *
+         * @param ingredientId    The id of the ingredient.
+         * @param name            The name of the ingredient.
+         * @param recipeCount     The number of recipes using the ingredient.
+         */
+        public Suggestion(Long ingredientId, String name, int recipeCount)
+        {
+            this.ingredientId = ingredientId;
+            this.name         = name;
+            this.recipeCount  = recipeCount;
+        }
+    }
+
+    /**
+     * Collects the keys of a trie, and builds it.
+     */
+    public static class Builder
+    {
+        /**
+         * Language id -> root of the trie being built.
+         */
+        private Map<Long, BuildNode> roots = new HashMap<Long, BuildNode>();
+
+        /**
+         * The suggestions, by entry.
+         */
+        private List<Suggestion> suggestions = new ArrayList<Suggestion>();
+
+        /**
+         * Language id -> ingredient id -> entry.
+         */
+        private Map<Long, Map<Long, Integer>> entries = new HashMap<Long, Map<Long, Integer>>();
+
+        /**
+         * Adds a key (name or alias) of an ingredient. Every word of the key is
+         * completed.
+         *
+         * @param languageId      The language of the key.
+         * @param key             The name or alias.
+         * @param ingredientId    The id of the ingredient.
+         * @param name            The name of the ingredient in the language.
+         * @param recipeCount     The number of recipes using the ingredient.
+         */
+        public void add(Long languageId, String key, Long ingredientId, String name, int recipeCount)
+        {
+            if(languageId == null || key == null || ingredientId == null || name == null)
+            {
+                Logger.warn(IngredientAutocomplete.class.getName() + ".Builder.add(): null value!\n" +
+                    "    languageId   = " + languageId + "\n" +
+                    "    key          = " + key + "\n" +
+                    "    ingredientId = " + ingredientId + "\n" +
+                    "    name         = " + name
+                );
+            }
+            else
+            {
+                Map<Long, Integer> languageEntries = entries.get(languageId);
+
+                if(languageEntries == null)
+                {
+                    languageEntries = new HashMap<Long, Integer>();
+
+                    entries.put(languageId, languageEntries);
+                    roots.put(languageId, new BuildNode());
+                }
+
+                Integer entry = languageEntries.get(ingredientId);
+
+                if(entry == null)
+                {
+                    entry = suggestions.size();
+
+                    suggestions.add(new Suggestion(ingredientId, name, recipeCount));
+                    languageEntries.put(ingredientId, entry);
+                }
+
+                String normalized = normalize(key);
+
+                for(int i = 0; i < normalized.length(); ++i)
+                {
+                    boolean isWordStart = (i == 0) || !Character.isLetterOrDigit(normalized.charAt(i - 1));
+
+                    if(isWordStart && Character.isLetterOrDigit(normalized.charAt(i)))
+                    {
+                        roots.get(languageId).insert(normalized, i, entry);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Builds the trie.
+         *
+         * @return The trie.
+         */
+        public IngredientAutocomplete build()
+        {
+            final Suggestion[] built = suggestions.toArray(new Suggestion[suggestions.size()]);
+
+            Comparator<Integer> ranking = new Comparator<Integer>()
+            {
+                @Override
+                public int compare(Integer a, Integer b)
+                {
+                    int result = Integer.compare(built[b].recipeCount, built[a].recipeCount);
+
+                    if(result == 0)
+                    {
+                        result = Integer.compare(built[a].name.length(), built[b].name.length());
+                    }
+
+                    if(result == 0)
+                    {
+                        result = built[a].name.compareTo(built[b].name);
+                    }
+
+                    return result;
+                }
+            };
+
+            Map<Long, Node> builtRoots = new HashMap<Long, Node>();
+
+            for(Map.Entry<Long, BuildNode> root: roots.entrySet())
+            {
+                builtRoots.put(root.getKey(), root.getValue().build(ranking));
+            }
+
+            return new IngredientAutocomplete(builtRoots, built);
+        }
+    }
+
+
+
+    /* -- PROTECTED OTHERS ------------------------------------------------- */
+
+
+
+    /* -- PRIVATE OTHERS --------------------------------------------------- */
+
+    /**
+     * Immutable trie node.
+     */
+    private static class Node
+    {
+        /**
+         * Characters of the children, sorted.
+         */
+        final char[] keys;
+
+        /**
+         * Children, in the order of keys.
+         */
+        final Node[] children;
+
+        /**
+         * Best entries of this subtree, best first.
+         */
+        final int[] top;
+
+        Node(char[] keys, Node[] children, int[] top)
+        {
+            this.keys     = keys;
+            this.children = children;
+            this.top      = top;
+        }
+
+        /**
+         * Gets a child.
+         *
+         * @param key    The character of the child.
+         *
+         * @return The child, or null, if there's no such child.
+         */
+        Node getChild(char key)
+        {
+            int lo = 0;
+            int hi = keys.length - 1;
+
+            Node result = null;
+
+            while(lo <= hi && result == null)
+            {
+                int mid = (lo + hi) >>> 1;
+
+                if(keys[mid] < key)
+                {
+                    lo = mid + 1;
+                }
+                else if(keys[mid] > key)
+                {
+                    hi = mid - 1;
+                }
+                else
+                {
+                    result = children[mid];
+                }
+            }
+
+            return result;
+        }
+    }
+
+    /**
+     * Trie node used while building.
+     */
+    private static class BuildNode
+    {
+        /**
+         * Children, by character.
+         */
+        TreeMap<Character, BuildNode> children = new TreeMap<Character, BuildNode>();
+
+        /**
+         * Entries having a key ending here.
+         */
+        Set<Integer> entries = new LinkedHashSet<Integer>();
+
+        /**
+         * Inserts the suffix of a key.
+         *
+         * @param key      The key.
+         * @param from     Start of the suffix.
+         * @param entry    The entry of the key.
+         */
+        void insert(String key, int from, int entry)
+        {
+            BuildNode node = this;
+
+            for(int i = from; i < key.length(); ++i)
+            {
+                BuildNode child = node.children.get(key.charAt(i));
+
+                if(child == null)
+                {
+                    child = new BuildNode();
+
+                    node.children.put(key.charAt(i), child);
+                }
+
+                node = child;
+            }
+
+            node.entries.add(entry);
+        }
+
+        /**
+         * Builds the immutable subtree.
+         *
+         * @param ranking    Orders the entries, best first.
+         *
+         * @return The immutable node.
+         */
+        Node build(Comparator<Integer> ranking)
+        {
+            char[] keys       = new char[children.size()];
+            Node[] built      = new Node[children.size()];
+            Set<Integer> best = new LinkedHashSet<Integer>(entries);
+
+            int i = 0;
+
+            for(Map.Entry<Character, BuildNode> child: children.entrySet())
+            {
+                keys[i]  = child.getKey();
+                built[i] = child.getValue().build(ranking);
+
+                for(int entry: built[i].top)
+                {
+                    best.add(entry);
+                }
+
+                ++i;
+            }
+
+            List<Integer> ranked = new ArrayList<Integer>(best);
+
+            Collections.sort(ranked, ranking);
+
+            int[] top = new int[Math.min(ranked.size(), MAX_SUGGESTIONS)];
+
+            for(int j = 0; j < top.length; ++j)
+            {
+                top[j] = ranked.get(j);
+            }
+
+            /* The subtree is not needed any more. */
+            children = null;
+            entries  = null;
+
+            return new Node(keys, built, top);
+        }
+    }
+}
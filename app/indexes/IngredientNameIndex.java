@@ -0,0 +1,484 @@
+/*
+ *  Copyright 2016 Oliver Dozsa
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package indexes;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import com.avaje.ebean.Ebean;
+import com.avaje.ebean.SqlRow;
+
+import play.Logger;
+
+/**
+ * Resident trigram index of ingredient names and aliases, per language. For
+ * every trigram of the lower cased names it stores the set of names containing
+ * it, so substring lookups only check the names having all the trigrams of the
+ * query, instead of scanning the whole table. Aliases are indexed separately;
+ * an alias leads to the names of its ingredient in the same language.
+ *
+ * @author Oliver Dozsa
+ */
+public class IngredientNameIndex
+{
+    /* --------------------------------------------------------------------- */
+    /* ATTRIBUTES                                                            */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC ATTRIBUTES ------------------------------------------------ */
+
+
+
+    /* -- PROTECTED ATTRIBUTES --------------------------------------------- */
+
+
+
+    /* -- PRIVATE ATTRIBUTES ----------------------------------------------- */
+
+    /**
+     * Length of the indexed grams.
+     */
+    private static final int GRAM_LENGTH = 3;
+
+    /**
+     * The shared instance, built from the database on first access.
+     */
+    private static volatile IngredientNameIndex instance;
+
+    /**
+     * Language id -> indexed ingredient names.
+     */
+    private Map<Long, Postings> names;
+
+    /**
+     * Language id -> indexed ingredient aliases.
+     */
+    private Map<Long, Postings> aliases;
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* METHODS                                                               */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC METHODS --------------------------------------------------- */
+
+    /**
+     * Creates an empty index.
+     */
+    public IngredientNameIndex()
+    {
+        names   = new HashMap<Long, Postings>();
+        aliases = new HashMap<Long, Postings>();
+    }
+
+    /**
+     * Gets the shared index. The index is built from the ingredient_name and
+     * ingredient_alias tables on first access.
+     *
+     * @return The shared index.
+     */
+    public static IngredientNameIndex getInstance()
+    {
+        IngredientNameIndex result = instance;
+
+        if(result == null)
+        {
+            synchronized(IngredientNameIndex.class)
+            {
+                result = instance;
+
+                if(result == null)
+                {
+                    result = new IngredientNameIndex();
+
+                    result.load();
+
+                    instance = result;
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Drops the shared index. It will be rebuilt on next access. Must be called
+     * when ingredient names or aliases are changed.
+     */
+    public static void invalidate()
+    {
+        Logger.debug(IngredientNameIndex.class.getName() + ".invalidate()");
+
+        synchronized(IngredientNameIndex.class)
+        {
+            instance = null;
+        }
+    }
+
+    /**
+     * Adds an ingredient name to the index. The index must not be searched
+     * while it's being filled.
+     *
+     * @param languageId    The language of the name.
+     * @param nameId        The id of the ingredient name.
+     * @param name          The name.
+     */
+    public void addName(Long languageId, Long nameId, String name)
+    {
+        add(names, languageId, nameId, name);
+    }
+
+    /**
+     * Adds an ingredient alias to the index. The index must not be searched
+     * while it's being filled.
+     *
+     * @param languageId    The language of the alias.
+     * @param nameId        The id of the ingredient name (in the same language)
+     *                      the alias leads to.
+     * @param alias         The alias.
+     */
+    public void addAlias(Long languageId, Long nameId, String alias)
+    {
+        add(aliases, languageId, nameId, alias);
+    }
+
+    /**
+     * Gets the ingredient names containing the query, case insensitively.
+     *
+     * @param query         The query string.
+     * @param languageId    The id of the language.
+     * @param limit         The maximum number of results.
+     *
+     * @return The ids of the matching ingredient names, best matches first.
+     */
+    public List<Long> searchNames(String query, Long languageId, int limit)
+    {
+        return search(names.get(languageId), query, limit);
+    }
+
+    /**
+     * Gets the ingredient names having an alias containing the query, case
+     * insensitively.
+     *
+     * @param query         The query string.
+     * @param languageId    The id of the language.
+     * @param limit         The maximum number of results.
+     *
+     * @return The ids of the ingredient names the matching aliases lead to,
+     *         best matches first.
+     */
+    public List<Long> searchAliases(String query, Long languageId, int limit)
+    {
+        return search(aliases.get(languageId), query, limit);
+    }
+
+
+
+    /* -- PROTECTED METHODS ------------------------------------------------ */
+
+
+
+    /* -- PRIVATE METHODS -------------------------------------------------- */
+
+    /**
+     * Loads the index from the database.
+     */
+    private void load()
+    {
+        Logger.info(IngredientNameIndex.class.getName() + ".load(): building index.");
+
+        long start = System.currentTimeMillis();
+
+        List<SqlRow> nameRows = Ebean
+            .createSqlQuery("SELECT id, name, language_id FROM ingredient_name")
+            .findList();
+
+        for(SqlRow row: nameRows)
+        {
+            addName(row.getLong("language_id"), row.getLong("id"), row.getString("name"));
+        }
+
+        List<SqlRow> aliasRows = Ebean
+            .createSqlQuery
+            (
+                "SELECT ingredient_alias.name, ingredient_alias.language_id, ingredient_name.id " +
+                "FROM ingredient_alias " +
+                "JOIN ingredient_name ON " +
+                    "ingredient_name.ingredient_id = ingredient_alias.ingredient_id AND " +
+                    "ingredient_name.language_id = ingredient_alias.language_id"
+            )
+            .findList();
+
+        for(SqlRow row: aliasRows)
+        {
+            addAlias(row.getLong("language_id"), row.getLong("id"), row.getString("name"));
+        }
+
+        Logger.info(IngredientNameIndex.class.getName() + ".load(): index built.\n" +
+            "    names     = " + nameRows.size() + "\n" +
+            "    aliases   = " + aliasRows.size() + "\n" +
+            "    time (ms) = " + (System.currentTimeMillis() - start)
+        );
+    }
+
+    /**
+     * Adds a text to the postings of its language.
+     *
+     * @param postingsByLanguage    The postings, by language.
+     * @param languageId            The language of the text.
+     * @param nameId                The id of the ingredient name the text leads to.
+     * @param text                  The text.
+     */
+    private static void add(Map<Long, Postings> postingsByLanguage, Long languageId, Long nameId, String text)
+    {
+        if(languageId == null || nameId == null || text == null)
+        {
+            Logger.warn(IngredientNameIndex.class.getName() + ".add(): null value!\n" +
+                "    languageId = " + languageId + "\n" +
+                "    nameId     = " + nameId + "\n" +
+                "    text       = " + text
+            );
+        }
+        else
+        {
+            Postings postings = postingsByLanguage.get(languageId);
+
+            if(postings == null)
+            {
+                postings = new Postings();
+
+                postingsByLanguage.put(languageId, postings);
+            }
+
+            String normalized = normalize(text);
+            int entry         = postings.texts.size();
+
+            postings.texts.add(normalized);
+            postings.nameIds.add(nameId);
+
+            for(int i = 0; i + GRAM_LENGTH <= normalized.length(); ++i)
+            {
+                String gram = normalized.substring(i, i + GRAM_LENGTH);
+                BitSet bits = postings.entriesByGram.get(gram);
+
+                if(bits == null)
+                {
+                    bits = new BitSet();
+
+                    postings.entriesByGram.put(gram, bits);
+                }
+
+                bits.set(entry);
+            }
+        }
+    }
+
+    /**
+     * Searches the texts containing the query. Candidates are the texts having
+     * all the trigrams of the query; queries shorter than a trigram check every
+     * text of the language. Results are ranked: exact matches first, then
+     * prefix matches, then matches at a word start, then by match position,
+     * and finally by text length and alphabetically.
+     *
+     * @param postings    The postings of the language. May be null.
+     * @param query       The query string.
+     * @param limit       The maximum number of results.
+     *
+     * @return The ids of the ingredient names the matching texts lead to, best
+     *         matches first, without duplicates.
+     */
+    private static List<Long> search(Postings postings, String query, int limit)
+    {
+        List<Long> result = new ArrayList<Long>();
+
+        if(postings != null && query != null && limit > 0)
+        {
+            final String normalized = normalize(query);
+
+            BitSet candidates = null;
+
+            if(normalized.length() < GRAM_LENGTH)
+            {
+                candidates = new BitSet();
+
+                candidates.set(0, postings.texts.size());
+            }
+            else
+            {
+                for(int i = 0; i + GRAM_LENGTH <= normalized.length() && (candidates == null || !candidates.isEmpty()); ++i)
+                {
+                    BitSet bits = postings.entriesByGram.get(normalized.substring(i, i + GRAM_LENGTH));
+
+                    if(bits == null)
+                    {
+                        candidates = new BitSet();
+                    }
+                    else if(candidates == null)
+                    {
+                        candidates = (BitSet)bits.clone();
+                    }
+                    else
+                    {
+                        candidates.and(bits);
+                    }
+                }
+            }
+
+            /* Verify the candidates, as having all the trigrams doesn't mean containing the query. */
+            List<Integer> matches = new ArrayList<Integer>();
+
+            for(int entry = candidates.nextSetBit(0); entry >= 0; entry = candidates.nextSetBit(entry + 1))
+            {
+                if(postings.texts.get(entry).contains(normalized))
+                {
+                    matches.add(entry);
+                }
+            }
+
+            final List<String> texts = postings.texts;
+
+            Collections.sort(matches, new Comparator<Integer>()
+            {
+                @Override
+                public int compare(Integer a, Integer b)
+                {
+                    String textA = texts.get(a);
+                    String textB = texts.get(b);
+
+                    int result = Integer.compare(rank(textA, normalized), rank(textB, normalized));
+
+                    if(result == 0)
+                    {
+                        result = Integer.compare(textA.indexOf(normalized), textB.indexOf(normalized));
+                    }
+
+                    if(result == 0)
+                    {
+                        result = Integer.compare(textA.length(), textB.length());
+                    }
+
+                    if(result == 0)
+                    {
+                        result = textA.compareTo(textB);
+                    }
+
+                    return result;
+                }
+            });
+
+            Set<Long> nameIds = new LinkedHashSet<Long>();
+
+            for(int i = 0; i < matches.size() && nameIds.size() < limit; ++i)
+            {
+                nameIds.add(postings.nameIds.get(matches.get(i)));
+            }
+
+            result.addAll(nameIds);
+        }
+
+        return result;
+    }
+
+    /**
+     * Ranks a match. Lower is better.
+     *
+     * @param text     The matching text.
+     * @param query    The query.
+     *
+     * @return 0 for exact match, 1 for prefix match, 2 for match at a word
+     *         start, 3 otherwise.
+     */
+    private static int rank(String text, String query)
+    {
+        int result = 3;
+
+        if(text.equals(query))
+        {
+            result = 0;
+        }
+        else if(text.startsWith(query))
+        {
+            result = 1;
+        }
+        else if(text.contains(" " + query))
+        {
+            result = 2;
+        }
+
+        return result;
+    }
+
+    /**
+     * Normalizes a text for indexing and searching.
+     *
+     * @param text    The text.
+     *
+     * @return The normalized text.
+     */
+    private static String normalize(String text)
+    {
+        return text.toLowerCase(Locale.ROOT);
+    }
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* OTHERS                                                                */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC OTHERS ---------------------------------------------------- */
+
+
+
+    /* -- PROTECTED OTHERS ------------------------------------------------- */
+
+
+
+    /* -- PRIVATE OTHERS --------------------------------------------------- */
+
+    /**
+     * The indexed texts of one language.
+     */
+    private static class Postings
+    {
+        /**
+         * The normalized texts, by entry.
+         */
+        List<String> texts = new ArrayList<String>();
+
+        /**
+         * The ids of the ingredient names the texts lead to, by entry.
+         */
+        List<Long> nameIds = new ArrayList<Long>();
+
+        /**
+         * Trigram -> entries containing it.
+         */
+        Map<String, BitSet> entriesByGram = new HashMap<String, BitSet>();
+    }
+}
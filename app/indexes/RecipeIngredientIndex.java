@@ -0,0 +1,542 @@
+/*
+ *  Copyright 2016 Oliver Dozsa
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package indexes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.avaje.ebean.Ebean;
+import com.avaje.ebean.SqlRow;
+
+import play.Logger;
+
+/**
+ * Resident inverted index of the recipe - ingredient relationship. For every
+ * ingredient it stores the set of recipes containing it as a bitmap (indexed by
+ * recipe id), so ingredient searches can be done with bitmap AND / OR / ANDNOT
+ * operations instead of aggregating the recipe_ingredient table.
+ *
+ * @author Oliver Dozsa
+ */
+public class RecipeIngredientIndex
+{
+    /* --------------------------------------------------------------------- */
+    /* ATTRIBUTES                                                            */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC ATTRIBUTES ------------------------------------------------ */
+
+
+
+    /* -- PROTECTED ATTRIBUTES --------------------------------------------- */
+
+
+
+    /* -- PRIVATE ATTRIBUTES ----------------------------------------------- */
+
+    /**
+     * The shared instance, built from the database on first access.
+     */
+    private static volatile RecipeIngredientIndex instance;
+
+    /**
+     * Ingredient id -> recipes (bitmap of recipe ids) containing the ingredient.
+     */
+    private Map<Long, BitSet> recipesByIngredient;
+
+    /**
+     * Recipe id -> number of recipe_ingredient rows of the recipe.
+     */
+    private int[] ingredientCounts;
+
+    /**
+     * All the recipes having at least one ingredient.
+     */
+    private BitSet allRecipes;
+
+    /**
+     * Guards the bitmaps, as searches can run parallel with the loader.
+     */
+    private ReadWriteLock lock;
+
+    /**
+     * Set to false if a recipe id does not fit into a bitmap index. In this case
+     * the index must not be used. Read by the searches while the index is
+     * being built.
+     */
+    private volatile boolean isUsable;
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* METHODS                                                               */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC METHODS --------------------------------------------------- */
+
+    /**
+     * Creates an empty index.
+     */
+    public RecipeIngredientIndex()
+    {
+        recipesByIngredient = new HashMap<Long, BitSet>();
+        ingredientCounts    = new int[1024];
+        allRecipes          = new BitSet();
+        lock                = new ReentrantReadWriteLock();
+        isUsable            = true;
+    }
+
+    /**
+     * Gets the shared index. The index is built from the recipe_ingredient table on first
+     * access.
+     *
+     * @return The shared index.
+     */
+    public static RecipeIngredientIndex getInstance()
+    {
+        RecipeIngredientIndex result = instance;
+
+        if(result == null)
+        {
+            synchronized(RecipeIngredientIndex.class)
+            {
+                result = instance;
+
+                if(result == null)
+                {
+                    result = new RecipeIngredientIndex();
+
+                    /*
+                     * Published before loading, under the write lock: recipes added during the build
+                     * wait for it, and are not lost; searches wait for it too. Recipes read by the
+                     * build, and added too, are indexed once.
+                     */
+                    result.lock.writeLock().lock();
+
+                    try
+                    {
+                        instance = result;
+
+                        result.load();
+                    }
+                    catch(RuntimeException e)
+                    {
+                        instance = null;
+
+                        throw e;
+                    }
+                    finally
+                    {
+                        result.lock.writeLock().unlock();
+                    }
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Drops the shared index. It will be rebuilt on next access.
+     */
+    public static void invalidate()
+    {
+        Logger.debug(RecipeIngredientIndex.class.getName() + ".invalidate()");
+
+        synchronized(RecipeIngredientIndex.class)
+        {
+            instance = null;
+        }
+    }
+
+    /**
+     * Adds a newly saved recipe to the shared index, if it's built, or being built (after the
+     * build). If there's no index, the recipe will be loaded from the database when it's built.
+     *
+     * @param recipeId         The id of the recipe.
+     * @param ingredientIds    The ids of the ingredients of the recipe.
+     */
+    public static void recipeAdded(Long recipeId, Collection<Long> ingredientIds)
+    {
+        RecipeIngredientIndex current = instance;
+
+        if(current != null)
+        {
+            current.addRecipe(recipeId, ingredientIds);
+        }
+    }
+
+    /**
+     * Checks whether the index can be used for searching.
+     *
+     * @return True, if the index can be used.
+     */
+    public boolean isUsable()
+    {
+        return isUsable;
+    }
+
+    /**
+     * Adds a recipe with its ingredients to the index. Nothing is done if the recipe is
+     * already indexed.
+     *
+     * @param recipeId         The id of the recipe.
+     * @param ingredientIds    The ids of the ingredients of the recipe (one element for each
+     *                         recipe_ingredient row).
+     */
+    public void addRecipe(Long recipeId, Collection<Long> ingredientIds)
+    {
+        lock.writeLock().lock();
+
+        try
+        {
+            if(recipeId != null && recipeId >= 0 && recipeId < Integer.MAX_VALUE && allRecipes.get(recipeId.intValue()))
+            {
+                Logger.debug(RecipeIngredientIndex.class.getName() + ".addRecipe(): already indexed.\n" +
+                    "    recipeId = " + recipeId
+                );
+            }
+            else
+            {
+                for(Long ingredientId: ingredientIds)
+                {
+                    addRow(recipeId, ingredientId);
+                }
+            }
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the recipes which have exactly the given ingredients.
+     *
+     * @param included    The ingredient ids.
+     *
+     * @return The ids of the found recipes in ascending order.
+     */
+    public List<Long> searchExact(List<Long> included)
+    {
+        lock.readLock().lock();
+
+        try
+        {
+            BitSet found = allOf(included);
+
+            /* Keep only recipes having no other ingredients. */
+            for(int i = found.nextSetBit(0); i >= 0; i = found.nextSetBit(i + 1))
+            {
+                if(ingredientCounts[i] != included.size())
+                {
+                    found.clear(i);
+                }
+            }
+
+            return toIds(found);
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the recipes which have at least the given ingredients, but none of the excluded ones.
+     *
+     * @param included    The included ingredient ids.
+     * @param excluded    The excluded ingredient ids.
+     *
+     * @return The ids of the found recipes in ascending order.
+     */
+    public List<Long> searchAtLeast(List<Long> included, List<Long> excluded)
+    {
+        lock.readLock().lock();
+
+        try
+        {
+            BitSet found = allOf(included);
+
+            found.andNot(anyOf(excluded));
+
+            return toIds(found);
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the recipes which have any of the given ingredients, but none of the excluded ones.
+     *
+     * @param included    The included ingredient ids.
+     * @param excluded    The excluded ingredient ids.
+     *
+     * @return The ids of the found recipes in ascending order.
+     */
+    public List<Long> searchAnyOf(List<Long> included, List<Long> excluded)
+    {
+        lock.readLock().lock();
+
+        try
+        {
+            BitSet found = anyOf(included);
+
+            found.andNot(anyOf(excluded));
+
+            return toIds(found);
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the recipes which have all the ingredients of any of the given groups, but none of the
+     * excluded ones.
+     *
+     * @param included    The included ingredient ids. The key is the group id.
+     * @param excluded    The excluded ingredient ids.
+     *
+     * @return The ids of the found recipes in ascending order.
+     */
+    public List<Long> searchGroup(Map<Long, List<Long>> included, List<Long> excluded)
+    {
+        lock.readLock().lock();
+
+        try
+        {
+            BitSet found = new BitSet();
+
+            for(List<Long> group: included.values())
+            {
+                found.or(allOf(group));
+            }
+
+            found.andNot(anyOf(excluded));
+
+            return toIds(found);
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+
+
+    /* -- PROTECTED METHODS ------------------------------------------------ */
+
+
+
+    /* -- PRIVATE METHODS -------------------------------------------------- */
+
+    /**
+     * Loads the index from the recipe_ingredient table.
+     */
+    private void load()
+    {
+        Logger.info(RecipeIngredientIndex.class.getName() + ".load(): building index.");
+
+        long start = System.currentTimeMillis();
+
+        List<SqlRow> rows = Ebean
+            .createSqlQuery("SELECT recipe_id, ingredient_id FROM recipe_ingredient")
+            .findList();
+
+        lock.writeLock().lock();
+
+        try
+        {
+            for(SqlRow row: rows)
+            {
+                addRow(row.getLong("recipe_id"), row.getLong("ingredient_id"));
+            }
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+
+        Logger.info(RecipeIngredientIndex.class.getName() + ".load(): index built.\n" +
+            "    rows        = " + rows.size() + "\n" +
+            "    ingredients = " + recipesByIngredient.size() + "\n" +
+            "    recipes     = " + allRecipes.cardinality() + "\n" +
+            "    time (ms)   = " + (System.currentTimeMillis() - start)
+        );
+    }
+
+    /**
+     * Adds a recipe_ingredient row to the index. The write lock must be held.
+     *
+     * @param recipeId        The recipe id.
+     * @param ingredientId    The ingredient id.
+     */
+    private void addRow(Long recipeId, Long ingredientId)
+    {
+        if(recipeId == null || ingredientId == null)
+        {
+            Logger.warn(RecipeIngredientIndex.class.getName() + ".addRow(): null id!\n" +
+                "    recipeId     = " + recipeId + "\n" +
+                "    ingredientId = " + ingredientId
+            );
+        }
+        else if(recipeId < 0 || recipeId >= Integer.MAX_VALUE)
+        {
+            Logger.error(RecipeIngredientIndex.class.getName() + ".addRow(): recipe id can't be indexed, index disabled!\n" +
+                "    recipeId = " + recipeId
+            );
+
+            isUsable = false;
+        }
+        else
+        {
+            int bit = recipeId.intValue();
+
+            BitSet recipes = recipesByIngredient.get(ingredientId);
+
+            if(recipes == null)
+            {
+                recipes = new BitSet();
+
+                recipesByIngredient.put(ingredientId, recipes);
+            }
+
+            recipes.set(bit);
+            allRecipes.set(bit);
+
+            if(bit >= ingredientCounts.length)
+            {
+                ingredientCounts = Arrays.copyOf(ingredientCounts, Math.max(bit + 1, ingredientCounts.length * 2));
+            }
+
+            ingredientCounts[bit]++;
+        }
+    }
+
+    /**
+     * Gets the recipes containing all the given ingredients. The read lock must be held.
+     *
+     * @param ingredientIds    The ingredient ids.
+     *
+     * @return A new bitmap of the recipes. Empty if no ingredients are given.
+     */
+    private BitSet allOf(List<Long> ingredientIds)
+    {
+        BitSet result = null;
+
+        for(Long ingredientId: ingredientIds)
+        {
+            BitSet recipes = recipesByIngredient.get(ingredientId);
+
+            if(recipes == null)
+            {
+                /* No recipe has this ingredient, so the intersection is empty. */
+                result = new BitSet();
+
+                break;
+            }
+
+            if(result == null)
+            {
+                result = (BitSet)recipes.clone();
+            }
+            else
+            {
+                result.and(recipes);
+            }
+        }
+
+        if(result == null)
+        {
+            result = new BitSet();
+        }
+
+        return result;
+    }
+
+    /**
+     * Gets the recipes containing any of the given ingredients. The read lock must be held.
+     *
+     * @param ingredientIds    The ingredient ids.
+     *
+     * @return A new bitmap of the recipes.
+     */
+    private BitSet anyOf(List<Long> ingredientIds)
+    {
+        BitSet result = new BitSet();
+
+        for(Long ingredientId: ingredientIds)
+        {
+            BitSet recipes = recipesByIngredient.get(ingredientId);
+
+            if(recipes != null)
+            {
+                result.or(recipes);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Converts a recipe bitmap to a list of recipe ids.
+     *
+     * @param recipes    The bitmap.
+     *
+     * @return The recipe ids in ascending order.
+     */
+    private static List<Long> toIds(BitSet recipes)
+    {
+        List<Long> result = new ArrayList<Long>(recipes.cardinality());
+
+        for(int i = recipes.nextSetBit(0); i >= 0; i = recipes.nextSetBit(i + 1))
+        {
+            result.add((long)i);
+        }
+
+        return result;
+    }
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* OTHERS                                                                */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC OTHERS ---------------------------------------------------- */
+
+
+
+    /* -- PROTECTED OTHERS ------------------------------------------------- */
+
+
+
+    /* -- PRIVATE OTHERS --------------------------------------------------- */
+}
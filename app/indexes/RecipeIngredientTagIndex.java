@@ -0,0 +1,688 @@
+/*
+ *  Copyright 2016 Oliver Dozsa
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package indexes;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.avaje.ebean.Ebean;
+import com.avaje.ebean.SqlRow;
+
+import play.Logger;
+
+/**
+ * Resident closure of the recipe - ingredient - ingredient tag relationship.
+ * For every ingredient tag it stores the set of recipes having an ingredient
+ * with the tag as a bitmap (indexed by recipe id), so ingredient tag searches
+ * are one lookup per tag instead of joining recipe_ingredient with
+ * ingredient_tag_ingredient. Added recipes are added to the bitmaps of their
+ * ingredients' tags; a changed tag is read again alone.
+ *
+ * @author Oliver Dozsa
+ */
+public class RecipeIngredientTagIndex
+{
+    /* --------------------------------------------------------------------- */
+    /* ATTRIBUTES                                                            */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC ATTRIBUTES ------------------------------------------------ */
+
+
+
+    /* -- PROTECTED ATTRIBUTES --------------------------------------------- */
+
+
+
+    /* -- PRIVATE ATTRIBUTES ----------------------------------------------- */
+
+    /**
+     * The shared instance, built from the database on first access.
+     */
+    private static volatile RecipeIngredientTagIndex instance;
+
+    /**
+     * Ingredient tag id -> recipes (bitmap of recipe ids) with an ingredient with the tag.
+     */
+    private Map<Long, BitSet> recipesByTag;
+
+    /**
+     * Ingredient id -> ids of the tags of the ingredient.
+     */
+    private Map<Long, Set<Long>> tagsByIngredient;
+
+    /**
+     * All the recipes.
+     */
+    private BitSet allRecipes;
+
+    /**
+     * Guards the bitmaps, as searches can run parallel with the loader.
+     */
+    private ReadWriteLock lock;
+
+    /**
+     * Set to false if a recipe id does not fit into a bitmap index. In this case
+     * the index must not be used.
+     */
+    private boolean isUsable;
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* METHODS                                                               */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC METHODS --------------------------------------------------- */
+
+    /**
+     * Creates an empty index.
+     */
+    public RecipeIngredientTagIndex()
+    {
+        recipesByTag     = new HashMap<Long, BitSet>();
+        tagsByIngredient = new HashMap<Long, Set<Long>>();
+        allRecipes       = new BitSet();
+        lock             = new ReentrantReadWriteLock();
+        isUsable         = true;
+    }
+
+    /**
+     * Gets the shared index. The index is built from the database on first access.
+     *
+     * @return The shared index.
+     */
+    public static RecipeIngredientTagIndex getInstance()
+    {
+        RecipeIngredientTagIndex result = instance;
+
+        if(result == null)
+        {
+            synchronized(RecipeIngredientTagIndex.class)
+            {
+                result = instance;
+
+                if(result == null)
+                {
+                    result = new RecipeIngredientTagIndex();
+
+                    /* Published before loading, like RecipeIngredientIndex, so no added recipe is lost. */
+                    result.lock.writeLock().lock();
+
+                    try
+                    {
+                        instance = result;
+
+                        result.load();
+                    }
+                    catch(RuntimeException e)
+                    {
+                        instance = null;
+
+                        throw e;
+                    }
+                    finally
+                    {
+                        result.lock.writeLock().unlock();
+                    }
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Drops the shared index. It will be rebuilt on next access.
+     */
+    public static void invalidate()
+    {
+        Logger.debug(RecipeIngredientTagIndex.class.getName() + ".invalidate()");
+
+        synchronized(RecipeIngredientTagIndex.class)
+        {
+            instance = null;
+        }
+    }
+
+    /**
+     * Adds a newly saved recipe to the shared index, if it's built, or being built (after the
+     * build).
+     *
+     * @param recipeId         The id of the recipe.
+     * @param ingredientIds    The ids of the ingredients of the recipe.
+     */
+    public static void recipeAdded(Long recipeId, Collection<Long> ingredientIds)
+    {
+        RecipeIngredientTagIndex current = instance;
+
+        if(current != null)
+        {
+            current.addRecipe(recipeId, ingredientIds);
+        }
+    }
+
+    /**
+     * Reads a changed (or removed) tag again for the shared index, if it's already built.
+     *
+     * @param tagId    The id of the tag.
+     */
+    public static void tagChanged(Long tagId)
+    {
+        RecipeIngredientTagIndex current = instance;
+
+        if(current != null)
+        {
+            current.reloadTag(tagId);
+        }
+    }
+
+    /**
+     * Checks whether the index can be used for searching.
+     *
+     * @return True, if the index can be used.
+     */
+    public boolean isUsable()
+    {
+        return isUsable;
+    }
+
+    /**
+     * Adds a recipe to the bitmaps of its ingredients' tags.
+     *
+     * @param recipeId         The id of the recipe.
+     * @param ingredientIds    The ids of the ingredients of the recipe.
+     */
+    public void addRecipe(Long recipeId, Collection<Long> ingredientIds)
+    {
+        lock.writeLock().lock();
+
+        try
+        {
+            if(isIndexable(recipeId))
+            {
+                int bit = recipeId.intValue();
+
+                allRecipes.set(bit);
+
+                for(Long ingredientId: ingredientIds)
+                {
+                    Set<Long> tagIds = tagsByIngredient.get(ingredientId);
+
+                    if(tagIds != null)
+                    {
+                        for(Long tagId: tagIds)
+                        {
+                            getOrCreate(tagId).set(bit);
+                        }
+                    }
+                }
+            }
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Sets the ingredients of a tag, and the recipes having them.
+     *
+     * @param tagId            The id of the tag.
+     * @param ingredientIds    The ids of the ingredients with the tag.
+     * @param recipeIds        The ids of the recipes with any of the ingredients.
+     */
+    public void setTag(Long tagId, Collection<Long> ingredientIds, Collection<Long> recipeIds)
+    {
+        lock.writeLock().lock();
+
+        try
+        {
+            /* Drop the tag from the ingredients not having it any more. */
+            Iterator<Map.Entry<Long, Set<Long>>> iterator = tagsByIngredient.entrySet().iterator();
+
+            while(iterator.hasNext())
+            {
+                Map.Entry<Long, Set<Long>> entry = iterator.next();
+
+                entry.getValue().remove(tagId);
+
+                if(entry.getValue().isEmpty())
+                {
+                    iterator.remove();
+                }
+            }
+
+            for(Long ingredientId: ingredientIds)
+            {
+                addIngredientTag(ingredientId, tagId);
+            }
+
+            BitSet recipes = new BitSet();
+
+            for(Long recipeId: recipeIds)
+            {
+                if(isIndexable(recipeId))
+                {
+                    recipes.set(recipeId.intValue());
+                }
+            }
+
+            if(recipes.isEmpty())
+            {
+                recipesByTag.remove(tagId);
+            }
+            else
+            {
+                recipesByTag.put(tagId, recipes);
+            }
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the recipes which have ingredients with all the given tags, but none with the excluded ones.
+     *
+     * @param included    The included tag ids. If empty, every recipe is included.
+     * @param excluded    The excluded tag ids.
+     *
+     * @return The ids of the found recipes in ascending order.
+     */
+    public List<Long> searchAtLeast(List<Long> included, List<Long> excluded)
+    {
+        lock.readLock().lock();
+
+        try
+        {
+            BitSet found = allOf(included);
+
+            found.andNot(anyOf(excluded));
+
+            return toIds(found);
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the recipes which have ingredients with any of the given tags, but none with the excluded ones.
+     *
+     * @param included    The included tag ids. If empty, every recipe is included.
+     * @param excluded    The excluded tag ids.
+     *
+     * @return The ids of the found recipes in ascending order.
+     */
+    public List<Long> searchAnyOf(List<Long> included, List<Long> excluded)
+    {
+        lock.readLock().lock();
+
+        try
+        {
+            BitSet found = included.isEmpty() ? (BitSet)allRecipes.clone() : anyOf(included);
+
+            found.andNot(anyOf(excluded));
+
+            return toIds(found);
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the recipes which have ingredients with all the tags of any of the given groups, but
+     * none with the excluded ones.
+     *
+     * @param included    The included tag ids. The key is the group id. If all groups are empty,
+     *                    every recipe is included.
+     * @param excluded    The excluded tag ids.
+     *
+     * @return The ids of the found recipes in ascending order.
+     */
+    public List<Long> searchGroup(Map<Long, List<Long>> included, List<Long> excluded)
+    {
+        lock.readLock().lock();
+
+        try
+        {
+            BitSet found = null;
+
+            for(List<Long> group: included.values())
+            {
+                if(group != null && !group.isEmpty())
+                {
+                    if(found == null)
+                    {
+                        found = new BitSet();
+                    }
+
+                    found.or(allOf(group));
+                }
+            }
+
+            if(found == null)
+            {
+                found = (BitSet)allRecipes.clone();
+            }
+
+            found.andNot(anyOf(excluded));
+
+            return toIds(found);
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+
+
+    /* -- PROTECTED METHODS ------------------------------------------------ */
+
+
+
+    /* -- PRIVATE METHODS -------------------------------------------------- */
+
+    /**
+     * Loads the index from the recipe, recipe_ingredient, and ingredient_tag_ingredient tables.
+     */
+    private void load()
+    {
+        Logger.info(RecipeIngredientTagIndex.class.getName() + ".load(): building index.");
+
+        long start = System.currentTimeMillis();
+
+        List<SqlRow> recipeRows = Ebean
+            .createSqlQuery("SELECT id FROM recipe")
+            .findList();
+
+        List<SqlRow> tagRows = Ebean
+            .createSqlQuery("SELECT ingredient_tag_id, ingredient_id FROM ingredient_tag_ingredient")
+            .findList();
+
+        List<SqlRow> closureRows = Ebean
+            .createSqlQuery
+            (
+                "SELECT DISTINCT ingredient_tag_ingredient.ingredient_tag_id AS tag_id, recipe_ingredient.recipe_id AS recipe_id " +
+                "FROM ingredient_tag_ingredient " +
+                "JOIN recipe_ingredient ON recipe_ingredient.ingredient_id = ingredient_tag_ingredient.ingredient_id"
+            )
+            .findList();
+
+        lock.writeLock().lock();
+
+        try
+        {
+            for(SqlRow row: recipeRows)
+            {
+                Long recipeId = row.getLong("id");
+
+                if(isIndexable(recipeId))
+                {
+                    allRecipes.set(recipeId.intValue());
+                }
+            }
+
+            for(SqlRow row: tagRows)
+            {
+                addIngredientTag(row.getLong("ingredient_id"), row.getLong("ingredient_tag_id"));
+            }
+
+            for(SqlRow row: closureRows)
+            {
+                Long recipeId = row.getLong("recipe_id");
+
+                if(isIndexable(recipeId))
+                {
+                    getOrCreate(row.getLong("tag_id")).set(recipeId.intValue());
+                }
+            }
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+
+        Logger.info(RecipeIngredientTagIndex.class.getName() + ".load(): index built.\n" +
+            "    rows      = " + closureRows.size() + "\n" +
+            "    tags      = " + recipesByTag.size() + "\n" +
+            "    recipes   = " + allRecipes.cardinality() + "\n" +
+            "    time (ms) = " + (System.currentTimeMillis() - start)
+        );
+    }
+
+    /**
+     * Reads the ingredients, and recipes of a tag from the database.
+     *
+     * @param tagId    The id of the tag.
+     */
+    private void reloadTag(Long tagId)
+    {
+        List<Long> ingredientIds = new ArrayList<Long>();
+        List<Long> recipeIds     = new ArrayList<Long>();
+
+        List<SqlRow> rows = Ebean
+            .createSqlQuery("SELECT ingredient_id FROM ingredient_tag_ingredient WHERE ingredient_tag_id = :tag")
+            .setParameter("tag", tagId)
+            .findList();
+
+        for(SqlRow row: rows)
+        {
+            ingredientIds.add(row.getLong("ingredient_id"));
+        }
+
+        rows = Ebean
+            .createSqlQuery
+            (
+                "SELECT DISTINCT recipe_ingredient.recipe_id AS recipe_id " +
+                "FROM ingredient_tag_ingredient " +
+                "JOIN recipe_ingredient ON recipe_ingredient.ingredient_id = ingredient_tag_ingredient.ingredient_id " +
+                "WHERE ingredient_tag_ingredient.ingredient_tag_id = :tag"
+            )
+            .setParameter("tag", tagId)
+            .findList();
+
+        for(SqlRow row: rows)
+        {
+            recipeIds.add(row.getLong("recipe_id"));
+        }
+
+        setTag(tagId, ingredientIds, recipeIds);
+
+        Logger.debug(RecipeIngredientTagIndex.class.getName() + ".reloadTag():\n" +
+            "    tagId       = " + tagId + "\n" +
+            "    ingredients = " + ingredientIds.size() + "\n" +
+            "    recipes     = " + recipeIds.size()
+        );
+    }
+
+    /**
+     * Checks whether a recipe id fits into the bitmaps. If not, the index is disabled.
+     *
+     * @param recipeId    The recipe id.
+     *
+     * @return True, if the id can be indexed.
+     */
+    private boolean isIndexable(Long recipeId)
+    {
+        boolean result = true;
+
+        if(recipeId == null)
+        {
+            Logger.warn(RecipeIngredientTagIndex.class.getName() + ".isIndexable(): null id!");
+
+            result = false;
+        }
+        else if(recipeId < 0 || recipeId >= Integer.MAX_VALUE)
+        {
+            Logger.error(RecipeIngredientTagIndex.class.getName() + ".isIndexable(): recipe id can't be indexed, index disabled!\n" +
+                "    recipeId = " + recipeId
+            );
+
+            isUsable = false;
+            result   = false;
+        }
+
+        return result;
+    }
+
+    /**
+     * Adds a tag of an ingredient. The write lock must be held.
+     *
+     * @param ingredientId    The id of the ingredient.
+     * @param tagId           The id of the tag.
+     */
+    private void addIngredientTag(Long ingredientId, Long tagId)
+    {
+        Set<Long> tagIds = tagsByIngredient.get(ingredientId);
+
+        if(tagIds == null)
+        {
+            tagIds = new HashSet<Long>();
+
+            tagsByIngredient.put(ingredientId, tagIds);
+        }
+
+        tagIds.add(tagId);
+    }
+
+    /**
+     * Gets the recipes of a tag, creating an empty bitmap if needed. The write lock must be held.
+     *
+     * @param tagId    The id of the tag.
+     *
+     * @return The bitmap of the recipes.
+     */
+    private BitSet getOrCreate(Long tagId)
+    {
+        BitSet result = recipesByTag.get(tagId);
+
+        if(result == null)
+        {
+            result = new BitSet();
+
+            recipesByTag.put(tagId, result);
+        }
+
+        return result;
+    }
+
+    /**
+     * Gets the recipes having ingredients with all the given tags. The read lock must be held.
+     *
+     * @param tagIds    The tag ids. If empty, every recipe is returned.
+     *
+     * @return A new bitmap of the recipes.
+     */
+    private BitSet allOf(List<Long> tagIds)
+    {
+        BitSet result = (BitSet)allRecipes.clone();
+
+        for(Long tagId: tagIds)
+        {
+            BitSet recipes = recipesByTag.get(tagId);
+
+            if(recipes == null)
+            {
+                /* No recipe has this tag, so the intersection is empty. */
+                result.clear();
+            }
+            else
+            {
+                result.and(recipes);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Gets the recipes having ingredients with any of the given tags. The read lock must be held.
+     *
+     * @param tagIds    The tag ids.
+     *
+     * @return A new bitmap of the recipes.
+     */
+    private BitSet anyOf(List<Long> tagIds)
+    {
+        BitSet result = new BitSet();
+
+        for(Long tagId: tagIds)
+        {
+            BitSet recipes = recipesByTag.get(tagId);
+
+            if(recipes != null)
+            {
+                result.or(recipes);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Converts a recipe bitmap to a list of recipe ids.
+     *
+     * @param recipes    The bitmap.
+     *
+     * @return The recipe ids in ascending order.
+     */
+    private static List<Long> toIds(BitSet recipes)
+    {
+        List<Long> result = new ArrayList<Long>(recipes.cardinality());
+
+        for(int i = recipes.nextSetBit(0); i >= 0; i = recipes.nextSetBit(i + 1))
+        {
+            result.add((long)i);
+        }
+
+        return result;
+    }
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* OTHERS                                                                */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC OTHERS ---------------------------------------------------- */
+
+
+
+    /* -- PROTECTED OTHERS ------------------------------------------------- */
+
+
+
+    /* -- PRIVATE OTHERS --------------------------------------------------- */
+}
@@ -0,0 +1,593 @@
+/*
+ *  Copyright 2016 Oliver Dozsa
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package indexes;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+import com.avaje.ebean.Ebean;
+import com.avaje.ebean.SqlRow;
+
+import play.Logger;
+
+/**
+ * Resident full-text index of recipe names. Names are split to words, which
+ * are lower cased, and stripped of diacritics, so "Gulyasleves" is found by
+ * "gulyas". For every word the set of recipes having it is stored as a bitmap
+ * (indexed by recipe id); the words are indexed by their trigrams, so a query
+ * word is found inside longer (compound) words too. A recipe matches if each
+ * query word is in one of its words.
+ *
+ * @author Oliver Dozsa
+ */
+public class RecipeNameIndex
+{
+    /* --------------------------------------------------------------------- */
+    /* ATTRIBUTES                                                            */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC ATTRIBUTES ------------------------------------------------ */
+
+
+
+    /* -- PROTECTED ATTRIBUTES --------------------------------------------- */
+
+
+
+    /* -- PRIVATE ATTRIBUTES ----------------------------------------------- */
+
+    /**
+     * Length of the indexed grams of the words.
+     */
+    private static final int GRAM_LENGTH = 3;
+
+    /**
+     * Rank of a query word equal to a word of the name.
+     */
+    private static final int RANK_EQUAL = 0;
+
+    /**
+     * Rank of a query word starting a word of the name.
+     */
+    private static final int RANK_PREFIX = 1;
+
+    /**
+     * Rank of a query word inside a word of the name.
+     */
+    private static final int RANK_INSIDE = 2;
+
+    /**
+     * Combining marks, left after decomposing accented letters.
+     */
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+
+    /**
+     * Separators of the words.
+     */
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    /**
+     * The shared instance, built from the database on first access.
+     */
+    private static volatile RecipeNameIndex instance;
+
+    /**
+     * The indexed words; the index of a word is its id.
+     */
+    private List<String> words;
+
+    /**
+     * Word -> id of the word.
+     */
+    private Map<String, Integer> wordIds;
+
+    /**
+     * Word id -> recipes (bitmap of recipe ids) having the word in their names.
+     */
+    private List<BitSet> recipesByWord;
+
+    /**
+     * Trigram -> words (bitmap of word ids) containing it.
+     */
+    private Map<String, BitSet> wordsByGram;
+
+    /**
+     * Recipe id -> number of words in the name.
+     */
+    private int[] wordCounts;
+
+    /**
+     * Guards the bitmaps, as searches can run parallel with the loader.
+     */
+    private ReadWriteLock lock;
+
+    /**
+     * Set to false if a recipe id does not fit into a bitmap index. In this case
+     * the index must not be used.
+     */
+    private boolean isUsable;
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* METHODS                                                               */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC METHODS --------------------------------------------------- */
+
+    /**
+     * Creates an empty index.
+     */
+    public RecipeNameIndex()
+    {
+        words         = new ArrayList<String>();
+        wordIds       = new HashMap<String, Integer>();
+        recipesByWord = new ArrayList<BitSet>();
+        wordsByGram   = new HashMap<String, BitSet>();
+        wordCounts    = new int[1024];
+        lock          = new ReentrantReadWriteLock();
+        isUsable      = true;
+    }
+
+    /**
+     * Gets the shared index. The index is built from the recipe table on first access.
+     *
+     * @return The shared index.
+     */
+    public static RecipeNameIndex getInstance()
+    {
+        RecipeNameIndex result = instance;
+
+        if(result == null)
+        {
+            synchronized(RecipeNameIndex.class)
+            {
+                result = instance;
+
+                if(result == null)
+                {
+                    result = new RecipeNameIndex();
+
+                    /* Published before loading, like RecipeIngredientIndex, so no added recipe is lost. */
+                    result.lock.writeLock().lock();
+
+                    try
+                    {
+                        instance = result;
+
+                        result.load();
+                    }
+                    catch(RuntimeException e)
+                    {
+                        instance = null;
+
+                        throw e;
+                    }
+                    finally
+                    {
+                        result.lock.writeLock().unlock();
+                    }
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Drops the shared index. It will be rebuilt on next access.
+     */
+    public static void invalidate()
+    {
+        Logger.debug(RecipeNameIndex.class.getName() + ".invalidate()");
+
+        synchronized(RecipeNameIndex.class)
+        {
+            instance = null;
+        }
+    }
+
+    /**
+     * Adds a newly saved recipe to the shared index, if it's built, or being built (after the
+     * build).
+     *
+     * @param recipeId    The id of the recipe.
+     * @param name        The name of the recipe.
+     */
+    public static void recipeAdded(Long recipeId, String name)
+    {
+        RecipeNameIndex current = instance;
+
+        if(current != null)
+        {
+            current.addRecipe(recipeId, name);
+        }
+    }
+
+    /**
+     * Splits a text to words, lower cased, and without diacritics.
+     *
+     * @param text    The text.
+     *
+     * @return The words, in the order of the text.
+     */
+    public static List<String> tokenize(String text)
+    {
+        List<String> result = new ArrayList<String>();
+
+        if(text != null)
+        {
+            String folded = Normalizer.normalize(text.toLowerCase(Locale.ROOT), Normalizer.Form.NFD);
+
+            folded = COMBINING_MARKS.matcher(folded).replaceAll("");
+
+            for(String word: SEPARATORS.split(folded))
+            {
+                if(!word.isEmpty())
+                {
+                    result.add(word);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Checks whether the index can be used for searching.
+     *
+     * @return True, if the index can be used.
+     */
+    public boolean isUsable()
+    {
+        return isUsable;
+    }
+
+    /**
+     * Adds a recipe name to the index.
+     *
+     * @param recipeId    The id of the recipe.
+     * @param name        The name of the recipe.
+     */
+    public void addRecipe(Long recipeId, String name)
+    {
+        lock.writeLock().lock();
+
+        try
+        {
+            if(recipeId == null || name == null)
+            {
+                Logger.warn(RecipeNameIndex.class.getName() + ".addRecipe(): null value!\n" +
+                    "    recipeId = " + recipeId + "\n" +
+                    "    name     = " + name
+                );
+            }
+            else if(recipeId < 0 || recipeId >= Integer.MAX_VALUE)
+            {
+                Logger.error(RecipeNameIndex.class.getName() + ".addRecipe(): recipe id can't be indexed, index disabled!\n" +
+                    "    recipeId = " + recipeId
+                );
+
+                isUsable = false;
+            }
+            else
+            {
+                int bit = recipeId.intValue();
+
+                List<String> nameWords = tokenize(name);
+
+                for(String word: nameWords)
+                {
+                    recipesByWord.get(getWordId(word)).set(bit);
+                }
+
+                if(bit >= wordCounts.length)
+                {
+                    wordCounts = Arrays.copyOf(wordCounts, Math.max(bit + 1, wordCounts.length * 2));
+                }
+
+                wordCounts[bit] = nameWords.size();
+            }
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the recipes having every word of the query in their names, at the
+     * start, or inside of a word. Results are ranked by how the query words
+     * match: whole words first, then word starts, then insides; then shorter
+     * names first, and finally by id.
+     *
+     * @param query    The query.
+     *
+     * @return The ids of the found recipes, best matches first. Empty, if the
+     *         query has no words.
+     */
+    public List<Long> search(String query)
+    {
+        List<Long> result = new ArrayList<Long>();
+
+        List<String> queryWords = tokenize(query);
+
+        lock.readLock().lock();
+
+        try
+        {
+            BitSet found      = null;
+            final int[] ranks = new int[wordCounts.length];
+
+            for(String queryWord: queryWords)
+            {
+                BitSet[] byRank = findRecipes(queryWord);
+
+                BitSet matching = new BitSet();
+
+                for(int rank = RANK_EQUAL; rank <= RANK_INSIDE; ++rank)
+                {
+                    matching.or(byRank[rank]);
+                }
+
+                if(found == null)
+                {
+                    found = matching;
+                }
+                else
+                {
+                    found.and(matching);
+                }
+
+                for(int i = found.nextSetBit(0); i >= 0; i = found.nextSetBit(i + 1))
+                {
+                    ranks[i] += getRank(byRank, i);
+                }
+            }
+
+            List<Integer> matches = new ArrayList<Integer>();
+
+            if(found != null)
+            {
+                for(int i = found.nextSetBit(0); i >= 0; i = found.nextSetBit(i + 1))
+                {
+                    matches.add(i);
+                }
+            }
+
+            final int[] counts = wordCounts;
+
+            Collections.sort(matches, new Comparator<Integer>()
+            {
+                @Override
+                public int compare(Integer a, Integer b)
+                {
+                    int result = Integer.compare(ranks[a], ranks[b]);
+
+                    if(result == 0)
+                    {
+                        result = Integer.compare(counts[a], counts[b]);
+                    }
+
+                    if(result == 0)
+                    {
+                        result = Integer.compare(a, b);
+                    }
+
+                    return result;
+                }
+            });
+
+            for(Integer match: matches)
+            {
+                result.add((long)match);
+            }
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+
+        return result;
+    }
+
+
+
+    /* -- PROTECTED METHODS ------------------------------------------------ */
+
+
+
+    /* -- PRIVATE METHODS -------------------------------------------------- */
+
+    /**
+     * Loads the index from the recipe table.
+     */
+    private void load()
+    {
+        Logger.info(RecipeNameIndex.class.getName() + ".load(): building index.");
+
+        long start = System.currentTimeMillis();
+
+        List<SqlRow> rows = Ebean
+            .createSqlQuery("SELECT id, name FROM recipe WHERE name IS NOT NULL")
+            .findList();
+
+        for(SqlRow row: rows)
+        {
+            addRecipe(row.getLong("id"), row.getString("name"));
+        }
+
+        Logger.info(RecipeNameIndex.class.getName() + ".load(): index built.\n" +
+            "    recipes   = " + rows.size() + "\n" +
+            "    words     = " + words.size() + "\n" +
+            "    time (ms) = " + (System.currentTimeMillis() - start)
+        );
+    }
+
+    /**
+     * Gets the id of a word, adding the word if it's new. The write lock must be held.
+     *
+     * @param word    The word.
+     *
+     * @return The id.
+     */
+    private int getWordId(String word)
+    {
+        Integer result = wordIds.get(word);
+
+        if(result == null)
+        {
+            result = words.size();
+
+            words.add(word);
+            wordIds.put(word, result);
+            recipesByWord.add(new BitSet());
+
+            for(int i = 0; i + GRAM_LENGTH <= word.length(); ++i)
+            {
+                String gram = word.substring(i, i + GRAM_LENGTH);
+                BitSet bits = wordsByGram.get(gram);
+
+                if(bits == null)
+                {
+                    bits = new BitSet();
+
+                    wordsByGram.put(gram, bits);
+                }
+
+                bits.set(result);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Gets the recipes having a word containing the query word, by rank. The
+     * read lock must be held.
+     *
+     * @param queryWord    The query word.
+     *
+     * @return The recipes, indexed by RANK_EQUAL, RANK_PREFIX, and RANK_INSIDE.
+     */
+    private BitSet[] findRecipes(String queryWord)
+    {
+        BitSet[] result = new BitSet[] { new BitSet(), new BitSet(), new BitSet() };
+
+        BitSet candidates = null;
+
+        if(queryWord.length() < GRAM_LENGTH)
+        {
+            /* Short words are checked against every word; there are few words compared to names. */
+            candidates = new BitSet();
+
+            candidates.set(0, words.size());
+        }
+        else
+        {
+            for(int i = 0; i + GRAM_LENGTH <= queryWord.length() && (candidates == null || !candidates.isEmpty()); ++i)
+            {
+                BitSet bits = wordsByGram.get(queryWord.substring(i, i + GRAM_LENGTH));
+
+                if(bits == null)
+                {
+                    candidates = new BitSet();
+                }
+                else if(candidates == null)
+                {
+                    candidates = (BitSet)bits.clone();
+                }
+                else
+                {
+                    candidates.and(bits);
+                }
+            }
+        }
+
+        for(int wordId = candidates.nextSetBit(0); wordId >= 0; wordId = candidates.nextSetBit(wordId + 1))
+        {
+            String word = words.get(wordId);
+
+            if(word.equals(queryWord))
+            {
+                result[RANK_EQUAL].or(recipesByWord.get(wordId));
+            }
+            else if(word.startsWith(queryWord))
+            {
+                result[RANK_PREFIX].or(recipesByWord.get(wordId));
+            }
+            else if(word.contains(queryWord))
+            {
+                result[RANK_INSIDE].or(recipesByWord.get(wordId));
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Gets the best rank of a recipe for a query word.
+     *
+     * @param byRank      The recipes by rank.
+     * @param recipeId    The recipe id.
+     *
+     * @return The rank.
+     */
+    private static int getRank(BitSet[] byRank, int recipeId)
+    {
+        int result = RANK_INSIDE;
+
+        for(int rank = RANK_INSIDE; rank >= RANK_EQUAL; rank--)
+        {
+            if(byRank[rank].get(recipeId))
+            {
+                result = rank;
+            }
+        }
+
+        return result;
+    }
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* OTHERS                                                                */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC OTHERS ---------------------------------------------------- */
+
+
+
+    /* -- PROTECTED OTHERS ------------------------------------------------- */
+
+
+
+    /* -- PRIVATE OTHERS --------------------------------------------------- */
+}
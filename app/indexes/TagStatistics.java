@@ -0,0 +1,449 @@
+/*
+ *  Copyright 2016 Oliver Dozsa
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package indexes;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.avaje.ebean.Ebean;
+import com.avaje.ebean.SqlRow;
+
+import play.Logger;
+import play.Play;
+
+/**
+ * Number of recipes per recipe tag, and per ingredient tag, for estimating
+ * the selectivity of the search predicates. Read from the database on first
+ * access, and kept up to date with the recipes added by the loader; read
+ * again in the background after a configured age, to follow the edited tags.
+ *
+ * @author Oliver Dozsa
+ */
+public class TagStatistics
+{
+    /* --------------------------------------------------------------------- */
+    /* ATTRIBUTES                                                            */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC ATTRIBUTES ------------------------------------------------ */
+
+    /**
+     * Configuration key of the age (in milliseconds) after which the
+     * statistics are read again.
+     */
+    public static final String MAX_AGE_CONFIG_KEY = "openrecipes.search.planner.statisticsMaxAge";
+
+
+
+    /* -- PROTECTED ATTRIBUTES --------------------------------------------- */
+
+
+
+    /* -- PRIVATE ATTRIBUTES ----------------------------------------------- */
+
+    /**
+     * Default age after which the statistics are read again.
+     */
+    private static final long DEFAULT_MAX_AGE = 600000;
+
+    /**
+     * The shared instance, read from the database on first access.
+     */
+    private static volatile TagStatistics instance;
+
+    /**
+     * True, if a background refresh is requested, but not yet finished.
+     */
+    private static final AtomicBoolean isRefreshPending = new AtomicBoolean(false);
+
+    /**
+     * Runs the background refreshes, one at a time.
+     */
+    private static final ExecutorService refreshExecutor = Executors.newSingleThreadExecutor(new ThreadFactory()
+    {
+        @Override
+        public Thread newThread(Runnable runnable)
+        {
+            Thread result = new Thread(runnable, "tag-statistics-refresh");
+
+            result.setDaemon(true);
+
+            return result;
+        }
+    });
+
+    /**
+     * The number of recipes.
+     */
+    private int recipeCount;
+
+    /**
+     * Recipe tag id -> number of recipes with the tag.
+     */
+    private Map<Long, Integer> recipesByRecipeTag = new HashMap<Long, Integer>();
+
+    /**
+     * Ingredient tag id -> number of recipes with an ingredient with the tag.
+     */
+    private Map<Long, Integer> recipesByIngredientTag = new HashMap<Long, Integer>();
+
+    /**
+     * Ingredient id -> ids of the tags of the ingredient.
+     */
+    private Map<Long, List<Long>> tagsByIngredient = new HashMap<Long, List<Long>>();
+
+    /**
+     * Time of reading the statistics, in milliseconds.
+     */
+    private long loadTime;
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* METHODS                                                               */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC METHODS --------------------------------------------------- */
+
+    /**
+     * Creates empty statistics.
+     */
+    public TagStatistics()
+    {
+        loadTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Gets the shared statistics. They are read from the database on first
+     * access. When they are older than the configured age, they are read again
+     * in the background, and the old ones are served meanwhile.
+     *
+     * @return The shared statistics.
+     */
+    public static TagStatistics getInstance()
+    {
+        TagStatistics result = instance;
+
+        if(result == null)
+        {
+            synchronized(TagStatistics.class)
+            {
+                result = instance;
+
+                if(result == null)
+                {
+                    result = new TagStatistics();
+
+                    result.load();
+
+                    instance = result;
+                }
+            }
+        }
+        else
+        {
+            long maxAge = Play.application().configuration().getLong(MAX_AGE_CONFIG_KEY, DEFAULT_MAX_AGE);
+
+            if(System.currentTimeMillis() - result.getLoadTime() > maxAge)
+            {
+                requestRefresh(result);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Drops the shared statistics. They will be read again on next access.
+     */
+    public static void invalidate()
+    {
+        Logger.debug(TagStatistics.class.getName() + ".invalidate()");
+
+        synchronized(TagStatistics.class)
+        {
+            instance = null;
+        }
+    }
+
+    /**
+     * Counts a newly saved recipe in the shared statistics, if they're
+     * already read.
+     *
+     * @param ingredientIds    The ids of the ingredients of the recipe.
+     */
+    public static void recipeAdded(Collection<Long> ingredientIds)
+    {
+        TagStatistics current = instance;
+
+        if(current != null)
+        {
+            current.addRecipe(ingredientIds);
+        }
+    }
+
+    /**
+     * Counts a recipe without recipe tags.
+     *
+     * @param ingredientIds    The ids of the ingredients of the recipe.
+     */
+    public synchronized void addRecipe(Collection<Long> ingredientIds)
+    {
+        recipeCount++;
+
+        /* A recipe counts once for a tag, even with more ingredients of it. */
+        Set<Long> tagIds = new HashSet<Long>();
+
+        for(Long ingredientId : ingredientIds)
+        {
+            List<Long> ingredientTagIds = tagsByIngredient.get(ingredientId);
+
+            if(ingredientTagIds != null)
+            {
+                tagIds.addAll(ingredientTagIds);
+            }
+        }
+
+        for(Long tagId : tagIds)
+        {
+            increment(recipesByIngredientTag, tagId, 1);
+        }
+    }
+
+    /**
+     * Adds an ingredient tag of an ingredient. Recipes counted before are not
+     * counted for the tag.
+     *
+     * @param ingredientId    The id of the ingredient.
+     * @param tagId           The id of the tag.
+     */
+    public synchronized void addIngredientTag(Long ingredientId, Long tagId)
+    {
+        List<Long> tagIds = tagsByIngredient.get(ingredientId);
+
+        if(tagIds == null)
+        {
+            tagIds = new ArrayList<Long>();
+
+            tagsByIngredient.put(ingredientId, tagIds);
+        }
+
+        tagIds.add(tagId);
+    }
+
+    /**
+     * Sets the number of recipes with a recipe tag.
+     *
+     * @param tagId    The id of the tag.
+     * @param count    The number of recipes.
+     */
+    public synchronized void setRecipeTagCount(Long tagId, int count)
+    {
+        recipesByRecipeTag.put(tagId, count);
+    }
+
+    /**
+     *
+     * @return The number of recipes.
+     */
+    public synchronized int getRecipeCount()
+    {
+        return recipeCount;
+    }
+
+    /**
+     *
+     * @param tagId    The id of a recipe tag.
+     *
+     * @return The number of recipes with the tag.
+     */
+    public synchronized int getRecipeTagCount(Long tagId)
+    {
+        Integer result = recipesByRecipeTag.get(tagId);
+
+        return (result != null) ? result : 0;
+    }
+
+    /**
+     *
+     * @param tagId    The id of an ingredient tag.
+     *
+     * @return The number of recipes with an ingredient with the tag.
+     */
+    public synchronized int getIngredientTagCount(Long tagId)
+    {
+        Integer result = recipesByIngredientTag.get(tagId);
+
+        return (result != null) ? result : 0;
+    }
+
+
+
+    /* -- PROTECTED METHODS ------------------------------------------------ */
+
+
+
+    /* -- PRIVATE METHODS -------------------------------------------------- */
+
+    /**
+     * Reads the statistics again in the background, unless a refresh is
+     * already running. The refreshed statistics replace the expired ones only
+     * if they weren't dropped or replaced meanwhile; dropped statistics are
+     * read again on next access.
+     *
+     * @param expired    The expired statistics.
+     */
+    private static void requestRefresh(final TagStatistics expired)
+    {
+        if(isRefreshPending.compareAndSet(false, true))
+        {
+            Logger.debug(TagStatistics.class.getName() + ".requestRefresh(): Refresh scheduled.");
+
+            refreshExecutor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        TagStatistics refreshed = new TagStatistics();
+
+                        refreshed.load();
+
+                        synchronized(TagStatistics.class)
+                        {
+                            if(instance == expired)
+                            {
+                                instance = refreshed;
+                            }
+                        }
+                    }
+                    catch(Exception e)
+                    {
+                        Logger.error(TagStatistics.class.getName() + ".requestRefresh(): Refresh failed!", e);
+                    }
+                    finally
+                    {
+                        isRefreshPending.set(false);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     *
+     * @return The time of reading the statistics, in milliseconds.
+     */
+    private synchronized long getLoadTime()
+    {
+        return loadTime;
+    }
+
+    /**
+     * Reads the statistics from the database.
+     */
+    private synchronized void load()
+    {
+        long start = System.currentTimeMillis();
+
+        recipeCount = Ebean.createSqlQuery("SELECT COUNT(*) AS cnt FROM recipe").findUnique().getInteger("cnt");
+
+        List<SqlRow> rows = Ebean
+            .createSqlQuery("SELECT recipe_tag_id, COUNT(*) AS cnt FROM recipe_tag_recipe GROUP BY recipe_tag_id")
+            .findList();
+
+        for(SqlRow row : rows)
+        {
+            recipesByRecipeTag.put(row.getLong("recipe_tag_id"), row.getInteger("cnt"));
+        }
+
+        rows = Ebean
+            .createSqlQuery("SELECT ingredient_tag_id, ingredient_id FROM ingredient_tag_ingredient")
+            .findList();
+
+        for(SqlRow row : rows)
+        {
+            addIngredientTag(row.getLong("ingredient_id"), row.getLong("ingredient_tag_id"));
+        }
+
+        rows = Ebean
+            .createSqlQuery
+            (
+                "SELECT ingredient_tag_ingredient.ingredient_tag_id AS tag_id, COUNT(DISTINCT recipe_ingredient.recipe_id) AS cnt " +
+                "FROM ingredient_tag_ingredient " +
+                "JOIN recipe_ingredient ON recipe_ingredient.ingredient_id = ingredient_tag_ingredient.ingredient_id " +
+                "GROUP BY ingredient_tag_ingredient.ingredient_tag_id"
+            )
+            .findList();
+
+        for(SqlRow row : rows)
+        {
+            recipesByIngredientTag.put(row.getLong("tag_id"), row.getInteger("cnt"));
+        }
+
+        loadTime = System.currentTimeMillis();
+
+        Logger.info(TagStatistics.class.getName() + ".load(): statistics read.\n" +
+            "    recipes         = " + recipeCount + "\n" +
+            "    recipe tags     = " + recipesByRecipeTag.size() + "\n" +
+            "    ingredient tags = " + recipesByIngredientTag.size() + "\n" +
+            "    time (ms)       = " + (loadTime - start)
+        );
+    }
+
+    /**
+     * Adds to a count.
+     *
+     * @param counts    The counts.
+     * @param key       The key of the count.
+     * @param delta     The value to add.
+     */
+    private static void increment(Map<Long, Integer> counts, Long key, int delta)
+    {
+        Integer count = counts.get(key);
+
+        counts.put(key, ((count != null) ? count : 0) + delta);
+    }
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* OTHERS                                                                */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC OTHERS ---------------------------------------------------- */
+
+
+
+    /* -- PROTECTED OTHERS ------------------------------------------------- */
+
+
+
+    /* -- PRIVATE OTHERS --------------------------------------------------- */
+}
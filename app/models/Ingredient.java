@@ -20,6 +20,7 @@ package models;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
@@ -106,19 +107,21 @@ public class Ingredient extends Model
      * 
      * @param query         The query string.
      * @param languageID    The query language.
+     * @param limit         The maximum number of ingredients to get.
      * 
-     * @return A list of ingredients as described above, or an empty list is returned, if none found.
+     * @return A list of ingredients as described above, best matches first, or an empty list is returned, if none found.
      * */
-    public static List<Ingredient> getIngredientsLikeByLanguage(String query, Long languageID)
+    public static List<Ingredient> getIngredientsLikeByLanguage(String query, Long languageID, int limit)
     {
         Logger.debug(Ingredient.class.getName() + ".getIngredientsLikeByLanguage():\n" +
             "    query      = " + query + "\n" +
-            "    languageID = " + languageID
+            "    languageID = " + languageID + "\n" +
+            "    limit      = " + limit
         );
 
         List<Ingredient> result = new ArrayList<Ingredient>();
         
-        List<IngredientName> names = IngredientName.getNamesLikeByLanguage(query, languageID);
+        List<IngredientName> names = IngredientName.getNamesLikeByLanguage(query, languageID, limit);
         
         for(IngredientName name: names)
         {
@@ -163,6 +166,26 @@ public class Ingredient extends Model
         return result;
     }
     
+    /**
+     * Gets the names of the given ingredients in the given language, with a single query.
+     * 
+     * @param ingredients    The ingredients.
+     * @param languageID     The id of the language.
+     * 
+     * @return Ingredient id -> name in the language. Ingredients without such name are missing.
+     * */
+    public static Map<Long, IngredientName> getNamesByLanguage(List<Ingredient> ingredients, Long languageID)
+    {
+        List<Long> ingredientIDs = new ArrayList<Long>();
+        
+        for(Ingredient ingredient: ingredients)
+        {
+            ingredientIDs.add(ingredient.id);
+        }
+        
+        return IngredientName.getNamesByLanguage(ingredientIDs, languageID);
+    }
+    
     /**
      * Gets the ingredients with the given tag.
      * 
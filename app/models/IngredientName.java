@@ -19,7 +19,10 @@
 package models;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
@@ -29,6 +32,7 @@ import javax.persistence.ManyToOne;
 import com.avaje.ebean.Expr;
 import com.avaje.ebean.Model;
 
+import indexes.IngredientNameIndex;
 import play.Logger;
 
 /**
@@ -92,34 +96,32 @@ public class IngredientName extends Model
     
     /**
      * Gets ingredient names with name like the given query string in the given language.
+     * The lookup is done by the resident trigram index of ingredient names.
      * 
      * @param query         The query string.
      * @param languageID    The id of the language.
+     * @param limit         The maximum number of names to get.
      * 
-     * @return List of ingredient names as described above, or an empty list if none found.
+     * @return List of ingredient names as described above, best matches first, or an empty list if none found.
      * */
-    public static List<IngredientName> getNamesLikeByLanguage(String query, Long languageID)
+    public static List<IngredientName> getNamesLikeByLanguage(String query, Long languageID, int limit)
     {
         Logger.debug(IngredientName.class.getName() + ".getNamesLikeByLanguage()\n" +
             "    query      = " + query + "\n" +
-            "    languageID = " + languageID
+            "    languageID = " + languageID + "\n" +
+            "    limit      = " + limit
         );
 
         List<IngredientName> result = null;
 
         if(query != null && languageID != null)
         {
-            result = find
-                .fetch("ingredient")
-                .where()
-                    .ilike("name", "%" + query + "%")
-                    .eq("language_id", languageID)
-                .findList();
+            result = getNamesInOrder(IngredientNameIndex.getInstance().searchNames(query, languageID, limit));
             
             /* Check for aliases if result is empty. */
             if(result == null || result.size() == 0)
             {
-                result = getNamesByAliasesLikeByLanguage(query, languageID);
+                result = getNamesByAliasesLikeByLanguage(query, languageID, limit);
             }
         }
         else
@@ -185,6 +187,61 @@ public class IngredientName extends Model
 
 
 
+    /**
+     * Gets the names of the given ingredients in the given language, with a single query.
+     *
+     * @param ingredientIDs    The ids of the ingredients.
+     * @param languageID       The language ID.
+     *
+     * @return Ingredient id -> name in the language. Ingredients without such name are missing.
+     * */
+    public static Map<Long, IngredientName> getNamesByLanguage(Collection<Long> ingredientIDs, Long languageID)
+    {
+        Logger.debug(IngredientName.class.getName() + ".getNamesByLanguage()\n" +
+            "    ingredientIDs = " + ingredientIDs + "\n" +
+            "    languageID    = " + languageID
+        );
+
+        Map<Long, IngredientName> result = new HashMap<Long, IngredientName>();
+
+        if(ingredientIDs != null && languageID != null)
+        {
+            if(!ingredientIDs.isEmpty())
+            {
+                List<IngredientName> names = find
+                    .where()
+                        .in("ingredient.id", ingredientIDs)
+                        .eq("language.id", languageID)
+                    .findList();
+
+                for(IngredientName ingName: names)
+                {
+                    if(!result.containsKey(ingName.ingredient.id))
+                    {
+                        result.put(ingName.ingredient.id, ingName);
+                    }
+                }
+            }
+        }
+        else
+        {
+            /* Log the erroneous parameter. */
+            if(ingredientIDs == null)
+            {
+                Logger.error(IngredientName.class.getName() + ".getNamesByLanguage(): ingredientIDs is null!");
+            }
+
+            if(languageID == null)
+            {
+                Logger.error(IngredientName.class.getName() + ".getNamesByLanguage(): languageID is null!");
+            }
+        }
+
+        return result;
+    }
+
+
+
     /* -- PROTECTED METHODS ------------------------------------------------ */
 
 
@@ -193,33 +250,48 @@ public class IngredientName extends Model
     
     /**
      * Gets ingredient names by aliases with name like the given query string in the given language.
+     * The aliases are looked up in the trigram index, which already maps each alias to the names of
+     * its ingredient in the same language; the names of all matching aliases are then loaded with a
+     * single query, without duplicates.
      * 
      * @param query         The query string.
      * @param languageID    The id of the language.
+     * @param limit         The maximum number of names to get.
      * 
      * @return List of ingredient names by aliases as described above, or an empty list if none found.
      * */
-    private static List<IngredientName> getNamesByAliasesLikeByLanguage(String query, Long languageID)
+    private static List<IngredientName> getNamesByAliasesLikeByLanguage(String query, Long languageID, int limit)
+    {
+        return getNamesInOrder(IngredientNameIndex.getInstance().searchAliases(query, languageID, limit));
+    }
+    
+    /**
+     * Gets ingredient names (with their ingredients) by ids, in the order of the ids.
+     * 
+     * @param ids    The ids of the names.
+     * 
+     * @return List of the found ingredient names.
+     * */
+    private static List<IngredientName> getNamesInOrder(List<Long> ids)
     {
         List<IngredientName> result = new ArrayList<IngredientName>();
         
-        List<IngredientAlias> aliases = IngredientAlias.find
-            .fetch("ingredient")
-            .where()
-                .ilike("name", "%" + query + "%")
-                .eq("language_id", languageID)
-            .findList();
-        
-        if(aliases != null)
-        {   
-            for(IngredientAlias alias: aliases)
+        if(!ids.isEmpty())
+        {
+            Map<Long, IngredientName> namesById = new HashMap<Long, IngredientName>();
+            
+            for(IngredientName ingName: find.fetch("ingredient").where().idIn(ids).findList())
+            {
+                namesById.put(ingName.id, ingName);
+            }
+            
+            for(Long id: ids)
             {
-                for(IngredientName ingName: alias.ingredient.names)
+                IngredientName ingName = namesById.get(id);
+                
+                if(ingName != null)
                 {
-                    if(ingName.language.id == languageID)
-                    {
-                        result.add(ingName);
-                    }
+                    result.add(ingName);
                 }
             }
         }
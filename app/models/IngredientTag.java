@@ -29,6 +29,7 @@ import javax.persistence.ManyToMany;
 import com.avaje.ebean.Model;
 import com.avaje.ebean.Query;
 
+import indexes.RecipeIngredientTagIndex;
 import play.Logger;
 
 /**
@@ -84,6 +85,43 @@ public class IngredientTag extends Model
 
     /* -- PUBLIC METHODS --------------------------------------------------- */
     
+    /**
+     * Saves the tag, and updates the ingredient tag index.
+     * */
+    @Override
+    public void save()
+    {
+        super.save();
+        
+        RecipeIngredientTagIndex.tagChanged(id);
+    }
+    
+    /**
+     * Updates the tag, and the ingredient tag index.
+     * */
+    @Override
+    public void update()
+    {
+        super.update();
+        
+        RecipeIngredientTagIndex.tagChanged(id);
+    }
+    
+    /**
+     * Deletes the tag, and removes it from the ingredient tag index.
+     * 
+     * @return True, if the tag was deleted.
+     * */
+    @Override
+    public boolean delete()
+    {
+        boolean result = super.delete();
+        
+        RecipeIngredientTagIndex.tagChanged(id);
+        
+        return result;
+    }
+    
     /**
      * Get tags by name like the given name.
      *
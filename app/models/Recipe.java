@@ -20,6 +20,7 @@ package models;
 
 import java.util.List;
 
+import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
@@ -58,6 +59,16 @@ public class Recipe extends Model
      * */
     public static final Integer MAX_NUM_OF_INGREDIENTS = 30;
     
+    /**
+     * The maximum length of the name column. Longer names are kept in the overflow column.
+     * */
+    public static final int MAX_NAME_LENGTH = 255;
+    
+    /**
+     * The maximum length of the url column. Longer urls are kept in the overflow column.
+     * */
+    public static final int MAX_URL_LENGTH = 1024;
+    
     /**
      * The unique id.
      * */
@@ -66,17 +77,43 @@ public class Recipe extends Model
     public Long id;
     
     /**
-     * The name.
+     * The name. For names longer than MAX_NAME_LENGTH, it's the beginning of the
+     * name; the whole name is in nameOverflow. Set by setFullName().
      */
-    @Lob
+    @Column(length = MAX_NAME_LENGTH)
     public String name;
     
     /**
-     * URL of the recipe.
+     * The whole name, if it's longer than MAX_NAME_LENGTH; null otherwise.
      */
     @Lob
+    public String nameOverflow;
+    
+    /**
+     * URL of the recipe. For urls longer than MAX_URL_LENGTH, it's the beginning of
+     * the url; the whole url is in urlOverflow. Set by setFullUrl().
+     */
+    @Column(length = MAX_URL_LENGTH)
     public String url;
     
+    /**
+     * The whole url, if it's longer than MAX_URL_LENGTH; null otherwise.
+     */
+    @Lob
+    public String urlOverflow;
+    
+    /**
+     * Hash of the whole url, for looking up recipes by url through a unique index.
+     * Computed by KnownRecipeUrls.hashUrl().
+     */
+    public Long urlHash;
+    
+    /**
+     * The number of ingredients (recipe_ingredient rows) of the recipe. Used by the EXACT
+     * ingredient search, so it must be kept in sync with the ingredients.
+     */
+    public Integer ingredientCount;
+    
     /**
      * The list of ingredients.
      * */
@@ -110,6 +147,94 @@ public class Recipe extends Model
 
     /* -- PUBLIC METHODS --------------------------------------------------- */
 
+    /**
+     * Sets the name, putting long names to the overflow column.
+     *
+     * @param fullName    The name.
+     */
+    public void setFullName(String fullName)
+    {
+        name         = toStoredName(fullName);
+        nameOverflow = null;
+
+        if(fullName != null && fullName.length() > MAX_NAME_LENGTH)
+        {
+            nameOverflow = fullName;
+        }
+    }
+
+    /**
+     *
+     * @return The whole name.
+     */
+    public String getFullName()
+    {
+        return (nameOverflow != null) ? nameOverflow : name;
+    }
+
+    /**
+     * Sets the url, putting long urls to the overflow column.
+     *
+     * @param fullUrl    The url.
+     */
+    public void setFullUrl(String fullUrl)
+    {
+        url         = toStoredUrl(fullUrl);
+        urlOverflow = null;
+
+        if(fullUrl != null && fullUrl.length() > MAX_URL_LENGTH)
+        {
+            urlOverflow = fullUrl;
+        }
+    }
+
+    /**
+     *
+     * @return The whole url.
+     */
+    public String getFullUrl()
+    {
+        return (urlOverflow != null) ? urlOverflow : url;
+    }
+
+    /**
+     * Gets the value of the url column for a url.
+     *
+     * @param fullUrl    The url.
+     *
+     * @return The url, cut to MAX_URL_LENGTH.
+     */
+    public static String toStoredUrl(String fullUrl)
+    {
+        String result = fullUrl;
+
+        if(fullUrl != null && fullUrl.length() > MAX_URL_LENGTH)
+        {
+            result = fullUrl.substring(0, MAX_URL_LENGTH);
+        }
+
+        return result;
+    }
+
+    /**
+     * Gets the value of the name column for a name.
+     *
+     * @param name    The name.
+     *
+     * @return The name, cut to MAX_NAME_LENGTH.
+     */
+    public static String toStoredName(String name)
+    {
+        String result = name;
+
+        if(name != null && name.length() > MAX_NAME_LENGTH)
+        {
+            result = name.substring(0, MAX_NAME_LENGTH);
+        }
+
+        return result;
+    }
+
 
 
     /* -- PROTECTED METHODS ------------------------------------------------ */
@@ -22,12 +22,12 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
-import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 
 import play.Logger;
 import scrapers.data.ScrapedIngredient;
+import scrapers.fetch.PageFetcher;
 
 /**
  * Scraper class for ingredients.
@@ -144,7 +144,7 @@ public class IngredientScraper
         
         try
         {
-            Document document = Jsoup.connect(url).userAgent("Mozilla").get();
+            Document document = PageFetcher.getInstance().get(url);
             
             List<Element> rows = document.select("table.calorieTable").select("tbody").select("tr");
             
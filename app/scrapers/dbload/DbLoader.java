@@ -18,22 +18,47 @@
 
 package scrapers.dbload;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import org.apache.commons.lang3.StringUtils;
+import com.avaje.ebean.Ebean;
+import com.avaje.ebean.Transaction;
 
 import controllers.privately.Home;
+import controllers.publicly.query.SearchResultCache;
+import indexes.FuzzyMatchIndex;
+import indexes.IngredientAutocomplete;
+import indexes.RecipeIngredientIndex;
+import indexes.RecipeIngredientTagIndex;
+import indexes.RecipeNameIndex;
+import indexes.TagStatistics;
 import models.*;
 import play.Logger;
+import play.Play;
 import scrapers.data.ScrapedIngredient;
 import scrapers.data.ScrapedRecipe;
+import scrapers.visitors.ListBasedVisitor;
 import scrapers.visitors.RecipeSiteVisitor;
 import scrapers.visitors.RecipeSiteVisitor.ErrorCode;
 
 /**
- * Loads the database with data from a given scraper.
+ * Loads the database with data from a given scraper. Loading is a pipeline of
+ * three stages, connected by bounded queues: the visitor scrapes (fetches and
+ * parses) the recipes on the loading thread, matcher threads resolve their
+ * ingredients, and a writer thread writes them in batches. A stage waits
+ * while the queue after it is full, so a slow stage holds back the ones
+ * before it.
  *
  * @author Oliver Dozsa
  */
@@ -45,6 +70,23 @@ public class DbLoader
     /* --------------------------------------------------------------------- */
 
     /* -- PUBLIC ATTRIBUTES ------------------------------------------------ */
+    
+    /**
+     * Configuration key of the number of recipes written to the database in
+     * one transaction.
+     */
+    public static final String BATCH_SIZE_CONFIG_KEY = "openrecipes.scrape.batchSize";
+    
+    /**
+     * Configuration key of the number of threads matching scraped ingredients.
+     */
+    public static final String MATCH_THREADS_CONFIG_KEY = "openrecipes.scrape.pipeline.matchThreads";
+    
+    /**
+     * Configuration key of the number of recipes the queues between the stages
+     * hold.
+     */
+    public static final String QUEUE_SIZE_CONFIG_KEY = "openrecipes.scrape.pipeline.queueSize";
 
 
 
@@ -69,10 +111,35 @@ public class DbLoader
      * */
     private static final double MATCH_SCORE_THRESHOLD = 0.88;
     
+    /**
+     * Default number of recipes written in one transaction.
+     */
+    private static final int DEFAULT_BATCH_SIZE = 50;
+    
+    /**
+     * Default number of matcher threads.
+     */
+    private static final int DEFAULT_MATCH_THREADS = 2;
+    
+    /**
+     * Default size of the queues between the stages.
+     */
+    private static final int DEFAULT_QUEUE_SIZE = 100;
+    
+    /**
+     * Marks the end of the scraped recipes for a matcher.
+     */
+    private static final ScrapedRecipe END_OF_RECIPES = new ScrapedRecipe("");
+    
+    /**
+     * Marks the end of the matched recipes for the writer.
+     */
+    private static final PendingRecipe END_OF_PENDING = new PendingRecipe(null, null);
+    
     /**
      * Shows whether the state of the loading is working.
      */
-    private boolean isWorking;
+    private volatile boolean isWorking;
     
     /**
      * Shows whether there was error detected not.
@@ -90,15 +157,130 @@ public class DbLoader
     private String name;
     
     /**
-     * Used for stopping the load.
+     * Used for stopping the load. It's set from other threads.
+     */
+    private volatile boolean stopLoad = false;
+    
+    /**
+     * Number of recipes scraped so far.
+     */
+    private volatile int scrapedCount;
+    
+    /**
+     * Number of times the visitor went to error state so far.
+     */
+    private volatile int errorCount;
+    
+    /**
+     * Number of recipes the writer couldn't write in the current (or last)
+     * load.
      */
-    private boolean stopLoad = false;
+    private volatile int droppedCount;
     
     /**
      * The language id used for scraping.
      */
     private Long languageId = 0L;
     
+    /**
+     * Ingredient names of the language, for matching scraped ingredients. Built
+     * at the start of each load.
+     */
+    private FuzzyMatchIndex<Ingredient> nameMatchIndex;
+    
+    /**
+     * Ingredient aliases of the language, for matching scraped ingredients.
+     * Built at the start of each load.
+     */
+    private FuzzyMatchIndex<Ingredient> aliasMatchIndex;
+    
+    /**
+     * Ingredient id -> ingredient, of the indexed names and aliases.
+     */
+    private Map<Long, Ingredient> ingredientsById;
+    
+    /**
+     * Remembers the matches of scraped names.
+     */
+    private IngredientResolutionCache resolutionCache;
+    
+    /**
+     * Number of scraped names resolved from the cache in the current (or last) load.
+     */
+    private AtomicInteger resolutionHitCount = new AtomicInteger();
+    
+    /**
+     * Number of scraped names matched in the current (or last) load.
+     */
+    private AtomicInteger resolutionMissCount = new AtomicInteger();
+    
+    /**
+     * Number of recipes written to the database in one transaction.
+     */
+    private int batchSize;
+    
+    /**
+     * The recipes waiting to be written to the database. Used by the writer
+     * thread only.
+     */
+    private List<PendingRecipe> pendingRecipes = new ArrayList<PendingRecipe>();
+    
+    /**
+     * Scraped recipes waiting for matching.
+     */
+    private BlockingQueue<ScrapedRecipe> matchQueue;
+    
+    /**
+     * Matched recipes waiting for writing.
+     */
+    private BlockingQueue<PendingRecipe> writeQueue;
+    
+    /**
+     * Runs the matchers and the writer.
+     */
+    private ExecutorService stageExecutor;
+    
+    /**
+     * The running matchers.
+     */
+    private List<Future<?>> matchFutures;
+    
+    /**
+     * The running writer.
+     */
+    private Future<?> writeFuture;
+    
+    /**
+     * Metrics of the scrape stage of the current (or last) load.
+     */
+    private volatile StageMetrics scrapeMetrics;
+    
+    /**
+     * Metrics of the match stage of the current (or last) load.
+     */
+    private volatile StageMetrics matchMetrics;
+    
+    /**
+     * Metrics of the write stage of the current (or last) load.
+     */
+    private volatile StageMetrics writeMetrics;
+    
+    /**
+     * The last error of the matchers or the writer, or null.
+     */
+    private volatile Throwable stageError;
+    
+    /**
+     * Whether only the recipes not in the database are scraped.
+     */
+    private boolean incremental;
+    
+    /**
+     * The urls of the recipes in the database, and of the ones added by the
+     * load. Recipes with known urls are not written again.
+     */
+    private KnownRecipeUrls knownUrls;
+    
     
 
 
@@ -132,55 +314,96 @@ public class DbLoader
     }
 
     /**
-     * Loads the database.
+     * Loads the database. If the load fails, the recipes scraped until then
+     * are still matched and written, and the load is marked failed before
+     * the error is passed on.
      */
     public void load()
     {
-        isWorking = true;
-        isError   = false;
+        isWorking    = true;
+        isError      = false;
+        scrapedCount = 0;
+        errorCount   = 0;
+        droppedCount = 0;
+        stageError   = null;
         
-        ScrapedRecipe recipe = visitor.nextElement();
-
-        if(recipe == null)
+        resolutionHitCount.set(0);
+        resolutionMissCount.set(0);
+        
+        try
         {
-            /* Try to get it again. */
-            recipe = retryScrape();
-
-            if(recipe == null)
+            buildMatchIndexes();
+            
+            resolutionCache = IngredientResolutionCache.getInstance(languageId);
+            
+            batchSize = Math.max(1, Play.application().configuration().getInt(BATCH_SIZE_CONFIG_KEY, DEFAULT_BATCH_SIZE));
+            
+            int matchThreads = Math.max(1, Play.application().configuration().getInt(MATCH_THREADS_CONFIG_KEY, DEFAULT_MATCH_THREADS));
+            int queueSize    = Math.max(1, Play.application().configuration().getInt(QUEUE_SIZE_CONFIG_KEY, DEFAULT_QUEUE_SIZE));
+            
+            /* The url hashes are unique; known recipes are left out even if they're scraped again. */
+            knownUrls = KnownRecipeUrls.load();
+            
+            if(incremental && visitor instanceof ListBasedVisitor)
             {
-                /* Failed to get first recipe. */
-                Logger.warn(DbLoader.class.getName() + ".load()["+ visitor.getClass().getSimpleName() +"]: Failed to get first recipe.");
+                ((ListBasedVisitor)visitor).setKnownUrlFilter(knownUrls);
             }
-        }
-
-        while(recipe != null && !stopLoad)
-        {
-            addRecipeToDb(recipe);
             
-            if(recipeScrapedListener != null)
+            startStages(matchThreads, queueSize);
+            
+            try
             {
-                recipeScrapedListener.onRecipeScraped(recipe);
+                scrapeRecipes();
             }
-
-            recipe = visitor.nextElement();
-
-            if(recipe == null)
+            finally
             {
-                /* Try to recover in case of error, otherwise there's nothing more to get. */
-                if(visitor.getState() == RecipeSiteVisitor.VisitorState.ERROR)
-                {
-                    recipe = retryScrape();
-                }
+                scrapeMetrics.finish();
+                
+                /* Match and write the rest of the recipes, also when the load was stopped, or failed. */
+                finishStages();
+                
+                /* Recipe counts of ingredients changed, the autocomplete ranking must follow. */
+                IngredientAutocomplete.requestRebuild();
             }
+            
+            if(stageError != null)
+            {
+                isError = true;
+            }
+            
+            resolutionCache.save();
+            
+            logLoad();
+        }
+        catch(RuntimeException e)
+        {
+            isError = true;
+            
+            throw e;
+        }
+        finally
+        {
+            /* Reset stopload status. */
+            stopLoad = false;
+            
+            isWorking = false;
         }
-        
-        /* Reset stopload status. */
-        stopLoad = false;
-        
-        isWorking = false;
     }
     
     
+    /**
+     * Sets incremental loading: only the recipes not in the database are
+     * scraped. For newest first listings, scraping stops where the recipes
+     * scraped before begin.
+     * Needs a list based visitor; other visitors scrape every recipe.
+     * 
+     * @param incremental    True for incremental loading.
+     */
+    public void setIncremental(boolean incremental)
+    {
+        this.incremental = incremental;
+    }
+    
     /**
      * Sets the on scraped recipe listener.
      * 
@@ -219,6 +442,70 @@ public class DbLoader
         return isError;
     }
     
+    /**
+     * Gets the number of recipes scraped by the current (or last) load.
+     * 
+     * @return The number of scraped recipes.
+     */
+    public int getScrapedCount()
+    {
+        return scrapedCount;
+    }
+    
+    /**
+     * Gets the number of times the visitor went to error state during the
+     * current (or last) load.
+     * 
+     * @return The number of errors.
+     */
+    public int getErrorCount()
+    {
+        return errorCount;
+    }
+    
+    /**
+     * Gets the share of scraped ingredient names resolved from the cache,
+     * instead of being matched, during the current (or last) load.
+     * 
+     * @return The hit rate, between 0 and 1.
+     */
+    public double getResolutionHitRate()
+    {
+        double result = 0.0;
+        
+        int hits  = resolutionHitCount.get();
+        int total = hits + resolutionMissCount.get();
+        
+        if(total > 0)
+        {
+            result = (double)hits / total;
+        }
+        
+        return result;
+    }
+    
+    /**
+     * Gets the metrics of the stages of the current (or last) load, in
+     * pipeline order: scrape, match, write.
+     * 
+     * @return The metrics. Empty, if no load was started yet.
+     */
+    public List<StageMetrics> getStageMetrics()
+    {
+        List<StageMetrics> result = new ArrayList<StageMetrics>();
+        
+        StageMetrics actWriteMetrics = writeMetrics;
+        
+        if(actWriteMetrics != null)
+        {
+            result.add(scrapeMetrics);
+            result.add(matchMetrics);
+            result.add(actWriteMetrics);
+        }
+        
+        return result;
+    }
+    
     /**
      * Gets the name.
      * 
@@ -248,6 +535,8 @@ public class DbLoader
         Logger.debug(DbLoader.class.getName() + ".retryScrape()["+ visitor.getClass().getSimpleName() +"]");
 
         ScrapedRecipe result = null;
+        
+        errorCount++;
 
         for(int i = 0; i < MAX_NUM_OF_RETRIES; i++)
         {
@@ -297,12 +586,17 @@ public class DbLoader
     }
     
     /**
-     * Adds the given recipe to the DB. It assumes, that all measures, and ingredients are already added.
+     * Matches the ingredients of a scraped recipe to DB ingredients. It assumes, that all measures,
+     * and ingredients are already added. Called by the matcher threads.
      *
-     * @param recipe The recipe to add.
+     * @param recipe The recipe to match.
+     * 
+     * @return The recipe to write, or null, if an ingredient has no match.
      */
-    private void addRecipeToDb(ScrapedRecipe recipe)
+    private PendingRecipe matchRecipe(ScrapedRecipe recipe)
     {
+        PendingRecipe result = null;
+        
         /* Stores the mapping between scraped ingredients and DB ingredients. */
         Map<String, Ingredient> scrpIngToDbIng = new HashMap<String, Ingredient>();
         
@@ -310,7 +604,7 @@ public class DbLoader
         {
             if(scrpIng.getName() != null)
             {
-                Ingredient bestMatchIng = findBestMatch(scrpIng, languageId);
+                Ingredient bestMatchIng = resolve(scrpIng);
                 
                 if(bestMatchIng != null)
                 {
@@ -329,19 +623,29 @@ public class DbLoader
         if(scrpIngToDbIng.values().size() > 0)
         {
             Recipe dbRecipe = new Recipe();
-            dbRecipe.name   = recipe.getName();
-            dbRecipe.url    = recipe.getUrl();
             
-            dbRecipe.save();
+            dbRecipe.setFullName(recipe.getName());
+            dbRecipe.setFullUrl(recipe.getUrl());
+            
+            boolean isNew = true;
             
-            for(Ingredient dbIng: scrpIngToDbIng.values())
+            if(recipe.getUrl() != null)
             {
-                RecipeIngredient recIng = new RecipeIngredient();
+                dbRecipe.urlHash = KnownRecipeUrls.hashUrl(recipe.getUrl());
                 
-                recIng.ingredient = dbIng;
-                recIng.recipe     = dbRecipe;
+                isNew = knownUrls.addNew(recipe.getUrl());
+            }
+            
+            if(isNew)
+            {
+                dbRecipe.ingredientCount = scrpIngToDbIng.values().size();
                 
-                recIng.save();
+                result = new PendingRecipe(dbRecipe, new ArrayList<Ingredient>(scrpIngToDbIng.values()));
+            }
+            else
+            {
+                Logger.debug(DbLoader.class.getName() + ".matchRecipe(): Recipe already stored.\n" +
+                    "    scrapedRecipe.url = " + recipe.getUrl());
             }
         }
         else
@@ -349,46 +653,498 @@ public class DbLoader
             Logger.warn(Home.class.getName() + ".saveScrapedRecipeToDb(): No ingredients for scraped recipe!\n" +
                 "    scrapedRecipe.name = " + recipe.getName());
         }
+        
+        return result;
     }
     
     /**
-     * Finds the best match for a scraped ingredient to a DB ingredient.
+     * Scrapes the recipes, and passes them to the matchers, until the visitor
+     * runs out of recipes, or the load is stopped.
+     */
+    private void scrapeRecipes()
+    {
+        long scrapeStart     = System.nanoTime();
+        ScrapedRecipe recipe = visitor.nextElement();
+
+        if(recipe == null)
+        {
+            /* Try to get it again. */
+            recipe = retryScrape();
+
+            if(recipe == null)
+            {
+                /* Failed to get first recipe. */
+                Logger.warn(DbLoader.class.getName() + ".scrapeRecipes()["+ visitor.getClass().getSimpleName() +"]: Failed to get first recipe.");
+            }
+        }
+
+        while(recipe != null && !stopLoad)
+        {
+            scrapeMetrics.recordItem(System.nanoTime() - scrapeStart);
+            
+            /* Waits while the matchers are behind. */
+            putUninterruptibly(matchQueue, recipe);
+            
+            scrapedCount++;
+            
+            if(recipeScrapedListener != null)
+            {
+                recipeScrapedListener.onRecipeScraped(recipe);
+            }
+
+            scrapeStart = System.nanoTime();
+            recipe      = visitor.nextElement();
+
+            if(recipe == null)
+            {
+                /* Try to recover in case of error, otherwise there's nothing more to get. */
+                if(visitor.getState() == RecipeSiteVisitor.VisitorState.ERROR)
+                {
+                    recipe = retryScrape();
+                }
+            }
+        }
+    }
+    
+    /**
+     * Logs the results of a finished load.
+     */
+    private void logLoad()
+    {
+        Logger.info(DbLoader.class.getName() + ".logLoad()["+ visitor.getClass().getSimpleName() +"]: Finished.\n" +
+            "    scrapedCount      = " + scrapedCount + "\n" +
+            "    droppedCount      = " + droppedCount + "\n" +
+            "    resolutionHitRate = " + getResolutionHitRate()
+        );
+        
+        for(StageMetrics metrics: getStageMetrics())
+        {
+            Logger.info(DbLoader.class.getName() + ".logLoad()["+ visitor.getClass().getSimpleName() +"]: Stage finished.\n" +
+                "    stage         = " + metrics.getName() + "\n" +
+                "    threads       = " + metrics.getThreads() + "\n" +
+                "    processed     = " + metrics.getProcessedCount() + "\n" +
+                "    itemsPerSec   = " + metrics.getItemsPerSecond() + "\n" +
+                "    averageMillis = " + metrics.getAverageMillis()
+            );
+        }
+        
+        if(incremental && visitor instanceof ListBasedVisitor)
+        {
+            Logger.info(DbLoader.class.getName() + ".logLoad()["+ visitor.getClass().getSimpleName() +"]: Incremental load.\n" +
+                "    knownSkipped   = " + ((ListBasedVisitor)visitor).getKnownSkippedCount() + "\n" +
+                "    lookups        = " + knownUrls.getLookupCount() + "\n" +
+                "    falsePositives = " + knownUrls.getFalsePositiveCount()
+            );
+        }
+        
+        Logger.info(DbLoader.class.getName() + ".logLoad()["+ visitor.getClass().getSimpleName() +"]: Known recipes left out.\n" +
+            "    duplicates = " + knownUrls.getDuplicateCount()
+        );
+    }
+    
+    /**
+     * Starts the matchers and the writer, with empty queues.
      * 
-     * @param ingredient    The scraped ingredient.
-     * @param language      The language id.
-     * @return The DB ingredient. Null is returned if no appropriate ingredient found.
+     * @param matchThreads    The number of matchers.
+     * @param queueSize       The size of the queues.
      */
-    private Ingredient findBestMatch(ScrapedIngredient ingredient, Long language)
+    private void startStages(int matchThreads, int queueSize)
     {
-        Ingredient result         = null;
-        String resultName         = null;
-        double maxJaroWinklerDist = 0.0;
+        matchQueue = new ArrayBlockingQueue<ScrapedRecipe>(queueSize);
+        writeQueue = new ArrayBlockingQueue<PendingRecipe>(queueSize);
+        
+        int scrapeThreads = 1;
+        
+        if(visitor instanceof ListBasedVisitor)
+        {
+            scrapeThreads = ((ListBasedVisitor)visitor).getFetchConcurrency();
+        }
+        
+        scrapeMetrics = new StageMetrics("scrape", scrapeThreads, null);
+        matchMetrics  = new StageMetrics("match", matchThreads, matchQueue);
+        writeMetrics  = new StageMetrics("write", 1, writeQueue);
+        
+        final String threadName = name;
+        
+        stageExecutor = Executors.newFixedThreadPool(matchThreads + 1, new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread result = new Thread(runnable, threadName + "-stage");
+                
+                result.setDaemon(true);
+                
+                return result;
+            }
+        });
+        
+        matchFutures = new ArrayList<Future<?>>();
+        
+        for(int i = 0; i < matchThreads; i++)
+        {
+            matchFutures.add(stageExecutor.submit(new Matcher()));
+        }
+        
+        writeFuture = stageExecutor.submit(new Writer());
+    }
+    
+    /**
+     * Tells the matchers and then the writer that there are no more recipes,
+     * and waits until they process what's left in their queues.
+     */
+    private void finishStages()
+    {
+        for(int i = 0; i < matchFutures.size(); i++)
+        {
+            putUninterruptibly(matchQueue, END_OF_RECIPES);
+        }
+        
+        for(Future<?> matchFuture: matchFutures)
+        {
+            awaitUninterruptibly(matchFuture);
+        }
+        
+        matchMetrics.finish();
+        
+        putUninterruptibly(writeQueue, END_OF_PENDING);
+        
+        awaitUninterruptibly(writeFuture);
+        
+        writeMetrics.finish();
+        
+        stageExecutor.shutdown();
+    }
+    
+    /**
+     * Writes the pending recipes. If the batch fails, its recipes are written
+     * one by one, so one bad recipe doesn't take the others with it. Recipes
+     * still failing are dropped: logged, and forgotten by the known urls, so a
+     * later load scrapes them again. If none of the batch could be written,
+     * the load is marked failed at its end. Called by the writer thread.
+     */
+    private void writeRecipes()
+    {
+        List<PendingRecipe> batch = new ArrayList<PendingRecipe>(pendingRecipes);
+        
+        pendingRecipes.clear();
+        
+        try
+        {
+            flushRecipes(batch);
+        }
+        catch(RuntimeException e)
+        {
+            Logger.warn(DbLoader.class.getName() + ".writeRecipes()["+ visitor.getClass().getSimpleName() +"]: Failed to write batch, writing recipes one by one.\n" +
+                "    recipes = " + batch.size() + "\n" +
+                "    e       = " + e
+            );
+            
+            RuntimeException lastError = null;
+            int              written   = 0;
+            
+            for(PendingRecipe pending: batch)
+            {
+                /* The failed transaction may have left its state on the bean. */
+                pending.resetRecipe();
+                
+                try
+                {
+                    flushRecipes(Collections.singletonList(pending));
+                    
+                    written++;
+                }
+                catch(RuntimeException recipeError)
+                {
+                    Logger.error(DbLoader.class.getName() + ".writeRecipes()["+ visitor.getClass().getSimpleName() +"]: Failed to write recipe, dropped!\n" +
+                        "    url = " + pending.recipe.getFullUrl() + "\n" +
+                        "    e   = " + recipeError
+                    );
+                    
+                    knownUrls.remove(pending.recipe.getFullUrl());
+                    
+                    droppedCount++;
+                    lastError = recipeError;
+                }
+            }
+            
+            if(written == 0 && lastError != null)
+            {
+                Logger.error(DbLoader.class.getName() + ".writeRecipes()["+ visitor.getClass().getSimpleName() +"]: No recipe of the batch could be written!", lastError);
+                
+                stageError = lastError;
+            }
+        }
+    }
+    
+    /**
+     * Puts an element to a queue, waiting for space if needed. Interrupts don't
+     * stop waiting, as the stages must get every recipe and end marker; the
+     * interrupt is kept for the caller.
+     * 
+     * @param queue      The queue.
+     * @param element    The element.
+     */
+    private static <T> void putUninterruptibly(BlockingQueue<T> queue, T element)
+    {
+        boolean interrupted = false;
+        boolean done        = false;
+        
+        while(!done)
+        {
+            try
+            {
+                queue.put(element);
+                
+                done = true;
+            }
+            catch(InterruptedException e)
+            {
+                interrupted = true;
+            }
+        }
+        
+        if(interrupted)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Takes an element from a queue, waiting for one if needed. Interrupts
+     * don't stop waiting; the interrupt is kept for the caller.
+     * 
+     * @param queue    The queue.
+     * 
+     * @return The element.
+     */
+    private static <T> T takeUninterruptibly(BlockingQueue<T> queue)
+    {
+        T result            = null;
+        boolean interrupted = false;
+        
+        while(result == null)
+        {
+            try
+            {
+                result = queue.take();
+            }
+            catch(InterruptedException e)
+            {
+                interrupted = true;
+            }
+        }
+        
+        if(interrupted)
+        {
+            Thread.currentThread().interrupt();
+        }
+        
+        return result;
+    }
+    
+    /**
+     * Waits for a stage thread to end. Interrupts don't stop waiting; the
+     * interrupt is kept for the caller.
+     * 
+     * @param future    The stage thread.
+     */
+    private void awaitUninterruptibly(Future<?> future)
+    {
+        boolean interrupted = false;
+        boolean done        = false;
+        
+        while(!done)
+        {
+            try
+            {
+                future.get();
+                
+                done = true;
+            }
+            catch(InterruptedException e)
+            {
+                interrupted = true;
+            }
+            catch(ExecutionException e)
+            {
+                Logger.error(DbLoader.class.getName() + ".awaitUninterruptibly()["+ visitor.getClass().getSimpleName() +"]: Stage failed!\n" +
+                    "    e = " + e.getCause()
+                );
+                
+                stageError = e.getCause();
+                
+                done = true;
+            }
+        }
+        
+        if(interrupted)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Builds the match indexes from the names and aliases of the language.
+     */
+    private void buildMatchIndexes()
+    {
+        nameMatchIndex  = new FuzzyMatchIndex<Ingredient>();
+        aliasMatchIndex = new FuzzyMatchIndex<Ingredient>();
+        ingredientsById = new HashMap<Long, Ingredient>();
         
         List<IngredientName> allNamesByLang = IngredientName.find
             .fetch("ingredient")
             .where()
-                .eq("language.id", language)
+                .eq("language.id", languageId)
             .findList();
         
         for(IngredientName dbIngredientName: allNamesByLang)
-        {   
-            String name = dbIngredientName.name;
-            
-            double jaroWinkDist = StringUtils.getJaroWinklerDistance(ingredient.getName(), name);
+        {
+            nameMatchIndex.add(dbIngredientName.name, dbIngredientName.ingredient);
+            ingredientsById.put(dbIngredientName.ingredient.id, dbIngredientName.ingredient);
+        }
+        
+        List<IngredientAlias> allAliasNamesByLang = IngredientAlias.find
+            .fetch("ingredient")
+            .where()
+                .eq("language.id", languageId)
+            .findList();
+        
+        for(IngredientAlias dbIngredientAliasName: allAliasNamesByLang)
+        {
+            aliasMatchIndex.add(dbIngredientAliasName.name, dbIngredientAliasName.ingredient);
+            ingredientsById.put(dbIngredientAliasName.ingredient.id, dbIngredientAliasName.ingredient);
+        }
+        
+        Logger.debug(DbLoader.class.getName() + ".buildMatchIndexes()["+ visitor.getClass().getSimpleName() +"]:\n" +
+            "    names   = " + nameMatchIndex.size() + "\n" +
+            "    aliases = " + aliasMatchIndex.size()
+        );
+    }
+    
+    /**
+     * Writes recipes to the database, in one transaction, with JDBC batching.
+     * The indexes are updated only if the transaction commits.
+     * 
+     * @param batch    The recipes.
+     */
+    private void flushRecipes(List<PendingRecipe> batch)
+    {
+        if(!batch.isEmpty())
+        {
+            Transaction transaction = Ebean.beginTransaction();
             
-            if(jaroWinkDist > maxJaroWinklerDist)
+            try
+            {
+                transaction.setBatchMode(true);
+                transaction.setBatchSize(batchSize);
+                
+                /* Ids come from sequences, no need to read back generated keys. */
+                transaction.setBatchGetGeneratedKeys(false);
+                
+                for(PendingRecipe pending: batch)
+                {
+                    pending.recipe.save();
+                    
+                    for(Ingredient dbIng: pending.ingredients)
+                    {
+                        RecipeIngredient recIng = new RecipeIngredient();
+                        
+                        recIng.ingredient = dbIng;
+                        recIng.recipe     = pending.recipe;
+                        
+                        recIng.save();
+                    }
+                }
+                
+                Ebean.commitTransaction();
+                
+                Logger.debug(DbLoader.class.getName() + ".flushRecipes()["+ visitor.getClass().getSimpleName() +"]:\n" +
+                    "    recipes = " + batch.size()
+                );
+                
+                /* Keep the resident search index up to date, and drop the cached search results. */
+                for(PendingRecipe pending: batch)
+                {
+                    List<Long> dbIngIds = new ArrayList<Long>();
+                    
+                    for(Ingredient dbIng: pending.ingredients)
+                    {
+                        dbIngIds.add(dbIng.id);
+                    }
+                    
+                    RecipeIngredientIndex.recipeAdded(pending.recipe.id, dbIngIds);
+                    RecipeIngredientTagIndex.recipeAdded(pending.recipe.id, dbIngIds);
+                    RecipeNameIndex.recipeAdded(pending.recipe.id, pending.recipe.name);
+                    TagStatistics.recipeAdded(dbIngIds);
+                }
+                
+                SearchResultCache.invalidate();
+            }
+            finally
             {
-                /* Found a better match. */
-                maxJaroWinklerDist = jaroWinkDist;
-                result             = dbIngredientName.ingredient;
-                resultName         = name;
+                Ebean.endTransaction();
             }
         }
+    }
+    
+    /**
+     * Resolves a scraped ingredient to a DB ingredient. Names met before are
+     * resolved from the cache, others are matched, and cached.
+     * 
+     * @param ingredient    The scraped ingredient.
+     * @return The DB ingredient. Null is returned if no appropriate ingredient found.
+     */
+    private Ingredient resolve(ScrapedIngredient ingredient)
+    {
+        Ingredient result = null;
+        
+        Long cachedId = resolutionCache.get(ingredient.getName());
+        
+        if(cachedId != null && (cachedId.equals(IngredientResolutionCache.NO_MATCH) || ingredientsById.containsKey(cachedId)))
+        {
+            resolutionHitCount.incrementAndGet();
+            
+            result = ingredientsById.get(cachedId);
+        }
+        else
+        {
+            resolutionMissCount.incrementAndGet();
+            
+            result = findBestMatch(ingredient);
+            
+            resolutionCache.put(ingredient.getName(), result != null ? result.id : IngredientResolutionCache.NO_MATCH);
+        }
+        
+        return result;
+    }
+    
+    /**
+     * Finds the best match for a scraped ingredient to a DB ingredient.
+     * 
+     * @param ingredient    The scraped ingredient.
+     * @return The DB ingredient. Null is returned if no appropriate ingredient found.
+     */
+    private Ingredient findBestMatch(ScrapedIngredient ingredient)
+    {
+        Ingredient result         = null;
+        String resultName         = null;
+        double maxJaroWinklerDist = 0.0;
+        
+        FuzzyMatchIndex.Match<Ingredient> match = nameMatchIndex.findBestMatch(ingredient.getName(), MATCH_SCORE_THRESHOLD);
+        
+        if(match != null)
+        {
+            maxJaroWinklerDist = match.getScore();
+            result             = match.getValue();
+            resultName         = match.getText();
+        }
         
         if((maxJaroWinklerDist < MATCH_SCORE_THRESHOLD))
         {
             /* If no good result was found try with */
-            result = findBestMatchByAlias(ingredient.getName(), language);
+            result = findBestMatchByAlias(ingredient.getName());
         }
         
         Logger.debug(Home.class.getName() + ".findBestMatch(): result\n" +
@@ -405,34 +1161,21 @@ public class DbLoader
      * Tries to find the best ingredient match based on alias search.
      * 
      * @param searchName    The search name.
-     * @param languageID    The language id.
      * @return The best match or null.
      */
-    private Ingredient findBestMatchByAlias(String searchName, Long languageID)
+    private Ingredient findBestMatchByAlias(String searchName)
     {
         Ingredient result         = null;
         String resultName         = null;
         double maxJaroWinklerDist = 0.0;
         
-        List<IngredientAlias> allAliasNamesByLang = IngredientAlias.find
-            .fetch("ingredient")
-            .where()
-                .eq("language.id", languageID)
-            .findList();
+        FuzzyMatchIndex.Match<Ingredient> match = aliasMatchIndex.findBestMatch(searchName, MATCH_SCORE_THRESHOLD);
         
-        for(IngredientAlias dbIngredientAliasName: allAliasNamesByLang)
-        {   
-            String name = dbIngredientAliasName.name;
-            
-            double jaroWinkDist = StringUtils.getJaroWinklerDistance(searchName, name);
-            
-            if(jaroWinkDist > maxJaroWinklerDist)
-            {
-                /* Found a better match. */
-                maxJaroWinklerDist = jaroWinkDist;
-                result             = dbIngredientAliasName.ingredient;
-                resultName         = name;
-            }
+        if(match != null)
+        {
+            maxJaroWinklerDist = match.getScore();
+            result             = match.getValue();
+            resultName         = match.getText();
         }
         
         if((maxJaroWinklerDist < MATCH_SCORE_THRESHOLD))
@@ -475,5 +1218,119 @@ public class DbLoader
 
 
     /* -- PRIVATE OTHERS --------------------------------------------------- */
+    
+    /**
+     * Matches scraped recipes until the end marker.
+     */
+    private class Matcher implements Runnable
+    {
+        @Override
+        public void run()
+        {
+            ScrapedRecipe recipe = takeUninterruptibly(matchQueue);
+            
+            while(recipe != END_OF_RECIPES)
+            {
+                long start            = System.nanoTime();
+                PendingRecipe pending = null;
+                
+                try
+                {
+                    pending = matchRecipe(recipe);
+                }
+                catch(RuntimeException e)
+                {
+                    Logger.error(DbLoader.class.getName() + ".Matcher.run()["+ visitor.getClass().getSimpleName() +"]: Failed to match recipe!\n" +
+                        "    url = " + recipe.getUrl() + "\n" +
+                        "    e   = " + e
+                    );
+                    
+                    e.printStackTrace();
+                    
+                    stageError = e;
+                }
+                
+                matchMetrics.recordItem(System.nanoTime() - start);
+                
+                if(pending != null)
+                {
+                    /* Waits while the writer is behind. */
+                    putUninterruptibly(writeQueue, pending);
+                }
+                
+                recipe = takeUninterruptibly(matchQueue);
+            }
+        }
+    }
+    
+    /**
+     * Writes matched recipes in batches until the end marker, then writes the
+     * rest.
+     */
+    private class Writer implements Runnable
+    {
+        @Override
+        public void run()
+        {
+            PendingRecipe pending = takeUninterruptibly(writeQueue);
+            
+            while(pending != END_OF_PENDING)
+            {
+                long start = System.nanoTime();
+                
+                pendingRecipes.add(pending);
+                
+                if(pendingRecipes.size() >= batchSize)
+                {
+                    writeRecipes();
+                }
+                
+                writeMetrics.recordItem(System.nanoTime() - start);
+                
+                pending = takeUninterruptibly(writeQueue);
+            }
+            
+            writeRecipes();
+        }
+    }
+    
+    /**
+     * A recipe waiting to be written to the database.
+     */
+    private static class PendingRecipe
+    {
+        /**
+         * The recipe.
+         */
+        Recipe recipe;
+        
+        /**
+         * The ingredients of the recipe.
+         */
+        List<Ingredient> ingredients;
+        
+        PendingRecipe(Recipe recipe, List<Ingredient> ingredients)
+        {
+            this.recipe      = recipe;
+            this.ingredients = ingredients;
+        }
+        
+        /**
+         * Replaces the recipe with an unsaved copy of it.
+         */
+        void resetRecipe()
+        {
+            Recipe copy = new Recipe();
+            
+            copy.name            = recipe.name;
+            copy.nameOverflow    = recipe.nameOverflow;
+            copy.url             = recipe.url;
+            copy.urlOverflow     = recipe.urlOverflow;
+            copy.urlHash         = recipe.urlHash;
+            copy.ingredientCount = recipe.ingredientCount;
+            
+            recipe = copy;
+        }
+    }
 
 }
@@ -0,0 +1,383 @@
+/*
+ *  Copyright 2016 Oliver Dozsa
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package scrapers.dbload;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.avaje.ebean.Ebean;
+import com.avaje.ebean.SqlRow;
+
+import play.Logger;
+import play.Play;
+
+/**
+ * Remembers which ingredient a scraped ingredient name was matched to, per
+ * language, so recurring names are matched only once. Names without an
+ * acceptable match are remembered too.
+ *
+ * The cache can be saved to a directory between loads. A saved cache carries
+ * a fingerprint of the ingredient names and aliases of its language, and is
+ * dropped on reading if they have changed since.
+ *
+ * @author Oliver Dozsa
+ */
+public class IngredientResolutionCache
+{
+    /* --------------------------------------------------------------------- */
+    /* ATTRIBUTES                                                            */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC ATTRIBUTES ------------------------------------------------ */
+
+    /**
+     * Configuration key of the directory the caches are saved to. The caches
+     * are not saved if not set.
+     */
+    public static final String DIRECTORY_CONFIG_KEY = "openrecipes.scrape.resolutionCache.directory";
+
+    /**
+     * Cached for names having no acceptable match.
+     */
+    public static final Long NO_MATCH = -1L;
+
+
+
+    /* -- PROTECTED ATTRIBUTES --------------------------------------------- */
+
+
+
+    /* -- PRIVATE ATTRIBUTES ----------------------------------------------- */
+
+    /**
+     * Language id -> cache used by the loaders.
+     */
+    private static Map<Long, IngredientResolutionCache> instances = new HashMap<Long, IngredientResolutionCache>();
+
+    /**
+     * The language id.
+     */
+    private Long languageId;
+
+    /**
+     * Fingerprint of the names and aliases the cached matches were made with.
+     */
+    private String fingerprint;
+
+    /**
+     * Scraped name -> ingredient id, or NO_MATCH.
+     */
+    private Map<String, Long> resolutions = new ConcurrentHashMap<String, Long>();
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* METHODS                                                               */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC METHODS --------------------------------------------------- */
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param languageId     The language id.
+     * @param fingerprint    Fingerprint of the names and aliases of the language.
+     */
+    public IngredientResolutionCache(Long languageId, String fingerprint)
+    {
+        this.languageId  = languageId;
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * Gets the cache of a language used by the loaders. On first access it's
+     * read from the configured directory, if it was saved there.
+     *
+     * @param languageId    The language id.
+     *
+     * @return The cache.
+     */
+    public static IngredientResolutionCache getInstance(Long languageId)
+    {
+        synchronized(instances)
+        {
+            IngredientResolutionCache result = instances.get(languageId);
+
+            if(result == null)
+            {
+                String actFingerprint = createFingerprint(languageId);
+                File file             = getFile(languageId);
+
+                if(file != null && file.exists())
+                {
+                    result = read(file, languageId, actFingerprint);
+                }
+
+                if(result == null)
+                {
+                    result = new IngredientResolutionCache(languageId, actFingerprint);
+                }
+
+                instances.put(languageId, result);
+            }
+
+            return result;
+        }
+    }
+
+    /**
+     * Drops every cache, including the saved ones. Must be called when
+     * ingredient names or aliases are changed.
+     */
+    public static void invalidate()
+    {
+        Logger.debug(IngredientResolutionCache.class.getName() + ".invalidate()");
+
+        synchronized(instances)
+        {
+            for(Long languageId : instances.keySet())
+            {
+                File file = getFile(languageId);
+
+                if(file != null && file.exists() && !file.delete())
+                {
+                    Logger.warn(IngredientResolutionCache.class.getName() + ".invalidate(): Failed to delete saved cache!\n" +
+                        "    file = " + file
+                    );
+                }
+            }
+
+            instances.clear();
+        }
+    }
+
+    /**
+     * Reads a saved cache.
+     *
+     * @param file           The file.
+     * @param languageId     The language id.
+     * @param fingerprint    Fingerprint of the actual names and aliases of the language.
+     *
+     * @return The cache, or null, if it can't be read, or it was made with
+     *         other names or aliases.
+     */
+    public static IngredientResolutionCache read(File file, Long languageId, String fingerprint)
+    {
+        IngredientResolutionCache result = null;
+
+        try(BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8))
+        {
+            if(fingerprint.equals(reader.readLine()))
+            {
+                result = new IngredientResolutionCache(languageId, fingerprint);
+
+                String line = reader.readLine();
+
+                while(line != null)
+                {
+                    int separator = line.lastIndexOf('\t');
+
+                    if(separator > 0)
+                    {
+                        result.put(line.substring(0, separator), Long.valueOf(line.substring(separator + 1)));
+                    }
+
+                    line = reader.readLine();
+                }
+            }
+            else
+            {
+                Logger.info(IngredientResolutionCache.class.getName() + ".read(): Names have changed, dropping saved cache.\n" +
+                    "    file = " + file
+                );
+            }
+        }
+        catch(IOException | NumberFormatException e)
+        {
+            Logger.warn(IngredientResolutionCache.class.getName() + ".read(): Failed to read saved cache!\n" +
+                "    file = " + file + "\n" +
+                "    e    = " + e
+            );
+
+            result = null;
+        }
+
+        return result;
+    }
+
+    /**
+     * Saves the cache to the configured directory, if there's one.
+     */
+    public void save()
+    {
+        File file = getFile(languageId);
+
+        if(file != null)
+        {
+            save(file);
+        }
+    }
+
+    /**
+     * Saves the cache to a file.
+     *
+     * @param file    The file.
+     */
+    public void save(File file)
+    {
+        File parent = file.getAbsoluteFile().getParentFile();
+
+        if(parent != null)
+        {
+            parent.mkdirs();
+        }
+
+        try(BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8))
+        {
+            writer.write(fingerprint);
+            writer.newLine();
+
+            for(Map.Entry<String, Long> entry : resolutions.entrySet())
+            {
+                writer.write(entry.getKey() + "\t" + entry.getValue());
+                writer.newLine();
+            }
+        }
+        catch(IOException e)
+        {
+            Logger.warn(IngredientResolutionCache.class.getName() + ".save(): Failed to save cache!\n" +
+                "    file = " + file + "\n" +
+                "    e    = " + e
+            );
+        }
+    }
+
+    /**
+     * Gets the cached match of a scraped name.
+     *
+     * @param name    The scraped name.
+     *
+     * @return The ingredient id, NO_MATCH, if the name has no acceptable match,
+     *         or null, if the name is not cached.
+     */
+    public Long get(String name)
+    {
+        return resolutions.get(name);
+    }
+
+    /**
+     * Caches the match of a scraped name. Names with line breaks or tabs are
+     * not cached.
+     *
+     * @param name            The scraped name.
+     * @param ingredientId    The ingredient id, or NO_MATCH.
+     */
+    public void put(String name, Long ingredientId)
+    {
+        if(name.indexOf('\t') < 0 && name.indexOf('\n') < 0 && name.indexOf('\r') < 0)
+        {
+            resolutions.put(name, ingredientId);
+        }
+    }
+
+    /**
+     *
+     * @return The number of cached names.
+     */
+    public int size()
+    {
+        return resolutions.size();
+    }
+
+
+
+    /* -- PROTECTED METHODS ------------------------------------------------ */
+
+
+
+    /* -- PRIVATE METHODS -------------------------------------------------- */
+
+    /**
+     * Gets the file of a saved cache.
+     *
+     * @param languageId    The language id.
+     *
+     * @return The file, or null, if no directory is configured.
+     */
+    private static File getFile(Long languageId)
+    {
+        File result = null;
+
+        String directory = Play.application().configuration().getString(DIRECTORY_CONFIG_KEY);
+
+        if(directory != null && !directory.isEmpty())
+        {
+            result = new File(directory, "ingredient-resolution-" + languageId + ".txt");
+        }
+
+        return result;
+    }
+
+    /**
+     * Creates the fingerprint of the names and aliases of a language: their
+     * count and largest id.
+     *
+     * @param languageId    The language id.
+     *
+     * @return The fingerprint.
+     */
+    private static String createFingerprint(Long languageId)
+    {
+        SqlRow names = Ebean
+            .createSqlQuery("SELECT COUNT(*) AS cnt, MAX(id) AS max_id FROM ingredient_name WHERE language_id = :lang")
+            .setParameter("lang", languageId)
+            .findUnique();
+
+        SqlRow aliases = Ebean
+            .createSqlQuery("SELECT COUNT(*) AS cnt, MAX(id) AS max_id FROM ingredient_alias WHERE language_id = :lang")
+            .setParameter("lang", languageId)
+            .findUnique();
+
+        return "names=" + names.getLong("cnt") + "/" + names.getLong("max_id") + ";" +
+               "aliases=" + aliases.getLong("cnt") + "/" + aliases.getLong("max_id");
+    }
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* OTHERS                                                                */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC OTHERS ---------------------------------------------------- */
+
+
+
+    /* -- PROTECTED OTHERS ------------------------------------------------- */
+
+
+
+    /* -- PRIVATE OTHERS --------------------------------------------------- */
+}
@@ -0,0 +1,418 @@
+/*
+ *  Copyright 2016 Oliver Dozsa
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package scrapers.dbload;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.avaje.ebean.Ebean;
+import com.avaje.ebean.SqlQuery;
+import com.avaje.ebean.SqlRow;
+
+import indexes.BloomFilter;
+import models.Recipe;
+import play.Logger;
+import scrapers.visitors.ListBasedVisitor;
+
+/**
+ * The urls of the recipes in the database, for incremental scraping, and for
+ * leaving out the recipes already stored. The url hashes of the recipes are
+ * held in a Bloom filter; a url passing the filter is looked up by the
+ * uniquely indexed url_hash column, so most unknown urls are told without
+ * touching the database. Urls added during the load are known too, even
+ * before they are written.
+ *
+ * @author Oliver Dozsa
+ */
+public class KnownRecipeUrls implements ListBasedVisitor.KnownUrlFilter
+{
+    /* --------------------------------------------------------------------- */
+    /* ATTRIBUTES                                                            */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC ATTRIBUTES ------------------------------------------------ */
+
+
+
+    /* -- PROTECTED ATTRIBUTES --------------------------------------------- */
+
+
+
+    /* -- PRIVATE ATTRIBUTES ----------------------------------------------- */
+
+    /**
+     * The wanted rate of urls passing the filter without being known.
+     */
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    /**
+     * The filter is sized for at least this many urls.
+     */
+    private static final int MIN_EXPECTED_COUNT = 1024;
+
+    /**
+     * Hashes of the known urls.
+     */
+    private BloomFilter filter;
+
+    /**
+     * The urls added during the load.
+     */
+    private Set<String> addedUrls = new HashSet<String>();
+
+    /**
+     * Number of lookups in the database.
+     */
+    private int lookupCount;
+
+    /**
+     * Number of lookups finding no recipe.
+     */
+    private int falsePositiveCount;
+
+    /**
+     * Number of urls not added, as they were known.
+     */
+    private int duplicateCount;
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* METHODS                                                               */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC METHODS --------------------------------------------------- */
+
+    /**
+     * Creates an empty set, sized for the given number of urls.
+     *
+     * @param expectedCount    The expected number of urls.
+     */
+    public KnownRecipeUrls(int expectedCount)
+    {
+        filter = new BloomFilter(Math.max(MIN_EXPECTED_COUNT, expectedCount), FALSE_POSITIVE_RATE);
+    }
+
+    /**
+     * Reads the urls of the recipes in the database. Recipes stored before
+     * url hashes were introduced get their hashes first.
+     *
+     * @return The known urls.
+     */
+    public static KnownRecipeUrls load()
+    {
+        fillMissingHashes();
+
+        List<SqlRow> rows = Ebean.createSqlQuery("SELECT url_hash FROM recipe WHERE url_hash IS NOT NULL").findList();
+
+        /* Leave room for the recipes of the coming loads. */
+        KnownRecipeUrls result = new KnownRecipeUrls(rows.size() * 2);
+
+        for(SqlRow row : rows)
+        {
+            result.filter.put(row.getLong("url_hash"));
+        }
+
+        Logger.info(KnownRecipeUrls.class.getName() + ".load(): Read known recipes.\n" +
+            "    count = " + rows.size()
+        );
+
+        return result;
+    }
+
+    /**
+     * Hashes a recipe url, for the url_hash column.
+     *
+     * @param url    The url.
+     *
+     * @return The first 8 bytes of the SHA-1 hash of the url.
+     */
+    public static long hashUrl(String url)
+    {
+        long result = 0;
+
+        try
+        {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(url.getBytes(StandardCharsets.UTF_8));
+
+            for(int i = 0; i < 8; i++)
+            {
+                result = (result << 8) | (digest[i] & 0xff);
+            }
+        }
+        catch(NoSuchAlgorithmException e)
+        {
+            /* Every JVM has SHA-1. */
+            throw new IllegalStateException(e);
+        }
+
+        return result;
+    }
+
+    /**
+     * Checks whether a recipe url is in the database, or was added during the
+     * load.
+     *
+     * @param url    The url.
+     *
+     * @return True, if the url is known.
+     */
+    @Override
+    public boolean isKnown(String url)
+    {
+        long hash = hashUrl(url);
+
+        boolean result     = false;
+        boolean isLookedUp = false;
+
+        synchronized(this)
+        {
+            result     = addedUrls.contains(url);
+            isLookedUp = !result && filter.mightContain(hash);
+        }
+
+        if(isLookedUp)
+        {
+            /* Not holding the lock, other urls are checked meanwhile. */
+            result = isStored(url, hash);
+
+            synchronized(this)
+            {
+                lookupCount++;
+
+                if(!result)
+                {
+                    falsePositiveCount++;
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Adds the url of a recipe of the load.
+     *
+     * @param url    The url.
+     */
+    public synchronized void add(String url)
+    {
+        addedUrls.add(url);
+
+        filter.put(hashUrl(url));
+    }
+
+    /**
+     * Forgets the url of a recipe of the load, that couldn't be written. The
+     * filter can't forget it, so later checks of the url look it up in the
+     * database.
+     *
+     * @param url    The url.
+     */
+    public synchronized void remove(String url)
+    {
+        addedUrls.remove(url);
+    }
+
+    /**
+     * Adds the url of a recipe of the load, unless it's known.
+     *
+     * @param url    The url.
+     *
+     * @return True, if the url was added; false, if it was known.
+     */
+    public boolean addNew(String url)
+    {
+        boolean result = !isKnown(url);
+
+        synchronized(this)
+        {
+            /* The url may have been added since it was checked. */
+            if(result && addedUrls.contains(url))
+            {
+                result = false;
+            }
+
+            if(result)
+            {
+                add(url);
+            }
+            else
+            {
+                duplicateCount++;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     *
+     * @return The number of lookups in the database.
+     */
+    public synchronized int getLookupCount()
+    {
+        return lookupCount;
+    }
+
+    /**
+     *
+     * @return The number of lookups finding no recipe.
+     */
+    public synchronized int getFalsePositiveCount()
+    {
+        return falsePositiveCount;
+    }
+
+    /**
+     *
+     * @return The number of urls not added, as they were known.
+     */
+    public synchronized int getDuplicateCount()
+    {
+        return duplicateCount;
+    }
+
+
+
+    /* -- PROTECTED METHODS ------------------------------------------------ */
+
+    /**
+     * Looks up a url in the database.
+     *
+     * @param url     The url.
+     * @param hash    The hash of the url.
+     *
+     * @return True, if there's a recipe with the url.
+     */
+    protected boolean isStored(String url, long hash)
+    {
+        SqlQuery query = null;
+
+        if(url.length() > Recipe.MAX_URL_LENGTH)
+        {
+            /* Long urls are compared as a whole; the overflow column is a CLOB, read it as text. */
+            query = Ebean
+                .createSqlQuery("SELECT COUNT(*) AS cnt FROM recipe WHERE url_hash = :hash AND url = :url AND CAST(url_overflow AS VARCHAR) = :fullUrl")
+                .setParameter("fullUrl", url);
+        }
+        else
+        {
+            query = Ebean.createSqlQuery("SELECT COUNT(*) AS cnt FROM recipe WHERE url_hash = :hash AND url = :url AND url_overflow IS NULL");
+        }
+
+        SqlRow row = query
+            .setParameter("hash", hash)
+            .setParameter("url", Recipe.toStoredUrl(url))
+            .findUnique();
+
+        return row.getLong("cnt") > 0;
+    }
+
+
+
+    /* -- PRIVATE METHODS -------------------------------------------------- */
+
+    /**
+     * Computes the missing url hashes of the recipes. As the hashes are
+     * unique, recipes with the url of an other recipe can't get a hash; their
+     * url, kept by the other recipe, is cleared instead, so they aren't read
+     * again by the next loads.
+     */
+    private static void fillMissingHashes()
+    {
+        /* The overflow column is a CLOB; read it as text. */
+        List<SqlRow> rows = Ebean
+            .createSqlQuery("SELECT id, url, CAST(url_overflow AS VARCHAR) AS url_overflow FROM recipe WHERE url_hash IS NULL AND url IS NOT NULL")
+            .findList();
+
+        if(!rows.isEmpty())
+        {
+            Logger.info(KnownRecipeUrls.class.getName() + ".fillMissingHashes(): Hashing urls.\n" +
+                "    count = " + rows.size()
+            );
+
+            Ebean.beginTransaction();
+
+            try
+            {
+                int duplicateCount = 0;
+
+                for(SqlRow row : rows)
+                {
+                    String url = row.getString("url_overflow");
+
+                    if(url == null)
+                    {
+                        url = row.getString("url");
+                    }
+
+                    int updated = Ebean.createSqlUpdate("UPDATE recipe SET url_hash = :hash WHERE id = :id AND NOT EXISTS (SELECT 1 FROM recipe WHERE url_hash = :hash)")
+                        .setParameter("hash", hashUrl(url))
+                        .setParameter("id", row.getLong("id"))
+                        .execute();
+
+                    if(updated == 0)
+                    {
+                        Logger.debug(KnownRecipeUrls.class.getName() + ".fillMissingHashes(): Url of an other recipe, cleared.\n" +
+                            "    id  = " + row.getLong("id") + "\n" +
+                            "    url = " + url
+                        );
+
+                        Ebean.createSqlUpdate("UPDATE recipe SET url = NULL, url_overflow = NULL WHERE id = :id")
+                            .setParameter("id", row.getLong("id"))
+                            .execute();
+
+                        duplicateCount++;
+                    }
+                }
+
+                Ebean.commitTransaction();
+
+                Logger.info(KnownRecipeUrls.class.getName() + ".fillMissingHashes(): Hashed urls.\n" +
+                    "    duplicates = " + duplicateCount
+                );
+            }
+            finally
+            {
+                Ebean.endTransaction();
+            }
+        }
+    }
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* OTHERS                                                                */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC OTHERS ---------------------------------------------------- */
+
+
+
+    /* -- PROTECTED OTHERS ------------------------------------------------- */
+
+
+
+    /* -- PRIVATE OTHERS --------------------------------------------------- */
+}
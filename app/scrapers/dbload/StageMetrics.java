@@ -0,0 +1,248 @@
+/*
+ *  Copyright 2016 Oliver Dozsa
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package scrapers.dbload;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress of a stage of the loader pipeline: the recipes it processed, the
+ * time it spent on them, and the recipes waiting in its input queue.
+ *
+ * @author Oliver Dozsa
+ */
+public class StageMetrics
+{
+    /* --------------------------------------------------------------------- */
+    /* ATTRIBUTES                                                            */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC ATTRIBUTES ------------------------------------------------ */
+
+
+
+    /* -- PROTECTED ATTRIBUTES --------------------------------------------- */
+
+
+
+    /* -- PRIVATE ATTRIBUTES ----------------------------------------------- */
+
+    /**
+     * The name of the stage.
+     */
+    private String name;
+
+    /**
+     * The number of threads of the stage.
+     */
+    private int threads;
+
+    /**
+     * The input queue of the stage, or null, if it has none.
+     */
+    private BlockingQueue<?> inputQueue;
+
+    /**
+     * Number of recipes processed.
+     */
+    private AtomicLong processedCount = new AtomicLong();
+
+    /**
+     * Time spent processing, summed over the threads, in nanoseconds.
+     */
+    private AtomicLong busyNanos = new AtomicLong();
+
+    /**
+     * Time of creating the stage, in milliseconds.
+     */
+    private long startTime;
+
+    /**
+     * Time of the stage finishing, in milliseconds. 0 while it's running.
+     */
+    private volatile long endTime;
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* METHODS                                                               */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC METHODS --------------------------------------------------- */
+
+    /**
+     * Creates the metrics of a started stage.
+     *
+     * @param name          The name of the stage.
+     * @param threads       The number of threads of the stage.
+     * @param inputQueue    The input queue of the stage, or null.
+     */
+    public StageMetrics(String name, int threads, BlockingQueue<?> inputQueue)
+    {
+        this.name       = name;
+        this.threads    = threads;
+        this.inputQueue = inputQueue;
+
+        startTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Records a processed recipe.
+     *
+     * @param nanos    The time spent on the recipe, in nanoseconds.
+     */
+    public void recordItem(long nanos)
+    {
+        processedCount.incrementAndGet();
+        busyNanos.addAndGet(nanos);
+    }
+
+    /**
+     * Marks the stage finished.
+     */
+    public void finish()
+    {
+        endTime = System.currentTimeMillis();
+    }
+
+    /**
+     *
+     * @return The name of the stage.
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     *
+     * @return The number of threads of the stage.
+     */
+    public int getThreads()
+    {
+        return threads;
+    }
+
+    /**
+     *
+     * @return The number of recipes processed.
+     */
+    public long getProcessedCount()
+    {
+        return processedCount.get();
+    }
+
+    /**
+     *
+     * @return The number of recipes processed per second, since the start of
+     *         the stage.
+     */
+    public double getItemsPerSecond()
+    {
+        double result = 0.0;
+
+        long end = endTime;
+
+        if(end == 0)
+        {
+            end = System.currentTimeMillis();
+        }
+
+        if(end > startTime)
+        {
+            result = processedCount.get() * 1000.0 / (end - startTime);
+        }
+
+        return result;
+    }
+
+    /**
+     *
+     * @return The average time spent on a recipe, in milliseconds.
+     */
+    public double getAverageMillis()
+    {
+        double result = 0.0;
+
+        long count = processedCount.get();
+
+        if(count > 0)
+        {
+            result = busyNanos.get() / 1000000.0 / count;
+        }
+
+        return result;
+    }
+
+    /**
+     *
+     * @return The number of recipes waiting in the input queue.
+     */
+    public int getQueueDepth()
+    {
+        int result = 0;
+
+        if(inputQueue != null)
+        {
+            result = inputQueue.size();
+        }
+
+        return result;
+    }
+
+    /**
+     *
+     * @return The capacity of the input queue; 0, if the stage has none.
+     */
+    public int getQueueCapacity()
+    {
+        int result = 0;
+
+        if(inputQueue != null)
+        {
+            result = inputQueue.size() + inputQueue.remainingCapacity();
+        }
+
+        return result;
+    }
+
+
+
+    /* -- PROTECTED METHODS ------------------------------------------------ */
+
+
+
+    /* -- PRIVATE METHODS -------------------------------------------------- */
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* OTHERS                                                                */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC OTHERS ---------------------------------------------------- */
+
+
+
+    /* -- PROTECTED OTHERS ------------------------------------------------- */
+
+
+
+    /* -- PRIVATE OTHERS --------------------------------------------------- */
+}
@@ -0,0 +1,368 @@
+/*
+ *  Copyright 2016 Oliver Dozsa
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package scrapers.fetch;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import play.Logger;
+
+/**
+ * On-disk cache of fetched pages. Every page is saved gzipped to a file named
+ * by the SHA-1 hash of its url, along with the ETag and Last-Modified
+ * headers it was served with, so it can be revalidated on the next fetch.
+ *
+ * @author Oliver Dozsa
+ */
+public class PageCache
+{
+    /* --------------------------------------------------------------------- */
+    /* ATTRIBUTES                                                            */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC ATTRIBUTES ------------------------------------------------ */
+
+
+
+    /* -- PROTECTED ATTRIBUTES --------------------------------------------- */
+
+
+
+    /* -- PRIVATE ATTRIBUTES ----------------------------------------------- */
+
+    /**
+     * Extension of the page files.
+     */
+    private static final String EXTENSION = ".html.gz";
+
+    /**
+     * The directory of the pages.
+     */
+    private File directory;
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* METHODS                                                               */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC METHODS --------------------------------------------------- */
+
+    /**
+     * Creates a cache.
+     *
+     * @param directory    The directory of the pages. Created on first write.
+     */
+    public PageCache(File directory)
+    {
+        this.directory = directory;
+    }
+
+    /**
+     * Reads a page.
+     *
+     * @param url    The url of the page.
+     *
+     * @return The page, or null, if it's not cached, or can't be read.
+     */
+    public Entry read(String url)
+    {
+        Entry result = null;
+
+        File file = getFile(url);
+
+        if(file.exists())
+        {
+            try(BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(file)), StandardCharsets.UTF_8)))
+            {
+                String cachedUrl    = reader.readLine();
+                String etag         = reader.readLine();
+                String lastModified = reader.readLine();
+
+                /* Guard against hash collisions. */
+                if(url.equals(cachedUrl) && lastModified != null)
+                {
+                    StringBuilder body   = new StringBuilder();
+                    char[]        buffer = new char[8192];
+                    int           length = reader.read(buffer);
+
+                    while(length >= 0)
+                    {
+                        body.append(buffer, 0, length);
+
+                        length = reader.read(buffer);
+                    }
+
+                    result = new Entry(url, emptyToNull(etag), emptyToNull(lastModified), body.toString());
+                }
+            }
+            catch(IOException e)
+            {
+                Logger.warn(PageCache.class.getName() + ".read(): Failed to read cached page!\n" +
+                    "    url  = " + url + "\n" +
+                    "    file = " + file + "\n" +
+                    "    e    = " + e
+                );
+
+                result = null;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Writes a page. The page replaces the cached one at once, so readers
+     * never see a partly written page.
+     *
+     * @param entry    The page.
+     */
+    public void write(Entry entry)
+    {
+        File file = getFile(entry.getUrl());
+
+        directory.mkdirs();
+
+        try
+        {
+            File temp = File.createTempFile(file.getName(), ".tmp", directory);
+
+            try(Writer writer = new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(temp)), StandardCharsets.UTF_8))
+            {
+                writer.write(entry.getUrl() + "\n");
+                writer.write(nullToEmpty(entry.getEtag()) + "\n");
+                writer.write(nullToEmpty(entry.getLastModified()) + "\n");
+                writer.write(entry.getBody());
+            }
+
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch(IOException e)
+        {
+            Logger.warn(PageCache.class.getName() + ".write(): Failed to cache page!\n" +
+                "    url  = " + entry.getUrl() + "\n" +
+                "    file = " + file + "\n" +
+                "    e    = " + e
+            );
+        }
+    }
+
+    /**
+     * Gets the file of a page.
+     *
+     * @param url    The url of the page.
+     *
+     * @return The file.
+     */
+    public File getFile(String url)
+    {
+        return new File(directory, hash(url) + EXTENSION);
+    }
+
+    /**
+     *
+     * @return The directory of the pages.
+     */
+    public File getDirectory()
+    {
+        return directory;
+    }
+
+
+
+    /* -- PROTECTED METHODS ------------------------------------------------ */
+
+
+
+    /* -- PRIVATE METHODS -------------------------------------------------- */
+
+    /**
+     * Hashes an url.
+     *
+     * @param url    The url.
+     *
+     * @return The hex SHA-1 hash of the url.
+     */
+    private static String hash(String url)
+    {
+        StringBuilder result = new StringBuilder();
+
+        try
+        {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(url.getBytes(StandardCharsets.UTF_8));
+
+            for(byte b : digest)
+            {
+                result.append(String.format("%02x", b & 0xff));
+            }
+        }
+        catch(NoSuchAlgorithmException e)
+        {
+            /* Every JVM has SHA-1. */
+            throw new IllegalStateException(e);
+        }
+
+        return result.toString();
+    }
+
+    /**
+     * Converts null to an empty string, for saving headers.
+     *
+     * @param value    The value.
+     *
+     * @return The value, or an empty string.
+     */
+    private static String nullToEmpty(String value)
+    {
+        String result = value;
+
+        if(result == null)
+        {
+            result = "";
+        }
+
+        return result;
+    }
+
+    /**
+     * Converts an empty string to null, for reading headers.
+     *
+     * @param value    The value.
+     *
+     * @return The value, or null.
+     */
+    private static String emptyToNull(String value)
+    {
+        String result = value;
+
+        if(result != null && result.isEmpty())
+        {
+            result = null;
+        }
+
+        return result;
+    }
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* OTHERS                                                                */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC OTHERS ---------------------------------------------------- */
+
+    /**
+     * A cached page.
+     */
+    public static class Entry
+    {
+        /**
+         * The url of the page.
+         */
+        private String url;
+
+        /**
+         * The ETag header of the page, or null.
+         */
+        private String etag;
+
+        /**
+         * The Last-Modified header of the page, or null.
+         */
+        private String lastModified;
+
+        /**
+         * The html of the page.
+         */
+        private String body;
+
+        /**
+         * Initializes the page.
+         *
+         * @param url             The url of the page.
+         * @param etag            The ETag header of the page, or null.
+         * @param lastModified    The Last-Modified header of the page, or null.
+         * @param body            The html of the page.
+         */
+        public Entry(String url, String etag, String lastModified, String body)
+        {
+            this.url          = url;
+            this.etag         = etag;
+            this.lastModified = lastModified;
+            this.body         = body;
+        }
+
+        /**
+         *
+         * @return The url of the page.
+         */
+        public String getUrl()
+        {
+            return url;
+        }
+
+        /**
+         *
+         * @return The ETag header of the page, or null.
+         */
+        public String getEtag()
+        {
+            return etag;
+        }
+
+        /**
+         *
+         * @return The Last-Modified header of the page, or null.
+         */
+        public String getLastModified()
+        {
+            return lastModified;
+        }
+
+        /**
+         *
+         * @return The html of the page.
+         */
+        public String getBody()
+        {
+            return body;
+        }
+    }
+
+
+
+    /* -- PROTECTED OTHERS ------------------------------------------------- */
+
+
+
+    /* -- PRIVATE OTHERS --------------------------------------------------- */
+}
@@ -0,0 +1,614 @@
+/*
+ *  Copyright 2016 Oliver Dozsa
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package scrapers.fetch;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jsoup.Connection;
+import org.jsoup.HttpStatusException;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+
+import play.Configuration;
+import play.Logger;
+import play.Play;
+
+/**
+ * Fetches the pages of the scraped sites. Requests to a host are rate limited
+ * by a token bucket of the host, and failed requests are retried with growing
+ * delays.
+ *
+ * Pages are fetched by Jsoup, over the persistent connections of the JDK: a
+ * connection is kept alive after its page is read, and reused for the next
+ * request to the same host. The number of idle connections kept per host is
+ * set by maxConnections.
+ *
+ * With a page cache, fetched pages are saved, and a saved page is
+ * revalidated with a conditional request; an unchanged page is not
+ * downloaded again. An offline fetcher serves the saved pages only, for
+ * replaying recorded pages.
+ *
+ * @author Oliver Dozsa
+ */
+public class PageFetcher
+{
+    /* --------------------------------------------------------------------- */
+    /* ATTRIBUTES                                                            */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC ATTRIBUTES ------------------------------------------------ */
+
+    /**
+     * Configuration key of the number of requests sent to a host per second.
+     */
+    public static final String REQUESTS_PER_SECOND_CONFIG_KEY = "openrecipes.scrape.fetch.requestsPerSecond";
+
+    /**
+     * Configuration key of the number of requests sent to a host at once
+     * after an idle period.
+     */
+    public static final String BURST_CONFIG_KEY = "openrecipes.scrape.fetch.burst";
+
+    /**
+     * Configuration key of the connect and read timeout, in milliseconds.
+     */
+    public static final String TIMEOUT_CONFIG_KEY = "openrecipes.scrape.fetch.timeout";
+
+    /**
+     * Configuration key of the number of retries of a failed request.
+     */
+    public static final String MAX_RETRIES_CONFIG_KEY = "openrecipes.scrape.fetch.maxRetries";
+
+    /**
+     * Configuration key of the delay before the first retry, in milliseconds.
+     * The delay doubles for every further retry.
+     */
+    public static final String RETRY_BACKOFF_CONFIG_KEY = "openrecipes.scrape.fetch.retryBackoff";
+
+    /**
+     * Configuration key of the number of idle connections kept alive per host.
+     */
+    public static final String MAX_CONNECTIONS_CONFIG_KEY = "openrecipes.scrape.fetch.maxConnections";
+
+    /**
+     * Configuration key of the user agent sent with the requests.
+     */
+    public static final String USER_AGENT_CONFIG_KEY = "openrecipes.scrape.fetch.userAgent";
+
+    /**
+     * Configuration key of the directory of the page cache. Pages are not
+     * cached, if not set.
+     */
+    public static final String CACHE_DIRECTORY_CONFIG_KEY = "openrecipes.scrape.cache.directory";
+
+    /**
+     * Configuration key of offline mode: pages are served from the page cache
+     * only.
+     */
+    public static final String CACHE_OFFLINE_CONFIG_KEY = "openrecipes.scrape.cache.offline";
+
+
+
+    /* -- PROTECTED ATTRIBUTES --------------------------------------------- */
+
+
+
+    /* -- PRIVATE ATTRIBUTES ----------------------------------------------- */
+
+    /**
+     * Default number of requests sent to a host per second.
+     */
+    private static final double DEFAULT_REQUESTS_PER_SECOND = 4.0;
+
+    /**
+     * Default number of requests sent to a host at once.
+     */
+    private static final int DEFAULT_BURST = 4;
+
+    /**
+     * Default timeout, in milliseconds.
+     */
+    private static final int DEFAULT_TIMEOUT = 10000;
+
+    /**
+     * Default number of retries.
+     */
+    private static final int DEFAULT_MAX_RETRIES = 2;
+
+    /**
+     * Default delay before the first retry, in milliseconds.
+     */
+    private static final long DEFAULT_RETRY_BACKOFF = 1000;
+
+    /**
+     * Default number of idle connections kept alive per host.
+     */
+    private static final int DEFAULT_MAX_CONNECTIONS = 8;
+
+    /**
+     * Default user agent.
+     */
+    private static final String DEFAULT_USER_AGENT = "Mozilla";
+
+    /**
+     * Status of a revalidated, unchanged page.
+     */
+    private static final int HTTP_NOT_MODIFIED = 304;
+
+    /**
+     * The fetcher used by the scrapers.
+     */
+    private static PageFetcher instance;
+
+    /**
+     * Number of requests sent to a host per second.
+     */
+    private double requestsPerSecond;
+
+    /**
+     * Number of requests sent to a host at once.
+     */
+    private int burst;
+
+    /**
+     * Connect and read timeout, in milliseconds.
+     */
+    private int timeout;
+
+    /**
+     * Number of retries of a failed request.
+     */
+    private int maxRetries;
+
+    /**
+     * Delay before the first retry, in milliseconds.
+     */
+    private long retryBackoff;
+
+    /**
+     * The user agent.
+     */
+    private String userAgent;
+
+    /**
+     * Host -> rate limiter of the host.
+     */
+    private Map<String, TokenBucket> buckets = new HashMap<String, TokenBucket>();
+
+    /**
+     * The page cache, or null.
+     */
+    private PageCache cache;
+
+    /**
+     * Whether pages are served from the cache only.
+     */
+    private boolean offline;
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* METHODS                                                               */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC METHODS --------------------------------------------------- */
+
+    /**
+     * Creates a fetcher.
+     *
+     * @param requestsPerSecond    Number of requests sent to a host per second.
+     * @param burst                Number of requests sent to a host at once.
+     * @param timeout              Connect and read timeout, in milliseconds.
+     * @param maxRetries           Number of retries of a failed request.
+     * @param retryBackoff         Delay before the first retry, in milliseconds.
+     * @param userAgent            The user agent.
+     */
+    public PageFetcher(double requestsPerSecond, int burst, int timeout, int maxRetries, long retryBackoff, String userAgent)
+    {
+        this.requestsPerSecond = requestsPerSecond;
+        this.burst             = burst;
+        this.timeout           = timeout;
+        this.maxRetries        = maxRetries;
+        this.retryBackoff      = retryBackoff;
+        this.userAgent         = userAgent;
+    }
+
+    /**
+     * Gets the fetcher used by the scrapers. It's configured from the
+     * application configuration; the defaults are used when there's no
+     * running application.
+     *
+     * @return The fetcher.
+     */
+    public static synchronized PageFetcher getInstance()
+    {
+        if(instance == null)
+        {
+            Configuration configuration = getConfiguration();
+
+            if(configuration != null)
+            {
+                instance = new PageFetcher(
+                    configuration.getDouble(REQUESTS_PER_SECOND_CONFIG_KEY, DEFAULT_REQUESTS_PER_SECOND),
+                    configuration.getInt(BURST_CONFIG_KEY, DEFAULT_BURST),
+                    configuration.getInt(TIMEOUT_CONFIG_KEY, DEFAULT_TIMEOUT),
+                    configuration.getInt(MAX_RETRIES_CONFIG_KEY, DEFAULT_MAX_RETRIES),
+                    configuration.getLong(RETRY_BACKOFF_CONFIG_KEY, DEFAULT_RETRY_BACKOFF),
+                    configuration.getString(USER_AGENT_CONFIG_KEY, DEFAULT_USER_AGENT)
+                );
+
+                setMaxConnections(configuration.getInt(MAX_CONNECTIONS_CONFIG_KEY, DEFAULT_MAX_CONNECTIONS));
+
+                String cacheDirectory = configuration.getString(CACHE_DIRECTORY_CONFIG_KEY);
+
+                if(cacheDirectory != null && !cacheDirectory.isEmpty())
+                {
+                    instance.setCache(new PageCache(new File(cacheDirectory)), configuration.getBoolean(CACHE_OFFLINE_CONFIG_KEY, false));
+                }
+            }
+            else
+            {
+                instance = new PageFetcher(
+                    DEFAULT_REQUESTS_PER_SECOND,
+                    DEFAULT_BURST,
+                    DEFAULT_TIMEOUT,
+                    DEFAULT_MAX_RETRIES,
+                    DEFAULT_RETRY_BACKOFF,
+                    DEFAULT_USER_AGENT
+                );
+
+                setMaxConnections(DEFAULT_MAX_CONNECTIONS);
+            }
+
+            Logger.info(PageFetcher.class.getName() + ".getInstance(): Created fetcher.\n" +
+                "    requestsPerSecond = " + instance.requestsPerSecond + "\n" +
+                "    burst             = " + instance.burst + "\n" +
+                "    timeout           = " + instance.timeout + "\n" +
+                "    maxRetries        = " + instance.maxRetries + "\n" +
+                "    retryBackoff      = " + instance.retryBackoff + "\n" +
+                "    cache             = " + (instance.cache != null ? instance.cache.getDirectory() : null) + "\n" +
+                "    offline           = " + instance.offline
+            );
+        }
+
+        return instance;
+    }
+
+    /**
+     * Sets the page cache.
+     *
+     * @param cache      The page cache, or null, for not caching.
+     * @param offline    Whether pages are served from the cache only.
+     *
+     * @throws IllegalArgumentException If offline without a cache.
+     */
+    public void setCache(PageCache cache, boolean offline)
+    {
+        if(offline && cache == null)
+        {
+            throw new IllegalArgumentException("Offline mode needs a page cache.");
+        }
+
+        this.cache   = cache;
+        this.offline = offline;
+    }
+
+    /**
+     * Fetches a page. A request failing with a timeout, a network error, or
+     * a server error is retried. An offline fetcher reads the page from the
+     * cache.
+     *
+     * @param url    The url of the page.
+     *
+     * @return The page.
+     *
+     * @throws IOException If every try failed, or the request can't succeed
+     *                     by retrying, or the page is not cached in offline
+     *                     mode.
+     */
+    public Document get(String url) throws IOException
+    {
+        Document result = null;
+
+        if(offline)
+        {
+            result = replay(url);
+        }
+
+        TokenBucket bucket = getBucket(url);
+        int attempt        = 0;
+
+        while(result == null)
+        {
+            waitFor(bucket);
+
+            try
+            {
+                result = fetch(url);
+            }
+            catch(IOException e)
+            {
+                if(attempt >= maxRetries || !isRetryable(e))
+                {
+                    throw e;
+                }
+
+                long delay = retryBackoff << attempt;
+
+                Logger.warn(PageFetcher.class.getName() + ".get(): Fetching failed, retrying.\n" +
+                    "    url     = " + url + "\n" +
+                    "    attempt = " + (attempt + 1) + "\n" +
+                    "    delay   = " + delay + "\n" +
+                    "    e       = " + e
+                );
+
+                sleep(delay);
+
+                attempt++;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Checks whether a failed request may succeed when retried.
+     *
+     * @param e    The failure.
+     *
+     * @return True for timeouts, network errors, server errors, and rate
+     *         limiting by the server.
+     */
+    public static boolean isRetryable(IOException e)
+    {
+        boolean result = true;
+
+        if(e instanceof HttpStatusException)
+        {
+            int status = ((HttpStatusException)e).getStatusCode();
+
+            result = status >= 500 || status == 429;
+        }
+        else if(e instanceof MalformedURLException || e instanceof InterruptedIOException && !(e instanceof SocketTimeoutException))
+        {
+            result = false;
+        }
+
+        return result;
+    }
+
+
+
+    /* -- PROTECTED METHODS ------------------------------------------------ */
+
+    /**
+     * Fetches a page once, from the network. A cached page is revalidated,
+     * and used if the server reports it unchanged.
+     *
+     * @param url    The url of the page.
+     *
+     * @return The page.
+     *
+     * @throws IOException If fetching failed.
+     */
+    protected Document fetch(String url) throws IOException
+    {
+        Document result = null;
+
+        PageCache.Entry cached = null;
+
+        Connection connection = Jsoup.connect(url).timeout(timeout).userAgent(userAgent).ignoreHttpErrors(true);
+
+        if(cache != null)
+        {
+            cached = cache.read(url);
+        }
+
+        if(cached != null && cached.getEtag() != null)
+        {
+            connection.header("If-None-Match", cached.getEtag());
+        }
+
+        if(cached != null && cached.getLastModified() != null)
+        {
+            connection.header("If-Modified-Since", cached.getLastModified());
+        }
+
+        Connection.Response response = connection.execute();
+        int status                   = response.statusCode();
+
+        if(status == HTTP_NOT_MODIFIED && cached != null)
+        {
+            Logger.debug(PageFetcher.class.getName() + ".fetch(): Page not modified.\n" +
+                "    url = " + url
+            );
+
+            result = Jsoup.parse(cached.getBody(), url);
+        }
+        else if(status < 200 || status >= 300)
+        {
+            throw new HttpStatusException("HTTP error fetching URL", status, url);
+        }
+        else
+        {
+            result = response.parse();
+
+            if(cache != null)
+            {
+                cache.write(new PageCache.Entry(url, response.header("ETag"), response.header("Last-Modified"), result.outerHtml()));
+            }
+        }
+
+        return result;
+    }
+
+
+
+    /* -- PRIVATE METHODS -------------------------------------------------- */
+
+    /**
+     * Gets the rate limiter of the host of an url.
+     *
+     * @param url    The url.
+     *
+     * @return The rate limiter.
+     *
+     * @throws MalformedURLException If the url is malformed.
+     */
+    private TokenBucket getBucket(String url) throws MalformedURLException
+    {
+        String host = new URL(url).getHost().toLowerCase();
+
+        synchronized(buckets)
+        {
+            TokenBucket result = buckets.get(host);
+
+            if(result == null)
+            {
+                result = new TokenBucket(requestsPerSecond, burst, System.nanoTime());
+
+                buckets.put(host, result);
+            }
+
+            return result;
+        }
+    }
+
+    /**
+     * Reads a page from the cache.
+     *
+     * @param url    The url of the page.
+     *
+     * @return The page.
+     *
+     * @throws FileNotFoundException If the page is not cached.
+     */
+    private Document replay(String url) throws FileNotFoundException
+    {
+        PageCache.Entry entry = cache.read(url);
+
+        if(entry == null)
+        {
+            throw new FileNotFoundException("Page is not cached: " + url);
+        }
+
+        return Jsoup.parse(entry.getBody(), url);
+    }
+
+    /**
+     * Waits for a token of a rate limiter.
+     *
+     * @param bucket    The rate limiter.
+     *
+     * @throws InterruptedIOException If interrupted while waiting.
+     */
+    private static void waitFor(TokenBucket bucket) throws InterruptedIOException
+    {
+        try
+        {
+            bucket.acquire();
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException("Interrupted while waiting for rate limit.");
+        }
+    }
+
+    /**
+     * Waits before a retry.
+     *
+     * @param millis    The time to wait, in milliseconds.
+     *
+     * @throws InterruptedIOException If interrupted while waiting.
+     */
+    private static void sleep(long millis) throws InterruptedIOException
+    {
+        try
+        {
+            Thread.sleep(millis);
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException("Interrupted while waiting for retry.");
+        }
+    }
+
+    /**
+     * Sets the number of idle connections the JDK keeps alive per host,
+     * unless it's set on the command line.
+     *
+     * @param maxConnections    The number of connections.
+     */
+    private static void setMaxConnections(int maxConnections)
+    {
+        if(System.getProperty("http.maxConnections") == null)
+        {
+            System.setProperty("http.maxConnections", String.valueOf(maxConnections));
+        }
+    }
+
+    /**
+     * Gets the application configuration.
+     *
+     * @return The configuration, or null, if there's no running application.
+     */
+    private static Configuration getConfiguration()
+    {
+        Configuration result = null;
+
+        try
+        {
+            result = Play.application().configuration();
+        }
+        catch(RuntimeException e)
+        {
+            result = null;
+        }
+
+        return result;
+    }
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* OTHERS                                                                */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC OTHERS ---------------------------------------------------- */
+
+
+
+    /* -- PROTECTED OTHERS ------------------------------------------------- */
+
+
+
+    /* -- PRIVATE OTHERS --------------------------------------------------- */
+}
@@ -0,0 +1,155 @@
+/*
+ *  Copyright 2016 Oliver Dozsa
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package scrapers.fetch;
+
+/**
+ * Token bucket rate limiter. Tokens are added at a steady rate, up to the
+ * capacity of the bucket; every request takes one. Requests arriving on an
+ * empty bucket reserve a future token, and wait for it.
+ *
+ * @author Oliver Dozsa
+ */
+public class TokenBucket
+{
+    /* --------------------------------------------------------------------- */
+    /* ATTRIBUTES                                                            */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC ATTRIBUTES ------------------------------------------------ */
+
+
+
+    /* -- PROTECTED ATTRIBUTES --------------------------------------------- */
+
+
+
+    /* -- PRIVATE ATTRIBUTES ----------------------------------------------- */
+
+    /**
+     * Time between two tokens, in nanoseconds.
+     */
+    private long nanosPerToken;
+
+    /**
+     * The largest number of tokens the bucket holds.
+     */
+    private int capacity;
+
+    /**
+     * The tokens in the bucket at lastRefill. Negative, if tokens are
+     * reserved ahead.
+     */
+    private double tokens;
+
+    /**
+     * Time of the last refill, in nanoseconds.
+     */
+    private long lastRefill;
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* METHODS                                                               */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC METHODS --------------------------------------------------- */
+
+    /**
+     * Creates a full bucket.
+     *
+     * @param tokensPerSecond    The rate of adding tokens.
+     * @param capacity           The largest number of tokens the bucket holds;
+     *                           this many requests may go at once.
+     * @param now                The actual time, in nanoseconds.
+     */
+    public TokenBucket(double tokensPerSecond, int capacity, long now)
+    {
+        this.nanosPerToken = (long)(1000000000L / tokensPerSecond);
+        this.capacity      = Math.max(1, capacity);
+        this.tokens        = this.capacity;
+        this.lastRefill    = now;
+    }
+
+    /**
+     * Takes a token, waiting for it if the bucket is empty.
+     *
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public void acquire() throws InterruptedException
+    {
+        long wait = reserve(System.nanoTime());
+
+        if(wait > 0)
+        {
+            Thread.sleep(wait / 1000000L, (int)(wait % 1000000L));
+        }
+    }
+
+    /**
+     * Takes a token, or reserves the next free one.
+     *
+     * @param now    The actual time, in nanoseconds.
+     *
+     * @return The time to wait for the token, in nanoseconds; 0, if it's
+     *         available at once.
+     */
+    public synchronized long reserve(long now)
+    {
+        long result = 0;
+
+        if(now > lastRefill)
+        {
+            tokens     = Math.min(capacity, tokens + (double)(now - lastRefill) / nanosPerToken);
+            lastRefill = now;
+        }
+
+        tokens -= 1.0;
+
+        if(tokens < 0.0)
+        {
+            result = (long)Math.ceil(-tokens * nanosPerToken) + (lastRefill - now);
+        }
+
+        return result;
+    }
+
+
+
+    /* -- PROTECTED METHODS ------------------------------------------------ */
+
+
+
+    /* -- PRIVATE METHODS -------------------------------------------------- */
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* OTHERS                                                                */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC OTHERS ---------------------------------------------------- */
+
+
+
+    /* -- PROTECTED OTHERS ------------------------------------------------- */
+
+
+
+    /* -- PRIVATE OTHERS --------------------------------------------------- */
+}
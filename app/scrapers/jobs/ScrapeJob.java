@@ -0,0 +1,460 @@
+/*
+ *  Copyright 2016 Oliver Dozsa
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package scrapers.jobs;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import play.Logger;
+import scrapers.dbload.DbLoader;
+import scrapers.dbload.StageMetrics;
+import scrapers.visitors.ListBasedVisitor;
+
+/**
+ * A background scrape of one source site. The visitor is created, and the
+ * database is loaded on the thread running the job, so submitting the job
+ * returns at once.
+ *
+ * @author Oliver Dozsa
+ */
+public class ScrapeJob implements Runnable
+{
+    /* --------------------------------------------------------------------- */
+    /* ATTRIBUTES                                                            */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC ATTRIBUTES ------------------------------------------------ */
+
+
+
+    /* -- PROTECTED ATTRIBUTES --------------------------------------------- */
+
+
+
+    /* -- PRIVATE ATTRIBUTES ----------------------------------------------- */
+
+    /**
+     * The id of the job.
+     */
+    private long id;
+
+    /**
+     * The name of the source site.
+     */
+    private String site;
+
+    /**
+     * The language id used for scraping.
+     */
+    private Long languageId;
+
+    /**
+     * Number of recipe pages fetched at the same time.
+     */
+    private int fetchConcurrency;
+
+    /**
+     * Number of listing pages loaded ahead.
+     */
+    private int prefetchDepth;
+
+    /**
+     * Whether only the recipes not in the database are scraped.
+     */
+    private boolean incremental;
+
+    /**
+     * The state of the job.
+     */
+    private volatile JobState state;
+
+    /**
+     * The visitor. Null until the job starts.
+     */
+    private volatile ListBasedVisitor visitor;
+
+    /**
+     * The loader. Null until the job starts.
+     */
+    private volatile DbLoader loader;
+
+    /**
+     * Set when the job is cancelled.
+     */
+    private volatile boolean cancelled;
+
+    /**
+     * Time of submitting, in milliseconds.
+     */
+    private long submitTime;
+
+    /**
+     * Time of starting, in milliseconds. 0 until the job starts.
+     */
+    private volatile long startTime;
+
+    /**
+     * Time of finishing, in milliseconds. 0 until the job ends.
+     */
+    private volatile long endTime;
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* METHODS                                                               */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC METHODS --------------------------------------------------- */
+
+    /**
+     * Initializes a queued job.
+     *
+     * @param id                  The id of the job.
+     * @param site                The name of the source site.
+     * @param languageId          The language id used for scraping.
+     * @param fetchConcurrency    Number of recipe pages fetched at the same time.
+     * @param prefetchDepth       Number of listing pages loaded ahead.
+     * @param incremental         Whether only the recipes not in the database are scraped.
+     */
+    public ScrapeJob(long id, String site, Long languageId, int fetchConcurrency, int prefetchDepth, boolean incremental)
+    {
+        this.id               = id;
+        this.site             = site;
+        this.languageId       = languageId;
+        this.fetchConcurrency = fetchConcurrency;
+        this.prefetchDepth    = prefetchDepth;
+        this.incremental      = incremental;
+
+        state      = JobState.QUEUED;
+        submitTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Runs the scrape.
+     */
+    @Override
+    public void run()
+    {
+        Logger.info(ScrapeJob.class.getName() + ".run(): Starting job.\n" +
+            "    id   = " + id + "\n" +
+            "    site = " + site
+        );
+
+        startTime = System.currentTimeMillis();
+
+        try
+        {
+            if(!cancelled)
+            {
+                state   = JobState.RUNNING;
+                visitor = ScrapeJobManager.createVisitor(site);
+                loader  = new DbLoader(visitor, languageId);
+
+                visitor.setFetchConcurrency(fetchConcurrency);
+                visitor.setPrefetchDepth(prefetchDepth);
+                loader.setIncremental(incremental);
+
+                /* Cancel may have arrived while the first page was loading. */
+                if(!cancelled)
+                {
+                    loader.load();
+                }
+            }
+
+            if(cancelled)
+            {
+                state = JobState.CANCELLED;
+            }
+            else if(loader.isError())
+            {
+                state = JobState.FAILED;
+            }
+            else
+            {
+                state = JobState.FINISHED;
+            }
+        }
+        catch(Exception e)
+        {
+            Logger.error(ScrapeJob.class.getName() + ".run(): Job failed!\n" +
+                "    id = " + id + "\n" +
+                "    e  = " + e
+            );
+
+            e.printStackTrace();
+
+            state = JobState.FAILED;
+        }
+
+        endTime = System.currentTimeMillis();
+
+        Logger.info(ScrapeJob.class.getName() + ".run(): Job ended.\n" +
+            "    id           = " + id + "\n" +
+            "    state        = " + state + "\n" +
+            "    scrapedCount = " + getScrapedCount()
+        );
+    }
+
+    /**
+     * Cancels the job. A queued job won't start, a running one stops after the
+     * recipe it's working on.
+     */
+    public void cancel()
+    {
+        cancelled = true;
+
+        DbLoader actLoader = loader;
+
+        if(actLoader != null)
+        {
+            actLoader.stopLoad();
+        }
+    }
+
+    /**
+     * Checks whether the job is queued or running.
+     *
+     * @return True, if the job has not ended yet.
+     */
+    public boolean isActive()
+    {
+        return state == JobState.QUEUED || state == JobState.RUNNING;
+    }
+
+    /**
+     *
+     * @return The id of the job.
+     */
+    public long getId()
+    {
+        return id;
+    }
+
+    /**
+     *
+     * @return The name of the source site.
+     */
+    public String getSite()
+    {
+        return site;
+    }
+
+    /**
+     *
+     * @return The state of the job.
+     */
+    public JobState getState()
+    {
+        return state;
+    }
+
+    /**
+     *
+     * @return Time of submitting, in milliseconds.
+     */
+    public long getSubmitTime()
+    {
+        return submitTime;
+    }
+
+    /**
+     *
+     * @return The number of recipes scraped so far.
+     */
+    public int getScrapedCount()
+    {
+        int result = 0;
+
+        DbLoader actLoader = loader;
+
+        if(actLoader != null)
+        {
+            result = actLoader.getScrapedCount();
+        }
+
+        return result;
+    }
+
+    /**
+     *
+     * @return The number of errors so far.
+     */
+    public int getErrorCount()
+    {
+        int result = 0;
+
+        DbLoader actLoader = loader;
+
+        if(actLoader != null)
+        {
+            result = actLoader.getErrorCount();
+        }
+
+        return result;
+    }
+
+    /**
+     *
+     * @return The share of scraped ingredient names resolved from the cache.
+     */
+    public double getResolutionHitRate()
+    {
+        double result = 0.0;
+
+        DbLoader actLoader = loader;
+
+        if(actLoader != null)
+        {
+            result = actLoader.getResolutionHitRate();
+        }
+
+        return result;
+    }
+
+    /**
+     *
+     * @return The metrics of the loader's stages; empty, until the load starts.
+     */
+    public List<StageMetrics> getStageMetrics()
+    {
+        List<StageMetrics> result = new ArrayList<StageMetrics>();
+
+        DbLoader actLoader = loader;
+
+        if(actLoader != null)
+        {
+            result = actLoader.getStageMetrics();
+        }
+
+        return result;
+    }
+
+    /**
+     *
+     * @return The number of listing pages visited so far.
+     */
+    public int getPagesDone()
+    {
+        int result = 0;
+
+        ListBasedVisitor actVisitor = visitor;
+
+        if(actVisitor != null)
+        {
+            result = actVisitor.getPageCounter();
+        }
+
+        return result;
+    }
+
+    /**
+     *
+     * @return The running time of the job, in milliseconds.
+     */
+    public long getElapsedMillis()
+    {
+        long result = 0;
+
+        if(startTime > 0)
+        {
+            long end = endTime;
+
+            if(end == 0)
+            {
+                end = System.currentTimeMillis();
+            }
+
+            result = end - startTime;
+        }
+
+        return result;
+    }
+
+    /**
+     *
+     * @return The average number of recipes scraped per second.
+     */
+    public double getRecipesPerSecond()
+    {
+        double result  = 0.0;
+        long   elapsed = getElapsedMillis();
+
+        if(elapsed > 0)
+        {
+            result = getScrapedCount() * 1000.0 / elapsed;
+        }
+
+        return result;
+    }
+
+
+
+    /* -- PROTECTED METHODS ------------------------------------------------ */
+
+
+
+    /* -- PRIVATE METHODS -------------------------------------------------- */
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* OTHERS                                                                */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC OTHERS ---------------------------------------------------- */
+
+    /**
+     * The state of a job.
+     */
+    public static enum JobState
+    {
+        /**
+         * Waiting for a free thread.
+         */
+        QUEUED,
+
+        /**
+         * Scraping.
+         */
+        RUNNING,
+
+        /**
+         * Scraped every recipe.
+         */
+        FINISHED,
+
+        /**
+         * Stopped by cancel.
+         */
+        CANCELLED,
+
+        /**
+         * Stopped by an error the loader could not recover from.
+         */
+        FAILED;
+    }
+
+
+
+    /* -- PROTECTED OTHERS ------------------------------------------------- */
+
+
+
+    /* -- PRIVATE OTHERS --------------------------------------------------- */
+}
@@ -0,0 +1,409 @@
+/*
+ *  Copyright 2016 Oliver Dozsa
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package scrapers.jobs;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import play.Configuration;
+import play.Logger;
+import play.inject.ApplicationLifecycle;
+import scrapers.visitors.AprosefVisitor;
+import scrapers.visitors.ListBasedVisitor;
+import scrapers.visitors.MindmegetteVisitor;
+import scrapers.visitors.NosaltyVisitor;
+
+/**
+ * Runs scrape jobs in the background. Jobs of different sites run in
+ * parallel; a site can have only one active job, as two loaders of the same
+ * site would add the same recipes twice.
+ *
+ * @author Oliver Dozsa
+ */
+@Singleton
+public class ScrapeJobManager
+{
+    /* --------------------------------------------------------------------- */
+    /* ATTRIBUTES                                                            */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC ATTRIBUTES ------------------------------------------------ */
+
+    /**
+     * Configuration key of the number of jobs running at the same time.
+     */
+    public static final String THREADS_CONFIG_KEY = "openrecipes.scrape.jobs.threads";
+
+    /**
+     * Configuration key of the number of recipe pages fetched from a site at
+     * the same time.
+     */
+    public static final String FETCH_CONCURRENCY_CONFIG_KEY = "openrecipes.scrape.fetch.maxPerHost";
+
+    /**
+     * Configuration key of the number of listing pages loaded ahead.
+     */
+    public static final String PREFETCH_DEPTH_CONFIG_KEY = "openrecipes.scrape.fetch.prefetchDepth";
+
+    /**
+     * Configuration key of incremental scraping: only the recipes not in the
+     * database are scraped.
+     */
+    public static final String INCREMENTAL_CONFIG_KEY = "openrecipes.scrape.incremental";
+
+
+
+    /* -- PROTECTED ATTRIBUTES --------------------------------------------- */
+
+
+
+    /* -- PRIVATE ATTRIBUTES ----------------------------------------------- */
+
+    /**
+     * Default number of jobs running at the same time; one per source site.
+     */
+    private static final int DEFAULT_THREADS = 3;
+
+    /**
+     * The number of ended jobs kept for querying their results.
+     */
+    private static final int MAX_ENDED_JOBS = 50;
+
+    /**
+     * Runs the jobs.
+     */
+    private ExecutorService executor;
+
+    /**
+     * The jobs, in submit order.
+     */
+    private LinkedHashMap<Long, ScrapeJob> jobs = new LinkedHashMap<Long, ScrapeJob>();
+
+    /**
+     * Generates job ids.
+     */
+    private AtomicLong idGenerator = new AtomicLong();
+
+    /**
+     * Number of recipe pages fetched from a site at the same time.
+     */
+    private int fetchConcurrency;
+
+    /**
+     * Number of listing pages loaded ahead.
+     */
+    private int prefetchDepth;
+
+    /**
+     * Whether the jobs scrape incrementally.
+     */
+    private boolean incremental;
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* METHODS                                                               */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC METHODS --------------------------------------------------- */
+
+    /**
+     * Creates the manager.
+     *
+     * @param configuration    The application configuration.
+     * @param lifecycle        The application lifecycle. Running jobs are cancelled on stop.
+     */
+    @Inject
+    public ScrapeJobManager(Configuration configuration, ApplicationLifecycle lifecycle)
+    {
+        int threads = configuration.getInt(THREADS_CONFIG_KEY, DEFAULT_THREADS);
+
+        fetchConcurrency = configuration.getInt(FETCH_CONCURRENCY_CONFIG_KEY, 1);
+        prefetchDepth    = configuration.getInt(PREFETCH_DEPTH_CONFIG_KEY, 0);
+        incremental      = configuration.getBoolean(INCREMENTAL_CONFIG_KEY, false);
+
+        Logger.info(ScrapeJobManager.class.getName() + "(): Creating executor.\n" +
+            "    threads          = " + threads + "\n" +
+            "    fetchConcurrency = " + fetchConcurrency + "\n" +
+            "    prefetchDepth    = " + prefetchDepth + "\n" +
+            "    incremental      = " + incremental
+        );
+
+        final AtomicInteger threadCounter = new AtomicInteger();
+
+        executor = Executors.newFixedThreadPool(threads, new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread result = new Thread(runnable, "scrape-" + threadCounter.incrementAndGet());
+
+                result.setDaemon(true);
+
+                return result;
+            }
+        });
+
+        lifecycle.addStopHook(new Callable<CompletionStage<?>>()
+        {
+            @Override
+            public CompletionStage<?> call()
+            {
+                for(ScrapeJob job : getJobs())
+                {
+                    job.cancel();
+                }
+
+                executor.shutdown();
+
+                return CompletableFuture.completedFuture(null);
+            }
+        });
+    }
+
+    /**
+     * Creates the visitor of a source site. Note, that creating a visitor
+     * loads the first listing page.
+     *
+     * @param site    The name of the source site.
+     *
+     * @return The visitor.
+     *
+     * @throws IllegalArgumentException If the site is unknown.
+     */
+    public static ListBasedVisitor createVisitor(String site)
+    {
+        ListBasedVisitor result = null;
+
+        if(site.equalsIgnoreCase("nosalty"))
+        {
+            result = new NosaltyVisitor();
+        }
+        else if(site.equalsIgnoreCase("aprosef"))
+        {
+            result = new AprosefVisitor();
+        }
+        else if(site.equalsIgnoreCase("mindmegette"))
+        {
+            result = new MindmegetteVisitor();
+        }
+        else
+        {
+            throw new IllegalArgumentException("Unknown source site: " + site);
+        }
+
+        return result;
+    }
+
+    /**
+     * Checks whether a source site can be scraped.
+     *
+     * @param site    The name of the source site.
+     *
+     * @return True, if the site is known.
+     */
+    public static boolean isKnownSite(String site)
+    {
+        return site.equalsIgnoreCase("nosalty") || site.equalsIgnoreCase("aprosef") || site.equalsIgnoreCase("mindmegette");
+    }
+
+    /**
+     * Submits a scrape of a source site.
+     *
+     * @param site          The name of the source site.
+     * @param languageId    The language id used for scraping.
+     *
+     * @return The job, or null, if the site already has an active job.
+     *
+     * @throws IllegalArgumentException If the site is unknown.
+     */
+    public ScrapeJob submit(String site, Long languageId)
+    {
+        ScrapeJob result = null;
+
+        if(!isKnownSite(site))
+        {
+            throw new IllegalArgumentException("Unknown source site: " + site);
+        }
+
+        synchronized(jobs)
+        {
+            if(findActiveJob(site) == null)
+            {
+                result = new ScrapeJob(idGenerator.incrementAndGet(), site.toLowerCase(), languageId, fetchConcurrency, prefetchDepth, incremental);
+
+                jobs.put(result.getId(), result);
+
+                dropEndedJobs();
+            }
+        }
+
+        if(result != null)
+        {
+            executor.execute(result);
+        }
+        else
+        {
+            Logger.warn(ScrapeJobManager.class.getName() + ".submit(): Site already has an active job!\n" +
+                "    site = " + site
+            );
+        }
+
+        return result;
+    }
+
+    /**
+     * Gets a job.
+     *
+     * @param id    The id of the job.
+     *
+     * @return The job, or null, if there's no such job.
+     */
+    public ScrapeJob getJob(long id)
+    {
+        synchronized(jobs)
+        {
+            return jobs.get(id);
+        }
+    }
+
+    /**
+     * Gets every known job.
+     *
+     * @return The jobs, in submit order.
+     */
+    public List<ScrapeJob> getJobs()
+    {
+        synchronized(jobs)
+        {
+            return new ArrayList<ScrapeJob>(jobs.values());
+        }
+    }
+
+    /**
+     * Cancels a job.
+     *
+     * @param id    The id of the job.
+     *
+     * @return True, if the job was active.
+     */
+    public boolean cancel(long id)
+    {
+        boolean result = false;
+
+        ScrapeJob job = getJob(id);
+
+        if(job != null && job.isActive())
+        {
+            job.cancel();
+
+            result = true;
+        }
+
+        return result;
+    }
+
+
+
+    /* -- PROTECTED METHODS ------------------------------------------------ */
+
+
+
+    /* -- PRIVATE METHODS -------------------------------------------------- */
+
+    /**
+     * Finds the active job of a site. Must be called holding the jobs lock.
+     *
+     * @param site    The name of the source site.
+     *
+     * @return The job, or null.
+     */
+    private ScrapeJob findActiveJob(String site)
+    {
+        ScrapeJob result = null;
+
+        for(ScrapeJob job : jobs.values())
+        {
+            if(job.isActive() && job.getSite().equalsIgnoreCase(site))
+            {
+                result = job;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Drops the oldest ended jobs above the kept limit. Must be called holding
+     * the jobs lock.
+     */
+    private void dropEndedJobs()
+    {
+        int endedCount = 0;
+
+        for(ScrapeJob job : jobs.values())
+        {
+            if(!job.isActive())
+            {
+                endedCount++;
+            }
+        }
+
+        Iterator<ScrapeJob> iterator = jobs.values().iterator();
+
+        while(endedCount > MAX_ENDED_JOBS && iterator.hasNext())
+        {
+            if(!iterator.next().isActive())
+            {
+                iterator.remove();
+
+                endedCount--;
+            }
+        }
+    }
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* OTHERS                                                                */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC OTHERS ---------------------------------------------------- */
+
+
+
+    /* -- PROTECTED OTHERS ------------------------------------------------- */
+
+
+
+    /* -- PRIVATE OTHERS --------------------------------------------------- */
+}
@@ -18,14 +18,13 @@
 
 package scrapers.visitors;
 
-import org.jsoup.Connection;
-import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
 import play.Logger;
 import scrapers.data.ScrapedIngredient;
 import scrapers.data.ScrapedRecipe;
+import scrapers.fetch.PageFetcher;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -66,16 +65,6 @@ public class AprosefVisitor extends ListBasedVisitor
      * The main content selector. Selects the element containing the recipes.
      * */
     private static String RECIPE_MAIN_CONTENT_SELECTOR = "#leftside .view-content";
-    
-    /**
-     * Default timeout for connecting to a recipe page.
-     */
-    private static final int RECIPE_CONNECT_TIMEOUT = 10000;
-
-    /**
-     * The connection.
-     * */
-    private Connection connection;
 
     /**
      * The main page.
@@ -133,9 +122,7 @@ public class AprosefVisitor extends ListBasedVisitor
         ScrapedRecipe result = null;
         
         /* Try to get the recipe's page. */
-        Connection recipeConnection = Jsoup.connect(url).timeout(RECIPE_CONNECT_TIMEOUT);
-        
-        Document recipePage = recipeConnection.get();
+        Document recipePage = PageFetcher.getInstance().get(url);
 
         /* Get recipe parts. */
         String name                         = scrapeRecipeName(recipePage);
@@ -188,8 +175,7 @@ public class AprosefVisitor extends ListBasedVisitor
             "    pageCounter = " + pageCounter);
 
         /* Get the first page of recipes. */
-        connection = Jsoup.connect(String.format(BASE_URL, pageCounter));
-        mainPage   = connection.get();
+        mainPage = loadListingPage(String.format(BASE_URL, pageCounter));
 
         /* Get the recipes of the first page. */
         mainContent    = mainPage.select(RECIPE_MAIN_CONTENT_SELECTOR);
@@ -258,6 +244,49 @@ public class AprosefVisitor extends ListBasedVisitor
 
         return result;
     }
+
+    /**
+     * Gets the urls of the next listing pages.
+     *
+     * @param count    The number of urls wanted.
+     *
+     * @return The urls.
+     */
+    @Override
+    protected List<String> getUpcomingListingUrls(int count)
+    {
+        List<String> result = new ArrayList<String>();
+
+        /* pageCounter already points to the next page. */
+        for(int i = 0; i < count; i++)
+        {
+            result.add(String.format(BASE_URL, pageCounter + i));
+        }
+
+        return result;
+    }
+
+    /**
+     * Gets the url of a recipe from its element on the listing page.
+     *
+     * @param element    The recipe element.
+     *
+     * @return The url, or null, if the element has no single recipe link.
+     */
+    @Override
+    protected String getRecipeUrl(Element element)
+    {
+        String result = null;
+
+        Elements aElements = element.select(".views-field-title a");
+
+        if(aElements.size() == 1)
+        {
+            result = aElements.get(0).attr("abs:href");
+        }
+
+        return result;
+    }
     
     
     
@@ -18,13 +18,28 @@
 
 package scrapers.visitors;
 
+import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
+import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 
 import play.Logger;
 import scrapers.data.ScrapedRecipe;
+import scrapers.fetch.PageFetcher;
 
 /**
  * Template class.
@@ -62,10 +77,68 @@ public abstract class ListBasedVisitor extends RecipeSiteVisitor
 
     /* -- PRIVATE ATTRIBUTES ----------------------------------------------- */
     
+    /**
+     * Idle fetch threads stop after this time, in milliseconds.
+     */
+    private static final long FETCH_THREAD_KEEP_ALIVE = 30000;
+    
     /**
      * Flag to check whether there are more elements to get.
      */
     private boolean hasMoreElements;
+    
+    /**
+     * Number of recipe pages fetched at the same time. 1 means the recipes are
+     * fetched one by one, when they're asked for.
+     */
+    private int fetchConcurrency = 1;
+    
+    /**
+     * Fetches the recipe pages ahead. Created on first use.
+     */
+    private ThreadPoolExecutor fetchExecutor;
+    
+    /**
+     * The recipe elements the fetches were started for.
+     */
+    private List<Element> fetchedElements;
+    
+    /**
+     * The fetches of the recipe elements, by index. Null, where there's no
+     * fetch, or it was already used.
+     */
+    private List<Future<ScrapedRecipe>> fetches = new ArrayList<Future<ScrapedRecipe>>();
+    
+    /**
+     * Number of listing pages loaded ahead. 0 disables prefetching.
+     */
+    private int prefetchDepth = 0;
+    
+    /**
+     * Loads the listing pages ahead. Created on first use.
+     */
+    private ThreadPoolExecutor prefetchExecutor;
+    
+    /**
+     * Url -> prefetch of the listing page, in the order of the pages.
+     */
+    private Map<String, Future<Document>> prefetches = new LinkedHashMap<String, Future<Document>>();
+    
+    /**
+     * Tells the recipes scraped before, for incremental scraping. Null, if
+     * every recipe is scraped.
+     */
+    private KnownUrlFilter knownUrlFilter;
+    
+    /**
+     * The recipe elements the known recipes were dropped from.
+     */
+    private List<Element> filteredElements;
+    
+    /**
+     * Number of known recipes skipped so far.
+     */
+    private volatile int knownSkippedCount;
 
 
 
@@ -162,39 +235,34 @@ public abstract class ListBasedVisitor extends RecipeSiteVisitor
                 if(elementCounter >= recipeElements.size())
                 {
                     /* Reached last element, try to go to next page. */
-                    try
-                    {
-                        goToNextPage();
-                        
-                        if(recipeElements.isEmpty())
-                        {
-                            /* Processed last page, no more elements to get. */
-                            hasMoreElements = false;
-                        }
-                        else
-                        {
-                            /* Reset elementCounter. */
-                            elementCounter = 0;
-                        }
-                    }
-                    catch (Exception e)
+                    loadNextPage();
+                }
+                
+                while(knownUrlFilter != null && hasMoreElements && getState() == VisitorState.WORK && filteredElements != recipeElements)
+                {
+                    /* New listing page, drop the recipes scraped before. */
+                    skipKnownElements();
+                    
+                    if(hasMoreElements && elementCounter >= recipeElements.size())
                     {
-                        Logger.error(this.getClass().getName() + ".nextElement(): Failed to go to next page!\n" + 
-                            "    e  = " + e);
-                        
-                        changeState(VisitorState.ERROR);
-                        
-                        errorCode = ErrorCode.ERROR_PAGE_LOAD;
+                        /* Known recipes only, go on with the next listing page. */
+                        loadNextPage();
                     }
                 }
                 
                 /* Check for more elements, and possible errors. */
                 if(hasMoreElements && getState() == VisitorState.WORK)
                 {
+                    if(prefetchDepth > 0)
+                    {
+                        /* Load the next listing pages while this one is scraped. */
+                        updatePrefetches();
+                    }
+                    
                     /* Scrape the current element. */
                     try
                     {
-                        result = scrapeFromElement(recipeElements.get(elementCounter));
+                        result = scrapeCurrentElement();
                     }
                     catch(Exception e)
                     {
@@ -243,11 +311,89 @@ public abstract class ListBasedVisitor extends RecipeSiteVisitor
     @Override
     public void skipCurrentPage()
     {
+        cancelFetches();
+        cancelPrefetches();
+        
         pageCounter++;
         elementCounter = 0;
         recipeElements = new ArrayList<Element>();
     }
     
+    /**
+     * Sets the number of recipe pages fetched at the same time. All recipes of
+     * a visitor are on the same host, so this is the per-host limit of
+     * connections. Above 1, the recipes of a listing page are fetched ahead
+     * concurrently, and still returned in listing order.
+     * 
+     * @param fetchConcurrency    The number of concurrent fetches. 1 for one by one.
+     */
+    public void setFetchConcurrency(int fetchConcurrency)
+    {
+        this.fetchConcurrency = Math.max(1, fetchConcurrency);
+    }
+    
+    /**
+     * Gets the number of recipe pages fetched at the same time.
+     * 
+     * @return The number of concurrent fetches.
+     */
+    public int getFetchConcurrency()
+    {
+        return fetchConcurrency;
+    }
+    
+    /**
+     * Sets the number of listing pages loaded ahead, while the recipes of the
+     * current one are scraped. Only visitors telling their upcoming listing
+     * pages are prefetched.
+     * 
+     * @param prefetchDepth    The number of pages. 0 disables prefetching.
+     */
+    public void setPrefetchDepth(int prefetchDepth)
+    {
+        this.prefetchDepth = Math.max(0, prefetchDepth);
+        
+        if(this.prefetchDepth == 0)
+        {
+            cancelPrefetches();
+        }
+    }
+    
+    /**
+     * Sets the filter of the recipes scraped before. Known recipes of a listing
+     * page are skipped without being fetched. For newest first listings, the
+     * first listing page having known recipes only ends the listing, as the
+     * rest of it was scraped before (see isListingNewestFirst()).
+     * 
+     * @param knownUrlFilter    The filter, or null, for scraping every recipe.
+     */
+    public void setKnownUrlFilter(KnownUrlFilter knownUrlFilter)
+    {
+        this.knownUrlFilter = knownUrlFilter;
+        
+        filteredElements = null;
+    }
+    
+    /**
+     * Gets the number of known recipes skipped so far.
+     * 
+     * @return The number of skipped recipes.
+     */
+    public int getKnownSkippedCount()
+    {
+        return knownSkippedCount;
+    }
+    
+    /**
+     * Gets the page counter.
+     * 
+     * @return The page counter.
+     */
+    public int getPageCounter()
+    {
+        return pageCounter;
+    }
+    
     /**
      * Sets the page counter.
      * 
@@ -255,6 +401,9 @@ public abstract class ListBasedVisitor extends RecipeSiteVisitor
      */
     public void setToPage(int pageCounter)
     {
+        cancelFetches();
+        cancelPrefetches();
+        
         this.pageCounter = pageCounter;
         elementCounter = 0;
         recipeElements = new ArrayList<Element>();
@@ -278,9 +427,396 @@ public abstract class ListBasedVisitor extends RecipeSiteVisitor
      */
     protected abstract void goToNextPage() throws Exception;
     
+    /**
+     * Gets the urls of the listing pages goToNextPage() will load next, in
+     * order. Used for prefetching; by default nothing is prefetched.
+     * 
+     * @param count    The number of urls wanted.
+     * 
+     * @return At most count urls. May be less, if they can't be told yet.
+     */
+    protected List<String> getUpcomingListingUrls(int count)
+    {
+        return new ArrayList<String>();
+    }
+    
+    /**
+     * Gets the url of a recipe from its element on the listing page. Used for
+     * skipping known recipes; by default recipes are not skipped.
+     * 
+     * @param element    The recipe element.
+     * 
+     * @return The url of the recipe, or null, if it can't be told.
+     */
+    protected String getRecipeUrl(Element element)
+    {
+        return null;
+    }
+    
+    /**
+     * Tells whether the listing is in newest first order, so the recipes after
+     * a listing page of known recipes only were scraped before. By default the
+     * order is not known, and every listing page is visited. Only visitors
+     * whose listing url carries a sort parameter guaranteeing newest first
+     * order may return true; an alphabetical or unknown order would lose the
+     * new recipes after the first known page.
+     * 
+     * @return True, if the listing is newest first.
+     */
+    protected boolean isListingNewestFirst()
+    {
+        return false;
+    }
+    
+    /**
+     * Skips the rest of a newest first listing, after a listing page of known
+     * recipes only. By default the listing is the whole site, so there are no
+     * more recipes; visitors crawling more listings go on with the next one.
+     * 
+     * @return True, if there are more listing pages to visit.
+     */
+    protected boolean skipRestOfListing()
+    {
+        return false;
+    }
+    
+    /**
+     * Loads a listing page. A prefetched page is used, if there's one; if its
+     * prefetch failed, the page is loaded again.
+     * 
+     * @param url    The url of the page.
+     * 
+     * @return The page.
+     * 
+     * @throws IOException If loading failed.
+     */
+    protected Document loadListingPage(String url) throws IOException
+    {
+        Document result = null;
+        
+        Future<Document> prefetch = prefetches.remove(url);
+        
+        if(prefetch != null)
+        {
+            try
+            {
+                result = prefetch.get();
+            }
+            catch(ExecutionException | CancellationException e)
+            {
+                Logger.warn(this.getClass().getName() + ".loadListingPage(): Prefetch failed, loading again.\n" +
+                    "    url = " + url + "\n" +
+                    "    e   = " + e);
+            }
+            catch(InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                
+                throw new InterruptedIOException("Interrupted while waiting for " + url);
+            }
+        }
+        
+        if(result == null)
+        {
+            result = fetchListingPage(url);
+        }
+        
+        return result;
+    }
+    
+    /**
+     * Fetches a listing page from the network.
+     * 
+     * @param url    The url of the page.
+     * 
+     * @return The page.
+     * 
+     * @throws IOException If fetching failed.
+     */
+    protected Document fetchListingPage(String url) throws IOException
+    {
+        return PageFetcher.getInstance().get(url);
+    }
+    
     
 
     /* -- PRIVATE METHODS -------------------------------------------------- */
+    
+    /**
+     * Scrapes the current element. With concurrent fetching, the result of its
+     * fetch is used; a retry of the same element scrapes it again.
+     * 
+     * @return The scraped recipe. Null if scraping failed.
+     * 
+     * @throws Exception If the fetch failed, or was cancelled.
+     */
+    private ScrapedRecipe scrapeCurrentElement() throws Exception
+    {
+        ScrapedRecipe result = null;
+        
+        Future<ScrapedRecipe> fetch = null;
+        
+        if(fetchConcurrency > 1)
+        {
+            if(fetchedElements != recipeElements)
+            {
+                /* New listing page, fetch its recipes ahead. */
+                startFetches();
+            }
+            
+            fetch = fetches.get(elementCounter);
+            
+            fetches.set(elementCounter, null);
+        }
+        
+        if(fetch != null)
+        {
+            try
+            {
+                result = fetch.get();
+            }
+            catch(ExecutionException e)
+            {
+                throw (e.getCause() instanceof Exception) ? (Exception)e.getCause() : e;
+            }
+        }
+        else
+        {
+            result = scrapeFromElement(recipeElements.get(elementCounter));
+        }
+        
+        return result;
+    }
+    
+    /**
+     * Goes to the next listing page. If there's none, there are no more
+     * elements.
+     */
+    private void loadNextPage()
+    {
+        try
+        {
+            goToNextPage();
+            
+            if(recipeElements.isEmpty())
+            {
+                /* Processed last page, no more elements to get. */
+                hasMoreElements = false;
+            }
+            else
+            {
+                /* Reset elementCounter. */
+                elementCounter = 0;
+            }
+        }
+        catch (Exception e)
+        {
+            Logger.error(this.getClass().getName() + ".loadNextPage(): Failed to go to next page!\n" + 
+                "    e  = " + e);
+            
+            changeState(VisitorState.ERROR);
+            
+            errorCode = ErrorCode.ERROR_PAGE_LOAD;
+        }
+    }
+    
+    /**
+     * Drops the known recipes of the current listing page, from the current
+     * element on. If there were known recipes only, and the listing is newest
+     * first, the rest of the listing is skipped.
+     */
+    private void skipKnownElements()
+    {
+        int start = Math.min(elementCounter, recipeElements.size());
+        
+        List<Element> unknownElements = new ArrayList<Element>(recipeElements.subList(0, start));
+        int knownCount                = 0;
+        
+        for(Element element: recipeElements.subList(start, recipeElements.size()))
+        {
+            String url = getRecipeUrl(element);
+            
+            if(url != null && knownUrlFilter.isKnown(url))
+            {
+                knownCount++;
+            }
+            else
+            {
+                unknownElements.add(element);
+            }
+        }
+        
+        knownSkippedCount += knownCount;
+        
+        Logger.debug(this.getClass().getName() + ".skipKnownElements()\n" +
+            "    pageCounter = " + pageCounter + "\n" +
+            "    knownCount  = " + knownCount + "\n" +
+            "    unknown     = " + (unknownElements.size() - start)
+        );
+        
+        if(knownCount > 0 && unknownElements.size() == start && isListingNewestFirst())
+        {
+            Logger.info(this.getClass().getName() + ".skipKnownElements(): Reached recipes scraped before, skipping the rest of the listing.\n" +
+                "    pageCounter = " + pageCounter);
+            
+            cancelPrefetches();
+            
+            hasMoreElements = skipRestOfListing();
+        }
+        
+        recipeElements   = unknownElements;
+        filteredElements = recipeElements;
+    }
+    
+    /**
+     * Starts fetching the recipes of the current listing page, from the
+     * current element on. The fetches are queued in listing order.
+     */
+    private void startFetches()
+    {
+        cancelFetches();
+        
+        if(fetchExecutor == null)
+        {
+            fetchExecutor = createExecutor(fetchConcurrency, this.getClass().getSimpleName() + "-fetch");
+        }
+        
+        fetchedElements = recipeElements;
+        
+        for(int i = 0; i < recipeElements.size(); i++)
+        {
+            Future<ScrapedRecipe> fetch = null;
+            
+            if(i >= elementCounter)
+            {
+                final Element element = recipeElements.get(i);
+                
+                fetch = fetchExecutor.submit(new Callable<ScrapedRecipe>()
+                {
+                    @Override
+                    public ScrapedRecipe call()
+                    {
+                        return scrapeFromElement(element);
+                    }
+                });
+            }
+            
+            fetches.add(fetch);
+        }
+    }
+    
+    /**
+     * Starts loading the upcoming listing pages not being loaded yet, and
+     * cancels the loads of pages which are not upcoming any more.
+     */
+    private void updatePrefetches()
+    {
+        List<String> upcomingUrls = getUpcomingListingUrls(prefetchDepth);
+        
+        Iterator<Map.Entry<String, Future<Document>>> iterator = prefetches.entrySet().iterator();
+        
+        while(iterator.hasNext())
+        {
+            Map.Entry<String, Future<Document>> entry = iterator.next();
+            
+            if(!upcomingUrls.contains(entry.getKey()))
+            {
+                entry.getValue().cancel(true);
+                
+                iterator.remove();
+            }
+        }
+        
+        if(prefetchExecutor == null && !upcomingUrls.isEmpty())
+        {
+            prefetchExecutor = createExecutor(1, this.getClass().getSimpleName() + "-prefetch");
+        }
+        
+        for(final String url: upcomingUrls)
+        {
+            if(!prefetches.containsKey(url))
+            {
+                Logger.debug(this.getClass().getName() + ".updatePrefetches(): Prefetching listing page.\n" +
+                    "    url = " + url);
+                
+                prefetches.put(url, prefetchExecutor.submit(new Callable<Document>()
+                {
+                    @Override
+                    public Document call() throws IOException
+                    {
+                        return fetchListingPage(url);
+                    }
+                }));
+            }
+        }
+    }
+    
+    /**
+     * Cancels the loads of the upcoming listing pages.
+     */
+    private void cancelPrefetches()
+    {
+        for(Future<Document> prefetch: prefetches.values())
+        {
+            prefetch.cancel(true);
+        }
+        
+        prefetches.clear();
+    }
+    
+    /**
+     * Creates an executor with daemon threads, which stop when idle.
+     * 
+     * @param threads       The number of threads.
+     * @param threadName    The name of the threads.
+     * 
+     * @return The executor.
+     */
+    private static ThreadPoolExecutor createExecutor(int threads, final String threadName)
+    {
+        ThreadPoolExecutor result = new ThreadPoolExecutor
+        (
+            threads,
+            threads,
+            FETCH_THREAD_KEEP_ALIVE,
+            TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<Runnable>(),
+            new ThreadFactory()
+            {
+                @Override
+                public Thread newThread(Runnable runnable)
+                {
+                    Thread result = new Thread(runnable, threadName);
+                    
+                    result.setDaemon(true);
+                    
+                    return result;
+                }
+            }
+        );
+        
+        /* Don't keep threads of finished visitors. */
+        result.allowCoreThreadTimeOut(true);
+        
+        return result;
+    }
+    
+    /**
+     * Cancels the fetches of the current listing page.
+     */
+    private void cancelFetches()
+    {
+        for(Future<ScrapedRecipe> fetch: fetches)
+        {
+            if(fetch != null)
+            {
+                fetch.cancel(true);
+            }
+        }
+        
+        fetches         = new ArrayList<Future<ScrapedRecipe>>();
+        fetchedElements = null;
+    }
 
 
 
@@ -289,6 +825,21 @@ public abstract class ListBasedVisitor extends RecipeSiteVisitor
     /* --------------------------------------------------------------------- */
 
     /* -- PUBLIC OTHERS ---------------------------------------------------- */
+    
+    /**
+     * Tells the recipes scraped before.
+     */
+    public static interface KnownUrlFilter
+    {
+        /**
+         * Checks whether a recipe was scraped before.
+         * 
+         * @param url    The url of the recipe.
+         * 
+         * @return True, if the recipe is known.
+         */
+        public boolean isKnown(String url);
+    }
 
 
 
@@ -23,8 +23,6 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.commons.lang3.StringUtils;
-import org.jsoup.Connection;
-import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
@@ -32,6 +30,7 @@ import org.jsoup.select.Elements;
 import play.Logger;
 import scrapers.data.ScrapedRecipe;
 import scrapers.data.ScrapedIngredient;
+import scrapers.fetch.PageFetcher;
 
 /**
  * Visitor for the recipe page http://www.mindmegette.hu.
@@ -75,16 +74,6 @@ public class MindmegetteVisitor extends ListBasedVisitor
      */
     private static final int SERVINGS = 4;
     
-    /**
-     * Default timeout for connecting to a recipe page.
-     */
-    private static final int RECIPE_CONNECT_TIMEOUT = 10000;
-    
-    /**
-     * The connection.
-     * */
-    private Connection connection;
-
     /**
      * The main page.
      * */
@@ -100,6 +89,11 @@ public class MindmegetteVisitor extends ListBasedVisitor
      */
     private int pageLinkCounter;
     
+    /**
+     * The number of pages of the actual page-link.
+     */
+    private int numberOfPages;
+    
     
     
     
@@ -147,7 +141,7 @@ public class MindmegetteVisitor extends ListBasedVisitor
     {
         ScrapedRecipe result = null;
         
-        Document recipeDocument = Jsoup.connect(url).timeout(RECIPE_CONNECT_TIMEOUT).get();
+        Document recipeDocument = PageFetcher.getInstance().get(url);
         
         List<ScrapedIngredient> ingredients = scrapeIngredients(recipeDocument);
         int servings                        = scrapeServings();
@@ -230,37 +224,85 @@ public class MindmegetteVisitor extends ListBasedVisitor
             getPageLinks();
         }
         
-        /* Get the page of recipes. */
-        String actualPageLink = pageLinks.get(pageLinkCounter) + "?p=%d";
-        
-        connection = Jsoup.connect(String.format(actualPageLink, pageCounter));
-        mainPage   = connection.get();
+        boolean isLoaded = false;
         
-        int numberOfPages = scrapeNumberOfPages();
-        
-        if(pageCounter <= numberOfPages)
-        {
-            recipeElements = mainPage.select(".recipe-item");
-            
-            /* Increase page counter to point to next page to load. */
-            pageCounter++;
-        }
-        else
+        while(!isLoaded && pageLinkCounter < pageLinks.size())
         {
-            if(pageLinkCounter < pageLinks.size())
+            if(numberOfPages > 0 && pageCounter > numberOfPages)
             {
-                /* Go to next link. */
+                /* 
+                 * The pagination marker of the last loaded page showed it was the last
+                 * one of the actual link. Go to next link, without loading the page after.
+                 */
                 pageLinkCounter++;
                 
-                /* Reset page counter. */
-                pageCounter = 1;
+                pageCounter   = 1;
+                numberOfPages = 0;
             }
             else
             {
-                /* No more pages to load. */
-                recipeElements = new ArrayList<>();
+                /* Get the page of recipes. */
+                String actualPageLink = pageLinks.get(pageLinkCounter) + "?p=%d";
+                
+                mainPage = loadListingPage(String.format(actualPageLink, pageCounter));
+                
+                numberOfPages = scrapeNumberOfPages();
+                
+                if(pageCounter <= numberOfPages)
+                {
+                    recipeElements = mainPage.select(".recipe-item");
+                    
+                    /* Increase page counter to point to next page to load. */
+                    pageCounter++;
+                    
+                    isLoaded = true;
+                }
+            }
+        }
+        
+        if(!isLoaded)
+        {
+            /* No more pages to load. */
+            recipeElements = new ArrayList<>();
+        }
+    }
+    
+    @Override
+    protected List<String> getUpcomingListingUrls(int count)
+    {
+        List<String> result = new ArrayList<String>();
+        
+        if(pageLinks != null && pageLinkCounter < pageLinks.size())
+        {
+            /* The rest of the pages of the actual page-link. */
+            for(int page = pageCounter; page <= numberOfPages && result.size() < count; page++)
+            {
+                result.add(String.format(pageLinks.get(pageLinkCounter) + "?p=%d", page));
+            }
+            
+            /* The page count of the next page-link is not known yet, only its first page is sure. */
+            if(result.size() < count && pageLinkCounter + 1 < pageLinks.size())
+            {
+                result.add(String.format(pageLinks.get(pageLinkCounter + 1) + "?p=%d", 1));
             }
-        }        
+        }
+        
+        return result;
+    }
+    
+    @Override
+    protected String getRecipeUrl(Element element)
+    {
+        String result = null;
+        
+        Element recipeA = element.select("a").first();
+        
+        if(recipeA != null)
+        {
+            result = recipeA.attr("abs:href");
+        }
+        
+        return result;
     }
 
 
@@ -431,11 +473,9 @@ public class MindmegetteVisitor extends ListBasedVisitor
     private void getPageLinks()
     {
         /* Getting valid page links. */
-        Connection localConn = Jsoup.connect(BASE_URL);
-        
         try
         {
-            Document localDoc = localConn.get();
+            Document localDoc = fetchListingPage(BASE_URL);
             
             Elements collectionElems = localDoc.select("#collection");
             
@@ -22,8 +22,6 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
-import org.jsoup.Connection;
-import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
@@ -31,6 +29,7 @@ import org.jsoup.select.Elements;
 import play.Logger;
 import scrapers.data.ScrapedIngredient;
 import scrapers.data.ScrapedRecipe;
+import scrapers.fetch.PageFetcher;
 
 /**
  * Visitor class for web page http://nosalty.hu.
@@ -68,16 +67,6 @@ public class NosaltyVisitor extends ListBasedVisitor
      * */
     private static final String RECIPE_MAIN_CONTENT_SELECTOR = ".article-list-horizontal";
     
-    /**
-     * Default timeout for connecting to a recipe page.
-     */
-    private static final int RECIPE_CONNECT_TIMEOUT = 10000;
-    
-    /**
-     * The connection.
-     */
-    private Connection connection;
-
     /**
      * The main page.
      */
@@ -135,7 +124,7 @@ public class NosaltyVisitor extends ListBasedVisitor
     {
         ScrapedRecipe result = null;
         
-        Document recipeDocument = Jsoup.connect(url).timeout(RECIPE_CONNECT_TIMEOUT).get();
+        Document recipeDocument = PageFetcher.getInstance().get(url);
         
         String name = recipeDocument.select("h1").get(0).text().trim().replaceAll(" recept", "");
         
@@ -169,7 +158,7 @@ public class NosaltyVisitor extends ListBasedVisitor
             Logger.error(NosaltyVisitor.class.getName() + ".scrapeFromElement(): missing recipe link.");
         }
         
-        Element recipeA = element.select("a").get(1);
+        Element recipeA = getRecipeLink(element);
         
         String recipeName = recipeA.text().trim();
         String recipeUrl  = recipeA.attr("abs:href");
@@ -221,14 +210,14 @@ public class NosaltyVisitor extends ListBasedVisitor
             "    pageCounter = " + pageCounter);
         
         /* Get the page of recipes. */
-        connection = Jsoup.connect(String.format(BASE_URL, pageCounter));
-        mainPage   = connection.get();
+        mainPage = loadListingPage(String.format(BASE_URL, pageCounter));
         
         recipeElements = mainPage.select(RECIPE_MAIN_CONTENT_SELECTOR).get(0).select("li");
         
-        ScrapedRecipe firstRecipe = scrapeFromElement(recipeElements.get(0));
+        /* Decide from the listing only; the recipe itself is scraped later. */
+        String firstUrl = getRecipeLink(recipeElements.get(0)).attr("abs:href");
         
-        if(firstRecipe.getUrl().equals(firstRecipeUrl))
+        if(firstUrl.equals(firstRecipeUrl))
         {
             /* Last page reached. */
             recipeElements = new ArrayList<Element>();
@@ -239,17 +228,56 @@ public class NosaltyVisitor extends ListBasedVisitor
         if(recipeElements.size() > 0)
         {
             /* Save first URL. */
-            firstRecipeUrl = firstRecipe.getUrl();
+            firstRecipeUrl = firstUrl;
             
             /* Set page counter to next. */
             pageCounter++;
         }
     }
+    
+    @Override
+    protected List<String> getUpcomingListingUrls(int count)
+    {
+        List<String> result = new ArrayList<String>();
+        
+        /* pageCounter already points to the next page. */
+        for(int i = 0; i < count; i++)
+        {
+            result.add(String.format(BASE_URL, pageCounter + i));
+        }
+        
+        return result;
+    }
+    
+    @Override
+    protected String getRecipeUrl(Element element)
+    {
+        String result = null;
+        
+        if(element.select("a").size() >= 2)
+        {
+            result = getRecipeLink(element).attr("abs:href");
+        }
+        
+        return result;
+    }
 
 
 
     /* -- PRIVATE METHODS -------------------------------------------------- */
     
+    /**
+     * Gets the link of the recipe from its element on the listing page.
+     * 
+     * @param element    The recipe element.
+     * 
+     * @return The link.
+     */
+    private static Element getRecipeLink(Element element)
+    {
+        return element.select("a").get(1);
+    }
+    
     /**
      * Scrapes ingredients.
      * 
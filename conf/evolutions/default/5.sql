@@ -0,0 +1,15 @@
+# --- !Ups
+
+alter table recipe add column ingredient_count integer;
+
+update recipe set ingredient_count = (select count(recipe_ingredient.ingredient_id) from recipe_ingredient where recipe_ingredient.recipe_id = recipe.id);
+
+create index ix_recipe_ingredient_count on recipe (ingredient_count);
+
+
+
+# --- !Downs
+
+drop index if exists ix_recipe_ingredient_count;
+
+alter table recipe drop column if exists ingredient_count;
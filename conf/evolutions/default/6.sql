@@ -0,0 +1,13 @@
+# --- !Ups
+
+alter table recipe add column url_hash bigint;
+
+create index ix_recipe_url_hash on recipe (url_hash);
+
+
+
+# --- !Downs
+
+drop index if exists ix_recipe_url_hash;
+
+alter table recipe drop column if exists url_hash;
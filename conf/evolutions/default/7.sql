@@ -0,0 +1,39 @@
+# --- !Ups
+
+alter table recipe add column url_overflow clob;
+
+alter table recipe add column name_overflow clob;
+
+update recipe set url_overflow = url, url = substring(url, 1, 1024) where length(url) > 1024;
+
+update recipe set name_overflow = name, name = substring(name, 1, 255) where length(name) > 255;
+
+alter table recipe alter column name varchar(255);
+
+alter table recipe alter column url varchar(1024);
+
+update recipe set url_hash = null where exists (select 1 from recipe other where other.url_hash = recipe.url_hash and other.id < recipe.id);
+
+drop index if exists ix_recipe_url_hash;
+
+create unique index ux_recipe_url_hash on recipe (url_hash);
+
+
+
+# --- !Downs
+
+drop index if exists ux_recipe_url_hash;
+
+create index ix_recipe_url_hash on recipe (url_hash);
+
+alter table recipe alter column url clob;
+
+alter table recipe alter column name clob;
+
+update recipe set url = url_overflow where url_overflow is not null;
+
+update recipe set name = name_overflow where name_overflow is not null;
+
+alter table recipe drop column if exists url_overflow;
+
+alter table recipe drop column if exists name_overflow;
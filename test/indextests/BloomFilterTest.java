@@ -0,0 +1,117 @@
+/*
+ *  Copyright 2016 Oliver Dozsa
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package indextests;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import indexes.BloomFilter;
+import scrapers.dbload.KnownRecipeUrls;
+
+/**
+ * Test class for the Bloom filter, with hashes of recipe urls.
+ *
+ * @author Oliver Dozsa
+ */
+public class BloomFilterTest
+{
+    /* --------------------------------------------------------------------- */
+    /* ATTRIBUTES                                                            */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC ATTRIBUTES ------------------------------------------------ */
+
+
+
+    /* -- PROTECTED ATTRIBUTES --------------------------------------------- */
+
+
+
+    /* -- PRIVATE ATTRIBUTES ----------------------------------------------- */
+
+    /**
+     * The number of added urls.
+     */
+    private static final int COUNT = 20000;
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* METHODS                                                               */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC METHODS --------------------------------------------------- */
+
+    /**
+     * Tests that added hashes are always found, and others rarely.
+     */
+    @Test
+    public void testMembership()
+    {
+        BloomFilter filter = new BloomFilter(COUNT, 0.01);
+
+        for(int i = 0; i < COUNT; i++)
+        {
+            filter.put(KnownRecipeUrls.hashUrl("http://www.nosalty.hu/recept/" + i));
+        }
+
+        for(int i = 0; i < COUNT; i++)
+        {
+            assertTrue(filter.mightContain(KnownRecipeUrls.hashUrl("http://www.nosalty.hu/recept/" + i)));
+        }
+
+        int falsePositives = 0;
+
+        for(int i = 0; i < COUNT; i++)
+        {
+            if(filter.mightContain(KnownRecipeUrls.hashUrl("http://www.mindmegette.hu/recept/" + i)))
+            {
+                falsePositives++;
+            }
+        }
+
+        /* 1% wanted; leave room for chance. */
+        assertTrue("falsePositives = " + falsePositives, falsePositives < COUNT * 0.02);
+    }
+
+
+
+    /* -- PROTECTED METHODS ------------------------------------------------ */
+
+
+
+    /* -- PRIVATE METHODS -------------------------------------------------- */
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* OTHERS                                                                */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC OTHERS ---------------------------------------------------- */
+
+
+
+    /* -- PROTECTED OTHERS ------------------------------------------------- */
+
+
+
+    /* -- PRIVATE OTHERS --------------------------------------------------- */
+}
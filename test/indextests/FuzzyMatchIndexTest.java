@@ -0,0 +1,206 @@
+/*
+ *  Copyright 2016 Oliver Dozsa
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package indextests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import indexes.FuzzyMatchIndex;
+
+/**
+ * Test class for the fuzzy match index used for ingredient matching.
+ *
+ * @author Oliver Dozsa
+ */
+public class FuzzyMatchIndexTest
+{
+    /* --------------------------------------------------------------------- */
+    /* ATTRIBUTES                                                            */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC ATTRIBUTES ------------------------------------------------ */
+
+
+
+    /* -- PROTECTED ATTRIBUTES --------------------------------------------- */
+
+
+
+    /* -- PRIVATE ATTRIBUTES ----------------------------------------------- */
+
+    /**
+     * The score a match must reach when loading recipes.
+     */
+    private static final double THRESHOLD = 0.88;
+
+    /**
+     * The indexed names.
+     */
+    private static final List<String> NAMES = Arrays.asList
+    (
+        "liszt", "finomliszt", "retesliszt", "tojas", "tojassargaja", "tojasfeherje",
+        "cukor", "porcukor", "kristalycukor", "vaniliacukor", "so", "bors", "feketebors",
+        "tej", "tejfol", "tejszin", "habtejszin", "vaj", "margarin", "olaj", "olivaolaj",
+        "voroshagyma", "fokhagyma", "lilahagyma", "paradicsom", "paprika", "pirospaprika",
+        "burgonya", "sargarepa", "petrezselyem", "zeller", "alma", "korte", "citrom"
+    );
+
+    /**
+     * Scraped names: exact, misspelled, inflected, unrelated.
+     */
+    private static final List<String> QUERIES = Arrays.asList
+    (
+        "liszt", "Liszt", "finom liszt", "tojasok", "tojs", "porcukr", "vanilias cukor",
+        "so", "sot", "tejfolt", "habtejszint", "vorshagyma", "fokhagymagerezd", "paradicsomok",
+        "pirospaprikat", "burgonyat", "sargarepat", "citromle", "szegfuszeg", "x", "gyomber"
+    );
+
+    /**
+     * The index.
+     */
+    private FuzzyMatchIndex<Integer> index;
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* METHODS                                                               */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC METHODS --------------------------------------------------- */
+
+    @Before
+    public void setup()
+    {
+        index = new FuzzyMatchIndex<Integer>();
+
+        for(int i = 0; i < NAMES.size(); i++)
+        {
+            index.add(NAMES.get(i), i);
+        }
+    }
+
+    /**
+     * Tests that the index accepts the same matches as scoring every name.
+     */
+    @Test
+    public void testSameAsFullScan()
+    {
+        for(String query : QUERIES)
+        {
+            Integer expected = fullScan(query);
+
+            FuzzyMatchIndex.Match<Integer> match = index.findBestMatch(query, THRESHOLD);
+
+            Integer actual = null;
+
+            if(match != null && match.getScore() >= THRESHOLD)
+            {
+                actual = match.getValue();
+            }
+
+            assertEquals(query, expected, actual);
+        }
+    }
+
+    /**
+     * Tests that of equal scores the first added text wins.
+     */
+    @Test
+    public void testTie()
+    {
+        FuzzyMatchIndex<Integer> tieIndex = new FuzzyMatchIndex<Integer>();
+
+        tieIndex.add("alma", 1);
+        tieIndex.add("alma", 2);
+
+        assertEquals(Integer.valueOf(1), tieIndex.findBestMatch("alma", THRESHOLD).getValue());
+    }
+
+    /**
+     * Tests queries sharing no letter pair with any text.
+     */
+    @Test
+    public void testNoCandidates()
+    {
+        assertNull(index.findBestMatch("qwx", THRESHOLD));
+        assertNull(new FuzzyMatchIndex<Integer>().findBestMatch("alma", THRESHOLD));
+    }
+
+
+
+    /* -- PROTECTED METHODS ------------------------------------------------ */
+
+
+
+    /* -- PRIVATE METHODS -------------------------------------------------- */
+
+    /**
+     * Finds the accepted match by scoring every name, as the loader used to.
+     *
+     * @param query    The query.
+     *
+     * @return The position of the matched name, or null.
+     */
+    private static Integer fullScan(String query)
+    {
+        Integer result  = null;
+        double maxScore = 0.0;
+
+        for(int i = 0; i < NAMES.size(); i++)
+        {
+            double score = StringUtils.getJaroWinklerDistance(query, NAMES.get(i));
+
+            if(score > maxScore)
+            {
+                maxScore = score;
+                result   = i;
+            }
+        }
+
+        if(maxScore < THRESHOLD)
+        {
+            result = null;
+        }
+
+        return result;
+    }
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* OTHERS                                                                */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC OTHERS ---------------------------------------------------- */
+
+
+
+    /* -- PROTECTED OTHERS ------------------------------------------------- */
+
+
+
+    /* -- PRIVATE OTHERS --------------------------------------------------- */
+}
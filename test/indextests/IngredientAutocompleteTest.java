@@ -0,0 +1,163 @@
+/*
+ *  Copyright 2016 Oliver Dozsa
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package indextests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import indexes.IngredientAutocomplete;
+
+/**
+ * Test class for the ingredient autocomplete trie.
+ *
+ * @author Oliver Dozsa
+ */
+public class IngredientAutocompleteTest
+{
+    /* --------------------------------------------------------------------- */
+    /* ATTRIBUTES                                                            */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC ATTRIBUTES ------------------------------------------------ */
+
+
+
+    /* -- PROTECTED ATTRIBUTES --------------------------------------------- */
+
+
+
+    /* -- PRIVATE ATTRIBUTES ----------------------------------------------- */
+
+    /**
+     * The trie.
+     */
+    private IngredientAutocomplete autocomplete;
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* METHODS                                                               */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC METHODS --------------------------------------------------- */
+
+    @Before
+    public void setup()
+    {
+        IngredientAutocomplete.Builder builder = new IngredientAutocomplete.Builder();
+
+        builder.add(1L, "Liszt",          1L, "Liszt",          50);
+        builder.add(1L, "Retesliszt",     2L, "Retesliszt",     10);
+        builder.add(1L, "Kukorica liszt", 3L, "Kukorica liszt", 20);
+        builder.add(1L, "Kukorica",       4L, "Kukorica",       30);
+        builder.add(2L, "Flour",          5L, "Flour",          40);
+
+        /* Alias of Liszt. */
+        builder.add(1L, "Finomliszt",     1L, "Liszt",          50);
+
+        autocomplete = builder.build();
+    }
+
+    /**
+     * Tests that suggestions are ranked by recipe count.
+     */
+    @Test
+    public void testRanking()
+    {
+        assertEquals(Arrays.asList(4L, 3L), getIds(autocomplete.complete("KUK", 1L, 10)));
+
+        /* Word start match in "Kukorica liszt". */
+        assertEquals(Arrays.asList(1L, 3L), getIds(autocomplete.complete("lis", 1L, 10)));
+
+        assertEquals(Arrays.asList(1L), getIds(autocomplete.complete("lis", 1L, 1)));
+    }
+
+    /**
+     * Tests aliases and languages.
+     */
+    @Test
+    public void testAliasesAndLanguages()
+    {
+        /* The alias gives the name of the ingredient. */
+        assertEquals("Liszt", autocomplete.complete("finom", 1L, 10).get(0).name);
+
+        assertEquals(Arrays.asList(5L), getIds(autocomplete.complete("fl", 2L, 10)));
+        assertTrue(autocomplete.complete("fl", 1L, 10).isEmpty());
+        assertTrue(autocomplete.complete("liszt", 3L, 10).isEmpty());
+    }
+
+    /**
+     * Tests that inner substrings are not completed.
+     */
+    @Test
+    public void testNoInnerMatch()
+    {
+        assertTrue(autocomplete.complete("tesl", 1L, 10).isEmpty());
+    }
+
+
+
+    /* -- PROTECTED METHODS ------------------------------------------------ */
+
+
+
+    /* -- PRIVATE METHODS -------------------------------------------------- */
+
+    /**
+     * Gets the ingredient ids of suggestions.
+     *
+     * @param suggestions    The suggestions.
+     *
+     * @return The ids.
+     */
+    private static List<Long> getIds(List<IngredientAutocomplete.Suggestion> suggestions)
+    {
+        List<Long> result = new ArrayList<Long>();
+
+        for(IngredientAutocomplete.Suggestion suggestion: suggestions)
+        {
+            result.add(suggestion.ingredientId);
+        }
+
+        return result;
+    }
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* OTHERS                                                                */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC OTHERS ---------------------------------------------------- */
+
+
+
+    /* -- PROTECTED OTHERS ------------------------------------------------- */
+
+
+
+    /* -- PRIVATE OTHERS --------------------------------------------------- */
+}
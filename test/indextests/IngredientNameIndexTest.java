@@ -0,0 +1,143 @@
+/*
+ *  Copyright 2016 Oliver Dozsa
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package indextests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import indexes.IngredientNameIndex;
+
+/**
+ * Test class for the ingredient name trigram index.
+ *
+ * @author Oliver Dozsa
+ */
+public class IngredientNameIndexTest
+{
+    /* --------------------------------------------------------------------- */
+    /* ATTRIBUTES                                                            */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC ATTRIBUTES ------------------------------------------------ */
+
+
+
+    /* -- PROTECTED ATTRIBUTES --------------------------------------------- */
+
+
+
+    /* -- PRIVATE ATTRIBUTES ----------------------------------------------- */
+
+    /**
+     * The index.
+     */
+    private IngredientNameIndex index;
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* METHODS                                                               */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC METHODS --------------------------------------------------- */
+
+    @Before
+    public void setup()
+    {
+        index = new IngredientNameIndex();
+
+        index.addName(1L, 1L, "Liszt");
+        index.addName(1L, 2L, "Retesliszt");
+        index.addName(1L, 3L, "Kukorica liszt");
+        index.addName(1L, 4L, "Tojas");
+        index.addName(2L, 5L, "Flour");
+
+        index.addAlias(1L, 1L, "Buzaliszt");
+        index.addAlias(1L, 1L, "Finomliszt");
+    }
+
+    /**
+     * Tests substring search and ranking.
+     */
+    @Test
+    public void testSearchNames()
+    {
+        /* Exact match, then word start, then inner match. */
+        assertEquals(Arrays.asList(1L, 3L, 2L), index.searchNames("LISZT", 1L, 10));
+
+        assertEquals(Arrays.asList(1L, 3L), index.searchNames("liszt", 1L, 2));
+        assertEquals(Arrays.asList(2L), index.searchNames("tesl", 1L, 10));
+
+        /* Shorter than a trigram. */
+        assertEquals(Arrays.asList(4L), index.searchNames("oj", 1L, 10));
+
+        assertTrue(index.searchNames("flour", 1L, 10).isEmpty());
+        assertTrue(index.searchNames("liszt", 3L, 10).isEmpty());
+    }
+
+    /**
+     * Tests that trigram candidates are verified.
+     */
+    @Test
+    public void testCandidatesVerified()
+    {
+        /* "lis" and "isz" are both in "liszt", but "lisz lisz" is not. */
+        assertTrue(index.searchNames("lisz lisz", 1L, 10).isEmpty());
+    }
+
+    /**
+     * Tests alias search.
+     */
+    @Test
+    public void testSearchAliases()
+    {
+        /* Both aliases lead to the same name. */
+        assertEquals(Arrays.asList(1L), index.searchAliases("liszt", 1L, 10));
+        assertTrue(index.searchAliases("tojas", 1L, 10).isEmpty());
+    }
+
+
+
+    /* -- PROTECTED METHODS ------------------------------------------------ */
+
+
+
+    /* -- PRIVATE METHODS -------------------------------------------------- */
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* OTHERS                                                                */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC OTHERS ---------------------------------------------------- */
+
+
+
+    /* -- PROTECTED OTHERS ------------------------------------------------- */
+
+
+
+    /* -- PRIVATE OTHERS --------------------------------------------------- */
+}
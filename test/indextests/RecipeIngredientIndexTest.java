@@ -0,0 +1,167 @@
+/*
+ *  Copyright 2016 Oliver Dozsa
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package indextests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import indexes.RecipeIngredientIndex;
+
+/**
+ * Test class for the recipe - ingredient bitmap index.
+ *
+ * @author Oliver Dozsa
+ */
+public class RecipeIngredientIndexTest
+{
+    /* --------------------------------------------------------------------- */
+    /* ATTRIBUTES                                                            */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC ATTRIBUTES ------------------------------------------------ */
+
+
+
+    /* -- PROTECTED ATTRIBUTES --------------------------------------------- */
+
+
+
+    /* -- PRIVATE ATTRIBUTES ----------------------------------------------- */
+
+    /**
+     * The index.
+     */
+    private RecipeIngredientIndex index;
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* METHODS                                                               */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC METHODS --------------------------------------------------- */
+
+    @Before
+    public void setup()
+    {
+        index = new RecipeIngredientIndex();
+
+        /* Ingredients: 1 - flour, 2 - egg, 3 - milk, 4 - salt. */
+        index.addRecipe(10L, Arrays.asList(1L, 2L));
+        index.addRecipe(11L, Arrays.asList(1L, 2L, 3L));
+        index.addRecipe(12L, Arrays.asList(3L));
+        index.addRecipe(13L, Arrays.asList(2L, 4L));
+    }
+
+    /**
+     * Tests EXACT search.
+     */
+    @Test
+    public void testExact()
+    {
+        assertEquals(Arrays.asList(10L), index.searchExact(Arrays.asList(1L, 2L)));
+        assertEquals(Arrays.asList(12L), index.searchExact(Arrays.asList(3L)));
+
+        assertTrue(index.searchExact(new ArrayList<Long>()).isEmpty());
+    }
+
+    /**
+     * Tests AT_LEAST search.
+     */
+    @Test
+    public void testAtLeast()
+    {
+        List<Long> none = new ArrayList<Long>();
+
+        assertEquals(Arrays.asList(10L, 11L), index.searchAtLeast(Arrays.asList(1L, 2L), none));
+        assertEquals(Arrays.asList(10L), index.searchAtLeast(Arrays.asList(1L, 2L), Arrays.asList(3L)));
+
+        /* Unknown ingredient. */
+        assertTrue(index.searchAtLeast(Arrays.asList(1L, 99L), none).isEmpty());
+    }
+
+    /**
+     * Tests ANY_OF search.
+     */
+    @Test
+    public void testAnyOf()
+    {
+        assertEquals(Arrays.asList(11L, 12L, 13L), index.searchAnyOf(Arrays.asList(3L, 4L), new ArrayList<Long>()));
+        assertEquals(Arrays.asList(12L, 13L), index.searchAnyOf(Arrays.asList(3L, 4L), Arrays.asList(1L)));
+    }
+
+    /**
+     * Tests GROUP search.
+     */
+    @Test
+    public void testGroup()
+    {
+        Map<Long, List<Long>> groups = new HashMap<Long, List<Long>>();
+
+        groups.put(1L, Arrays.asList(1L, 3L));
+        groups.put(2L, Arrays.asList(2L, 4L));
+
+        assertEquals(Arrays.asList(11L, 13L), index.searchGroup(groups, new ArrayList<Long>()));
+        assertEquals(Arrays.asList(13L), index.searchGroup(groups, Arrays.asList(1L)));
+    }
+
+    /**
+     * Tests that adding an already indexed recipe does not change the index.
+     */
+    @Test
+    public void testAddTwice()
+    {
+        index.addRecipe(10L, Arrays.asList(1L, 2L));
+
+        assertEquals(Arrays.asList(10L), index.searchExact(Arrays.asList(1L, 2L)));
+    }
+
+
+
+    /* -- PROTECTED METHODS ------------------------------------------------ */
+
+
+
+    /* -- PRIVATE METHODS -------------------------------------------------- */
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* OTHERS                                                                */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC OTHERS ---------------------------------------------------- */
+
+
+
+    /* -- PROTECTED OTHERS ------------------------------------------------- */
+
+
+
+    /* -- PRIVATE OTHERS --------------------------------------------------- */
+}
@@ -0,0 +1,187 @@
+/*
+ *  Copyright 2016 Oliver Dozsa
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package indextests;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import indexes.RecipeIngredientTagIndex;
+
+/**
+ * Test class for the recipe - ingredient tag bitmap index.
+ *
+ * @author Oliver Dozsa
+ */
+public class RecipeIngredientTagIndexTest
+{
+    /* --------------------------------------------------------------------- */
+    /* ATTRIBUTES                                                            */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC ATTRIBUTES ------------------------------------------------ */
+
+
+
+    /* -- PROTECTED ATTRIBUTES --------------------------------------------- */
+
+
+
+    /* -- PRIVATE ATTRIBUTES ----------------------------------------------- */
+
+    /**
+     * The index.
+     */
+    private RecipeIngredientTagIndex index;
+
+    /**
+     * No tags.
+     */
+    private List<Long> none = new ArrayList<Long>();
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* METHODS                                                               */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC METHODS --------------------------------------------------- */
+
+    @Before
+    public void setup()
+    {
+        index = new RecipeIngredientTagIndex();
+
+        /* Ingredients: 1 - flour, 2 - egg, 3 - milk, 4 - salt. */
+        /* Tags: 100 - dairy, 101 - baking, 102 - spice. */
+        index.setTag(100L, Arrays.asList(3L), none);
+        index.setTag(101L, Arrays.asList(1L, 2L), none);
+        index.setTag(102L, Arrays.asList(4L), none);
+
+        index.addRecipe(10L, Arrays.asList(1L, 2L));
+        index.addRecipe(11L, Arrays.asList(1L, 2L, 3L));
+        index.addRecipe(12L, Arrays.asList(3L));
+        index.addRecipe(13L, Arrays.asList(2L, 4L));
+    }
+
+    /**
+     * Tests AT_LEAST search.
+     */
+    @Test
+    public void testAtLeast()
+    {
+        assertEquals(Arrays.asList(11L), index.searchAtLeast(Arrays.asList(100L, 101L), none));
+        assertEquals(Arrays.asList(10L, 13L), index.searchAtLeast(Arrays.asList(101L), Arrays.asList(100L)));
+
+        /* Only excluded tags. */
+        assertEquals(Arrays.asList(10L, 11L, 12L), index.searchAtLeast(none, Arrays.asList(102L)));
+    }
+
+    /**
+     * Tests that in AT_LEAST search each tag must be on an ingredient: two
+     * ingredients sharing a tag don't stand in for a missing tag, and don't
+     * hide a present one.
+     */
+    @Test
+    public void testAtLeastSharedTag()
+    {
+        /* Flour and egg are both baking, recipe 10 has no dairy. */
+        assertEquals(Arrays.asList(11L), index.searchAtLeast(Arrays.asList(100L, 101L), none));
+        assertEquals(Arrays.asList(10L, 11L, 13L), index.searchAtLeast(Arrays.asList(101L, 101L), none));
+    }
+
+    /**
+     * Tests ANY_OF search.
+     */
+    @Test
+    public void testAnyOf()
+    {
+        assertEquals(Arrays.asList(11L, 12L, 13L), index.searchAnyOf(Arrays.asList(100L, 102L), none));
+        assertEquals(Arrays.asList(10L, 11L, 12L, 13L), index.searchAnyOf(none, none));
+    }
+
+    /**
+     * Tests GROUP search.
+     */
+    @Test
+    public void testGroup()
+    {
+        Map<Long, List<Long>> groups = new HashMap<Long, List<Long>>();
+
+        groups.put(1L, Arrays.asList(101L, 102L));
+        groups.put(2L, Arrays.asList(100L));
+
+        assertEquals(Arrays.asList(11L, 12L, 13L), index.searchGroup(groups, none));
+        assertEquals(Arrays.asList(11L, 12L), index.searchGroup(groups, Arrays.asList(102L)));
+
+        groups.clear();
+        groups.put(1L, none);
+
+        assertEquals(Arrays.asList(10L, 11L, 12L, 13L), index.searchGroup(groups, none));
+    }
+
+    /**
+     * Tests changing the ingredients of a tag.
+     */
+    @Test
+    public void testSetTag()
+    {
+        /* Milk is the spice from now on. */
+        index.setTag(102L, Arrays.asList(3L), Arrays.asList(11L, 12L));
+
+        assertEquals(Arrays.asList(11L, 12L), index.searchAnyOf(Arrays.asList(102L), none));
+
+        index.addRecipe(14L, Arrays.asList(4L));
+        index.addRecipe(15L, Arrays.asList(3L));
+
+        assertEquals(Arrays.asList(11L, 12L, 15L), index.searchAnyOf(Arrays.asList(102L), none));
+        assertEquals(Arrays.asList(11L, 12L, 15L), index.searchAnyOf(Arrays.asList(100L), none));
+    }
+
+
+
+    /* -- PROTECTED METHODS ------------------------------------------------ */
+
+
+
+    /* -- PRIVATE METHODS -------------------------------------------------- */
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* OTHERS                                                                */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC OTHERS ---------------------------------------------------- */
+
+
+
+    /* -- PROTECTED OTHERS ------------------------------------------------- */
+
+
+
+    /* -- PRIVATE OTHERS --------------------------------------------------- */
+}
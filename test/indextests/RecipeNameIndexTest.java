@@ -0,0 +1,147 @@
+/*
+ *  Copyright 2016 Oliver Dozsa
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package indextests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import indexes.RecipeNameIndex;
+
+/**
+ * Test class for the recipe name index.
+ *
+ * @author Oliver Dozsa
+ */
+public class RecipeNameIndexTest
+{
+    /* --------------------------------------------------------------------- */
+    /* ATTRIBUTES                                                            */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC ATTRIBUTES ------------------------------------------------ */
+
+
+
+    /* -- PROTECTED ATTRIBUTES --------------------------------------------- */
+
+
+
+    /* -- PRIVATE ATTRIBUTES ----------------------------------------------- */
+
+    /**
+     * The index.
+     */
+    private RecipeNameIndex index;
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* METHODS                                                               */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC METHODS --------------------------------------------------- */
+
+    @Before
+    public void setup()
+    {
+        index = new RecipeNameIndex();
+
+        index.addRecipe(1L, "Guly\u00e1sleves");
+        index.addRecipe(2L, "Lecs\u00f3");
+        index.addRecipe(3L, "Bableves csipetk\u00e9vel");
+        index.addRecipe(4L, "Leves");
+        index.addRecipe(5L, "T\u00f6lt\u00f6tt k\u00e1poszta, f\u0151z\u0151s");
+        index.addRecipe(6L, "Levesbet\u00e9t");
+    }
+
+    /**
+     * Tests splitting, and folding the words.
+     */
+    @Test
+    public void testTokenize()
+    {
+        assertEquals(Arrays.asList("toltott", "kaposzta", "fozos"), RecipeNameIndex.tokenize("T\u00f6lt\u00f6tt K\u00c1POSZTA, f\u0151z\u0151s!"));
+        assertEquals(Arrays.asList("arvizturo", "tukorfurogep"), RecipeNameIndex.tokenize("\u00c1rv\u00edzt\u0171r\u0151 t\u00fck\u00f6rf\u00far\u00f3g\u00e9p"));
+        assertTrue(RecipeNameIndex.tokenize(" - ").isEmpty());
+    }
+
+    /**
+     * Tests ranking: whole words, then word starts, then insides, then shorter names.
+     */
+    @Test
+    public void testRanking()
+    {
+        assertEquals(Arrays.asList(4L, 6L, 1L, 3L), index.search("leves"));
+        assertEquals(Arrays.asList(2L), index.search("LECSO"));
+    }
+
+    /**
+     * Tests queries with more words, and short words.
+     */
+    @Test
+    public void testWords()
+    {
+        assertEquals(Arrays.asList(5L), index.search("k\u00e1poszta t\u00f6lt"));
+        assertTrue(index.search("k\u00e1poszta leves").isEmpty());
+        assertEquals(Arrays.asList(3L), index.search("cs bab"));
+        assertTrue(index.search("").isEmpty());
+    }
+
+    /**
+     * Tests adding a recipe after the first search.
+     */
+    @Test
+    public void testAddRecipe()
+    {
+        assertEquals(Arrays.asList(1L), index.search("guly\u00e1s"));
+
+        index.addRecipe(7L, "Guly\u00e1s");
+
+        assertEquals(Arrays.asList(7L, 1L), index.search("gulyas"));
+    }
+
+
+
+    /* -- PROTECTED METHODS ------------------------------------------------ */
+
+
+
+    /* -- PRIVATE METHODS -------------------------------------------------- */
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* OTHERS                                                                */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC OTHERS ---------------------------------------------------- */
+
+
+
+    /* -- PROTECTED OTHERS ------------------------------------------------- */
+
+
+
+    /* -- PRIVATE OTHERS --------------------------------------------------- */
+}
@@ -0,0 +1,360 @@
+/*
+ *  Copyright 2016 Oliver Dozsa
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package querytests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static play.test.Helpers.fakeApplication;
+import static play.test.Helpers.inMemoryDatabase;
+import static play.test.Helpers.running;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import controllers.publicly.RecipeBrowser;
+import controllers.publicly.query.RecipesByIngredients;
+import models.Ingredient;
+import models.Recipe;
+import models.RecipeIngredient;
+import play.Application;
+
+/**
+ * Tests the GROUP search of the sql engine.
+ *
+ * @author Oliver Dozsa
+ */
+public class GroupSearchTest
+{
+    /* --------------------------------------------------------------------- */
+    /* ATTRIBUTES                                                            */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC ATTRIBUTES ------------------------------------------------ */
+
+
+
+    /* -- PROTECTED ATTRIBUTES --------------------------------------------- */
+
+
+
+    /* -- PRIVATE ATTRIBUTES ----------------------------------------------- */
+
+    /**
+     * The application.
+     */
+    private Application application;
+
+    /**
+     * The test ingredients.
+     */
+    private List<Ingredient> ingredients;
+
+    /**
+     * The test recipes.
+     */
+    private List<Recipe> recipes;
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* METHODS                                                               */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC METHODS --------------------------------------------------- */
+
+    @Before
+    public void setup()
+    {
+        Map<String, Object> config = new HashMap<String, Object>();
+
+        config.putAll(inMemoryDatabase("default"));
+        config.put("play.evolutions.db.default.autoApply", "true");
+        config.put(RecipesByIngredients.SEARCH_ENGINE_CONFIG_KEY, "sql");
+
+        application = fakeApplication(config);
+    }
+
+    /**
+     * Tests that recipes having all ingredients of any group are found.
+     */
+    @Test
+    public void testGroups()
+    {
+        running
+        (
+            application,
+            new Runnable()
+            {
+                public void run()
+                {
+                    createFixture();
+
+                    Map<Long, List<Long>> included = new HashMap<Long, List<Long>>();
+
+                    included.put(Recipe.GROUP_ID_A, ids(0, 1));
+                    included.put(Recipe.GROUP_ID_B, ids(2, 3));
+
+                    assertEquals(recipeIds(0, 2, 3), search(included, new ArrayList<Long>()));
+
+                    /* A duplicated ingredient counts once. */
+                    included.put(Recipe.GROUP_ID_A, ids(0, 1, 1));
+
+                    assertEquals(recipeIds(0, 2, 3), search(included, new ArrayList<Long>()));
+                }
+            }
+        );
+    }
+
+    /**
+     * Tests that recipes with excluded ingredients are not found, whichever
+     * group they cover.
+     */
+    @Test
+    public void testExcluded()
+    {
+        running
+        (
+            application,
+            new Runnable()
+            {
+                public void run()
+                {
+                    createFixture();
+
+                    Map<Long, List<Long>> included = new HashMap<Long, List<Long>>();
+
+                    included.put(Recipe.GROUP_ID_A, ids(0, 1));
+                    included.put(Recipe.GROUP_ID_B, ids(2, 3));
+
+                    assertEquals(recipeIds(0), search(included, ids(3)));
+                }
+            }
+        );
+    }
+
+    /**
+     * Tests the shape of the search: one statement, scanning recipe_ingredient
+     * once for all the groups, and once in the exclusion subquery, however
+     * many groups are given.
+     */
+    @Test
+    public void testSqlShape()
+    {
+        running
+        (
+            application,
+            new Runnable()
+            {
+                public void run()
+                {
+                    createFixture();
+
+                    Map<Long, List<Long>> included = new HashMap<Long, List<Long>>();
+
+                    included.put(Recipe.GROUP_ID_A, ids(0, 1));
+                    included.put(Recipe.GROUP_ID_B, ids(2, 3));
+                    included.put(Recipe.GROUP_ID_C, ids(1, 2));
+                    included.put(Recipe.GROUP_ID_D, ids(0));
+
+                    QueryStatistics.reset();
+
+                    search(included, ids(3));
+
+                    List<String> statements = QueryStatistics.getStatements();
+
+                    assertEquals("Not a single statement: " + statements, 1, statements.size());
+
+                    String statement = statements.get(0);
+
+                    assertEquals(statement, 2, countMatches(statement, "\\b(from|join)\\s+recipe_ingredient\\b"));
+                    assertEquals(statement, 2, countMatches(statement, "\\bselect\\b"));
+                    assertEquals(statement, 1, countMatches(statement, "\\bnot\\b"));
+                    assertTrue(statement, statement.contains("SUM(CASE WHEN"));
+                }
+            }
+        );
+    }
+
+
+
+    /* -- PROTECTED METHODS ------------------------------------------------ */
+
+
+
+    /* -- PRIVATE METHODS -------------------------------------------------- */
+
+    /**
+     * Creates four ingredients, and the recipes {0, 1}, {0, 2}, {2, 3},
+     * {0, 1, 3} of them.
+     */
+    private void createFixture()
+    {
+        ingredients = new ArrayList<Ingredient>();
+        recipes     = new ArrayList<Recipe>();
+
+        for(int i = 0; i < 4; i++)
+        {
+            Ingredient ingredient = new Ingredient();
+
+            ingredient.save();
+
+            ingredients.add(ingredient);
+        }
+
+        createRecipe(0, 1);
+        createRecipe(0, 2);
+        createRecipe(2, 3);
+        createRecipe(0, 1, 3);
+    }
+
+    /**
+     * Creates a recipe of the given test ingredients.
+     *
+     * @param ingredientIndexes    The indexes of the ingredients.
+     */
+    private void createRecipe(int... ingredientIndexes)
+    {
+        Recipe recipe = new Recipe();
+
+        recipe.name            = "recipe" + recipes.size();
+        recipe.ingredientCount = ingredientIndexes.length;
+
+        recipe.save();
+
+        for(int index : ingredientIndexes)
+        {
+            RecipeIngredient recipeIngredient = new RecipeIngredient();
+
+            recipeIngredient.recipe     = recipe;
+            recipeIngredient.ingredient = ingredients.get(index);
+
+            recipeIngredient.save();
+        }
+
+        recipes.add(recipe);
+    }
+
+    /**
+     * Runs a GROUP search.
+     *
+     * @param included    The included ingredient ids by group.
+     * @param excluded    The excluded ingredient ids.
+     *
+     * @return The ids of the found recipes in ascending order.
+     */
+    private List<Long> search(Map<Long, List<Long>> included, List<Long> excluded)
+    {
+        List<Long> result = new ArrayList<Long>();
+
+        for(Recipe recipe : RecipesByIngredients.searchByIngredients(included, excluded, RecipeBrowser.SearchMode.GROUP).findList())
+        {
+            result.add(recipe.id);
+        }
+
+        Collections.sort(result);
+
+        return result;
+    }
+
+    /**
+     * Gets the ids of test ingredients.
+     *
+     * @param indexes    The indexes of the ingredients.
+     *
+     * @return The ids.
+     */
+    private List<Long> ids(int... indexes)
+    {
+        List<Long> result = new ArrayList<Long>();
+
+        for(int index : indexes)
+        {
+            result.add(ingredients.get(index).id);
+        }
+
+        return result;
+    }
+
+    /**
+     * Gets the ids of test recipes, in ascending order.
+     *
+     * @param indexes    The indexes of the recipes.
+     *
+     * @return The ids.
+     */
+    private List<Long> recipeIds(int... indexes)
+    {
+        List<Long> result = new ArrayList<Long>();
+
+        for(int index : indexes)
+        {
+            result.add(recipes.get(index).id);
+        }
+
+        Collections.sort(result);
+
+        return result;
+    }
+
+    /**
+     * Counts the matches of a pattern in an SQL statement, case insensitively.
+     *
+     * @param statement    The statement.
+     * @param regex        The pattern.
+     *
+     * @return The number of matches.
+     */
+    private static int countMatches(String statement, String regex)
+    {
+        int result = 0;
+
+        Matcher matcher = Pattern.compile(regex, Pattern.CASE_INSENSITIVE).matcher(statement);
+
+        while(matcher.find())
+        {
+            result++;
+        }
+
+        return result;
+    }
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* OTHERS                                                                */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC OTHERS ---------------------------------------------------- */
+
+
+
+    /* -- PROTECTED OTHERS ------------------------------------------------- */
+
+
+
+    /* -- PRIVATE OTHERS --------------------------------------------------- */
+}
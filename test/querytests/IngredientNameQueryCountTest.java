@@ -0,0 +1,357 @@
+/*
+ *  Copyright 2016 Oliver Dozsa
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package querytests;
+
+import static org.junit.Assert.assertEquals;
+import static play.test.Helpers.GET;
+import static play.test.Helpers.OK;
+import static play.test.Helpers.fakeApplication;
+import static play.test.Helpers.fakeRequest;
+import static play.test.Helpers.inMemoryDatabase;
+import static play.test.Helpers.route;
+import static play.test.Helpers.running;
+import static play.test.Helpers.status;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import indexes.IngredientAutocomplete;
+import indexes.IngredientNameIndex;
+import models.Ingredient;
+import models.IngredientAlias;
+import models.IngredientName;
+import models.IngredientTag;
+import models.Language;
+import play.Application;
+import play.mvc.Result;
+
+/**
+ * Tests the number of queries issued for ingredient names. Queries are counted
+ * by the query statistics of the H2 database.
+ *
+ * @author Oliver Dozsa
+ */
+public class IngredientNameQueryCountTest
+{
+    /* --------------------------------------------------------------------- */
+    /* ATTRIBUTES                                                            */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC ATTRIBUTES ------------------------------------------------ */
+
+
+
+    /* -- PROTECTED ATTRIBUTES --------------------------------------------- */
+
+
+
+    /* -- PRIVATE ATTRIBUTES ----------------------------------------------- */
+
+    /**
+     * The application configuration.
+     */
+    private Map<String, Object> config;
+
+    /**
+     * The application.
+     */
+    private Application application;
+
+    /**
+     * The test language.
+     */
+    private Language language;
+
+    /**
+     * Tag of one ingredient.
+     */
+    private IngredientTag singleTag;
+
+    /**
+     * Tag of three ingredients.
+     */
+    private IngredientTag multiTag;
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* METHODS                                                               */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC METHODS --------------------------------------------------- */
+
+    @Before
+    public void setup()
+    {
+        config = new HashMap<String, Object>();
+
+        config.putAll(inMemoryDatabase("default"));
+        config.put("play.evolutions.db.default.autoApply", "true");
+
+        application = fakeApplication(config);
+
+        /* Indexes of a previous application must not be used. */
+        IngredientNameIndex.invalidate();
+        IngredientAutocomplete.invalidate();
+    }
+
+    /**
+     * Tests that names of several ingredients are loaded with one query.
+     */
+    @Test
+    public void testGetNamesByLanguage()
+    {
+        running
+        (
+            application,
+            new Runnable()
+            {
+                public void run()
+                {
+                    List<Ingredient> ingredients = createFixture();
+
+                    QueryStatistics.reset();
+
+                    Map<Long, IngredientName> names = Ingredient.getNamesByLanguage(ingredients, language.id);
+
+                    assertEquals("Queries issued!", 1, QueryStatistics.getQueryCount());
+                    assertEquals("Names are missing!", ingredients.size(), names.size());
+                    assertEquals("Wrong name!", "alma", names.get(ingredients.get(0).id).name);
+                }
+            }
+        );
+    }
+
+    /**
+     * Tests that the number of queries of the ingredients with tags request
+     * doesn't depend on the number of found ingredients.
+     */
+    @Test
+    public void testIngredientsWithTags()
+    {
+        running
+        (
+            application,
+            new Runnable()
+            {
+                public void run()
+                {
+                    createFixture();
+
+                    int singleCount = countRequestQueries("/browse/recipes/getingredientswithtags?q=" + singleTag.id + "&l=" + language.id);
+                    int multiCount  = countRequestQueries("/browse/recipes/getingredientswithtags?q=" + multiTag.id + "&l=" + language.id);
+
+                    assertEquals("Queries depend on the number of ingredients!", singleCount, multiCount);
+                }
+            }
+        );
+    }
+
+    /**
+     * Tests that the number of queries of the ingredients request doesn't
+     * depend on the number of found ingredients.
+     */
+    @Test
+    public void testIngredients()
+    {
+        running
+        (
+            application,
+            new Runnable()
+            {
+                public void run()
+                {
+                    createFixture();
+
+                    /* Build the indexes. */
+                    countRequestQueries("/browse/recipes/getingredients?q=alma&l=" + language.id);
+
+                    int singleCount = countRequestQueries("/browse/recipes/getingredients?q=korte&l=" + language.id);
+                    int multiCount  = countRequestQueries("/browse/recipes/getingredients?q=alma&l=" + language.id);
+
+                    assertEquals("Queries depend on the number of ingredients!", singleCount, multiCount);
+                }
+            }
+        );
+    }
+
+
+
+    /**
+     * Tests that the alias fallback gets the names of all matching aliases
+     * with one query, without duplicates.
+     */
+    @Test
+    public void testAliasFallback()
+    {
+        running
+        (
+            application,
+            new Runnable()
+            {
+                public void run()
+                {
+                    List<Ingredient> ingredients = createFixture();
+
+                    createAlias("pirosalma", ingredients.get(0));
+                    createAlias("husalma", ingredients.get(0));
+
+                    /* Build the index. */
+                    IngredientName.getNamesLikeByLanguage("pirosalma", language.id, 10);
+
+                    QueryStatistics.reset();
+
+                    List<IngredientName> names = IngredientName.getNamesLikeByLanguage("salm", language.id, 10);
+
+                    assertEquals("Queries issued!", 1, QueryStatistics.getQueryCount());
+                    assertEquals("Names are duplicated!", 1, names.size());
+                    assertEquals("Wrong name!", "alma", names.get(0).name);
+                }
+            }
+        );
+    }
+
+
+
+    /* -- PROTECTED METHODS ------------------------------------------------ */
+
+
+
+    /* -- PRIVATE METHODS -------------------------------------------------- */
+
+    /**
+     * Creates the test language, ingredients, and tags.
+     *
+     * @return The ingredients named with "alma".
+     */
+    private List<Ingredient> createFixture()
+    {
+        language = new Language();
+
+        language.isoName = "test";
+
+        language.save();
+
+        List<Ingredient> result = new ArrayList<Ingredient>();
+
+        result.add(createIngredient("alma"));
+        result.add(createIngredient("almaecet"));
+        result.add(createIngredient("almapure"));
+
+        Ingredient korte = createIngredient("korte");
+
+        singleTag = new IngredientTag();
+
+        singleTag.name        = "single";
+        singleTag.ingredients = new ArrayList<Ingredient>();
+
+        singleTag.ingredients.add(korte);
+
+        singleTag.save();
+
+        multiTag = new IngredientTag();
+
+        multiTag.name        = "multi";
+        multiTag.ingredients = new ArrayList<Ingredient>(result);
+
+        multiTag.save();
+
+        return result;
+    }
+
+    /**
+     * Creates an ingredient with a name in the test language.
+     *
+     * @param name    The name.
+     *
+     * @return The ingredient.
+     */
+    private Ingredient createIngredient(String name)
+    {
+        Ingredient result = new Ingredient();
+
+        result.save();
+
+        IngredientName ingName = new IngredientName();
+
+        ingName.name       = name;
+        ingName.language   = language;
+        ingName.ingredient = result;
+
+        ingName.save();
+
+        return result;
+    }
+
+    /**
+     * Creates an alias of an ingredient in the test language.
+     *
+     * @param name          The alias.
+     * @param ingredient    The ingredient.
+     */
+    private void createAlias(String name, Ingredient ingredient)
+    {
+        IngredientAlias alias = new IngredientAlias();
+
+        alias.name       = name;
+        alias.language   = language;
+        alias.ingredient = ingredient;
+
+        alias.save();
+    }
+
+    /**
+     * Runs a GET request, and counts its queries.
+     *
+     * @param url    The url of the request.
+     *
+     * @return The number of queries.
+     */
+    private int countRequestQueries(String url)
+    {
+        QueryStatistics.reset();
+
+        Result result = route(application, fakeRequest(GET, url));
+
+        assertEquals("Request failed: " + url, OK, status(result));
+
+        return QueryStatistics.getQueryCount();
+    }
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* OTHERS                                                                */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC OTHERS ---------------------------------------------------- */
+
+
+
+    /* -- PROTECTED OTHERS ------------------------------------------------- */
+
+
+
+    /* -- PRIVATE OTHERS --------------------------------------------------- */
+}
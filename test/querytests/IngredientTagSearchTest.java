@@ -0,0 +1,331 @@
+/*
+ *  Copyright 2016 Oliver Dozsa
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package querytests;
+
+import static org.junit.Assert.assertEquals;
+import static play.test.Helpers.fakeApplication;
+import static play.test.Helpers.inMemoryDatabase;
+import static play.test.Helpers.running;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import controllers.publicly.RecipeBrowser;
+import controllers.publicly.query.RecipesByRecipeProperties;
+import indexes.RecipeIngredientTagIndex;
+import indexes.TagStatistics;
+import models.Ingredient;
+import models.IngredientTag;
+import models.Recipe;
+import models.RecipeIngredient;
+import play.Application;
+
+/**
+ * Tests the AT_LEAST search by ingredient tags with both engines: a recipe
+ * matches, if each included tag is on one of its ingredients.
+ *
+ * @author Oliver Dozsa
+ */
+public class IngredientTagSearchTest
+{
+    /* --------------------------------------------------------------------- */
+    /* ATTRIBUTES                                                            */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC ATTRIBUTES ------------------------------------------------ */
+
+
+
+    /* -- PROTECTED ATTRIBUTES --------------------------------------------- */
+
+
+
+    /* -- PRIVATE ATTRIBUTES ----------------------------------------------- */
+
+    /**
+     * The test ingredients.
+     */
+    private List<Ingredient> ingredients;
+
+    /**
+     * The test recipes.
+     */
+    private List<Recipe> recipes;
+
+    /**
+     * Tag of the first two ingredients.
+     */
+    private IngredientTag sharedTag;
+
+    /**
+     * Tag of the third ingredient.
+     */
+    private IngredientTag otherTag;
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* METHODS                                                               */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC METHODS --------------------------------------------------- */
+
+    @Before
+    public void setup()
+    {
+        /* Indexes of a previous application must not be used. */
+        RecipeIngredientTagIndex.invalidate();
+        TagStatistics.invalidate();
+    }
+
+    /**
+     * Tests AT_LEAST with the sql engine.
+     */
+    @Test
+    public void testAtLeastSql()
+    {
+        checkAtLeast("sql");
+    }
+
+    /**
+     * Tests AT_LEAST with the bitmap engine.
+     */
+    @Test
+    public void testAtLeastBitmap()
+    {
+        checkAtLeast("bitmap");
+    }
+
+
+
+    /* -- PROTECTED METHODS ------------------------------------------------ */
+
+
+
+    /* -- PRIVATE METHODS -------------------------------------------------- */
+
+    /**
+     * Checks that two ingredients sharing a tag don't stand in for a missing
+     * tag, and don't hide a present one.
+     *
+     * @param engine    The ingredient tags engine.
+     */
+    private void checkAtLeast(String engine)
+    {
+        Map<String, Object> config = new HashMap<String, Object>();
+
+        config.putAll(inMemoryDatabase("default"));
+        config.put("play.evolutions.db.default.autoApply", "true");
+        config.put(RecipesByRecipeProperties.INGREDIENT_TAGS_ENGINE_CONFIG_KEY, engine);
+
+        Application application = fakeApplication(config);
+
+        running
+        (
+            application,
+            new Runnable()
+            {
+                public void run()
+                {
+                    createFixture();
+
+                    assertEquals(recipeIds(1, 2), search(Arrays.asList(sharedTag.id, otherTag.id)));
+
+                    /* A duplicated tag counts once. */
+                    assertEquals(recipeIds(0, 1, 2), search(Arrays.asList(sharedTag.id, sharedTag.id)));
+                }
+            }
+        );
+    }
+
+    /**
+     * Creates three ingredients, the first two with the shared tag, the third
+     * with the other tag, and the recipes {0, 1}, {0, 1, 2}, {0, 2} of them.
+     */
+    private void createFixture()
+    {
+        ingredients = new ArrayList<Ingredient>();
+        recipes     = new ArrayList<Recipe>();
+
+        for(int i = 0; i < 3; i++)
+        {
+            Ingredient ingredient = new Ingredient();
+
+            ingredient.save();
+
+            ingredients.add(ingredient);
+        }
+
+        sharedTag = createTag("shared", 0, 1);
+        otherTag  = createTag("other", 2);
+
+        createRecipe(0, 1);
+        createRecipe(0, 1, 2);
+        createRecipe(0, 2);
+    }
+
+    /**
+     * Creates an ingredient tag of the given test ingredients.
+     *
+     * @param name                 The name of the tag.
+     * @param ingredientIndexes    The indexes of the ingredients.
+     *
+     * @return The tag.
+     */
+    private IngredientTag createTag(String name, int... ingredientIndexes)
+    {
+        IngredientTag result = new IngredientTag();
+
+        result.name        = name;
+        result.ingredients = new ArrayList<Ingredient>();
+
+        for(int index : ingredientIndexes)
+        {
+            result.ingredients.add(ingredients.get(index));
+        }
+
+        result.save();
+
+        return result;
+    }
+
+    /**
+     * Creates a recipe of the given test ingredients.
+     *
+     * @param ingredientIndexes    The indexes of the ingredients.
+     */
+    private void createRecipe(int... ingredientIndexes)
+    {
+        Recipe recipe = new Recipe();
+
+        recipe.name            = "recipe" + recipes.size();
+        recipe.ingredientCount = ingredientIndexes.length;
+
+        recipe.save();
+
+        for(int index : ingredientIndexes)
+        {
+            RecipeIngredient recipeIngredient = new RecipeIngredient();
+
+            recipeIngredient.recipe     = recipe;
+            recipeIngredient.ingredient = ingredients.get(index);
+
+            recipeIngredient.save();
+        }
+
+        recipes.add(recipe);
+    }
+
+    /**
+     * Runs an AT_LEAST search by ingredient tags, the way the result page
+     * does: by the found ids, if the search doesn't run as one SQL query.
+     *
+     * @param included    The included tag ids.
+     *
+     * @return The ids of the found recipes in ascending order.
+     */
+    private List<Long> search(List<Long> included)
+    {
+        Map<Long, List<Long>> includedTags = new HashMap<Long, List<Long>>();
+
+        includedTags.put(Recipe.GROUP_ID_A, included);
+
+        List<Long> result = RecipesByRecipeProperties.findIdsByRecipeProperties
+        (
+            null,
+            new HashMap<Long, List<Long>>(),
+            new ArrayList<Long>(),
+            includedTags,
+            new ArrayList<Long>(),
+            RecipeBrowser.SearchMode.AT_LEAST,
+            RecipeBrowser.SearchMode.AT_LEAST
+        );
+
+        if(result == null)
+        {
+            result = new ArrayList<Long>();
+
+            for
+            (
+                Recipe recipe : RecipesByRecipeProperties.searchByRecipeProperties
+                (
+                    null,
+                    new HashMap<Long, List<Long>>(),
+                    new ArrayList<Long>(),
+                    includedTags,
+                    new ArrayList<Long>(),
+                    RecipeBrowser.SearchMode.AT_LEAST,
+                    RecipeBrowser.SearchMode.AT_LEAST
+                )
+                .findList()
+            )
+            {
+                result.add(recipe.id);
+            }
+
+            Collections.sort(result);
+        }
+
+        return result;
+    }
+
+    /**
+     * Gets the ids of test recipes, in ascending order.
+     *
+     * @param indexes    The indexes of the recipes.
+     *
+     * @return The ids.
+     */
+    private List<Long> recipeIds(int... indexes)
+    {
+        List<Long> result = new ArrayList<Long>();
+
+        for(int index : indexes)
+        {
+            result.add(recipes.get(index).id);
+        }
+
+        Collections.sort(result);
+
+        return result;
+    }
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* OTHERS                                                                */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC OTHERS ---------------------------------------------------- */
+
+
+
+    /* -- PROTECTED OTHERS ------------------------------------------------- */
+
+
+
+    /* -- PRIVATE OTHERS --------------------------------------------------- */
+}
@@ -0,0 +1,141 @@
+/*
+ *  Copyright 2016 Oliver Dozsa
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package querytests;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.avaje.ebean.Ebean;
+import com.avaje.ebean.SqlRow;
+
+/**
+ * Reads the queries run by the in-memory test database, from the query
+ * statistics of H2.
+ *
+ * @author Oliver Dozsa
+ */
+public class QueryStatistics
+{
+    /* --------------------------------------------------------------------- */
+    /* ATTRIBUTES                                                            */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC ATTRIBUTES ------------------------------------------------ */
+
+
+
+    /* -- PROTECTED ATTRIBUTES --------------------------------------------- */
+
+
+
+    /* -- PRIVATE ATTRIBUTES ----------------------------------------------- */
+
+    /**
+     * Leaves out the statements of the statistics themselves.
+     */
+    private static final String OWN_STATEMENTS_FILTER = "WHERE SQL_STATEMENT NOT LIKE '%QUERY_STATISTICS%'";
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* METHODS                                                               */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC METHODS --------------------------------------------------- */
+
+    /**
+     * Clears the query statistics of the database.
+     */
+    public static void reset()
+    {
+        Ebean.createSqlUpdate("SET QUERY_STATISTICS FALSE").execute();
+        Ebean.createSqlUpdate("SET QUERY_STATISTICS TRUE").execute();
+    }
+
+    /**
+     * Gets the number of queries since the last reset.
+     *
+     * @return The number of queries.
+     */
+    public static int getQueryCount()
+    {
+        SqlRow row = Ebean
+            .createSqlQuery
+            (
+                "SELECT SUM(EXECUTION_COUNT) AS query_count " +
+                "FROM INFORMATION_SCHEMA.QUERY_STATISTICS " +
+                OWN_STATEMENTS_FILTER
+            )
+            .findUnique();
+
+        Integer result = row.getInteger("query_count");
+
+        return (result != null) ? result : 0;
+    }
+
+    /**
+     * Gets the distinct statements run since the last reset.
+     *
+     * @return The SQL of the statements.
+     */
+    public static List<String> getStatements()
+    {
+        List<String> result = new ArrayList<String>();
+
+        List<SqlRow> rows = Ebean
+            .createSqlQuery
+            (
+                "SELECT SQL_STATEMENT AS statement " +
+                "FROM INFORMATION_SCHEMA.QUERY_STATISTICS " +
+                OWN_STATEMENTS_FILTER
+            )
+            .findList();
+
+        for(SqlRow row : rows)
+        {
+            result.add(row.getString("statement"));
+        }
+
+        return result;
+    }
+
+
+
+    /* -- PROTECTED METHODS ------------------------------------------------ */
+
+
+
+    /* -- PRIVATE METHODS -------------------------------------------------- */
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* OTHERS                                                                */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC OTHERS ---------------------------------------------------- */
+
+
+
+    /* -- PROTECTED OTHERS ------------------------------------------------- */
+
+
+
+    /* -- PRIVATE OTHERS --------------------------------------------------- */
+}
@@ -0,0 +1,258 @@
+/*
+ *  Copyright 2016 Oliver Dozsa
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package querytests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import controllers.publicly.query.SearchPlan;
+
+/**
+ * Test class for the search plan.
+ *
+ * @author Oliver Dozsa
+ */
+public class SearchPlanTest
+{
+    /* --------------------------------------------------------------------- */
+    /* ATTRIBUTES                                                            */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC ATTRIBUTES ------------------------------------------------ */
+
+
+
+    /* -- PROTECTED ATTRIBUTES --------------------------------------------- */
+
+
+
+    /* -- PRIVATE ATTRIBUTES ----------------------------------------------- */
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* METHODS                                                               */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC METHODS --------------------------------------------------- */
+
+    /**
+     * Tests that the cheapest predicate runs first, and the name scan runs as
+     * soon as the recipes found are fewer than the tag rows to read.
+     */
+    @Test
+    public void testOrder()
+    {
+        SearchPlan plan = new SearchPlan(1000);
+
+        TestPredicate name = new TestPredicate("name", 0.1, -1, Arrays.asList(1L, 2L, 3L, 4L));
+        TestPredicate tags = new TestPredicate("tags", 0.02, 20, Arrays.asList(2L, 4L, 6L));
+        TestPredicate rare = new TestPredicate("rare", 0.005, 5, Arrays.asList(4L, 5L, 6L));
+
+        plan.add(name);
+        plan.add(tags);
+        plan.add(rare);
+
+        plan.plan();
+
+        /* After the rare tag 5 recipes are expected, scanning them is cheaper than 20 tag rows. */
+        assertEquals(Arrays.asList(rare, name, tags), plan.getPredicates());
+
+        List<Long> found = plan.execute();
+
+        assertEquals(Arrays.asList(4L), found);
+
+        /* Every predicate got the recipes found before. */
+        assertNull(rare.inputIds);
+        assertEquals(Arrays.asList(4L, 5L, 6L), name.inputIds);
+        assertEquals(Arrays.asList(4L), tags.inputIds);
+    }
+
+    /**
+     * Tests that too many recipes found are not handed to the next predicate,
+     * and its result is intersected in the order of the first predicate.
+     */
+    @Test
+    public void testMaxInputIds()
+    {
+        SearchPlan plan = new SearchPlan(1000);
+
+        TestPredicate first  = new TestPredicate("first", 0.01, 0, Arrays.asList(5L, 3L, 1L));
+        TestPredicate second = new TestPredicate("second", 0.5, 500, Arrays.asList(1L, 2L, 3L));
+
+        plan.setMaxInputIds(2);
+        plan.add(first);
+        plan.add(second);
+
+        assertEquals(Arrays.asList(3L, 1L), plan.execute());
+        assertNull(second.inputIds);
+        assertTrue(plan.explain(), plan.explain().contains("over all recipes"));
+    }
+
+    /**
+     * Tests that predicates after an empty result don't run.
+     */
+    @Test
+    public void testEmpty()
+    {
+        SearchPlan plan = new SearchPlan(1000);
+
+        TestPredicate none  = new TestPredicate("none", 0.001, 1, new ArrayList<Long>());
+        TestPredicate other = new TestPredicate("other", 0.5, 500, Arrays.asList(1L));
+
+        plan.add(other);
+        plan.add(none);
+
+        assertTrue(plan.execute().isEmpty());
+        assertEquals(1, none.evaluateCount);
+        assertEquals(0, other.evaluateCount);
+
+        String explain = plan.explain();
+
+        assertTrue(explain, explain.contains("1. none"));
+        assertTrue(explain, explain.contains("skipped"));
+    }
+
+    /**
+     * Tests that a plan without predicates finds every recipe.
+     */
+    @Test
+    public void testNoPredicates()
+    {
+        SearchPlan plan = new SearchPlan(1000);
+
+        plan.drop("name");
+
+        assertNull(plan.execute());
+        assertTrue(plan.explain().contains("dropped: name"));
+    }
+
+
+
+    /* -- PROTECTED METHODS ------------------------------------------------ */
+
+
+
+    /* -- PRIVATE METHODS -------------------------------------------------- */
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* OTHERS                                                                */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC OTHERS ---------------------------------------------------- */
+
+
+
+    /* -- PROTECTED OTHERS ------------------------------------------------- */
+
+
+
+    /* -- PRIVATE OTHERS --------------------------------------------------- */
+
+    /**
+     * Predicate with fixed estimates and matches.
+     */
+    private static class TestPredicate implements SearchPlan.Predicate
+    {
+        /**
+         * The description.
+         */
+        private String description;
+
+        /**
+         * The selectivity.
+         */
+        private double selectivity;
+
+        /**
+         * The cost, or -1, if the cost is the number of input rows.
+         */
+        private double cost;
+
+        /**
+         * The ids of the matching recipes.
+         */
+        private List<Long> matching;
+
+        /**
+         * The input ids of the last evaluation.
+         */
+        private List<Long> inputIds;
+
+        /**
+         * Number of evaluations.
+         */
+        private int evaluateCount;
+
+        private TestPredicate(String description, double selectivity, double cost, List<Long> matching)
+        {
+            this.description = description;
+            this.selectivity = selectivity;
+            this.cost        = cost;
+            this.matching    = matching;
+        }
+
+        @Override
+        public String getDescription()
+        {
+            return description;
+        }
+
+        @Override
+        public double getSelectivity()
+        {
+            return selectivity;
+        }
+
+        @Override
+        public double getCost(double inputRows)
+        {
+            return (cost < 0) ? inputRows : cost;
+        }
+
+        @Override
+        public List<Long> evaluate(List<Long> inputIds)
+        {
+            this.inputIds = inputIds;
+
+            evaluateCount++;
+
+            List<Long> result = new ArrayList<Long>();
+
+            for(Long id : matching)
+            {
+                if(inputIds == null || inputIds.contains(id))
+                {
+                    result.add(id);
+                }
+            }
+
+            return result;
+        }
+    }
+}
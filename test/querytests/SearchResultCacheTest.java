@@ -0,0 +1,214 @@
+/*
+ *  Copyright 2016 Oliver Dozsa
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package querytests;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import controllers.publicly.RecipeBrowser.SearchMode;
+import controllers.publicly.query.SearchResultCache;
+import models.Recipe;
+
+/**
+ * Test class for the ingredient search result cache.
+ *
+ * @author Oliver Dozsa
+ */
+public class SearchResultCacheTest
+{
+    /* --------------------------------------------------------------------- */
+    /* ATTRIBUTES                                                            */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC ATTRIBUTES ------------------------------------------------ */
+
+
+
+    /* -- PROTECTED ATTRIBUTES --------------------------------------------- */
+
+
+
+    /* -- PRIVATE ATTRIBUTES ----------------------------------------------- */
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* METHODS                                                               */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC METHODS --------------------------------------------------- */
+
+    /**
+     * Tests that equivalent searches have the same key.
+     */
+    @Test
+    public void testCanonicalKey()
+    {
+        Map<Long, List<Long>> groupsA = new HashMap<Long, List<Long>>();
+        Map<Long, List<Long>> groupsB = new HashMap<Long, List<Long>>();
+
+        groupsA.put(Recipe.GROUP_ID_A, Arrays.asList(3L, 1L, 1L));
+        groupsA.put(Recipe.GROUP_ID_B, Arrays.asList(5L));
+
+        groupsB.put(Recipe.GROUP_ID_C, Arrays.asList(5L));
+        groupsB.put(Recipe.GROUP_ID_D, Arrays.asList(1L, 3L));
+
+        assertEquals
+        (
+            SearchResultCache.createKey(groupsA, Arrays.asList(9L, 7L), SearchMode.GROUP, "name", "asc"),
+            SearchResultCache.createKey(groupsB, Arrays.asList(7L, 9L), SearchMode.GROUP, "name", "ASC")
+        );
+
+        /* Excluded ingredients are not used in EXACT mode. */
+        assertEquals
+        (
+            SearchResultCache.createKey(groupsA, Arrays.asList(9L), SearchMode.EXACT, "name", "asc"),
+            SearchResultCache.createKey(groupsA, Arrays.asList(8L), SearchMode.EXACT, "name", "asc")
+        );
+
+        assertNotEquals
+        (
+            SearchResultCache.createKey(groupsA, Arrays.asList(9L), SearchMode.AT_LEAST, "name", "asc"),
+            SearchResultCache.createKey(groupsA, Arrays.asList(9L), SearchMode.ANY_OF, "name", "asc")
+        );
+    }
+
+    /**
+     * Tests that equivalent recipe property searches ranked by name have the
+     * same key.
+     */
+    @Test
+    public void testNameKey()
+    {
+        Map<Long, List<Long>> recipeTags = new HashMap<Long, List<Long>>();
+        Map<Long, List<Long>> ingTags    = new HashMap<Long, List<Long>>();
+
+        recipeTags.put(Recipe.GROUP_ID_A, Arrays.asList(2L, 1L));
+        ingTags.put(Recipe.GROUP_ID_A, new ArrayList<Long>());
+
+        assertEquals
+        (
+            SearchResultCache.createKey("Guly\u00e1s, leves", recipeTags, Arrays.asList(4L, 3L), SearchMode.AT_LEAST, ingTags, new ArrayList<Long>(), SearchMode.ANY_OF),
+            SearchResultCache.createKey(" gulyas LEVES ", recipeTags, Arrays.asList(3L, 4L), SearchMode.AT_LEAST, ingTags, new ArrayList<Long>(), SearchMode.ANY_OF)
+        );
+
+        /* Recipe tags, and ingredient tags are told apart. */
+        assertNotEquals
+        (
+            SearchResultCache.createKey("leves", recipeTags, new ArrayList<Long>(), SearchMode.AT_LEAST, ingTags, new ArrayList<Long>(), SearchMode.AT_LEAST),
+            SearchResultCache.createKey("leves", ingTags, new ArrayList<Long>(), SearchMode.AT_LEAST, recipeTags, new ArrayList<Long>(), SearchMode.AT_LEAST)
+        );
+    }
+
+    /**
+     * Tests size based eviction, and the hit / miss counters.
+     */
+    @Test
+    public void testEviction()
+    {
+        SearchResultCache cache = new SearchResultCache(2, 60000L);
+
+        cache.put("a", new long[]{1L}, cache.getGeneration());
+        cache.put("b", new long[]{2L}, cache.getGeneration());
+
+        /* Touch "a", so "b" is the least recently used one. */
+        assertArrayEquals(new long[]{1L}, cache.get("a"));
+
+        cache.put("c", new long[]{3L}, cache.getGeneration());
+
+        assertNull(cache.get("b"));
+        assertEquals(2, cache.size());
+        assertEquals(1L, cache.getHitCount());
+        assertEquals(1L, cache.getMissCount());
+
+        cache.clear();
+
+        assertNull(cache.get("a"));
+    }
+
+    /**
+     * Tests time to live based eviction.
+     */
+    @Test
+    public void testExpiry()
+    {
+        SearchResultCache cache = new SearchResultCache(2, -1L);
+
+        cache.put("a", new long[]{1L}, cache.getGeneration());
+
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+    }
+
+    /**
+     * Tests that the result of a search started before the cache was cleared
+     * is not cached.
+     */
+    @Test
+    public void testStalePut()
+    {
+        SearchResultCache cache = new SearchResultCache(2, 60000L);
+
+        long generation = cache.getGeneration();
+
+        cache.clear();
+
+        cache.put("a", new long[]{1L}, generation);
+
+        assertNull(cache.get("a"));
+
+        cache.put("a", new long[]{1L}, cache.getGeneration());
+
+        assertArrayEquals(new long[]{1L}, cache.get("a"));
+    }
+
+
+
+    /* -- PROTECTED METHODS ------------------------------------------------ */
+
+
+
+    /* -- PRIVATE METHODS -------------------------------------------------- */
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* OTHERS                                                                */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC OTHERS ---------------------------------------------------- */
+
+
+
+    /* -- PROTECTED OTHERS ------------------------------------------------- */
+
+
+
+    /* -- PRIVATE OTHERS --------------------------------------------------- */
+}
@@ -0,0 +1,297 @@
+/*
+ *  Copyright 2016 Oliver Dozsa
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package querytests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static play.test.Helpers.GET;
+import static play.test.Helpers.OK;
+import static play.test.Helpers.contentAsString;
+import static play.test.Helpers.fakeApplication;
+import static play.test.Helpers.fakeRequest;
+import static play.test.Helpers.inMemoryDatabase;
+import static play.test.Helpers.route;
+import static play.test.Helpers.running;
+import static play.test.Helpers.status;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import controllers.publicly.PageCursor;
+import controllers.publicly.RecipeBrowser;
+import controllers.publicly.query.RecipesByRecipeProperties;
+import indexes.TagStatistics;
+import models.Recipe;
+import play.Application;
+import play.mvc.Result;
+
+/**
+ * Pages through a search result sorted by name, the way the result page does.
+ *
+ * @author Oliver Dozsa
+ */
+public class SortedPagingTest
+{
+    /* --------------------------------------------------------------------- */
+    /* ATTRIBUTES                                                            */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC ATTRIBUTES ------------------------------------------------ */
+
+
+
+    /* -- PROTECTED ATTRIBUTES --------------------------------------------- */
+
+
+
+    /* -- PRIVATE ATTRIBUTES ----------------------------------------------- */
+
+    /**
+     * Number of test recipes: two full pages, and one more.
+     */
+    private static final int RECIPE_COUNT = 2 * RecipeBrowser.RESULT_PAGE_SIZE + 1;
+
+    /**
+     * The url of the search by recipe properties, without filters.
+     */
+    private static final String SEARCH_URL = "/browse/recipes/search/exec/recipeprop?nam=&inr=&exr=&irm=0&ini=&exi=&iim=0";
+
+    /**
+     * The application.
+     */
+    private Application application;
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* METHODS                                                               */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC METHODS --------------------------------------------------- */
+
+    @Before
+    public void setup()
+    {
+        Map<String, Object> config = new HashMap<String, Object>();
+
+        config.putAll(inMemoryDatabase("default"));
+        config.put("play.evolutions.db.default.autoApply", "true");
+        config.put(RecipesByRecipeProperties.NAMES_ENGINE_CONFIG_KEY, "sql");
+
+        application = fakeApplication(config);
+
+        /* Statistics of a previous application must not be used. */
+        TagStatistics.invalidate();
+    }
+
+    /**
+     * Tests that the next page link keeps the sort order, and leads to the
+     * recipes following the page by a cursor of the same ordering.
+     */
+    @Test
+    public void testNextPages()
+    {
+        running
+        (
+            application,
+            new Runnable()
+            {
+                public void run()
+                {
+                    createFixture();
+
+                    String content = search("0");
+
+                    assertEquals(names(0, RecipeBrowser.RESULT_PAGE_SIZE), getNames(content));
+
+                    for(int page = 1; page <= 2; page++)
+                    {
+                        /* The form submits the page with the sort order unchanged. */
+                        assertTrue(content, content.contains("name = \"sro\" value = \"asc\""));
+
+                        String nextParam = find(content, "runPage\\(\"([^\"]*)\"\\);\\s*\\}\\s*\\);\\s*\\$\\(\"#or-rec-ct-pag-prev\"\\)");
+                        PageCursor cursor = PageCursor.parse(nextParam);
+
+                        assertNotNull(nextParam, cursor);
+                        assertTrue(nextParam, cursor.isFor("name", "asc"));
+                        assertEquals(page, cursor.getPageIndex());
+
+                        content = search(nextParam);
+
+                        int from = page * RecipeBrowser.RESULT_PAGE_SIZE;
+
+                        assertEquals(names(from, Math.min(from + RecipeBrowser.RESULT_PAGE_SIZE, RECIPE_COUNT)), getNames(content));
+                    }
+                }
+            }
+        );
+    }
+
+
+
+    /* -- PROTECTED METHODS ------------------------------------------------ */
+
+
+
+    /* -- PRIVATE METHODS -------------------------------------------------- */
+
+    /**
+     * Creates the test recipes, named in the reverse order of their ids.
+     */
+    private void createFixture()
+    {
+        for(int i = RECIPE_COUNT - 1; i >= 0; i--)
+        {
+            Recipe recipe = new Recipe();
+
+            recipe.name            = name(i);
+            recipe.ingredientCount = 0;
+
+            recipe.save();
+        }
+    }
+
+    /**
+     * Gets a page of the search, sorted by name in ascending order.
+     *
+     * @param pageParam    The page index, or cursor.
+     *
+     * @return The content of the page.
+     */
+    private String search(String pageParam)
+    {
+        String url = null;
+
+        try
+        {
+            url = SEARCH_URL + "&srb=name&sro=asc&pag=" + URLEncoder.encode(pageParam, "UTF-8");
+        }
+        catch(UnsupportedEncodingException e)
+        {
+            throw new RuntimeException(e);
+        }
+
+        Result result = route(application, fakeRequest(GET, url));
+
+        assertEquals("Request failed: " + url, OK, status(result));
+
+        return contentAsString(result);
+    }
+
+    /**
+     * Gets the recipe names listed on a page.
+     *
+     * @param content    The content of the page.
+     *
+     * @return The names, in order.
+     */
+    private static List<String> getNames(String content)
+    {
+        List<String> result = new ArrayList<String>();
+
+        Matcher matcher = Pattern.compile("<a href = \"TODO: link\">([^<]*)</a>").matcher(content);
+
+        while(matcher.find())
+        {
+            result.add(matcher.group(1));
+        }
+
+        return result;
+    }
+
+    /**
+     * Finds the first group of a pattern in a page.
+     *
+     * @param content    The content of the page.
+     * @param regex      The pattern.
+     *
+     * @return The group, or null, if the pattern is not found.
+     */
+    private static String find(String content, String regex)
+    {
+        String result = null;
+
+        Matcher matcher = Pattern.compile(regex).matcher(content);
+
+        if(matcher.find())
+        {
+            result = matcher.group(1);
+        }
+
+        return result;
+    }
+
+    /**
+     * Gets the names of test recipes in ascending order.
+     *
+     * @param from    The index of the first name.
+     * @param to      The index after the last name.
+     *
+     * @return The names.
+     */
+    private static List<String> names(int from, int to)
+    {
+        List<String> result = new ArrayList<String>();
+
+        for(int i = from; i < to; i++)
+        {
+            result.add(name(i));
+        }
+
+        return result;
+    }
+
+    /**
+     * Gets the name of a test recipe.
+     *
+     * @param index    The index of the recipe in name order.
+     *
+     * @return The name.
+     */
+    private static String name(int index)
+    {
+        return String.format("recipe%03d", index);
+    }
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* OTHERS                                                                */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC OTHERS ---------------------------------------------------- */
+
+
+
+    /* -- PROTECTED OTHERS ------------------------------------------------- */
+
+
+
+    /* -- PRIVATE OTHERS --------------------------------------------------- */
+}
@@ -0,0 +1,253 @@
+/*
+ *  Copyright 2016 Oliver Dozsa
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package scrapertests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static play.test.Helpers.fakeApplication;
+import static play.test.Helpers.inMemoryDatabase;
+import static play.test.Helpers.running;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import play.Application;
+import scrapers.data.ScrapedRecipe;
+import scrapers.dbload.DbLoader;
+import scrapers.visitors.RecipeSiteVisitor;
+
+/**
+ * Tests that a load failing while scraping still stops its stages, and leaves
+ * the loader ready for the next load.
+ *
+ * @author Oliver Dozsa
+ */
+public class DbLoaderFailureTest
+{
+    /* --------------------------------------------------------------------- */
+    /* ATTRIBUTES                                                            */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC ATTRIBUTES ------------------------------------------------ */
+
+
+
+    /* -- PROTECTED ATTRIBUTES --------------------------------------------- */
+
+
+
+    /* -- PRIVATE ATTRIBUTES ----------------------------------------------- */
+
+    /**
+     * Time to wait for the stage threads to exit.
+     */
+    private static final long STAGE_EXIT_MILLIS = 5000;
+
+    /**
+     * The application.
+     */
+    private Application application;
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* METHODS                                                               */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC METHODS --------------------------------------------------- */
+
+    @Before
+    public void setup()
+    {
+        Map<String, Object> config = new HashMap<String, Object>();
+
+        config.putAll(inMemoryDatabase("default"));
+        config.put("play.evolutions.db.default.autoApply", "true");
+
+        application = fakeApplication(config);
+    }
+
+    /**
+     * Tests a load whose visitor throws.
+     */
+    @Test
+    public void testThrowingVisitor()
+    {
+        running
+        (
+            application,
+            new Runnable()
+            {
+                public void run()
+                {
+                    ThrowingVisitor visitor = new ThrowingVisitor();
+                    DbLoader loader         = new DbLoader(visitor, null);
+
+                    try
+                    {
+                        loader.load();
+
+                        fail("The error of the visitor is not passed on.");
+                    }
+                    catch(IllegalStateException e)
+                    {
+                        assertEquals(ThrowingVisitor.MESSAGE, e.getMessage());
+                    }
+
+                    assertFalse(loader.isWorking());
+                    assertTrue(loader.isError());
+
+                    /* The stages were started, and must be stopped. */
+                    assertEquals(3, loader.getStageMetrics().size());
+                    assertFalse(isStageAlive(visitor));
+
+                    /* The next load starts clean. */
+                    visitor.isThrowing = false;
+
+                    loader.load();
+
+                    assertFalse(loader.isWorking());
+                    assertFalse(loader.isError());
+                    assertFalse(isStageAlive(visitor));
+                }
+            }
+        );
+    }
+
+
+
+    /* -- PROTECTED METHODS ------------------------------------------------ */
+
+
+
+    /* -- PRIVATE METHODS -------------------------------------------------- */
+
+    /**
+     * Checks whether a stage thread of the loader of the visitor is still
+     * alive, after waiting for them to exit.
+     *
+     * @param visitor    The visitor.
+     *
+     * @return True, if a stage thread is still alive.
+     */
+    private static boolean isStageAlive(RecipeSiteVisitor visitor)
+    {
+        boolean result = false;
+        String name    = visitor.getClass().getSimpleName() + "-stage";
+
+        for(Thread thread : Thread.getAllStackTraces().keySet())
+        {
+            if(name.equals(thread.getName()))
+            {
+                try
+                {
+                    thread.join(STAGE_EXIT_MILLIS);
+                }
+                catch(InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+
+                result |= thread.isAlive();
+            }
+        }
+
+        return result;
+    }
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* OTHERS                                                                */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC OTHERS ---------------------------------------------------- */
+
+
+
+    /* -- PROTECTED OTHERS ------------------------------------------------- */
+
+
+
+    /* -- PRIVATE OTHERS --------------------------------------------------- */
+
+    /**
+     * Visitor failing on the first recipe, or having no recipes at all.
+     */
+    private static class ThrowingVisitor extends RecipeSiteVisitor
+    {
+        /**
+         * Message of the thrown error.
+         */
+        static final String MESSAGE = "Visitor failed.";
+
+        /**
+         * Whether the visitor throws.
+         */
+        boolean isThrowing = true;
+
+        ThrowingVisitor()
+        {
+            super(0);
+        }
+
+        @Override
+        public boolean hasMoreElements()
+        {
+            return isThrowing;
+        }
+
+        @Override
+        public ScrapedRecipe nextElement()
+        {
+            if(isThrowing)
+            {
+                throw new IllegalStateException(MESSAGE);
+            }
+
+            return null;
+        }
+
+        @Override
+        public boolean isConnected()
+        {
+            return true;
+        }
+
+        @Override
+        public void recover()
+        {
+        }
+
+        @Override
+        public void skipCurrentElement()
+        {
+        }
+
+        @Override
+        public void skipCurrentPage()
+        {
+        }
+    }
+}
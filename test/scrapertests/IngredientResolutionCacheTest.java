@@ -0,0 +1,159 @@
+/*
+ *  Copyright 2016 Oliver Dozsa
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package scrapertests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import scrapers.dbload.IngredientResolutionCache;
+
+/**
+ * Test class for the scraped ingredient name resolution cache.
+ *
+ * @author Oliver Dozsa
+ */
+public class IngredientResolutionCacheTest
+{
+    /* --------------------------------------------------------------------- */
+    /* ATTRIBUTES                                                            */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC ATTRIBUTES ------------------------------------------------ */
+
+
+
+    /* -- PROTECTED ATTRIBUTES --------------------------------------------- */
+
+
+
+    /* -- PRIVATE ATTRIBUTES ----------------------------------------------- */
+
+    /**
+     * Fingerprint of the names the cache is made with.
+     */
+    private static final String FINGERPRINT = "names=3/3;aliases=1/1";
+
+    /**
+     * The file the cache is saved to.
+     */
+    private File file;
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* METHODS                                                               */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC METHODS --------------------------------------------------- */
+
+    @Before
+    public void setup() throws IOException
+    {
+        file = File.createTempFile("resolution", ".txt");
+    }
+
+    @After
+    public void teardown()
+    {
+        file.delete();
+    }
+
+    /**
+     * Tests that matches and definite misses are both cached.
+     */
+    @Test
+    public void testGetPut()
+    {
+        IngredientResolutionCache cache = new IngredientResolutionCache(1L, FINGERPRINT);
+
+        cache.put("liszt", 2L);
+        cache.put("szegfuszeg", IngredientResolutionCache.NO_MATCH);
+
+        assertEquals(Long.valueOf(2L), cache.get("liszt"));
+        assertEquals(IngredientResolutionCache.NO_MATCH, cache.get("szegfuszeg"));
+        assertNull(cache.get("tojas"));
+    }
+
+    /**
+     * Tests that a saved cache is read back with the same names.
+     */
+    @Test
+    public void testSaveRead()
+    {
+        IngredientResolutionCache cache = new IngredientResolutionCache(1L, FINGERPRINT);
+
+        cache.put("liszt", 2L);
+        cache.put("finom liszt", 2L);
+        cache.put("szegfuszeg", IngredientResolutionCache.NO_MATCH);
+        cache.put("with\ttab", 3L);
+
+        cache.save(file);
+
+        IngredientResolutionCache read = IngredientResolutionCache.read(file, 1L, FINGERPRINT);
+
+        assertEquals(3, read.size());
+        assertEquals(Long.valueOf(2L), read.get("finom liszt"));
+        assertEquals(IngredientResolutionCache.NO_MATCH, read.get("szegfuszeg"));
+    }
+
+    /**
+     * Tests that a saved cache is dropped when the names have changed.
+     */
+    @Test
+    public void testReadChangedNames()
+    {
+        IngredientResolutionCache cache = new IngredientResolutionCache(1L, FINGERPRINT);
+
+        cache.put("liszt", 2L);
+        cache.save(file);
+
+        assertNull(IngredientResolutionCache.read(file, 1L, "names=4/4;aliases=1/1"));
+    }
+
+
+
+    /* -- PROTECTED METHODS ------------------------------------------------ */
+
+
+
+    /* -- PRIVATE METHODS -------------------------------------------------- */
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* OTHERS                                                                */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC OTHERS ---------------------------------------------------- */
+
+
+
+    /* -- PROTECTED OTHERS ------------------------------------------------- */
+
+
+
+    /* -- PRIVATE OTHERS --------------------------------------------------- */
+}
@@ -0,0 +1,496 @@
+/*
+ *  Copyright 2016 Oliver Dozsa
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package scrapertests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.junit.Test;
+
+import scrapers.data.ScrapedRecipe;
+import scrapers.visitors.ListBasedVisitor;
+import scrapers.visitors.RecipeSiteVisitor.ErrorCode;
+import scrapers.visitors.RecipeSiteVisitor.VisitorState;
+
+/**
+ * Test class for the list based visitor, with listing pages in memory.
+ *
+ * @author Oliver Dozsa
+ */
+public class ListBasedVisitorTest
+{
+    /* --------------------------------------------------------------------- */
+    /* ATTRIBUTES                                                            */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC ATTRIBUTES ------------------------------------------------ */
+
+
+
+    /* -- PROTECTED ATTRIBUTES --------------------------------------------- */
+
+
+
+    /* -- PRIVATE ATTRIBUTES ----------------------------------------------- */
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* METHODS                                                               */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC METHODS --------------------------------------------------- */
+
+    /**
+     * Tests that concurrently fetched recipes come in listing order.
+     */
+    @Test
+    public void testConcurrentOrder()
+    {
+        TestVisitor visitor = new TestVisitor(3, 5);
+
+        visitor.setFetchConcurrency(4);
+
+        assertEquals(visitor.getAllUrls(), scrapeAll(visitor));
+    }
+
+    /**
+     * Tests that a failed recipe is scraped again after recover, and can be
+     * skipped.
+     */
+    @Test
+    public void testConcurrentErrorAndSkip()
+    {
+        TestVisitor visitor = new TestVisitor(2, 3);
+
+        visitor.setFetchConcurrency(3);
+        visitor.failing.add("r0-1");
+
+        assertEquals("r0-0", visitor.nextElement().getUrl());
+        assertNull(visitor.nextElement());
+        assertEquals(VisitorState.ERROR, visitor.getState());
+        assertEquals(ErrorCode.ERROR_SCRAPE, visitor.getErrorCode());
+
+        /* Scraped again on retry, and fails again. */
+        visitor.recover();
+        assertNull(visitor.nextElement());
+
+        visitor.recover();
+        visitor.skipCurrentElement();
+
+        assertEquals(Arrays.asList("r0-2", "r1-0", "r1-1", "r1-2"), scrapeAll(visitor));
+        assertEquals(2, visitor.getScrapeCount("r0-1"));
+    }
+
+    /**
+     * Tests that known recipes are not fetched.
+     */
+    @Test
+    public void testKnownSkipped()
+    {
+        TestVisitor visitor = new TestVisitor(3, 3);
+
+        final Set<String> known = new HashSet<String>(Arrays.asList("r0-1", "r1-0", "r2-2"));
+
+        visitor.setFetchConcurrency(2);
+        visitor.setKnownUrlFilter(new ListBasedVisitor.KnownUrlFilter()
+        {
+            @Override
+            public boolean isKnown(String url)
+            {
+                return known.contains(url);
+            }
+        });
+
+        assertEquals(Arrays.asList("r0-0", "r0-2", "r1-1", "r1-2", "r2-0", "r2-1"), scrapeAll(visitor));
+        assertEquals(3, visitor.getKnownSkippedCount());
+
+        for(String url : known)
+        {
+            assertEquals(0, visitor.getScrapeCount(url));
+        }
+    }
+
+    /**
+     * Tests that paging of a newest first listing stops at the first listing
+     * page of known recipes.
+     */
+    @Test
+    public void testKnownStop()
+    {
+        TestVisitor visitor = new TestVisitor(4, 2);
+
+        visitor.isNewestFirst = true;
+
+        setKnown(visitor, "r0-1", "r1-0", "r1-1", "r2-0");
+
+        assertEquals(Arrays.asList("r0-0"), scrapeAll(visitor));
+        assertEquals(VisitorState.WORK, visitor.getState());
+        assertEquals(Arrays.asList("page-0", "page-1"), visitor.loadedPages);
+    }
+
+    /**
+     * Tests that paging goes on after listing pages of known recipes, if the
+     * listing is not newest first.
+     */
+    @Test
+    public void testKnownPageThenUnknown()
+    {
+        TestVisitor visitor = new TestVisitor(5, 2);
+
+        setKnown(visitor, "r0-0", "r0-1", "r1-0", "r1-1", "r3-1");
+
+        assertEquals(Arrays.asList("r2-0", "r2-1", "r3-0", "r4-0", "r4-1"), scrapeAll(visitor));
+        assertEquals(VisitorState.WORK, visitor.getState());
+        assertEquals(5, visitor.getKnownSkippedCount());
+    }
+
+    /**
+     * Tests that a newest first visitor can go on with its next listing after
+     * a listing page of known recipes.
+     */
+    @Test
+    public void testKnownSkipListing()
+    {
+        TestVisitor visitor = new TestVisitor(5, 2);
+
+        visitor.isNewestFirst = true;
+        visitor.nextListingPage = 3;
+
+        setKnown(visitor, "r1-0", "r1-1");
+
+        assertEquals(Arrays.asList("r0-0", "r0-1", "r3-0", "r3-1", "r4-0", "r4-1"), scrapeAll(visitor));
+        assertEquals(Arrays.asList("page-0", "page-1", "page-3", "page-4"), visitor.loadedPages);
+    }
+
+    /**
+     * Tests that prefetched listing pages are used, and each page is loaded
+     * once.
+     */
+    @Test
+    public void testPrefetch()
+    {
+        TestVisitor visitor = new TestVisitor(4, 3);
+
+        visitor.setPrefetchDepth(2);
+
+        assertEquals(visitor.getAllUrls(), scrapeAll(visitor));
+        assertEquals(Arrays.asList("page-0", "page-1", "page-2", "page-3"), visitor.loadedPages);
+        assertTrue(visitor.prefetchedCount > 0);
+    }
+
+    /**
+     * Tests that going to a page drops the prefetched pages.
+     */
+    @Test
+    public void testPrefetchSetToPage()
+    {
+        TestVisitor visitor = new TestVisitor(3, 2);
+
+        visitor.setPrefetchDepth(1);
+
+        assertEquals("r0-0", visitor.nextElement().getUrl());
+
+        visitor.setToPage(2);
+
+        assertEquals(Arrays.asList("r2-0", "r2-1"), scrapeAll(visitor));
+    }
+
+    /**
+     * Tests that the same recipes come one by one.
+     */
+    @Test
+    public void testSerial()
+    {
+        TestVisitor visitor = new TestVisitor(3, 5);
+
+        assertEquals(visitor.getAllUrls(), scrapeAll(visitor));
+    }
+
+
+
+    /* -- PROTECTED METHODS ------------------------------------------------ */
+
+
+
+    /* -- PRIVATE METHODS -------------------------------------------------- */
+
+    /**
+     * Sets the known recipes of a visitor.
+     *
+     * @param visitor    The visitor.
+     * @param urls       The urls of the known recipes.
+     */
+    private static void setKnown(ListBasedVisitor visitor, String... urls)
+    {
+        final Set<String> known = new HashSet<String>(Arrays.asList(urls));
+
+        visitor.setKnownUrlFilter(new ListBasedVisitor.KnownUrlFilter()
+        {
+            @Override
+            public boolean isKnown(String url)
+            {
+                return known.contains(url);
+            }
+        });
+    }
+
+    /**
+     * Scrapes every remaining recipe.
+     *
+     * @param visitor    The visitor.
+     *
+     * @return The urls of the recipes.
+     */
+    private static List<String> scrapeAll(ListBasedVisitor visitor)
+    {
+        List<String> result = new ArrayList<String>();
+
+        ScrapedRecipe recipe = visitor.nextElement();
+
+        while(recipe != null)
+        {
+            result.add(recipe.getUrl());
+
+            recipe = visitor.nextElement();
+        }
+
+        return result;
+    }
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* OTHERS                                                                */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC OTHERS ---------------------------------------------------- */
+
+
+
+    /* -- PROTECTED OTHERS ------------------------------------------------- */
+
+
+
+    /* -- PRIVATE OTHERS --------------------------------------------------- */
+
+    /**
+     * Visitor of listing pages built in memory. Recipe "rP-E" is element E
+     * of page P; scraping it sleeps a bit, longer for earlier elements.
+     * Listing page P is "page-P". If nextListingPage is set, the pages from
+     * it on are the next listing.
+     */
+    private static class TestVisitor extends ListBasedVisitor
+    {
+        int numOfPages;
+
+        int pageSize;
+
+        Set<String> failing = new HashSet<String>();
+
+        List<String> scraped = new ArrayList<String>();
+
+        List<String> loadedPages = new ArrayList<String>();
+
+        volatile int prefetchedCount;
+
+        boolean isNewestFirst;
+
+        int nextListingPage = -1;
+
+        TestVisitor(int numOfPages, int pageSize)
+        {
+            super(0);
+
+            this.numOfPages = numOfPages;
+            this.pageSize   = pageSize;
+
+            /* The super constructor ran before the fields were set. */
+            setToPage(0);
+        }
+
+        List<String> getAllUrls()
+        {
+            List<String> result = new ArrayList<String>();
+
+            for(int page = 0; page < numOfPages; page++)
+            {
+                for(int element = 0; element < pageSize; element++)
+                {
+                    result.add("r" + page + "-" + element);
+                }
+            }
+
+            return result;
+        }
+
+        int getScrapeCount(String url)
+        {
+            synchronized(scraped)
+            {
+                int result = 0;
+
+                for(String actUrl : scraped)
+                {
+                    if(actUrl.equals(url))
+                    {
+                        result++;
+                    }
+                }
+
+                return result;
+            }
+        }
+
+        @Override
+        public boolean isConnected()
+        {
+            return true;
+        }
+
+        @Override
+        public void recover()
+        {
+            changeState(VisitorState.WORK);
+
+            errorCode = ErrorCode.ERROR_NO_ERROR;
+        }
+
+        @Override
+        protected ScrapedRecipe scrapeFromElement(Element element)
+        {
+            ScrapedRecipe result = null;
+
+            String url = element.text();
+            int index  = Integer.parseInt(url.substring(url.indexOf('-') + 1));
+
+            try
+            {
+                Thread.sleep(5 * (pageSize - index));
+            }
+            catch(InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+
+            synchronized(scraped)
+            {
+                scraped.add(url);
+            }
+
+            if(!failing.contains(url))
+            {
+                result = new ScrapedRecipe(url);
+            }
+
+            return result;
+        }
+
+        @Override
+        protected void goToNextPage() throws IOException
+        {
+            recipeElements = new ArrayList<Element>();
+
+            if(pageCounter < numOfPages)
+            {
+                recipeElements = loadListingPage("page-" + pageCounter).select("li");
+
+                pageCounter++;
+            }
+        }
+
+        @Override
+        protected String getRecipeUrl(Element element)
+        {
+            return element.text();
+        }
+
+        @Override
+        protected boolean isListingNewestFirst()
+        {
+            return isNewestFirst;
+        }
+
+        @Override
+        protected boolean skipRestOfListing()
+        {
+            boolean result = false;
+
+            if(nextListingPage > pageCounter)
+            {
+                pageCounter = nextListingPage;
+
+                result = true;
+            }
+
+            return result;
+        }
+
+        @Override
+        protected List<String> getUpcomingListingUrls(int count)
+        {
+            List<String> result = new ArrayList<String>();
+
+            for(int page = pageCounter; page < numOfPages && result.size() < count; page++)
+            {
+                result.add("page-" + page);
+            }
+
+            return result;
+        }
+
+        @Override
+        protected Document fetchListingPage(String url)
+        {
+            int page = Integer.parseInt(url.substring("page-".length()));
+
+            synchronized(loadedPages)
+            {
+                loadedPages.add(url);
+            }
+
+            if(Thread.currentThread().getName().endsWith("-prefetch"))
+            {
+                prefetchedCount++;
+            }
+
+            StringBuilder html = new StringBuilder("<ul>");
+
+            for(int element = 0; element < pageSize; element++)
+            {
+                html.append("<li>r").append(page).append('-').append(element).append("</li>");
+            }
+
+            html.append("</ul>");
+
+            return Jsoup.parse(html.toString());
+        }
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ *  Copyright 2016 Oliver Dozsa
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package scrapertests;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.junit.Before;
+import org.junit.Test;
+
+import scrapers.data.ScrapedRecipe;
+import scrapers.visitors.ListBasedVisitor;
+import scrapers.visitors.MindmegetteVisitor;
+import scrapers.visitors.NosaltyVisitor;
+
+/**
+ * Tests that the visitors find the end of the listing from the listing pages
+ * only, with the listing pages served from memory.
+ *
+ * @author Oliver Dozsa
+ */
+public class ListingEndDetectionTest
+{
+    /* --------------------------------------------------------------------- */
+    /* ATTRIBUTES                                                            */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC ATTRIBUTES ------------------------------------------------ */
+
+
+
+    /* -- PROTECTED ATTRIBUTES --------------------------------------------- */
+
+
+
+    /* -- PRIVATE ATTRIBUTES ----------------------------------------------- */
+
+    /**
+     * The listing pages loaded, in order. Static, as the visitors load their
+     * first page in the constructor.
+     */
+    private static List<String> loadedPages = new ArrayList<String>();
+
+    /**
+     * The recipes scraped, in order.
+     */
+    private static List<String> scrapedRecipes = new ArrayList<String>();
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* METHODS                                                               */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC METHODS --------------------------------------------------- */
+
+    @Before
+    public void setup()
+    {
+        loadedPages.clear();
+        scrapedRecipes.clear();
+    }
+
+    /**
+     * Tests that nosalty's last page is found without scraping a recipe.
+     * Nosalty serves its last page again for pages above the last one.
+     */
+    @Test
+    public void testNosalty()
+    {
+        ListBasedVisitor visitor = new NosaltyVisitor()
+        {
+            @Override
+            protected Document fetchListingPage(String url)
+            {
+                loadedPages.add(url);
+
+                int page = Math.min(1, Integer.parseInt(url.substring(url.lastIndexOf("%2C") + 3)));
+
+                return Jsoup.parse
+                (
+                    "<div class='article-list-horizontal'><ul>" +
+                        "<li><a href='/kep'>kep</a><a href='/recept/r" + page + "-0'>R</a></li>" +
+                        "<li><a href='/kep'>kep</a><a href='/recept/r" + page + "-1'>R</a></li>" +
+                    "</ul></div>",
+                    "http://www.nosalty.hu/"
+                );
+            }
+
+            @Override
+            protected ScrapedRecipe scrapeFromElement(Element element)
+            {
+                return scrape(element.select("a").get(1));
+            }
+        };
+
+        List<String> expected = Arrays.asList
+        (
+            "http://www.nosalty.hu/recept/r0-0", "http://www.nosalty.hu/recept/r0-1",
+            "http://www.nosalty.hu/recept/r1-0", "http://www.nosalty.hu/recept/r1-1"
+        );
+
+        assertEquals(expected, scrapeAll(visitor));
+        assertEquals(expected, scrapedRecipes);
+        assertEquals(3, loadedPages.size());
+    }
+
+    /**
+     * Tests that mindmegette goes to the next category after the last page
+     * shown by the pagination marker, without loading the page after it.
+     */
+    @Test
+    public void testMindmegette()
+    {
+        ListBasedVisitor visitor = createMindmegetteVisitor();
+
+        List<String> expected = Arrays.asList
+        (
+            "http://www.mindmegette.hu/a1-0", "http://www.mindmegette.hu/a1-1",
+            "http://www.mindmegette.hu/a2-0", "http://www.mindmegette.hu/a2-1",
+            "http://www.mindmegette.hu/b1-0", "http://www.mindmegette.hu/b1-1"
+        );
+
+        assertEquals(expected, scrapeAll(visitor));
+        assertEquals(expected, scrapedRecipes);
+
+        /* Category list, a: 1, 2, b: 1. */
+        assertEquals(4, loadedPages.size());
+    }
+
+    /**
+     * Tests that incremental mindmegette only skips the known recipes: its
+     * A-Z listing is not newest first, so a page of known recipes doesn't end
+     * its category.
+     */
+    @Test
+    public void testMindmegetteKnownPage()
+    {
+        ListBasedVisitor visitor = createMindmegetteVisitor();
+
+        final List<String> known = Arrays.asList("http://www.mindmegette.hu/a1-0", "http://www.mindmegette.hu/a1-1");
+
+        visitor.setKnownUrlFilter(new ListBasedVisitor.KnownUrlFilter()
+        {
+            @Override
+            public boolean isKnown(String url)
+            {
+                return known.contains(url);
+            }
+        });
+
+        List<String> expected = Arrays.asList
+        (
+            "http://www.mindmegette.hu/a2-0", "http://www.mindmegette.hu/a2-1",
+            "http://www.mindmegette.hu/b1-0", "http://www.mindmegette.hu/b1-1"
+        );
+
+        assertEquals(expected, scrapeAll(visitor));
+        assertEquals(expected, scrapedRecipes);
+
+        /* Category list, a: 1, 2, b: 1. */
+        assertEquals(4, loadedPages.size());
+    }
+
+
+
+    /* -- PROTECTED METHODS ------------------------------------------------ */
+
+
+
+    /* -- PRIVATE METHODS -------------------------------------------------- */
+
+    /**
+     * Creates a mindmegette visitor with categories a (2 pages), and b (1
+     * page), 2 recipes per page.
+     *
+     * @return The visitor.
+     */
+    private static ListBasedVisitor createMindmegetteVisitor()
+    {
+        return new MindmegetteVisitor()
+        {
+            @Override
+            protected Document fetchListingPage(String url)
+            {
+                Document result = null;
+
+                loadedPages.add(url);
+
+                if(url.contains("?p="))
+                {
+                    String category = url.substring(url.indexOf(".hu/") + 4, url.indexOf("/?p="));
+                    String page     = url.substring(url.indexOf("?p=") + 3);
+                    int pages       = category.equals("a") ? 2 : 1;
+
+                    result = Jsoup.parse
+                    (
+                        "<div class='current-page'><h4>" + page + " / " + pages + "</h4></div>" +
+                        "<div class='recipe-item'><a href='/" + category + page + "-0'>R</a></div>" +
+                        "<div class='recipe-item'><a href='/" + category + page + "-1'>R</a></div>",
+                        "http://www.mindmegette.hu/"
+                    );
+                }
+                else
+                {
+                    result = Jsoup.parse
+                    (
+                        "<div id='collection'><dl>" +
+                            "<dd><a href='/a/'>A</a></dd>" +
+                            "<dd><a href='/b/'>B</a></dd>" +
+                        "</dl></div>",
+                        "http://www.mindmegette.hu/"
+                    );
+                }
+
+                return result;
+            }
+
+            @Override
+            protected ScrapedRecipe scrapeFromElement(Element element)
+            {
+                return scrape(element.select("a").first());
+            }
+        };
+    }
+
+    /**
+     * Scrapes a recipe from its link, without loading it.
+     *
+     * @param link    The link of the recipe.
+     *
+     * @return The recipe.
+     */
+    private static ScrapedRecipe scrape(Element link)
+    {
+        String url = link.attr("abs:href");
+
+        scrapedRecipes.add(url);
+
+        return new ScrapedRecipe(url);
+    }
+
+    /**
+     * Scrapes every remaining recipe.
+     *
+     * @param visitor    The visitor.
+     *
+     * @return The urls of the recipes.
+     */
+    private static List<String> scrapeAll(ListBasedVisitor visitor)
+    {
+        List<String> result = new ArrayList<String>();
+
+        ScrapedRecipe recipe = visitor.nextElement();
+
+        while(recipe != null)
+        {
+            result.add(recipe.getUrl());
+
+            recipe = visitor.nextElement();
+        }
+
+        return result;
+    }
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* OTHERS                                                                */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC OTHERS ---------------------------------------------------- */
+
+
+
+    /* -- PROTECTED OTHERS ------------------------------------------------- */
+
+
+
+    /* -- PRIVATE OTHERS --------------------------------------------------- */
+}
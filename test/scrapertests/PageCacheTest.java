@@ -0,0 +1,212 @@
+/*
+ *  Copyright 2016 Oliver Dozsa
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package scrapertests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.jsoup.nodes.Document;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import scrapers.fetch.PageCache;
+import scrapers.fetch.PageFetcher;
+
+/**
+ * Test class for the page cache and offline replay.
+ *
+ * @author Oliver Dozsa
+ */
+public class PageCacheTest
+{
+    /* --------------------------------------------------------------------- */
+    /* ATTRIBUTES                                                            */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC ATTRIBUTES ------------------------------------------------ */
+
+
+
+    /* -- PROTECTED ATTRIBUTES --------------------------------------------- */
+
+
+
+    /* -- PRIVATE ATTRIBUTES ----------------------------------------------- */
+
+    /**
+     * Url of the test page.
+     */
+    private static final String URL = "http://example.com/recept/gulyasleves";
+
+    /**
+     * Html of the test page.
+     */
+    private static final String BODY = "<html><head><title>Guly\u00e1sleves</title></head><body>\r\n<p>4 adag</p></body></html>";
+
+    /**
+     * The directory of the cache.
+     */
+    private File directory;
+
+    /**
+     * The cache.
+     */
+    private PageCache cache;
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* METHODS                                                               */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC METHODS --------------------------------------------------- */
+
+    /**
+     * Creates an empty cache.
+     */
+    @Before
+    public void setup() throws IOException
+    {
+        directory = Files.createTempDirectory("page-cache").toFile();
+        cache     = new PageCache(directory);
+    }
+
+    /**
+     * Deletes the cache.
+     */
+    @After
+    public void cleanup()
+    {
+        File[] files = directory.listFiles();
+
+        if(files != null)
+        {
+            for(File file : files)
+            {
+                file.delete();
+            }
+        }
+
+        directory.delete();
+    }
+
+    /**
+     * Tests writing and reading back a page.
+     */
+    @Test
+    public void testReadWrite()
+    {
+        assertNull(cache.read(URL));
+
+        cache.write(new PageCache.Entry(URL, "\"abc\"", "Mon, 10 Oct 2016 10:00:00 GMT", BODY));
+
+        PageCache.Entry entry = cache.read(URL);
+
+        assertEquals(URL, entry.getUrl());
+        assertEquals("\"abc\"", entry.getEtag());
+        assertEquals("Mon, 10 Oct 2016 10:00:00 GMT", entry.getLastModified());
+        assertEquals(BODY, entry.getBody());
+
+        /* Missing headers are read back as null. */
+        cache.write(new PageCache.Entry(URL, null, null, BODY));
+
+        entry = cache.read(URL);
+
+        assertNull(entry.getEtag());
+        assertNull(entry.getLastModified());
+        assertEquals(BODY, entry.getBody());
+
+        assertNull(cache.read(URL + "/2"));
+    }
+
+    /**
+     * Tests that an offline fetcher serves cached pages without fetching, and
+     * fails on others.
+     */
+    @Test
+    public void testOfflineReplay() throws IOException
+    {
+        final int[] fetches = new int[1];
+
+        PageFetcher fetcher = new PageFetcher(1000.0, 10, 1000, 0, 1, "test")
+        {
+            @Override
+            protected Document fetch(String url) throws IOException
+            {
+                fetches[0]++;
+
+                throw new IOException("No network in offline mode.");
+            }
+        };
+
+        fetcher.setCache(cache, true);
+
+        cache.write(new PageCache.Entry(URL, null, null, BODY));
+
+        Document document = fetcher.get(URL);
+
+        assertEquals("Guly\u00e1sleves", document.title());
+        assertEquals(URL, document.location());
+
+        try
+        {
+            fetcher.get(URL + "/2");
+
+            fail("Exception expected.");
+        }
+        catch(FileNotFoundException e)
+        {
+            assertTrue(e.getMessage().contains(URL + "/2"));
+        }
+
+        assertEquals(0, fetches[0]);
+    }
+
+
+
+    /* -- PROTECTED METHODS ------------------------------------------------ */
+
+
+
+    /* -- PRIVATE METHODS -------------------------------------------------- */
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* OTHERS                                                                */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC OTHERS ---------------------------------------------------- */
+
+
+
+    /* -- PROTECTED OTHERS ------------------------------------------------- */
+
+
+
+    /* -- PRIVATE OTHERS --------------------------------------------------- */
+}
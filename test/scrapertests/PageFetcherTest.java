@@ -0,0 +1,240 @@
+/*
+ *  Copyright 2016 Oliver Dozsa
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package scrapertests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+
+import org.jsoup.HttpStatusException;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.Test;
+
+import scrapers.fetch.PageFetcher;
+import scrapers.fetch.TokenBucket;
+
+/**
+ * Test class for the page fetcher and its rate limiter, without network.
+ *
+ * @author Oliver Dozsa
+ */
+public class PageFetcherTest
+{
+    /* --------------------------------------------------------------------- */
+    /* ATTRIBUTES                                                            */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC ATTRIBUTES ------------------------------------------------ */
+
+
+
+    /* -- PROTECTED ATTRIBUTES --------------------------------------------- */
+
+
+
+    /* -- PRIVATE ATTRIBUTES ----------------------------------------------- */
+
+    /**
+     * One second, in nanoseconds.
+     */
+    private static final long SECOND = 1000000000L;
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* METHODS                                                               */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC METHODS --------------------------------------------------- */
+
+    /**
+     * Tests that a full bucket lets a burst go at once, then spaces the
+     * requests by the rate.
+     */
+    @Test
+    public void testBucketRate()
+    {
+        TokenBucket bucket = new TokenBucket(2.0, 3, 0);
+
+        assertEquals(0, bucket.reserve(0));
+        assertEquals(0, bucket.reserve(0));
+        assertEquals(0, bucket.reserve(0));
+
+        assertEquals(SECOND / 2, bucket.reserve(0));
+        assertEquals(SECOND,     bucket.reserve(0));
+    }
+
+    /**
+     * Tests that tokens are refilled over time, up to the capacity.
+     */
+    @Test
+    public void testBucketRefill()
+    {
+        TokenBucket bucket = new TokenBucket(2.0, 2, 0);
+
+        bucket.reserve(0);
+        bucket.reserve(0);
+
+        /* Half a second brings one token. */
+        assertEquals(0, bucket.reserve(SECOND / 2));
+        assertEquals(SECOND / 2, bucket.reserve(SECOND / 2));
+
+        /* A long idle period fills the bucket, but no more. */
+        assertEquals(0, bucket.reserve(100 * SECOND));
+        assertEquals(0, bucket.reserve(100 * SECOND));
+        assertEquals(SECOND / 2, bucket.reserve(100 * SECOND));
+    }
+
+    /**
+     * Tests that failures which may pass are retried.
+     */
+    @Test
+    public void testRetry() throws IOException
+    {
+        TestFetcher fetcher = new TestFetcher(2, new SocketTimeoutException("timeout"));
+
+        Document document = fetcher.get("http://example.com/recipe");
+
+        assertEquals("recipe", document.title());
+        assertEquals(3, fetcher.calls);
+    }
+
+    /**
+     * Tests that the error is thrown when the retries run out.
+     */
+    @Test
+    public void testRetriesExhausted()
+    {
+        TestFetcher fetcher = new TestFetcher(5, new HttpStatusException("unavailable", 503, "http://example.com/recipe"));
+
+        try
+        {
+            fetcher.get("http://example.com/recipe");
+
+            fail("Exception expected.");
+        }
+        catch(IOException e)
+        {
+            assertTrue(e instanceof HttpStatusException);
+        }
+
+        assertEquals(3, fetcher.calls);
+    }
+
+    /**
+     * Tests that client errors are not retried.
+     */
+    @Test
+    public void testNoRetryOnClientError()
+    {
+        TestFetcher fetcher = new TestFetcher(1, new HttpStatusException("not found", 404, "http://example.com/recipe"));
+
+        try
+        {
+            fetcher.get("http://example.com/recipe");
+
+            fail("Exception expected.");
+        }
+        catch(IOException e)
+        {
+            assertEquals(404, ((HttpStatusException)e).getStatusCode());
+        }
+
+        assertEquals(1, fetcher.calls);
+        assertFalse(PageFetcher.isRetryable(new HttpStatusException("forbidden", 403, "http://example.com")));
+        assertTrue(PageFetcher.isRetryable(new HttpStatusException("too many requests", 429, "http://example.com")));
+    }
+
+
+
+    /* -- PROTECTED METHODS ------------------------------------------------ */
+
+
+
+    /* -- PRIVATE METHODS -------------------------------------------------- */
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* OTHERS                                                                */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC OTHERS ---------------------------------------------------- */
+
+
+
+    /* -- PROTECTED OTHERS ------------------------------------------------- */
+
+
+
+    /* -- PRIVATE OTHERS --------------------------------------------------- */
+
+    /**
+     * Fetcher failing a given number of times before returning a page.
+     */
+    private static class TestFetcher extends PageFetcher
+    {
+        /**
+         * The number of failing calls.
+         */
+        private int failures;
+
+        /**
+         * The error of the failing calls.
+         */
+        private IOException error;
+
+        /**
+         * The number of calls so far.
+         */
+        private int calls;
+
+        /**
+         * Creates the fetcher, with 2 retries and no rate limit to speak of.
+         *
+         * @param failures    The number of failing calls.
+         * @param error       The error of the failing calls.
+         */
+        public TestFetcher(int failures, IOException error)
+        {
+            super(1000.0, 10, 1000, 2, 1, "test");
+
+            this.failures = failures;
+            this.error    = error;
+        }
+
+        @Override
+        protected Document fetch(String url) throws IOException
+        {
+            calls++;
+
+            if(calls <= failures)
+            {
+                throw error;
+            }
+
+            return Jsoup.parse("<html><head><title>recipe</title></head></html>");
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ *  Copyright 2016 Oliver Dozsa
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package scrapertests;
+
+import java.io.File;
+
+import scrapers.fetch.PageCache;
+import scrapers.fetch.PageFetcher;
+
+/**
+ * Sets up the replay variants of the scraper tests to use recorded pages.
+ * Running the tests with -Dopenrecipes.test.recordPages=true records the
+ * fetched pages to test/pages; later runs replay them offline. Without
+ * recorded pages the replay tests are skipped; the live tests always fetch
+ * from the network.
+ *
+ * @author Oliver Dozsa
+ */
+public class RecordedPages
+{
+    /* --------------------------------------------------------------------- */
+    /* ATTRIBUTES                                                            */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC ATTRIBUTES ------------------------------------------------ */
+
+    /**
+     * The directory of the recorded pages.
+     */
+    public static final String DIRECTORY = "test/pages";
+
+    /**
+     * System property turning recording on.
+     */
+    public static final String RECORD_PROPERTY = "openrecipes.test.recordPages";
+
+
+
+    /* -- PROTECTED ATTRIBUTES --------------------------------------------- */
+
+
+
+    /* -- PRIVATE ATTRIBUTES ----------------------------------------------- */
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* METHODS                                                               */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC METHODS --------------------------------------------------- */
+
+    /**
+     * Checks whether pages are recorded now, or there are recorded pages to
+     * replay.
+     *
+     * @return True, if the replay tests can run.
+     */
+    public static boolean isAvailable()
+    {
+        return Boolean.getBoolean(RECORD_PROPERTY) || new File(DIRECTORY).isDirectory();
+    }
+
+    /**
+     * Sets up the fetcher of the scrapers for recording or replaying.
+     */
+    public static void install()
+    {
+        File directory = new File(DIRECTORY);
+
+        if(Boolean.getBoolean(RECORD_PROPERTY))
+        {
+            PageFetcher.getInstance().setCache(new PageCache(directory), false);
+        }
+        else if(directory.isDirectory())
+        {
+            PageFetcher.getInstance().setCache(new PageCache(directory), true);
+        }
+    }
+
+    /**
+     * Sets the fetcher of the scrapers back to fetching from the network.
+     */
+    public static void uninstall()
+    {
+        PageFetcher.getInstance().setCache(null, false);
+    }
+
+
+
+    /* -- PROTECTED METHODS ------------------------------------------------ */
+
+
+
+    /* -- PRIVATE METHODS -------------------------------------------------- */
+
+
+
+    /* --------------------------------------------------------------------- */
+    /* OTHERS                                                                */
+    /* --------------------------------------------------------------------- */
+
+    /* -- PUBLIC OTHERS ---------------------------------------------------- */
+
+
+
+    /* -- PROTECTED OTHERS ------------------------------------------------- */
+
+
+
+    /* -- PRIVATE OTHERS --------------------------------------------------- */
+}